@@ -3,8 +3,10 @@ package com.chy.summer.framework.aop.aspectj;
 import com.chy.summer.framework.aop.*;
 import com.chy.summer.framework.aop.aopalliance.Advice;
 import com.chy.summer.framework.aop.aopalliance.intercept.MethodInvocation;
+import com.chy.summer.framework.aop.framework.ReflectiveMethodInvocation;
 import com.chy.summer.framework.aop.interceptor.ExposeInvocationInterceptor;
 import com.chy.summer.framework.aop.support.ComposablePointcut;
+import com.chy.summer.framework.aop.support.MethodInvoker;
 import com.chy.summer.framework.aop.support.MethodMatchers;
 import com.chy.summer.framework.aop.support.StaticMethodMatcher;
 import com.chy.summer.framework.core.DefaultParameterNameDiscoverer;
@@ -14,11 +16,11 @@ import javax.annotation.Nullable;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.weaver.tools.JoinPointMatch;
-import org.aspectj.weaver.tools.PointcutParameter;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
@@ -49,6 +51,16 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 			throw new IllegalStateException("MethodInvocation不是Summer的代理MethodInvocation: " + mi);
 		}
 		ProxyMethodInvocation pmi = (ProxyMethodInvocation) mi;
+		//summer自己的MethodInvocation上有专门存放连接点的字段，不需要放到用户属性的map里
+		if (pmi instanceof ReflectiveMethodInvocation) {
+			ReflectiveMethodInvocation rmi = (ReflectiveMethodInvocation) pmi;
+			JoinPoint jp = (JoinPoint) rmi.getJoinPoint();
+			if (jp == null) {
+				jp = new MethodInvocationProceedingJoinPoint(pmi);
+				rmi.setJoinPoint(jp);
+			}
+			return jp;
+		}
 		//根据连接点名称 获取连接点
 		JoinPoint jp = (JoinPoint) pmi.getUserAttribute(JOIN_POINT_KEY);
 		if (jp == null) {
@@ -77,6 +89,17 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	 */
 	protected transient Method aspectJAdviceMethod;
 
+	/**
+	 * advice方法的调用器，第一次调用advice方法的时候获取
+	 */
+	@Nullable
+	private transient volatile MethodInvoker aspectJAdviceMethodInvoker;
+
+	/**
+	 * advice方法是否只能通过反射调用
+	 */
+	private transient volatile boolean reflectiveAdviceInvocation;
+
 	/**
 	 * 表达式切入点
 	 */
@@ -149,6 +172,18 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	 */
 	private boolean argumentsIntrospected = false;
 
+	/**
+	 * 切入点参数的名称，按照切入点匹配返回参数绑定的顺序
+	 */
+	@Nullable
+	private String[] pointcutParameterNames;
+
+	/**
+	 * 预先计算好的参数绑定计划，第一次绑定参数的时候生成
+	 */
+	@Nullable
+	private transient volatile ArgumentBindingPlan argumentBindingPlan;
+
 	/**
 	 * 返回的通用类型
 	 * 与discoveredReturningType获取的类型不同，discoveredReturningGenericType可以获取到泛型中的详细类型
@@ -585,6 +620,7 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 		}
 
 		//将排除之后的数组赋值给原先对象
+		this.pointcutParameterNames = pointcutParameterNames;
 		this.pointcut.setParameterNames(pointcutParameterNames);
 		this.pointcut.setParameterTypes(pointcutParameterTypes);
 	}
@@ -593,70 +629,33 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	 * 将参数值与参数索引绑定
 	 * 之前的方法中将参数名与参数索引绑定过了
 	 * 在方法执行连接点处获取参数，并将一组参数输出到advice方法
-	 * @param jp 当前的连接点
+	 * @param jp 当前的连接点（advice方法不需要连接点的时候可以为空）
 	 * @param jpMatch 用于该执行连接点匹配的连接点匹配器
 	 * @param returnValue 方法执行的返回值（可以为空）
 	 * @param ex 方法执行引发的异常（可以为空）
 	 */
-	protected Object[] argBinding(JoinPoint jp, @Nullable JoinPointMatch jpMatch,
+	protected Object[] argBinding(@Nullable JoinPoint jp, @Nullable JoinPointMatch jpMatch,
 			@Nullable Object returnValue, @Nullable Throwable ex) {
-		//计算绑定参数
-		calculateArgumentBindings();
+		//按预先计算好的计划绑定
+		return obtainArgumentBindingPlan().bind(jp, jpMatch, returnValue, ex);
+	}
 
-		// AMC start
-		//advice调用的参数
-		Object[] adviceInvocationArgs = new Object[this.parameterTypes.length];
-		//绑定数量
-		int numBound = 0;
-		if (this.joinPointArgumentIndex != -1) {
-			//当首位参数是JoinPoint类型的时候
-			adviceInvocationArgs[this.joinPointArgumentIndex] = jp;
-			numBound++;
-		}
-		else if (this.joinPointStaticPartArgumentIndex != -1) {
-			//当首位参数是JoinPointStaticPart类型的时候
-			adviceInvocationArgs[this.joinPointStaticPartArgumentIndex] = jp.getStaticPart();
-			numBound++;
-		}
-
-		if (!CollectionUtils.isEmpty(this.argumentBindings)) {
-			//从切入点匹配进行绑定
-			if (jpMatch != null) {
-				//参数绑定数组
-				PointcutParameter[] parameterBindings = jpMatch.getParameterBindings();
-				for (PointcutParameter parameter : parameterBindings) {
-					//获取参数名
-					String name = parameter.getName();
-					//获取参数索引
-					Integer index = this.argumentBindings.get(name);
-					//将参数索引于参数对象绑定
-					adviceInvocationArgs[index] = parameter.getBinding();
-					numBound++;
-				}
-			}
-			// 绑定返回对象
-			if (this.returningName != null) {
-				//获取参数索引
-				Integer index = this.argumentBindings.get(this.returningName);
-				//将参数索引于参数对象绑定
-				adviceInvocationArgs[index] = returnValue;
-				numBound++;
-			}
-			// 绑定抛出对象
-			if (this.throwingName != null) {
-				Integer index = this.argumentBindings.get(this.throwingName);
-				adviceInvocationArgs[index] = ex;
-				numBound++;
+	/**
+	 * 获取参数绑定计划，没有的话先计算绑定的参数再生成
+	 */
+	private ArgumentBindingPlan obtainArgumentBindingPlan() {
+		ArgumentBindingPlan plan = this.argumentBindingPlan;
+		if (plan == null) {
+			//计算绑定参数
+			calculateArgumentBindings();
+			synchronized (this) {
+				plan = new ArgumentBindingPlan(this.parameterTypes.length, this.joinPointArgumentIndex,
+						this.joinPointStaticPartArgumentIndex, this.argumentBindings, this.returningName,
+						this.throwingName, this.pointcutParameterNames);
+				this.argumentBindingPlan = plan;
 			}
 		}
-
-		if (numBound != this.parameterTypes.length) {
-			throw new IllegalStateException("需要绑定" + this.parameterTypes.length +
-					" 个参数，但在调用中有" + numBound + "个参数绑定"+(jpMatch == null ? "失败" : "成功"));
-
-		}
-
-		return adviceInvocationArgs;
+		return plan;
 	}
 
 
@@ -670,7 +669,9 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 			@Nullable JoinPointMatch jpMatch, @Nullable Object returnValue, @Nullable Throwable ex)
 			throws Throwable {
 
-		return invokeAdviceMethodWithGivenArgs(argBinding(getJoinPoint(), jpMatch, returnValue, ex));
+		//advice方法没有JoinPoint相关参数的时候，不创建连接点
+		JoinPoint jp = (obtainArgumentBindingPlan().needsJoinPoint() ? getJoinPoint() : null);
+		return invokeAdviceMethodWithGivenArgs(argBinding(jp, jpMatch, returnValue, ex));
 	}
 
 	/**
@@ -690,13 +691,22 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 		if (this.aspectJAdviceMethod.getParameterCount() == 0) {
 			actualArgs = null;
 		}
+		Object aspectInstance = this.aspectInstanceFactory.getAspectInstance();
 		try {
+			MethodInvoker invoker = obtainAdviceMethodInvoker();
+			if (invoker != null) {
+				return invoker.invoke(aspectInstance, actualArgs);
+			}
 			//将需要调用的方法设置成可访问
 			ReflectionUtils.makeAccessible(this.aspectJAdviceMethod);
 			//调用方法执行
-			return this.aspectJAdviceMethod.invoke(this.aspectInstanceFactory.getAspectInstance(), actualArgs);
+			return this.aspectJAdviceMethod.invoke(aspectInstance, actualArgs);
 		}
-		catch (IllegalArgumentException ex) {
+		catch (IllegalArgumentException | ClassCastException | WrongMethodTypeException | NullPointerException ex) {
+			//调用器不会包装advice方法的异常, 参数对得上的话就是advice方法自己抛出来的, 原样抛出
+			if (!MethodInvoker.isArgumentMismatch(this.aspectJAdviceMethod, aspectInstance, actualArgs)) {
+				throw ex;
+			}
 			throw new AopInvocationException("advice方法参数不匹配 [" +
 					this.aspectJAdviceMethod + "]; 切入点表达 [" +
 					this.pointcut.getPointcutExpression() + "]", ex);
@@ -706,6 +716,25 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 		}
 	}
 
+	/**
+	 * 获取advice方法的调用器
+	 * @return 只能通过反射调用的时候返回null
+	 */
+	@Nullable
+	private MethodInvoker obtainAdviceMethodInvoker() {
+		MethodInvoker invoker = this.aspectJAdviceMethodInvoker;
+		if (invoker == null && !this.reflectiveAdviceInvocation) {
+			invoker = MethodInvoker.forMethod(this.aspectJAdviceMethod);
+			if (invoker != null) {
+				this.aspectJAdviceMethodInvoker = invoker;
+			}
+			else {
+				this.reflectiveAdviceInvocation = true;
+			}
+		}
+		return invoker;
+	}
+
 	/**
 	 * 获取连接点
 	 */
@@ -718,6 +747,10 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	 */
 	@Nullable
 	protected JoinPointMatch getJoinPointMatch() {
+		//没有切入点参数需要绑定的时候不需要匹配结果
+		if (!obtainArgumentBindingPlan().needsJoinPointMatch()) {
+			return null;
+		}
 		MethodInvocation mi = ExposeInvocationInterceptor.currentInvocation();
 		if (!(mi instanceof ProxyMethodInvocation)) {
 			throw new IllegalStateException("MethodInvocation is not a Spring ProxyMethodInvocation: " + mi);
@@ -739,6 +772,9 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	 */
 	@Nullable
 	protected JoinPointMatch getJoinPointMatch(ProxyMethodInvocation pmi) {
+		if (!obtainArgumentBindingPlan().needsJoinPointMatch()) {
+			return null;
+		}
 		String expression = this.pointcut.getExpression();
 		return (expression != null ? (JoinPointMatch) pmi.getUserAttribute(expression) : null);
 	}
@@ -0,0 +1,165 @@
+package com.chy.summer.framework.aop.aspectj;
+
+import javax.annotation.Nullable;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.weaver.tools.JoinPointMatch;
+import org.aspectj.weaver.tools.PointcutParameter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * advice方法参数绑定的执行计划
+ * 在calculateArgumentBindings的时候根据参数名与参数索引的映射关系计算一次，
+ * 之后每次调用只是按固定的下标把JoinPoint、返回值、异常和切入点参数放进数组，不再去查map
+ */
+final class ArgumentBindingPlan {
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/**
+	 * advice方法的参数个数
+	 */
+	private final int parameterCount;
+
+	/**
+	 * JoinPoint(或者ProceedingJoinPoint)参数的下标，没有的时候是-1
+	 */
+	private final int joinPointIndex;
+
+	/**
+	 * JoinPoint.StaticPart参数的下标，没有的时候是-1
+	 */
+	private final int joinPointStaticPartIndex;
+
+	/**
+	 * 是否有按名称绑定的参数
+	 */
+	private final boolean bindsByName;
+
+	/**
+	 * 返回值参数的下标，没有的时候是-1
+	 */
+	private final int returningIndex;
+
+	/**
+	 * 异常参数的下标，没有的时候是-1
+	 */
+	private final int throwingIndex;
+
+	/**
+	 * 切入点参数的名称，和切入点匹配返回的参数绑定的顺序一致
+	 */
+	private final String[] pointcutParameterNames;
+
+	/**
+	 * 切入点参数在advice方法参数中的下标，和pointcutParameterNames一一对应
+	 */
+	private final int[] pointcutParameterIndices;
+
+	/**
+	 * 参数名与参数索引的映射关系，切入点参数的顺序对不上的时候使用
+	 */
+	private final Map<String, Integer> argumentBindings;
+
+	ArgumentBindingPlan(int parameterCount, int joinPointIndex, int joinPointStaticPartIndex,
+						@Nullable Map<String, Integer> argumentBindings, @Nullable String returningName,
+						@Nullable String throwingName, @Nullable String[] pointcutParameterNames) {
+		this.parameterCount = parameterCount;
+		this.joinPointIndex = joinPointIndex;
+		this.joinPointStaticPartIndex = joinPointStaticPartIndex;
+		this.argumentBindings = (argumentBindings != null ?
+				Collections.unmodifiableMap(new HashMap<>(argumentBindings)) : Collections.emptyMap());
+		this.bindsByName = !this.argumentBindings.isEmpty();
+		this.returningIndex = indexOf(returningName);
+		this.throwingIndex = indexOf(throwingName);
+		this.pointcutParameterNames = (pointcutParameterNames != null && this.bindsByName ?
+				pointcutParameterNames : new String[0]);
+		this.pointcutParameterIndices = new int[this.pointcutParameterNames.length];
+		for (int i = 0; i < this.pointcutParameterNames.length; i++) {
+			this.pointcutParameterIndices[i] = indexOf(this.pointcutParameterNames[i]);
+		}
+	}
+
+	private int indexOf(@Nullable String argumentName) {
+		if (argumentName == null || !this.bindsByName) {
+			return -1;
+		}
+		Integer index = this.argumentBindings.get(argumentName);
+		return (index != null ? index : -1);
+	}
+
+	/**
+	 * advice方法是否有JoinPoint或者JoinPoint.StaticPart参数，没有的话调用时不需要创建连接点
+	 */
+	boolean needsJoinPoint() {
+		return this.joinPointIndex != -1 || this.joinPointStaticPartIndex != -1;
+	}
+
+	/**
+	 * 是否需要切入点匹配的结果来绑定参数
+	 */
+	boolean needsJoinPointMatch() {
+		return this.pointcutParameterNames.length > 0;
+	}
+
+	/**
+	 * 按计划绑定参数
+	 * @param jp 当前的连接点，needsJoinPoint为false的时候可以为空
+	 * @param jpMatch 用于该执行连接点匹配的连接点匹配器
+	 * @param returnValue 方法执行的返回值（可以为空）
+	 * @param ex 方法执行引发的异常（可以为空）
+	 */
+	Object[] bind(@Nullable JoinPoint jp, @Nullable JoinPointMatch jpMatch, @Nullable Object returnValue, @Nullable Throwable ex) {
+		if (this.parameterCount == 0) {
+			return NO_ARGS;
+		}
+		Object[] adviceInvocationArgs = new Object[this.parameterCount];
+		int numBound = 0;
+		if (this.joinPointIndex != -1) {
+			adviceInvocationArgs[this.joinPointIndex] = jp;
+			numBound++;
+		}
+		else if (this.joinPointStaticPartIndex != -1) {
+			adviceInvocationArgs[this.joinPointStaticPartIndex] = jp.getStaticPart();
+			numBound++;
+		}
+
+		if (this.bindsByName) {
+			if (jpMatch != null) {
+				PointcutParameter[] parameterBindings = jpMatch.getParameterBindings();
+				for (int i = 0; i < parameterBindings.length; i++) {
+					PointcutParameter parameter = parameterBindings[i];
+					adviceInvocationArgs[pointcutParameterIndex(i, parameter.getName())] = parameter.getBinding();
+					numBound++;
+				}
+			}
+			if (this.returningIndex != -1) {
+				adviceInvocationArgs[this.returningIndex] = returnValue;
+				numBound++;
+			}
+			if (this.throwingIndex != -1) {
+				adviceInvocationArgs[this.throwingIndex] = ex;
+				numBound++;
+			}
+		}
+
+		if (numBound != this.parameterCount) {
+			throw new IllegalStateException("需要绑定" + this.parameterCount +
+					" 个参数，但在调用中有" + numBound + "个参数绑定" + (jpMatch == null ? "失败" : "成功"));
+		}
+		return adviceInvocationArgs;
+	}
+
+	/**
+	 * 第i个切入点参数在advice方法参数中的下标
+	 * 切入点参数的顺序和计划中的一致时直接取下标，否则按名称查找
+	 */
+	private int pointcutParameterIndex(int i, String name) {
+		if (i < this.pointcutParameterNames.length && this.pointcutParameterNames[i].equals(name)) {
+			return this.pointcutParameterIndices[i];
+		}
+		return this.argumentBindings.get(name);
+	}
+}
@@ -16,7 +16,19 @@ import com.chy.summer.framework.beans.BeanFactory;
 import com.chy.summer.framework.beans.ConfigurableBeanFactory;
 import com.chy.summer.framework.beans.FactoryBean;
 import javax.annotation.Nullable;
+import org.aspectj.weaver.internal.tools.PointcutExpressionImpl;
+import org.aspectj.weaver.patterns.AndPointcut;
+import org.aspectj.weaver.patterns.AnnotationPointcut;
+import org.aspectj.weaver.patterns.ArgsAnnotationPointcut;
+import org.aspectj.weaver.patterns.ArgsPointcut;
+import org.aspectj.weaver.patterns.KindedPointcut;
 import org.aspectj.weaver.patterns.NamePattern;
+import org.aspectj.weaver.patterns.NotPointcut;
+import org.aspectj.weaver.patterns.OrPointcut;
+import org.aspectj.weaver.patterns.ThisOrTargetAnnotationPointcut;
+import org.aspectj.weaver.patterns.ThisOrTargetPointcut;
+import org.aspectj.weaver.patterns.WithinAnnotationPointcut;
+import org.aspectj.weaver.patterns.WithinPointcut;
 import org.aspectj.weaver.reflect.ReflectionWorld;
 import org.aspectj.weaver.reflect.ShadowMatchImpl;
 import org.aspectj.weaver.tools.*;
@@ -38,6 +50,11 @@ import java.util.concurrent.ConcurrentHashMap;
 public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 		implements ClassFilter, IntroductionAwareMethodMatcher, BeanFactoryAware {
 
+	/**
+	 * 切入点匹配结果缓存文件的路径, 设置以后启动时加载上一次保存的匹配结果, 容器关闭时写回, 见 PersistentShadowMatchCache
+	 */
+	public static final String SHADOW_MATCH_CACHE_FILE_PROPERTY_NAME = "summer.aop.shadow-match-cache.file";
+
 	private static final Set<PointcutPrimitive> SUPPORTED_PRIMITIVES = new HashSet<>();
 
 	static {
@@ -83,6 +100,12 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 	 */
 	private transient Map<Method, ShadowMatch> shadowMatchCache = new ConcurrentHashMap<>(32);
 
+	/**
+	 * 在磁盘缓存里标识这个切入点的键, 空字符串表示这个切入点的匹配结果不能保存
+	 */
+	@Nullable
+	private transient volatile String persistentMatchKey;
+
 
 	/**
 	 * 创建一个新的默认AspectJExpressionPointcut
@@ -172,6 +195,22 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 		return this.pointcutExpression;
 	}
 
+	/**
+	 * 把这一次新算出来的切入点匹配结果写回缓存文件, 没有配置缓存文件的时候什么都不做
+	 * 容器关闭的时候由 AspectJAwareAdvisorAutoProxyCreator 调用
+	 */
+	public static void savePersistentMatches() {
+		PersistentShadowMatchCache.saveInstance();
+	}
+
+	/**
+	 * 获取保存在磁盘上的匹配结果, 第一次获取的时候按bean的类加载器计算类路径指纹
+	 */
+	@Nullable
+	private PersistentShadowMatchCache obtainPersistentCache() {
+		return PersistentShadowMatchCache.getInstance(determinePointcutClassLoader());
+	}
+
 	/**
 	 * 用于确定切入点使用的类加载器
 	 */
@@ -252,6 +291,24 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 	 */
 	@Override
 	public boolean matches(Class<?> targetClass) {
+		//先看磁盘上有没有保存过这个类的匹配结果
+		PersistentShadowMatchCache persistentCache = obtainPersistentCache();
+		String persistentKey = (persistentCache != null ? getPersistentMatchKey() : null);
+		if (persistentKey == null) {
+			return couldMatchJoinPointsInType(targetClass);
+		}
+		Boolean persistedMatch = persistentCache.get(persistentKey, targetClass, PersistentShadowMatchCache.TYPE_MATCH);
+		if (persistedMatch == null) {
+			persistedMatch = couldMatchJoinPointsInType(targetClass);
+			persistentCache.put(persistentKey, targetClass, PersistentShadowMatchCache.TYPE_MATCH, persistedMatch);
+		}
+		return persistedMatch;
+	}
+
+	/**
+	 * 使用切入点表达式判断目标类里有没有可能匹配的连接点
+	 */
+	private boolean couldMatchJoinPointsInType(Class<?> targetClass) {
 		//获取切入点表达式
 		PointcutExpression pointcutExpression = obtainPointcutExpression();
 		try {
@@ -284,6 +341,25 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 	 */
 	@Override
 	public boolean matches(Method method, @Nullable Class<?> targetClass, boolean beanHasIntroductions) {
+		//先看磁盘上有没有保存过这个方法的匹配结果
+		PersistentShadowMatchCache persistentCache = obtainPersistentCache();
+		String persistentKey = (persistentCache != null && targetClass != null ? getPersistentMatchKey() : null);
+		if (persistentKey == null) {
+			return matchesStatically(method, targetClass, beanHasIntroductions);
+		}
+		String member = PersistentShadowMatchCache.methodMatch(method, targetClass, beanHasIntroductions);
+		Boolean persistedMatch = persistentCache.get(persistentKey, targetClass, member);
+		if (persistedMatch == null) {
+			persistedMatch = matchesStatically(method, targetClass, beanHasIntroductions);
+			persistentCache.put(persistentKey, targetClass, member, persistedMatch);
+		}
+		return persistedMatch;
+	}
+
+	/**
+	 * 通过ShadowMatch静态匹配方法
+	 */
+	private boolean matchesStatically(Method method, @Nullable Class<?> targetClass, boolean beanHasIntroductions) {
 		//检查这个切入点是否准备好匹配
 		obtainPointcutExpression();
 		//指定类中的指定方法
@@ -533,6 +609,60 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 		return shadowMatch;
 	}
 
+	/**
+	 * 获取在磁盘缓存里标识这个切入点的键: 表达式 加上 切入点的声明范围和参数
+	 * 包含依赖匹配上下文的原语(比如依赖当前bean名称的bean(..))的切入点, 同一个类的匹配结果会随bean变化, 不保存
+	 * @return 不能保存的时候返回null
+	 */
+	@Nullable
+	String getPersistentMatchKey() {
+		String key = this.persistentMatchKey;
+		if (key == null) {
+			String expression = resolveExpression();
+			PointcutExpression pointcutExpression = obtainPointcutExpression();
+			if (pointcutExpression instanceof PointcutExpressionImpl &&
+					isContextIndependent(((PointcutExpressionImpl) pointcutExpression).getUnderlyingPointcut())) {
+				StringBuilder sb = new StringBuilder(expression).append('|');
+				if (this.pointcutDeclarationScope != null) {
+					sb.append(this.pointcutDeclarationScope.getName());
+				}
+				for (int i = 0; i < this.pointcutParameterNames.length; i++) {
+					sb.append('|').append(this.pointcutParameterNames[i])
+							.append(':').append(this.pointcutParameterTypes[i].getName());
+				}
+				key = sb.toString();
+			}
+			else {
+				key = "";
+			}
+			this.persistentMatchKey = key;
+		}
+		return (key.isEmpty() ? null : key);
+	}
+
+
+	/**
+	 * 沿着解析好的AspectJ切入点树检查每个原语, 判断匹配结果是不是只由目标类和方法决定
+	 * bean(..)这样由处理器根据当前匹配上下文判断的原语, 以及这里不认识的原语, 都当作依赖上下文
+	 */
+	private static boolean isContextIndependent(org.aspectj.weaver.patterns.Pointcut pointcut) {
+		if (pointcut instanceof AndPointcut) {
+			AndPointcut and = (AndPointcut) pointcut;
+			return isContextIndependent(and.getLeft()) && isContextIndependent(and.getRight());
+		}
+		if (pointcut instanceof OrPointcut) {
+			OrPointcut or = (OrPointcut) pointcut;
+			return isContextIndependent(or.getLeft()) && isContextIndependent(or.getRight());
+		}
+		if (pointcut instanceof NotPointcut) {
+			return isContextIndependent(((NotPointcut) pointcut).getNegatedPointcut());
+		}
+		return (pointcut instanceof KindedPointcut || pointcut instanceof WithinPointcut ||
+				pointcut instanceof ThisOrTargetPointcut || pointcut instanceof ArgsPointcut ||
+				pointcut instanceof AnnotationPointcut || pointcut instanceof WithinAnnotationPointcut ||
+				pointcut instanceof ThisOrTargetAnnotationPointcut || pointcut instanceof ArgsAnnotationPointcut);
+	}
+
 
 	@Override
 	public boolean equals(Object other) {
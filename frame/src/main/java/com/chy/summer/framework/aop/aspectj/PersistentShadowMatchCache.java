@@ -0,0 +1,364 @@
+package com.chy.summer.framework.aop.aspectj;
+
+import com.chy.summer.framework.core.SummerProperties;
+import com.chy.summer.framework.util.StringUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 保存在磁盘上的切入点匹配结果
+ * <p>
+ * 通过AspectJ计算ShadowMatch的代价很高, 而同一份部署每次启动算出来的结果都是一样的.
+ * 设置了 summer.aop.shadow-match-cache.file 属性以后, 第一次使用的时候(也就是容器启动匹配切入点的时候)从文件里加载上一次的结果,
+ * 容器关闭的时候(AspectJAwareAdvisorAutoProxyCreator 收到 ContextClosedEvent)把这一次的结果写回文件.
+ * <p>
+ * 保存的是 AspectJExpressionPointcut 静态匹配的结论: 类里有没有可能匹配的连接点, 以及方法在目标类上是否匹配.
+ * 需要运行时判断参数的切入点, 真正调用的时候还是会去计算ShadowMatch, 只是这一步从启动推迟到了第一次调用.
+ * <p>
+ * 文件里记录了类路径的指纹(bean的ClassLoader以及java.class.path上每个jar和目录下每个文件的路径、大小、修改时间, 以及java版本),
+ * 指纹对不上的时候整个文件作废, 所以部署有变化的时候会重新计算.
+ * 结果按 切入点 -> 目标类 -> 方法 分组保存, 切入点表达式和类名在文件里只出现一次
+ */
+@Slf4j
+final class PersistentShadowMatchCache {
+
+	/**
+	 * 类级别匹配结果(类里有没有可能匹配的连接点)使用的方法键
+	 */
+	static final String TYPE_MATCH = "";
+
+	/**
+	 * 文件格式的标识
+	 */
+	private static final int MAGIC = 0x534d4332;
+
+	/**
+	 * 延迟加载的全局实例
+	 */
+	@Nullable
+	private static volatile PersistentShadowMatchCache instance;
+
+	/**
+	 * 是否已经尝试过加载
+	 */
+	private static volatile boolean initialized;
+
+	/**
+	 * 缓存文件
+	 */
+	private final File file;
+
+	/**
+	 * 当前类路径的指纹
+	 */
+	private final String fingerprint;
+
+	/**
+	 * 切入点 -> 目标类名 -> 方法 -> 是否匹配
+	 */
+	private final Map<String, Map<String, Map<String, Boolean>>> matches = new ConcurrentHashMap<>(64);
+
+	/**
+	 * 加载以后有没有新的结果
+	 */
+	private volatile boolean dirty;
+
+	PersistentShadowMatchCache(File file, String fingerprint) {
+		this.file = file;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * 获取全局的缓存, 第一次调用的时候用给定的ClassLoader计算指纹并加载文件
+	 * @param classLoader 加载bean的ClassLoader, 一般就是切入点解析类型用的ClassLoader
+	 * @return 没有配置缓存文件的时候返回null
+	 */
+	@Nullable
+	static PersistentShadowMatchCache getInstance(@Nullable ClassLoader classLoader) {
+		if (!initialized) {
+			synchronized (PersistentShadowMatchCache.class) {
+				if (!initialized) {
+					instance = create(classLoader);
+					initialized = true;
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * 已经加载过全局缓存的时候把新的结果写回文件
+	 */
+	static void saveInstance() {
+		PersistentShadowMatchCache cache = instance;
+		if (cache != null) {
+			cache.save();
+		}
+	}
+
+	@Nullable
+	private static PersistentShadowMatchCache create(@Nullable ClassLoader classLoader) {
+		String location = SummerProperties.getProperty(AspectJExpressionPointcut.SHADOW_MATCH_CACHE_FILE_PROPERTY_NAME);
+		if (!StringUtils.hasText(location)) {
+			return null;
+		}
+		PersistentShadowMatchCache cache = new PersistentShadowMatchCache(new File(location.trim()),
+				classPathFingerprint(classLoader));
+		cache.load();
+		return cache;
+	}
+
+	/**
+	 * 方法匹配结果的键: 声明类(和目标类相同的时候省略)、方法名、参数类型, 以及bean是否有Introduction
+	 */
+	static String methodMatch(Method method, Class<?> targetClass, boolean beanHasIntroductions) {
+		StringBuilder sb = new StringBuilder(64);
+		if (method.getDeclaringClass() != targetClass) {
+			sb.append(method.getDeclaringClass().getName());
+		}
+		sb.append('#').append(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(parameterTypes[i].getName());
+		}
+		sb.append(')');
+		if (beanHasIntroductions) {
+			sb.append('+');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 获取保存的匹配结果
+	 * @param pointcutKey 切入点的键, 见 AspectJExpressionPointcut
+	 * @param targetClass 目标类
+	 * @param member 类级别的结果使用 TYPE_MATCH, 方法的结果使用 methodMatch 生成的键
+	 * @return 没有保存过的时候返回null
+	 */
+	@Nullable
+	Boolean get(String pointcutKey, Class<?> targetClass, String member) {
+		Map<String, Map<String, Boolean>> byClass = this.matches.get(pointcutKey);
+		if (byClass == null) {
+			return null;
+		}
+		Map<String, Boolean> byMember = byClass.get(targetClass.getName());
+		return (byMember != null ? byMember.get(member) : null);
+	}
+
+	/**
+	 * 记录匹配结果
+	 */
+	void put(String pointcutKey, Class<?> targetClass, String member, boolean matches) {
+		Map<String, Boolean> byMember = this.matches.computeIfAbsent(pointcutKey, k -> new ConcurrentHashMap<>(256))
+				.computeIfAbsent(targetClass.getName(), k -> new ConcurrentHashMap<>(16));
+		if (byMember.put(member, matches) == null) {
+			this.dirty = true;
+		}
+	}
+
+	/**
+	 * 从文件加载, 文件不存在、损坏或者指纹不一致的时候什么都不加载
+	 */
+	void load() {
+		if (!this.file.isFile()) {
+			return;
+		}
+		int count = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file.toPath())))) {
+			if (in.readInt() != MAGIC) {
+				log.debug("切入点匹配缓存文件 [{}] 格式不正确, 忽略", this.file);
+				return;
+			}
+			if (!this.fingerprint.equals(in.readUTF())) {
+				log.debug("类路径已经变化, 忽略切入点匹配缓存文件 [{}]", this.file);
+				return;
+			}
+			int pointcutCount = in.readInt();
+			for (int i = 0; i < pointcutCount; i++) {
+				Map<String, Map<String, Boolean>> byClass = new ConcurrentHashMap<>(256);
+				this.matches.put(in.readUTF(), byClass);
+				int classCount = in.readInt();
+				for (int j = 0; j < classCount; j++) {
+					Map<String, Boolean> byMember = new ConcurrentHashMap<>(16);
+					byClass.put(in.readUTF(), byMember);
+					int memberCount = in.readInt();
+					for (int k = 0; k < memberCount; k++) {
+						byMember.put(in.readUTF(), in.readBoolean());
+					}
+					count += memberCount;
+				}
+			}
+			log.debug("从 [{}] 加载了 [{}] 个切入点匹配结果", this.file, count);
+		}
+		catch (IOException ex) {
+			this.matches.clear();
+			log.warn("读取切入点匹配缓存文件 [{}] 失败: {}", this.file, ex.getMessage());
+		}
+	}
+
+	/**
+	 * 有新结果的时候写回文件
+	 * 先写到临时文件再替换, 同时启动的多个进程不会读到写了一半的文件
+	 */
+	synchronized void save() {
+		if (!this.dirty) {
+			return;
+		}
+		this.dirty = false;
+		Path target = this.file.toPath().toAbsolutePath();
+		Path temp = null;
+		try {
+			Path parent = target.getParent();
+			Files.createDirectories(parent);
+			temp = Files.createTempFile(parent, this.file.getName(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeUTF(this.fingerprint);
+				Map<String, Map<String, Map<String, Boolean>>> pointcuts = new HashMap<>(this.matches);
+				out.writeInt(pointcuts.size());
+				for (Map.Entry<String, Map<String, Map<String, Boolean>>> pointcut : pointcuts.entrySet()) {
+					out.writeUTF(pointcut.getKey());
+					Map<String, Map<String, Boolean>> classes = new HashMap<>(pointcut.getValue());
+					out.writeInt(classes.size());
+					for (Map.Entry<String, Map<String, Boolean>> targetClass : classes.entrySet()) {
+						out.writeUTF(targetClass.getKey());
+						Map<String, Boolean> members = new HashMap<>(targetClass.getValue());
+						out.writeInt(members.size());
+						for (Map.Entry<String, Boolean> member : members.entrySet()) {
+							out.writeUTF(member.getKey());
+							out.writeBoolean(member.getValue());
+						}
+					}
+				}
+			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.debug("保存切入点匹配结果到 [{}]", target);
+		}
+		catch (IOException ex) {
+			this.dirty = true;
+			deleteQuietly(temp);
+			log.warn("写入切入点匹配缓存文件 [{}] 失败: {}", target, ex.getMessage());
+		}
+	}
+
+	private static void deleteQuietly(@Nullable Path path) {
+		if (path != null) {
+			try {
+				Files.deleteIfExists(path);
+			}
+			catch (IOException ex) {
+				log.debug("删除临时文件 [{}] 失败: {}", path, ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * 计算类路径的指纹
+	 * 包括ClassLoader(以及它的父ClassLoader)上的所有URL和java.class.path, 应用服务器或者自定义启动器里
+	 * bean的类不一定在java.class.path上.
+	 * jar只看大小和修改时间, 目录会遍历下面的所有文件
+	 * @param classLoader 加载bean的ClassLoader
+	 */
+	static String classPathFingerprint(@Nullable ClassLoader classLoader) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		update(digest, System.getProperty("java.version"));
+		for (File entry : classPathEntries(classLoader)) {
+			fingerprint(digest, entry);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 收集ClassLoader链上URLClassLoader的文件URL, 再加上java.class.path, 去掉重复的
+	 * 从父ClassLoader开始, 和类加载的查找顺序一致
+	 */
+	private static Set<File> classPathEntries(@Nullable ClassLoader classLoader) {
+		Deque<ClassLoader> loaders = new ArrayDeque<>();
+		for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+			loaders.push(loader);
+		}
+		Set<File> entries = new LinkedHashSet<>();
+		for (ClassLoader loader : loaders) {
+			if (loader instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) loader).getURLs()) {
+					if ("file".equals(url.getProtocol())) {
+						try {
+							entries.add(new File(url.toURI()));
+						}
+						catch (URISyntaxException | IllegalArgumentException ex) {
+							entries.add(new File(url.getPath()));
+						}
+					}
+					else {
+						//不是本地文件的URL没办法知道有没有变化, 至少把地址算进去
+						entries.add(new File(url.toExternalForm()));
+					}
+				}
+			}
+		}
+		String classPath = System.getProperty("java.class.path", "");
+		for (String entry : StringUtils.tokenizeToStringArray(classPath, File.pathSeparator)) {
+			entries.add(new File(entry).getAbsoluteFile());
+		}
+		return entries;
+	}
+
+	private static void fingerprint(MessageDigest digest, File file) {
+		update(digest, file.getPath());
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children) {
+					fingerprint(digest, child);
+				}
+			}
+		}
+		else {
+			update(digest, file.length() + ":" + file.lastModified());
+		}
+	}
+
+	private static void update(MessageDigest digest, @Nullable String value) {
+		digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+}
@@ -0,0 +1,605 @@
+package com.chy.summer.framework.aop.aspectj.autoproxy;
+
+import com.chy.summer.framework.aop.Advisor;
+import com.chy.summer.framework.aop.IntroductionAdvisor;
+import com.chy.summer.framework.aop.Pointcut;
+import com.chy.summer.framework.aop.PointcutAdvisor;
+import com.chy.summer.framework.aop.aspectj.AspectJExpressionPointcut;
+import com.chy.summer.framework.util.ReflectionUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.weaver.Shadow;
+import org.aspectj.weaver.internal.tools.PointcutExpressionImpl;
+import org.aspectj.weaver.patterns.AndPointcut;
+import org.aspectj.weaver.patterns.AnnotationPointcut;
+import org.aspectj.weaver.patterns.AnnotationTypePattern;
+import org.aspectj.weaver.patterns.ExactAnnotationTypePattern;
+import org.aspectj.weaver.patterns.ExactTypePattern;
+import org.aspectj.weaver.patterns.ISignaturePattern;
+import org.aspectj.weaver.patterns.KindedPointcut;
+import org.aspectj.weaver.patterns.NamePattern;
+import org.aspectj.weaver.patterns.OrPointcut;
+import org.aspectj.weaver.patterns.SignaturePattern;
+import org.aspectj.weaver.patterns.TypePattern;
+import org.aspectj.weaver.patterns.WildTypePattern;
+import org.aspectj.weaver.patterns.WithinAnnotationPointcut;
+import org.aspectj.weaver.patterns.WithinPointcut;
+import org.aspectj.weaver.tools.PointcutExpression;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 自动代理时advisor的预过滤索引
+ * <p>
+ * AopUtils.canApply 需要对bean的每一个方法做一次 shadow match, bean多、切面多的时候启动会很慢.
+ * 这里在advisor列表不变的情况下, 事先从每个AspectJ切入点表达式里提取出几个不需要 shadow match 就能判断的必要条件:
+ * within(..) 的包前缀, execution(..) 的声明类型(包前缀或者确切的类型), @within(..) 要求的类注解,
+ * @annotation(..) 和 execution(@Xxx ..) 要求的方法注解.
+ * 这些条件都会变成bean类型层次上的"特征"(比如 P:com.foo. 表示层次里有一个类型在 com.foo 包下),
+ * advisor按照这些特征建立索引. 过滤一个bean的时候只需要计算一次它的特征, 再按特征查出可能匹配的advisor.
+ * <p>
+ * 提取出来的条件只是必要条件, 被保留的advisor仍然要走原来的 canApply 流程;
+ * 没法判断的表达式(比如 args(..), bean(..), 取反)不加条件, 总是保留.
+ * IntroductionAdvisor 和非 AspectJExpressionPointcut 的切入点也总是保留
+ */
+@Slf4j
+final class AdvisorPreFilterIndex {
+
+	/**
+	 * 包前缀特征的前缀, 比如 P:com.foo.
+	 */
+	private static final String PACKAGE_PREFIX = "P:";
+
+	/**
+	 * 确切类型特征的前缀, 比如 T:com.foo.Bar
+	 */
+	private static final String TYPE_PREFIX = "T:";
+
+	/**
+	 * 类注解特征的前缀
+	 */
+	private static final String TYPE_ANNOTATION_PREFIX = "A:";
+
+	/**
+	 * 方法注解特征的前缀
+	 */
+	private static final String METHOD_ANNOTATION_PREFIX = "M:";
+
+	/**
+	 * WildTypePattern 里解析出来的导入前缀, 没有公开的访问方法
+	 */
+	@Nullable
+	private static final Field IMPORTED_PREFIXES_FIELD = ReflectionUtils.findField(WildTypePattern.class, "importedPrefixes");
+
+	/**
+	 * WildTypePattern 里根据导入找到的已知类型, 没有公开的访问方法
+	 */
+	@Nullable
+	private static final Field KNOWN_MATCHES_FIELD = ReflectionUtils.findField(WildTypePattern.class, "knownMatches");
+
+	static {
+		if (IMPORTED_PREFIXES_FIELD != null) {
+			ReflectionUtils.makeAccessible(IMPORTED_PREFIXES_FIELD);
+		}
+		if (KNOWN_MATCHES_FIELD != null) {
+			ReflectionUtils.makeAccessible(KNOWN_MATCHES_FIELD);
+		}
+	}
+
+	/**
+	 * 建立索引时的advisor列表
+	 */
+	private final Advisor[] advisors;
+
+	/**
+	 * 和advisors下标一一对应的条件, null表示没有条件
+	 */
+	private final Condition[] conditions;
+
+	/**
+	 * 特征 -> 需要这个特征的advisor下标
+	 */
+	private final Map<String, int[]> index;
+
+	/**
+	 * 不加条件的advisor下标
+	 */
+	private final int[] unconditional;
+
+	/**
+	 * 是否有advisor需要方法注解特征, 没有的话不用扫描bean的方法
+	 */
+	private final boolean needsMethodAnnotations;
+
+	AdvisorPreFilterIndex(List<Advisor> candidateAdvisors) {
+		this.advisors = candidateAdvisors.toArray(new Advisor[0]);
+		this.conditions = new Condition[this.advisors.length];
+		Map<String, List<Integer>> buckets = new HashMap<>();
+		List<Integer> unconditional = new ArrayList<>();
+		boolean needsMethodAnnotations = false;
+		for (int i = 0; i < this.advisors.length; i++) {
+			Condition condition = conditionFor(this.advisors[i]);
+			Set<String> keys = (condition != null ? condition.indexKeys() : null);
+			if (keys == null) {
+				unconditional.add(i);
+				continue;
+			}
+			this.conditions[i] = condition;
+			for (String key : keys) {
+				buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+			}
+			needsMethodAnnotations |= condition.needsMethodAnnotations();
+		}
+		this.index = new HashMap<>(buckets.size() * 2);
+		for (Map.Entry<String, List<Integer>> entry : buckets.entrySet()) {
+			this.index.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		this.unconditional = toArray(unconditional);
+		this.needsMethodAnnotations = needsMethodAnnotations;
+	}
+
+	/**
+	 * 索引是否是根据给定的advisor列表建立的
+	 * 候选advisor每次都是重新收集的列表, 但是里面的advisor对象不变, 所以逐个比较引用
+	 */
+	boolean isBuiltFor(List<Advisor> candidateAdvisors) {
+		if (candidateAdvisors.size() != this.advisors.length) {
+			return false;
+		}
+		int i = 0;
+		for (Advisor advisor : candidateAdvisors) {
+			if (advisor != this.advisors[i++]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 过滤掉肯定不能应用于给定类型的advisor, 保持原来的顺序
+	 * @param beanClass bean的类型
+	 */
+	List<Advisor> filter(Class<?> beanClass) {
+		if (this.unconditional.length == this.advisors.length) {
+			return new ArrayList<>(Arrays.asList(this.advisors));
+		}
+		Set<String> features = features(beanClass, this.needsMethodAnnotations);
+		boolean[] candidates = new boolean[this.advisors.length];
+		for (int i : this.unconditional) {
+			candidates[i] = true;
+		}
+		for (String feature : features) {
+			int[] bucket = this.index.get(feature);
+			if (bucket != null) {
+				for (int i : bucket) {
+					//索引只能说明满足了其中一个特征, 再用完整的条件检查一遍
+					if (!candidates[i] && this.conditions[i].matches(features)) {
+						candidates[i] = true;
+					}
+				}
+			}
+		}
+		List<Advisor> result = new ArrayList<>();
+		for (int i = 0; i < this.advisors.length; i++) {
+			if (candidates[i]) {
+				result.add(this.advisors[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 索引了多少个advisor(有条件的advisor数量)
+	 */
+	int getIndexedAdvisorCount() {
+		return this.advisors.length - this.unconditional.length;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+
+	//---------------------------------------------------------------------
+	// bean类型的特征
+	//---------------------------------------------------------------------
+
+	/**
+	 * 计算bean类型层次上的所有特征
+	 * 类型层次包括bean类型自己、所有父类以及所有实现的接口, 因为方法的声明类型(也就是连接点所在的类型)只会是其中之一
+	 * @param beanClass bean的类型
+	 * @param withMethodAnnotations 是否需要扫描方法注解
+	 */
+	static Set<String> features(Class<?> beanClass, boolean withMethodAnnotations) {
+		Set<Class<?>> hierarchy = new LinkedHashSet<>();
+		collectHierarchy(beanClass, hierarchy);
+		Set<String> features = new HashSet<>(hierarchy.size() * 8);
+		for (Class<?> type : hierarchy) {
+			String name = normalize(type.getName());
+			features.add(TYPE_PREFIX + name);
+			for (int i = name.indexOf('.'); i != -1; i = name.indexOf('.', i + 1)) {
+				features.add(PACKAGE_PREFIX + name.substring(0, i + 1));
+			}
+			for (Annotation annotation : type.getAnnotations()) {
+				features.add(TYPE_ANNOTATION_PREFIX + normalize(annotation.annotationType().getName()));
+			}
+			if (withMethodAnnotations) {
+				for (Method method : type.getDeclaredMethods()) {
+					for (Annotation annotation : method.getAnnotations()) {
+						features.add(METHOD_ANNOTATION_PREFIX + normalize(annotation.annotationType().getName()));
+					}
+				}
+			}
+		}
+		return features;
+	}
+
+	private static void collectHierarchy(@Nullable Class<?> type, Set<Class<?>> hierarchy) {
+		if (type == null || !hierarchy.add(type)) {
+			return;
+		}
+		collectHierarchy(type.getSuperclass(), hierarchy);
+		for (Class<?> ifc : type.getInterfaces()) {
+			collectHierarchy(ifc, hierarchy);
+		}
+	}
+
+	/**
+	 * 内部类的名称统一用'.'分隔, 和AspectJ按名称匹配时的处理一致
+	 */
+	private static String normalize(String typeName) {
+		return typeName.replace('$', '.');
+	}
+
+
+	//---------------------------------------------------------------------
+	// 从切入点表达式提取条件
+	//---------------------------------------------------------------------
+
+	/**
+	 * 获取advisor的条件
+	 * @return 没法判断的时候返回null
+	 */
+	@Nullable
+	static Condition conditionFor(Advisor advisor) {
+		if (advisor instanceof IntroductionAdvisor || !(advisor instanceof PointcutAdvisor)) {
+			return null;
+		}
+		Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+		if (!(pointcut instanceof AspectJExpressionPointcut)) {
+			return null;
+		}
+		try {
+			PointcutExpression expression = ((AspectJExpressionPointcut) pointcut).getPointcutExpression();
+			if (expression instanceof PointcutExpressionImpl) {
+				return conditionFor(((PointcutExpressionImpl) expression).getUnderlyingPointcut());
+			}
+		}
+		catch (Throwable ex) {
+			//表达式有问题的时候交给原来的匹配流程去处理
+			log.debug("切入点 [{}] 无法建立预过滤条件 原因: [{}]", pointcut, ex.getMessage());
+		}
+		return null;
+	}
+
+	@Nullable
+	private static Condition conditionFor(org.aspectj.weaver.patterns.Pointcut pointcut) {
+		if (pointcut instanceof AndPointcut) {
+			AndPointcut and = (AndPointcut) pointcut;
+			return Condition.and(conditionFor(and.getLeft()), conditionFor(and.getRight()));
+		}
+		if (pointcut instanceof OrPointcut) {
+			OrPointcut or = (OrPointcut) pointcut;
+			return Condition.or(conditionFor(or.getLeft()), conditionFor(or.getRight()));
+		}
+		if (pointcut instanceof WithinPointcut) {
+			return withinCondition(((WithinPointcut) pointcut).getTypePattern());
+		}
+		if (pointcut instanceof KindedPointcut) {
+			KindedPointcut kinded = (KindedPointcut) pointcut;
+			ISignaturePattern signature = kinded.getSignature();
+			if (kinded.getKind() != Shadow.MethodExecution || !(signature instanceof SignaturePattern)) {
+				return null;
+			}
+			SignaturePattern signaturePattern = (SignaturePattern) signature;
+			return Condition.and(declaringTypeCondition(signaturePattern.getDeclaringType()),
+					annotationCondition(METHOD_ANNOTATION_PREFIX, signaturePattern.getAnnotationPattern()));
+		}
+		if (pointcut instanceof WithinAnnotationPointcut) {
+			return annotationCondition(TYPE_ANNOTATION_PREFIX, ((WithinAnnotationPointcut) pointcut).getAnnotationTypePattern());
+		}
+		if (pointcut instanceof AnnotationPointcut) {
+			return annotationCondition(METHOD_ANNOTATION_PREFIX, ((AnnotationPointcut) pointcut).getAnnotationTypePattern());
+		}
+		return null;
+	}
+
+	/**
+	 * within(..) 的条件
+	 * within 也会匹配内部类里的连接点, 所以确切的类型也只能转成包前缀
+	 */
+	@Nullable
+	private static Condition withinCondition(TypePattern typePattern) {
+		if (typePattern.isIncludeSubtypes()) {
+			return null;
+		}
+		if (typePattern instanceof ExactTypePattern) {
+			String name = normalize(((ExactTypePattern) typePattern).getType().getRawType().getName());
+			int lastDot = name.lastIndexOf('.');
+			return (lastDot != -1 ? Condition.feature(PACKAGE_PREFIX + name.substring(0, lastDot + 1)) : null);
+		}
+		if (typePattern instanceof WildTypePattern) {
+			return wildTypeCondition((WildTypePattern) typePattern);
+		}
+		return null;
+	}
+
+	/**
+	 * execution(..) 声明类型的条件
+	 * 方法的声明类型一定在bean的类型层次里, 带'+'的确切类型要求bean是它的子类型, 同样也在类型层次里
+	 */
+	@Nullable
+	private static Condition declaringTypeCondition(TypePattern typePattern) {
+		if (typePattern instanceof ExactTypePattern) {
+			return Condition.feature(TYPE_PREFIX + normalize(((ExactTypePattern) typePattern).getType().getRawType().getName()));
+		}
+		if (typePattern instanceof WildTypePattern && !typePattern.isIncludeSubtypes()) {
+			return wildTypeCondition((WildTypePattern) typePattern);
+		}
+		return null;
+	}
+
+	/**
+	 * 带通配符的类型模式的条件: 第一个通配符之前的包前缀
+	 * 没有写全限定名的模式还会加上导入的前缀(比如 java.lang.)去匹配, 所以每个导入前缀都是一个可选的条件
+	 */
+	@Nullable
+	private static Condition wildTypeCondition(WildTypePattern typePattern) {
+		if (typePattern.getDimensions() != 0) {
+			return null;
+		}
+		NamePattern[] namePatterns = typePattern.getNamePatterns();
+		StringBuilder prefix = new StringBuilder();
+		//最后一段是类名, 只取前面的包名部分
+		for (int i = 0; i < namePatterns.length - 1; i++) {
+			NamePattern namePattern = namePatterns[i];
+			String literal = (namePattern != NamePattern.ELLIPSIS ? namePattern.maybeGetSimpleName() : null);
+			if (literal == null) {
+				break;
+			}
+			prefix.append(literal).append('.');
+		}
+		if (prefix.length() == 0) {
+			return null;
+		}
+		String[] importedPrefixes;
+		try {
+			if (IMPORTED_PREFIXES_FIELD == null || KNOWN_MATCHES_FIELD == null) {
+				return null;
+			}
+			//根据导入解析出来的已知类型会替换掉第一段, 这种情况没法确定前缀
+			String[] knownMatches = (String[]) KNOWN_MATCHES_FIELD.get(typePattern);
+			if (knownMatches != null && knownMatches.length > 0) {
+				return null;
+			}
+			importedPrefixes = (String[]) IMPORTED_PREFIXES_FIELD.get(typePattern);
+		}
+		catch (IllegalAccessException ex) {
+			return null;
+		}
+		Condition condition = Condition.feature(PACKAGE_PREFIX + prefix);
+		if (importedPrefixes != null) {
+			for (String importedPrefix : importedPrefixes) {
+				condition = Condition.or(condition, Condition.feature(PACKAGE_PREFIX + normalize(importedPrefix) + prefix));
+			}
+		}
+		return condition;
+	}
+
+	/**
+	 * 注解的条件, 只处理确切的注解类型
+	 */
+	@Nullable
+	private static Condition annotationCondition(String featurePrefix, AnnotationTypePattern annotationPattern) {
+		if (annotationPattern instanceof ExactAnnotationTypePattern) {
+			return Condition.feature(featurePrefix +
+					normalize(((ExactAnnotationTypePattern) annotationPattern).getAnnotationType().getRawType().getName()));
+		}
+		return null;
+	}
+
+
+	/**
+	 * advisor能够应用于bean的必要条件, 由bean类型特征的与、或组成
+	 */
+	abstract static class Condition {
+
+		/**
+		 * 给定的特征是否满足条件
+		 */
+		abstract boolean matches(Set<String> features);
+
+		/**
+		 * 用于建立索引的特征: 满足条件的时候至少包含其中一个
+		 * @return 没有这样的特征集合的时候返回null
+		 */
+		@Nullable
+		abstract Set<String> indexKeys();
+
+		/**
+		 * 是否需要方法注解特征
+		 */
+		abstract boolean needsMethodAnnotations();
+
+		static Condition feature(String feature) {
+			return new FeatureCondition(feature);
+		}
+
+		/**
+		 * 与条件, 一边没有条件的时候就是另一边
+		 */
+		@Nullable
+		static Condition and(@Nullable Condition left, @Nullable Condition right) {
+			if (left == null) {
+				return right;
+			}
+			if (right == null) {
+				return left;
+			}
+			return new AndCondition(left, right);
+		}
+
+		/**
+		 * 或条件, 任意一边没有条件的时候整体也没有条件
+		 */
+		@Nullable
+		static Condition or(@Nullable Condition left, @Nullable Condition right) {
+			if (left == null || right == null) {
+				return null;
+			}
+			return new OrCondition(left, right);
+		}
+	}
+
+
+	/**
+	 * 要求包含某个特征
+	 */
+	private static final class FeatureCondition extends Condition {
+
+		private final String feature;
+
+		FeatureCondition(String feature) {
+			this.feature = feature;
+		}
+
+		@Override
+		boolean matches(Set<String> features) {
+			return features.contains(this.feature);
+		}
+
+		@Override
+		Set<String> indexKeys() {
+			return Collections.singleton(this.feature);
+		}
+
+		@Override
+		boolean needsMethodAnnotations() {
+			return this.feature.startsWith(METHOD_ANNOTATION_PREFIX);
+		}
+
+		@Override
+		public String toString() {
+			return this.feature;
+		}
+	}
+
+
+	/**
+	 * 两个条件都要满足
+	 */
+	private static final class AndCondition extends Condition {
+
+		private final Condition left;
+
+		private final Condition right;
+
+		AndCondition(Condition left, Condition right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean matches(Set<String> features) {
+			return this.left.matches(features) && this.right.matches(features);
+		}
+
+		/**
+		 * 任意一边的特征都可以用来建立索引, 选特征少的一边, 一样多的时候优先选不用扫描方法的一边
+		 */
+		@Override
+		Set<String> indexKeys() {
+			Set<String> leftKeys = this.left.indexKeys();
+			Set<String> rightKeys = this.right.indexKeys();
+			if (leftKeys == null || rightKeys == null) {
+				return (leftKeys != null ? leftKeys : rightKeys);
+			}
+			if (leftKeys.size() != rightKeys.size()) {
+				return (leftKeys.size() < rightKeys.size() ? leftKeys : rightKeys);
+			}
+			return (this.left.needsMethodAnnotations() ? rightKeys : leftKeys);
+		}
+
+		@Override
+		boolean needsMethodAnnotations() {
+			return this.left.needsMethodAnnotations() || this.right.needsMethodAnnotations();
+		}
+
+		@Override
+		public String toString() {
+			return "(" + this.left + " && " + this.right + ")";
+		}
+	}
+
+
+	/**
+	 * 满足任意一个条件
+	 */
+	private static final class OrCondition extends Condition {
+
+		private final Condition left;
+
+		private final Condition right;
+
+		OrCondition(Condition left, Condition right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean matches(Set<String> features) {
+			return this.left.matches(features) || this.right.matches(features);
+		}
+
+		/**
+		 * 两边的特征合在一起
+		 */
+		@Override
+		@Nullable
+		Set<String> indexKeys() {
+			Set<String> leftKeys = this.left.indexKeys();
+			Set<String> rightKeys = this.right.indexKeys();
+			if (leftKeys == null || rightKeys == null) {
+				return null;
+			}
+			Set<String> keys = new LinkedHashSet<>(leftKeys);
+			keys.addAll(rightKeys);
+			return keys;
+		}
+
+		@Override
+		boolean needsMethodAnnotations() {
+			return this.left.needsMethodAnnotations() || this.right.needsMethodAnnotations();
+		}
+
+		@Override
+		public String toString() {
+			return "(" + this.left + " || " + this.right + ")";
+		}
+	}
+}
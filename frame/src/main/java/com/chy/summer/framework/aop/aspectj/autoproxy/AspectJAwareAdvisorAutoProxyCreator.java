@@ -3,11 +3,17 @@ package com.chy.summer.framework.aop.aspectj.autoproxy;
 import com.chy.summer.framework.aop.Advisor;
 import com.chy.summer.framework.aop.aopalliance.Advice;
 import com.chy.summer.framework.aop.aspectj.AbstractAspectJAdvice;
+import com.chy.summer.framework.aop.aspectj.AspectJExpressionPointcut;
 import com.chy.summer.framework.aop.aspectj.AspectJPointcutAdvisor;
 import com.chy.summer.framework.aop.aspectj.AspectJProxyUtils;
 import com.chy.summer.framework.aop.framework.autoProxy.AbstractAdvisorAutoProxyCreator;
+import com.chy.summer.framework.context.event.ApplicationListener;
+import com.chy.summer.framework.context.event.ContextClosedEvent;
+import com.chy.summer.framework.core.SummerProperties;
 import com.chy.summer.framework.core.ordered.Ordered;
 import com.chy.summer.framework.util.ClassUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
 import org.aspectj.util.PartialOrder;
 import org.aspectj.util.PartialOrder.PartialComparable;
 
@@ -24,11 +30,73 @@ import java.util.List;
  * 需要排序的advisor或advice应实现order的接口
  * 该类按有序顺序值对advisor排序
  * 未实现有序接口的顾问将被视为无序的;它们将以未定义的顺序出现在advisor链的末端
+ *
+ * 容器关闭的时候把切入点匹配结果写回缓存文件, 见 AspectJExpressionPointcut#SHADOW_MATCH_CACHE_FILE_PROPERTY_NAME
  */
-public class AspectJAwareAdvisorAutoProxyCreator extends AbstractAdvisorAutoProxyCreator {
+@Slf4j
+public class AspectJAwareAdvisorAutoProxyCreator extends AbstractAdvisorAutoProxyCreator
+		implements ApplicationListener<ContextClosedEvent> {
+
+	/**
+	 * 设置为 true 的时候不使用advisor预过滤索引, 每个advisor都对bean做完整的匹配, 见 setAdvisorPreFiltering
+	 */
+	public static final String IGNORE_ADVISOR_PRE_FILTER_PROPERTY_NAME = "summer.aop.advisor-pre-filter.ignore";
 
 	private static final Comparator<Advisor> DEFAULT_PRECEDENCE_COMPARATOR = new AspectJPrecedenceComparator();
 
+	/**
+	 * 是否使用advisor预过滤索引
+	 */
+	private boolean advisorPreFiltering = !SummerProperties.getFlag(IGNORE_ADVISOR_PRE_FILTER_PROPERTY_NAME);
+
+	/**
+	 * 根据最近一次的候选advisor建立的预过滤索引
+	 */
+	@Nullable
+	private volatile AdvisorPreFilterIndex advisorPreFilterIndex;
+
+
+	/**
+	 * 设置是否使用advisor预过滤索引, 默认开启
+	 * 开启的时候会先根据切入点表达式里能直接判断的条件(包前缀、声明类型、注解)排除掉肯定不匹配的advisor,
+	 * 剩下的advisor再逐个方法匹配
+	 */
+	public void setAdvisorPreFiltering(boolean advisorPreFiltering) {
+		this.advisorPreFiltering = advisorPreFiltering;
+	}
+
+	public boolean isAdvisorPreFiltering() {
+		return this.advisorPreFiltering;
+	}
+
+	/**
+	 * 容器关闭的时候保存切入点匹配结果, 下一次启动可以直接使用
+	 */
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		AspectJExpressionPointcut.savePersistentMatches();
+	}
+
+	/**
+	 * 先用预过滤索引排除掉肯定不能应用于这个bean的advisor, 再交给父类逐个匹配
+	 */
+	@Override
+	protected List<Advisor> findAdvisorsThatCanApply(
+			List<Advisor> candidateAdvisors, Class<?> beanClass, String beanName) {
+
+		if (this.advisorPreFiltering && !candidateAdvisors.isEmpty()) {
+			AdvisorPreFilterIndex index = this.advisorPreFilterIndex;
+			if (index == null || !index.isBuiltFor(candidateAdvisors)) {
+				index = new AdvisorPreFilterIndex(candidateAdvisors);
+				this.advisorPreFilterIndex = index;
+				log.debug("建立advisor预过滤索引, 共 [{}] 个advisor, 其中 [{}] 个可以预过滤",
+						candidateAdvisors.size(), index.getIndexedAdvisorCount());
+			}
+			candidateAdvisors = index.filter(beanClass);
+		}
+		return super.findAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+	}
+
 
 	/**
 	 * 按照AspectJ优先级对其余部分排序
@@ -16,7 +16,6 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * AOP代理配置管理器的基类
@@ -52,9 +51,9 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	AdvisorChainFactory advisorChainFactory = new DefaultAdvisorChainFactory();
 
 	/**
-     * 缓存方法的键和advisor链的映射关系
-     */
-	private transient Map<MethodCacheKey, List<Object>> methodCache;
+	 * 代理方法和advisor链的槽位表，adviceChanged时整张表替换成下一代的空表
+	 */
+	private transient volatile MethodSlotTable methodSlots;
 
 	/**
 	 * 代理要实现的接口
@@ -78,7 +77,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 * JavaBean的无参数构造函数
 	 */
 	public AdvisedSupport() {
-		this.methodCache = new ConcurrentHashMap<>(32);
+		this.methodSlots = new MethodSlotTable(0, MethodSlotTable.DEFAULT_METHOD_COUNT);
 	}
 
 	/**
@@ -500,24 +499,81 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 * MethodInterceptor根据此配置，获取给定方法的MethodInterceptor对象列表。
 	 */
 	public List<Object> getInterceptorsAndDynamicInterceptionAdvice(Method method, @Nullable Class<?> targetClass) {
-		MethodCacheKey cacheKey = new MethodCacheKey(method);
-		//从缓存中查找
-		List<Object> cached = this.methodCache.get(cacheKey);
-		if (cached == null) {
-		    //没有找到的话，在从列表中查找
-			cached = this.advisorChainFactory.getInterceptorsAndDynamicInterceptionAdvice(
-					this, method, targetClass);
-			//加入缓存中
-			this.methodCache.put(cacheKey, cached);
+		return obtainMethodSlot(method, targetClass).chain;
+	}
+
+	/**
+	 * 获取给定方法编译好的拦截器链
+	 * 拦截器链第一次被解析出来的那次调用返回null，由调用方走反射的调用；之后再次调用时拦截器链已经稳定，才进行编译。
+	 * 编译结果保存在方法的槽位上，adviceChanged以后整张槽位表被替换，旧的编译结果不会再被使用
+	 * @return 编译好的拦截器链，拦截器链为空或者还没有稳定的时候返回null
+	 */
+	@Nullable
+	CompiledInterceptorChain getCompiledInterceptorChain(Method method, @Nullable Class<?> targetClass) {
+		MethodSlotTable.Slot slot = this.methodSlots.get(method);
+		if (slot == null) {
+			//还没有解析过，这一次先解析并放入槽位表
+			obtainMethodSlot(method, targetClass);
+			return null;
+		}
+		if (slot.chain.isEmpty()) {
+			return null;
+		}
+		CompiledInterceptorChain compiled = slot.compiled;
+		if (compiled == null) {
+			compiled = CompiledInterceptorChain.compile(method, slot.chain);
+			slot.compiled = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * 获取方法的槽位，没有的话解析拦截器链并放入槽位表
+	 * 解析在锁外面进行，放入的时候如果槽位表已经因为adviceChanged换代了，解析的结果只用于这一次调用，不会放进新表
+	 */
+	MethodSlotTable.Slot obtainMethodSlot(Method method, @Nullable Class<?> targetClass) {
+		MethodSlotTable table = this.methodSlots;
+		MethodSlotTable.Slot slot = table.get(method);
+		if (slot != null) {
+			return slot;
+		}
+		//没有找到的话，在从列表中查找
+		List<Object> chain = this.advisorChainFactory.getInterceptorsAndDynamicInterceptionAdvice(
+				this, method, targetClass);
+		slot = new MethodSlotTable.Slot(method, chain);
+		synchronized (this) {
+			MethodSlotTable current = this.methodSlots;
+			if (current.generation == table.generation) {
+				MethodSlotTable.Slot existing = current.get(method);
+				if (existing != null) {
+					return existing;
+				}
+				//复制出新表后整体替换，读的一方不需要加锁
+				this.methodSlots = current.with(slot);
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * 创建代理的时候根据代理的方法数量预先扩大槽位表，稳定以后的查找不会再触发扩容
+	 * @param methodCount 代理可能被调用的方法数量
+	 */
+	void presizeMethodSlots(int methodCount) {
+		synchronized (this) {
+			this.methodSlots = this.methodSlots.presize(methodCount);
 		}
-		return cached;
 	}
 
 	/**
 	 * advice更改时清空方法的映射缓存
+	 * 槽位表整体换成下一代的空表，大小保持不变
 	 */
 	protected void adviceChanged() {
-		this.methodCache.clear();
+		synchronized (this) {
+			MethodSlotTable table = this.methodSlots;
+			this.methodSlots = new MethodSlotTable(table.generation + 1, table.capacity() / 2);
+		}
 	}
 
 	/**
@@ -582,7 +638,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
      */
 	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
 		ois.defaultReadObject();
-		this.methodCache = new ConcurrentHashMap<>(32);
+		this.methodSlots = new MethodSlotTable(0, MethodSlotTable.DEFAULT_METHOD_COUNT);
 	}
 
 
@@ -603,53 +659,4 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 		return sb.toString();
 	}
 
-
-	/**
-	 * 方法简单的包装器 用于缓存方法时的键，重写equals和hashCode使得更加有效
-	 */
-	private static final class MethodCacheKey implements Comparable<MethodCacheKey> {
-
-        /**
-         * 持有的方法
-         */
-        private final Method method;
-        /**
-         * 方法的hash值
-         */
-		private final int hashCode;
-
-		public MethodCacheKey(Method method) {
-			this.method = method;
-			this.hashCode = method.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object other) {
-			return (this == other || (other instanceof MethodCacheKey &&
-					this.method == ((MethodCacheKey) other).method));
-		}
-
-		@Override
-		public int hashCode() {
-			return this.hashCode;
-		}
-
-		@Override
-		public String toString() {
-			return this.method.toString();
-		}
-
-        /**
-         * 比较方法
-         */
-		@Override
-		public int compareTo(MethodCacheKey other) {
-			int result = this.method.getName().compareTo(other.method.getName());
-			if (result == 0) {
-				result = this.method.toString().compareTo(other.method.toString());
-			}
-			return result;
-		}
-	}
-
 }
\ No newline at end of file
@@ -9,7 +9,9 @@ import com.chy.summer.framework.aop.support.AopUtils;
 import com.chy.summer.framework.core.SmartClassLoader;
 import com.chy.summer.framework.util.Assert;
 import com.chy.summer.framework.util.ClassUtils;
+import com.chy.summer.framework.util.ConcurrentReferenceHashMap;
 import com.chy.summer.framework.util.ObjectUtils;
+import com.chy.summer.framework.util.ReflectionUtils;
 import javax.annotation.Nullable;
 import net.sf.cglib.core.ClassGenerator;
 import net.sf.cglib.core.CodeGenerationException;
@@ -17,6 +19,7 @@ import net.sf.cglib.proxy.*;
 import net.sf.cglib.transform.impl.UndeclaredThrowableStrategy;
 
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.UndeclaredThrowableException;
@@ -45,7 +48,8 @@ class CglibAopProxy implements AopProxy, Serializable {
     /**
      * 保存对类验证的结果
      */
-    private static final Map<Class<?>, Boolean> validatedClasses = new WeakHashMap<>();
+    static final Map<Class<?>, Boolean> validatedClasses =
+            new ConcurrentReferenceHashMap<>(256, ConcurrentReferenceHashMap.ReferenceType.WEAK);
 
 
     /**
@@ -142,9 +146,12 @@ class CglibAopProxy implements AopProxy, Serializable {
 
             // 验证类，根据需要编写日志消息
             validateClassIfNecessary(proxySuperClass, classLoader);
+            //按代理类的方法数量预先分配拦截器链的槽位
+            this.advised.presizeMethodSlots(proxySuperClass.getMethods().length);
 
             //配置cglib增强
             Enhancer enhancer = createEnhancer();
+            boolean useSharedCache = CglibProxyClassCache.isEnabled();
             if (classLoader != null) {
                 enhancer.setClassLoader(classLoader);
                 if (classLoader instanceof SmartClassLoader &&
@@ -152,12 +159,14 @@ class CglibAopProxy implements AopProxy, Serializable {
                         ((SmartClassLoader) classLoader).isClassReloadable(proxySuperClass)) {
                     // 关闭CGLib缓存，否则总是生成同一个类
                     enhancer.setUseCache(false);
+                    useSharedCache = false;
                 }
             }
             //设置产生的代理对象的父类
             enhancer.setSuperclass(proxySuperClass);
             //设置cglib需要实现的接口
-            enhancer.setInterfaces(AopProxyUtils.completeProxiedInterfaces(this.advised));
+            Class<?>[] interfaces = AopProxyUtils.completeProxiedInterfaces(this.advised);
+            enhancer.setInterfaces(interfaces);
             //覆盖默认命名策略
             enhancer.setNamingPolicy(SummerNamingPolicy.INSTANCE);
             //设置用此生成器创建字节码的策略
@@ -170,10 +179,21 @@ class CglibAopProxy implements AopProxy, Serializable {
                 types[x] = callbacks[x].getClass();
             }
             //设置回调过滤器
-            enhancer.setCallbackFilter(new ProxyCallbackFilter(
-                    this.advised.getConfigurationOnlyCopy(), this.fixedInterceptorMap, this.fixedInterceptorOffset));
+            ProxyCallbackFilter filter = new ProxyCallbackFilter(
+                    this.advised.getConfigurationOnlyCopy(), this.fixedInterceptorMap, this.fixedInterceptorOffset);
+            enhancer.setCallbackFilter(filter);
             enhancer.setCallbackTypes(types);
 
+            //形状相同的代理共享同一个代理类，只需要创建实例
+            CglibProxyClassCache.ProxyClassKey key = (useSharedCache ?
+                    CglibProxyClassCache.keyFor(proxySuperClass, interfaces, types, filter,
+                            isInterceptDuringConstruction(), classLoader) : null);
+            if (key != null) {
+                //和createProxyClassAndInstance生成的类保持一致
+                enhancer.setInterceptDuringConstruction(isInterceptDuringConstruction());
+                return createProxyInstance(CglibProxyClassCache.getProxyClass(key, enhancer), callbacks);
+            }
+
             //生成代理类并创建代理实例
             return createProxyClassAndInstance(enhancer, callbacks);
         } catch (CodeGenerationException | IllegalArgumentException ex) {
@@ -201,6 +221,35 @@ class CglibAopProxy implements AopProxy, Serializable {
                 enhancer.create());
     }
 
+    /**
+     * 生成的代理类在构造器中调用方法时是否拦截
+     * 代理实例通过构造器创建，构造期间的调用不拦截
+     */
+    protected boolean isInterceptDuringConstruction() {
+        return false;
+    }
+
+    /**
+     * 使用已经生成好的代理类创建代理实例
+     *
+     * @param proxyClass 代理类
+     * @param callbacks  回调方法列表
+     */
+    protected Object createProxyInstance(Class<?> proxyClass, Callback[] callbacks) throws Exception {
+        //代理类的构造器会从当前线程取回调
+        Enhancer.registerCallbacks(proxyClass, callbacks);
+        try {
+            Constructor<?> ctor = (this.constructorArgs != null && this.constructorArgTypes != null ?
+                    proxyClass.getDeclaredConstructor(this.constructorArgTypes) :
+                    proxyClass.getDeclaredConstructor());
+            ReflectionUtils.makeAccessible(ctor);
+            return (this.constructorArgs != null && this.constructorArgTypes != null ?
+                    ctor.newInstance(this.constructorArgs) : ctor.newInstance());
+        } finally {
+            Enhancer.registerCallbacks(proxyClass, null);
+        }
+    }
+
     /**
      * 创建CGLIB增强
      */
@@ -211,16 +260,14 @@ class CglibAopProxy implements AopProxy, Serializable {
     /**
      * 检查所提供的类是否已被验证，如果没有，则对其进行验证。
      */
-    private void validateClassIfNecessary(Class<?> proxySuperClass, @Nullable ClassLoader proxyClassLoader) {
+    static void validateClassIfNecessary(Class<?> proxySuperClass, @Nullable ClassLoader proxyClassLoader) {
 //		if (logger.isWarnEnabled()) {
-        synchronized (validatedClasses) {
-            if (!validatedClasses.containsKey(proxySuperClass)) {
-                //进行验证
-                doValidateClass(proxySuperClass, proxyClassLoader,
-                        ClassUtils.getAllInterfacesForClassAsSet(proxySuperClass));
-                //缓存结果
-                validatedClasses.put(proxySuperClass, Boolean.TRUE);
-            }
+        if (!validatedClasses.containsKey(proxySuperClass)) {
+            //进行验证
+            doValidateClass(proxySuperClass, proxyClassLoader,
+                    ClassUtils.getAllInterfacesForClassAsSet(proxySuperClass));
+            //验证成功以后才记录结果，验证失败的类下次还会重新验证
+            validatedClasses.put(proxySuperClass, Boolean.TRUE);
         }
 //		}
     }
@@ -228,7 +275,7 @@ class CglibAopProxy implements AopProxy, Serializable {
     /**
      * 检查给定Class上的final方法，以及跨ClassLoader的程序包可见的方法，并为找到的每个方法将警告写入日志。
      */
-    private void doValidateClass(Class<?> proxySuperClass, @Nullable ClassLoader proxyClassLoader, Set<Class<?>> ifcs) {
+    private static void doValidateClass(Class<?> proxySuperClass, @Nullable ClassLoader proxyClassLoader, Set<Class<?>> ifcs) {
         if (proxySuperClass != Object.class) {
             //获取类中的所有方法
             Method[] methods = proxySuperClass.getDeclaredMethods();
@@ -318,9 +365,12 @@ class CglibAopProxy implements AopProxy, Serializable {
             for (int x = 0; x < methods.length; x++) {
                 //获取方法的拦截器链
                 List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(methods[x], rootClass);
+                //开启了编译拦截器链的话，直接编译
+                CompiledInterceptorChain compiled = (this.advised.isCompileInterceptorChains() && !chain.isEmpty() ?
+                        CompiledInterceptorChain.compile(methods[x], chain) : null);
                 //创建静态目标的固定拦截器链
                 fixedCallbacks[x] = new FixedChainStaticTargetInterceptor(
-                        chain, this.advised.getTargetSource().getTarget(), this.advised.getTargetClass());
+                        chain, this.advised.getTargetSource().getTarget(), this.advised.getTargetClass(), compiled);
                 this.fixedInterceptorMap.put(methods[x].toString(), x);
             }
 
@@ -625,22 +675,37 @@ class CglibAopProxy implements AopProxy, Serializable {
         @Nullable
         private final Class<?> targetClass;
 
-        public FixedChainStaticTargetInterceptor(
-                List<Object> adviceChain, @Nullable Object target, @Nullable Class<?> targetClass) {
+        /**
+         * 编译好的拦截器链，冻结的配置不会再变化，创建的时候直接编译
+         */
+        @Nullable
+        private final transient CompiledInterceptorChain compiledChain;
+
+        public FixedChainStaticTargetInterceptor(List<Object> adviceChain, @Nullable Object target,
+                                                 @Nullable Class<?> targetClass, @Nullable CompiledInterceptorChain compiledChain) {
 
             this.adviceChain = adviceChain;
             this.target = target;
             this.targetClass = targetClass;
+            this.compiledChain = compiledChain;
         }
 
         @Override
         @Nullable
         public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
-            //获取方法调用器
-            MethodInvocation invocation = new CglibMethodInvocation(proxy, this.target, method, args,
-                    this.targetClass, this.adviceChain, methodProxy);
-            //执行方法
-            Object retVal = invocation.proceed();
+            Object retVal;
+            CompiledInterceptorChain compiled = this.compiledChain;
+            if (compiled != null) {
+                //使用编译好的拦截器链执行方法
+                retVal = compiled.proceed(proxy, this.target, method, args, this.targetClass, methodProxy);
+            }
+            else {
+                //获取方法调用器
+                MethodInvocation invocation = new CglibMethodInvocation(proxy, this.target, method, args,
+                        this.targetClass, this.adviceChain, methodProxy);
+                //执行方法
+                retVal = invocation.proceed();
+            }
             //处理返回值
             retVal = processReturnType(proxy, this.target, method, retVal);
             return retVal;
@@ -681,6 +746,13 @@ class CglibAopProxy implements AopProxy, Serializable {
                 // 如果更换了，则要尽可能晚些以最小化我们“拥有”目标的时间
                 target = targetSource.getTarget();
                 Class<?> targetClass = (target != null ? target.getClass() : null);
+                //开启了编译拦截器链的话，拦截器链稳定以后使用编译好的拦截器链
+                CompiledInterceptorChain compiled = (this.advised.isCompileInterceptorChains() ?
+                        this.advised.getCompiledInterceptorChain(method, targetClass) : null);
+                if (compiled != null) {
+                    return processReturnType(proxy, target, method,
+                            compiled.proceed(proxy, target, method, args, targetClass, methodProxy));
+                }
                 //获取方法拦截器链
                 List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
                 Object retVal;
@@ -756,7 +828,12 @@ class CglibAopProxy implements AopProxy, Serializable {
         protected Object invokeJoinpoint() throws Throwable {
             if (this.publicMethod) {
                 //如果是个public的方法，通过方法代理执行方法
-                return this.methodProxy.invoke(this.target, this.arguments);
+                try {
+                    return this.methodProxy.invoke(this.target, this.arguments);
+                }
+                catch (RuntimeException ex) {
+                    throw AopUtils.translateJoinpointException(ex, this.method, this.target, this.arguments);
+                }
             }
             else {
                 //如果不是public的方法，则通过反射调用给定目标
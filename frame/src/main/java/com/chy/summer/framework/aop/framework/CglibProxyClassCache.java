@@ -0,0 +1,350 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.core.SummerProperties;
+import com.chy.summer.framework.core.cglib.SummerNamingPolicy;
+import com.chy.summer.framework.util.ConcurrentReferenceHashMap;
+import com.chy.summer.framework.util.StringUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.core.ClassGenerator;
+import net.sf.cglib.core.GeneratorStrategy;
+import net.sf.cglib.core.NamingPolicy;
+import net.sf.cglib.core.Predicate;
+import net.sf.cglib.proxy.CallbackFilter;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 所有CglibAopProxy共享的代理类缓存
+ * <p>
+ * cglib自己的缓存以ProxyCallbackFilter的equals作为键的一部分, advisor不同(比如每个bean各自的pointcut实例)的时候就会重新生成字节码,
+ * 但是生成出来的类其实只取决于 父类、接口、回调类型, 以及回调过滤器给每个方法选择的回调下标.
+ * 这里直接以这些内容作为键, 同样形状的代理只生成一次类, 之后只需要创建实例.
+ * <p>
+ * 缓存的代理类使用由键计算出来的固定类名, 因此同一份代码每次启动生成的类名都相同.
+ * 设置了 summer.aop.cglib.proxy-class-dump-dir 属性的时候, 会把生成的字节码写到这个目录下,
+ * 如果这个目录就是构建输出的classes目录, 打包以后启动时会直接加载这些类而不需要再生成字节码
+ */
+@Slf4j
+final class CglibProxyClassCache {
+
+	/**
+	 * 关闭共享代理类缓存的属性名
+	 */
+	public static final String IGNORE_PROXY_CLASS_CACHE_PROPERTY_NAME = "summer.aop.cglib.proxy-class-cache.ignore";
+
+	/**
+	 * 生成的代理类字节码的输出目录的属性名
+	 */
+	public static final String PROXY_CLASS_DUMP_DIR_PROPERTY_NAME = "summer.aop.cglib.proxy-class-dump-dir";
+
+	/**
+	 * 固定类名中间的部分, 和SummerNamingPolicy生成的类名保持一致
+	 */
+	private static final String CLASS_NAME_INFIX = "$$EnhancerBySummerCGLIB$$";
+
+	/**
+	 * 键描述的格式版本, 生成代理类的方式变化的时候修改, 避免加载到旧的类
+	 */
+	private static final String FORMAT_VERSION = "1";
+
+	private static final boolean enabled = !SummerProperties.getFlag(IGNORE_PROXY_CLASS_CACHE_PROPERTY_NAME);
+
+	@Nullable
+	private static final Path dumpDirectory = resolveDumpDirectory();
+
+	/**
+	 * 代理类的键 -> 代理类
+	 */
+	private static final ConcurrentMap<ProxyClassKey, Class<?>> proxyClasses = new ConcurrentReferenceHashMap<>(64);
+
+
+	private CglibProxyClassCache() {
+	}
+
+	@Nullable
+	private static Path resolveDumpDirectory() {
+		String location = SummerProperties.getProperty(PROXY_CLASS_DUMP_DIR_PROPERTY_NAME);
+		return (StringUtils.hasText(location) ? Paths.get(location.trim()).toAbsolutePath() : null);
+	}
+
+	/**
+	 * 是否启用共享代理类缓存
+	 */
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 计算代理类的键
+	 * @param superclass 代理类的父类
+	 * @param interfaces 代理类需要实现的接口
+	 * @param callbackTypes 回调的类型
+	 * @param filter 回调过滤器, 用它给每个会被代理的方法计算回调下标
+	 * @param interceptDuringConstruction 代理类在构造器中调用方法时是否拦截
+	 * @param classLoader 定义代理类的类加载器
+	 * @return 无法确定类加载器的时候返回null, 表示不使用共享缓存
+	 */
+	@Nullable
+	static ProxyClassKey keyFor(Class<?> superclass, Class<?>[] interfaces, Class<?>[] callbackTypes,
+								CallbackFilter filter, boolean interceptDuringConstruction,
+								@Nullable ClassLoader classLoader) {
+		ClassLoader definingClassLoader = (classLoader != null ? classLoader : superclass.getClassLoader());
+		if (definingClassLoader == null) {
+			return null;
+		}
+		//和Enhancer生成类的时候遍历的是同一组方法
+		List<Method> methods = new ArrayList<>();
+		Enhancer.getMethods(superclass, interfaces, methods);
+		List<String> shape = new ArrayList<>(methods.size());
+		for (Method method : methods) {
+			shape.add(method.toString() + '=' + filter.accept(method));
+		}
+		//方法的顺序在不同的JVM里不一定相同, 排序以后类名才稳定
+		Collections.sort(shape);
+
+		StringBuilder sb = new StringBuilder(shape.size() * 64);
+		sb.append(FORMAT_VERSION).append('|').append(superclass.getName()).append('|')
+				.append(interceptDuringConstruction).append('|');
+		for (Class<?> ifc : interfaces) {
+			sb.append(ifc.getName()).append(',');
+		}
+		sb.append('|');
+		for (Class<?> callbackType : callbackTypes) {
+			sb.append(callbackType.getName()).append(',');
+		}
+		sb.append('|');
+		for (String method : shape) {
+			sb.append(method).append(';');
+		}
+		return new ProxyClassKey(superclass, definingClassLoader, sb.toString());
+	}
+
+	/**
+	 * 获取代理类, 依次查找 缓存、类加载器里已经存在的类(预先生成的或者之前生成但已从缓存中回收的), 都没有的时候才用enhancer生成
+	 * @param key 代理类的键
+	 * @param enhancer 已经配置好的代理增强器
+	 */
+	static Class<?> getProxyClass(ProxyClassKey key, Enhancer enhancer) {
+		Class<?> proxyClass = proxyClasses.get(key);
+		if (proxyClass != null) {
+			return proxyClass;
+		}
+		proxyClass = loadExisting(key);
+		if (proxyClass == null) {
+			proxyClass = generate(key, enhancer);
+		}
+		Class<?> existing = proxyClasses.putIfAbsent(key, proxyClass);
+		return (existing != null ? existing : proxyClass);
+	}
+
+	private static Class<?> generate(ProxyClassKey key, Enhancer enhancer) {
+		String className = key.getClassName();
+		//固定类名的类只能定义一次, 不能再使用cglib自己的缓存
+		enhancer.setUseCache(false);
+		enhancer.setNamingPolicy(new FixedNamingPolicy(className));
+		//MethodProxy生成FastClass的时候会沿用这些设置, 预先生成的FastClass也直接加载
+		enhancer.setAttemptLoad(true);
+		if (dumpDirectory != null) {
+			enhancer.setStrategy(new DumpingGeneratorStrategy(enhancer.getStrategy()));
+		}
+		try {
+			return enhancer.createClass();
+		}
+		catch (RuntimeException | LinkageError ex) {
+			//其他线程同时定义了同名的类
+			Class<?> proxyClass = loadExisting(key);
+			if (proxyClass != null) {
+				return proxyClass;
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * 从类加载器中查找已经定义好的代理类
+	 */
+	@Nullable
+	private static Class<?> loadExisting(ProxyClassKey key) {
+		Class<?> proxyClass;
+		try {
+			proxyClass = Class.forName(key.getClassName(), false, key.classLoader);
+		}
+		catch (ClassNotFoundException | LinkageError ex) {
+			return null;
+		}
+		if (proxyClass.getSuperclass() != key.superclass || !Factory.class.isAssignableFrom(proxyClass)) {
+			throw new AopConfigException("类加载器中已经存在与代理类同名但不匹配的类 [" + proxyClass.getName() + "]");
+		}
+		log.debug("使用预先生成的代理类 [{}]", proxyClass.getName());
+		return proxyClass;
+	}
+
+	private static void dump(byte[] bytes) {
+		String className = new ClassReader(bytes).getClassName().replace('/', '.');
+		Path target = dumpDirectory.resolve(className.replace('.', '/') + ".class");
+		try {
+			Files.createDirectories(target.getParent());
+			Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			Files.write(temp, bytes);
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.debug("写入代理类 [{}] 到 [{}]", className, target);
+		}
+		catch (IOException ex) {
+			log.warn("写入代理类 [{}] 失败: {}", className, ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * 代理类的键: 父类和定义代理类的类加载器, 加上描述代理类形状的字符串
+	 */
+	static final class ProxyClassKey {
+
+		private final Class<?> superclass;
+
+		private final ClassLoader classLoader;
+
+		private final String description;
+
+		@Nullable
+		private String className;
+
+		ProxyClassKey(Class<?> superclass, ClassLoader classLoader, String description) {
+			this.superclass = superclass;
+			this.classLoader = classLoader;
+			this.description = description;
+		}
+
+		/**
+		 * 由键的描述计算出来的固定类名
+		 */
+		String getClassName() {
+			if (this.className == null) {
+				String prefix = this.superclass.getName();
+				//java.开头的包里不能定义类, 其他以java开头的包(比如javax)不需要处理
+				if (prefix.startsWith("java.")) {
+					prefix = "$" + prefix;
+				}
+				this.className = prefix + CLASS_NAME_INFIX + digest(this.description);
+			}
+			return this.className;
+		}
+
+		private static String digest(String description) {
+			try {
+				byte[] hash = MessageDigest.getInstance("SHA-256").digest(description.getBytes(StandardCharsets.UTF_8));
+				StringBuilder sb = new StringBuilder(16);
+				for (int i = 0; i < 8; i++) {
+					sb.append(String.format("%02x", hash[i]));
+				}
+				return sb.toString();
+			}
+			catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ProxyClassKey)) {
+				return false;
+			}
+			ProxyClassKey otherKey = (ProxyClassKey) other;
+			return (this.superclass == otherKey.superclass && this.classLoader == otherKey.classLoader &&
+					this.description.equals(otherKey.description));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.superclass.hashCode() * 31 + this.description.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return getClassName();
+		}
+	}
+
+
+	/**
+	 * 代理类使用指定类名的命名策略
+	 * MethodProxy生成FastClass的时候也会用到这个策略, 其他的类还是按SummerNamingPolicy命名
+	 */
+	private static final class FixedNamingPolicy implements NamingPolicy {
+
+		private final String className;
+
+		FixedNamingPolicy(String className) {
+			this.className = className;
+		}
+
+		@Override
+		public String getClassName(String prefix, String source, Object key, Predicate names) {
+			if (Enhancer.class.getName().equals(source)) {
+				return this.className;
+			}
+			return SummerNamingPolicy.INSTANCE.getClassName(prefix, source, key, names);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (this == other || (other instanceof FixedNamingPolicy &&
+					this.className.equals(((FixedNamingPolicy) other).className)));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.className.hashCode();
+		}
+	}
+
+
+	/**
+	 * 生成字节码以后把它写到输出目录的策略, 代理类和它的FastClass都会写出去
+	 */
+	private static final class DumpingGeneratorStrategy implements GeneratorStrategy {
+
+		private final GeneratorStrategy delegate;
+
+		DumpingGeneratorStrategy(GeneratorStrategy delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public byte[] generate(ClassGenerator cg) throws Exception {
+			byte[] bytes = this.delegate.generate(cg);
+			dump(bytes);
+			return bytes;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (this == other || (other instanceof DumpingGeneratorStrategy &&
+					this.delegate.equals(((DumpingGeneratorStrategy) other).delegate)));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.delegate.hashCode();
+		}
+	}
+}
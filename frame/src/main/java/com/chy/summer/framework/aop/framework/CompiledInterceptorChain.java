@@ -0,0 +1,192 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.aop.MethodMatcher;
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
+import com.chy.summer.framework.aop.support.AopUtils;
+import com.chy.summer.framework.core.cglib.SummerNamingPolicy;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.proxy.MethodProxy;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * 编译好的一个方法的拦截器链
+ * <p>
+ * ReflectiveMethodInvocation 每一次 proceed 都要从 List 里按下标取出元素, 再判断是不是 InterceptorAndDynamicMethodMatcher,
+ * 最后用 Method.invoke 反射调用目标方法.
+ * 这里在拦截器链稳定以后把它展开成两个数组: 拦截器 和 对应位置的动态匹配器(静态的拦截器这个位置是 null),
+ * 目标方法用 cglib 生成的 FastClass 来调用, 生成类里面是直接的 invokevirtual, 不走反射.
+ * <p>
+ * 编译结果保存在 AdvisedSupport 槽位表的槽位上, adviceChanged 以后整张表被替换, 这个编译结果就不会再被使用
+ */
+@Slf4j
+final class CompiledInterceptorChain {
+
+	/**
+	 * 编译所用的拦截器链
+	 */
+	private final List<Object> sourceChain;
+
+	/**
+	 * 展开以后的拦截器
+	 */
+	final MethodInterceptor[] interceptors;
+
+	/**
+	 * 和 interceptors 下标一一对应的动态匹配器, 静态的拦截器对应的位置是 null
+	 */
+	@Nullable
+	final MethodMatcher[] dynamicMatchers;
+
+	/**
+	 * 调用目标方法的 FastMethod, 不能生成的时候是 null, 调用的时候退回到反射
+	 */
+	@Nullable
+	final FastMethod joinpoint;
+
+	private CompiledInterceptorChain(List<Object> sourceChain, MethodInterceptor[] interceptors,
+									 @Nullable MethodMatcher[] dynamicMatchers, @Nullable FastMethod joinpoint) {
+		this.sourceChain = sourceChain;
+		this.interceptors = interceptors;
+		this.dynamicMatchers = dynamicMatchers;
+		this.joinpoint = joinpoint;
+	}
+
+	/**
+	 * 根据拦截器链编译
+	 * @param method 被代理的方法
+	 * @param chain AdvisedSupport 里缓存的拦截器链
+	 */
+	static CompiledInterceptorChain compile(Method method, List<Object> chain) {
+		int size = chain.size();
+		MethodInterceptor[] interceptors = new MethodInterceptor[size];
+		MethodMatcher[] dynamicMatchers = null;
+		for (int i = 0; i < size; i++) {
+			Object interceptorOrInterceptionAdvice = chain.get(i);
+			if (interceptorOrInterceptionAdvice instanceof InterceptorAndDynamicMethodMatcher) {
+				InterceptorAndDynamicMethodMatcher dm = (InterceptorAndDynamicMethodMatcher) interceptorOrInterceptionAdvice;
+				if (dynamicMatchers == null) {
+					dynamicMatchers = new MethodMatcher[size];
+				}
+				dynamicMatchers[i] = dm.methodMatcher;
+				interceptors[i] = dm.interceptor;
+			}
+			else {
+				interceptors[i] = (MethodInterceptor) interceptorOrInterceptionAdvice;
+			}
+		}
+		return new CompiledInterceptorChain(chain, interceptors, dynamicMatchers, compileJoinpoint(method));
+	}
+
+	/**
+	 * 生成调用目标方法用的 FastMethod
+	 * private 的方法, 以及不能在声明类所在的包里生成类的情况(比如 java.lang.Object 上的方法), 返回 null
+	 */
+	@Nullable
+	private static FastMethod compileJoinpoint(Method method) {
+		if (Modifier.isPrivate(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+			return null;
+		}
+		Class<?> declaringClass = method.getDeclaringClass();
+		try {
+			FastClass.Generator generator = new FastClass.Generator();
+			generator.setType(declaringClass);
+			generator.setClassLoader(declaringClass.getClassLoader());
+			generator.setNamingPolicy(SummerNamingPolicy.INSTANCE);
+			FastClass fastClass = generator.create();
+			if (fastClass.getIndex(method.getName(), method.getParameterTypes()) >= 0) {
+				return fastClass.getMethod(method);
+			}
+		}
+		catch (Throwable ex) {
+			log.debug("方法 [{}] 生成 FastClass 失败, 使用反射调用 原因: [{}]", method, ex.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * 通过编译好的拦截器链执行方法
+	 * @param methodProxy cglib 代理的方法代理, jdk 代理传 null
+	 */
+	@Nullable
+	Object proceed(Object proxy, @Nullable Object target, Method method, @Nullable Object[] args,
+				   @Nullable Class<?> targetClass, @Nullable MethodProxy methodProxy) throws Throwable {
+		return new CompiledMethodInvocation(proxy, target, method, args, targetClass, this, methodProxy).proceed();
+	}
+
+	/**
+	 * 使用编译好的拦截器链的 MethodInvocation
+	 * 继承 ReflectiveMethodInvocation 是为了让依赖 ProxyMethodInvocation 的 advice(比如暴露 JoinPoint 的 aspectj advice) 照常工作
+	 */
+	private static final class CompiledMethodInvocation extends ReflectiveMethodInvocation {
+
+		private final CompiledInterceptorChain compiled;
+
+		@Nullable
+		private final MethodProxy methodProxy;
+
+		/**
+		 * 当前调用的拦截器的下标
+		 */
+		private int currentIndex = -1;
+
+		CompiledMethodInvocation(Object proxy, @Nullable Object target, Method method, @Nullable Object[] arguments,
+								 @Nullable Class<?> targetClass, CompiledInterceptorChain compiled,
+								 @Nullable MethodProxy methodProxy) {
+			super(proxy, target, method, arguments, targetClass, compiled.sourceChain);
+			this.compiled = compiled;
+			this.methodProxy = (methodProxy != null && Modifier.isPublic(method.getModifiers()) &&
+					method.getDeclaringClass() != Object.class ? methodProxy : null);
+		}
+
+		@Override
+		@Nullable
+		public Object proceed() throws Throwable {
+			MethodInterceptor[] interceptors = this.compiled.interceptors;
+			MethodMatcher[] dynamicMatchers = this.compiled.dynamicMatchers;
+			//动态匹配失败的拦截器直接跳过, 不用像父类那样递归
+			while (++this.currentIndex < interceptors.length) {
+				if (dynamicMatchers == null || dynamicMatchers[this.currentIndex] == null ||
+						dynamicMatchers[this.currentIndex].matches(this.method, this.targetClass, this.arguments)) {
+					return interceptors[this.currentIndex].invoke(this);
+				}
+			}
+			return invokeJoinpoint();
+		}
+
+		@Override
+		@Nullable
+		protected Object invokeJoinpoint() throws Throwable {
+			FastMethod joinpoint = this.compiled.joinpoint;
+			if (joinpoint != null && this.target != null) {
+				try {
+					return joinpoint.invoke(this.target, this.arguments);
+				}
+				catch (InvocationTargetException ex) {
+					//生成的 FastClass 把参数强转失败的异常也包装在 InvocationTargetException 里
+					Throwable targetException = ex.getTargetException();
+					if (targetException instanceof RuntimeException) {
+						throw AopUtils.translateJoinpointException(
+								(RuntimeException) targetException, this.method, this.target, this.arguments);
+					}
+					throw targetException;
+				}
+			}
+			if (this.methodProxy != null) {
+				try {
+					return this.methodProxy.invoke(this.target, this.arguments);
+				}
+				catch (RuntimeException ex) {
+					throw AopUtils.translateJoinpointException(ex, this.method, this.target, this.arguments);
+				}
+			}
+			return super.invokeJoinpoint();
+		}
+	}
+}
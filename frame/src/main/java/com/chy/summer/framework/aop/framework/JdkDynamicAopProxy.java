@@ -5,6 +5,7 @@ import com.chy.summer.framework.aop.RawTargetAccess;
 import com.chy.summer.framework.aop.TargetSource;
 import com.chy.summer.framework.aop.aopalliance.intercept.MethodInvocation;
 import com.chy.summer.framework.aop.support.AopUtils;
+import com.chy.summer.framework.aop.support.MethodInvoker;
 import com.chy.summer.framework.core.DecoratingProxy;
 import com.chy.summer.framework.util.Assert;
 import com.chy.summer.framework.util.ClassUtils;
@@ -79,6 +80,12 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 		Class<?>[] proxiedInterfaces = AopProxyUtils.completeProxiedInterfaces(this.advised, true);
 		//判断是重写了equals和hashCode方法
 		findDefinedEqualsAndHashCodeMethods(proxiedInterfaces);
+		//按代理接口的方法数量预先分配拦截器链的槽位
+		int methodCount = 0;
+		for (Class<?> proxiedInterface : proxiedInterfaces) {
+			methodCount += proxiedInterface.getMethods().length;
+		}
+		this.advised.presizeMethodSlots(methodCount);
 		//创建代理对象
 		return Proxy.newProxyInstance(classLoader, proxiedInterfaces, this);
 	}
@@ -156,37 +163,36 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 			//获取实例对象的类型
 			Class<?> targetClass = (target != null ? target.getClass() : null);
 
+			//开启了编译拦截器链的话，拦截器链稳定以后使用编译好的拦截器链
+			CompiledInterceptorChain compiled = (this.advised.isCompileInterceptorChains() ?
+					this.advised.getCompiledInterceptorChain(method, targetClass) : null);
+			if (compiled != null) {
+				retVal = compiled.proceed(proxy, target, method, args, targetClass, null);
+				return processReturnValue(proxy, target, method, retVal);
+			}
+
 			//获取可以应用到此方法上的Interceptor链
-			List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
+			MethodSlotTable.Slot slot = this.advised.obtainMethodSlot(method, targetClass);
+			List<Object> chain = slot.chain;
+			//槽位上缓存的目标方法调用器
+			MethodInvoker joinpointInvoker = slot.getJoinpointInvoker();
 
-			//如果没有可以应用到此方法的通知(Interceptor)，此直接反射调用 method.invoke(target, args)
+			//如果没有可以应用到此方法的通知(Interceptor)，此直接调用目标方法
 			if (chain.isEmpty()) {
 				//获取方法的参数
 				Object[] argsToUse = AopProxyUtils.adaptArgumentsIfNecessary(method, args);
 				//指定指定方法
-				retVal = AopUtils.invokeJoinpointUsingReflection(target, method, argsToUse);
+				retVal = AopUtils.invokeJoinpoint(joinpointInvoker, target, method, argsToUse);
 			}
 			else {
 				//创建MethodInvocation
-				invocation = new ReflectiveMethodInvocation(proxy, target, method, args, targetClass, chain);
+				ReflectiveMethodInvocation rmi = new ReflectiveMethodInvocation(proxy, target, method, args, targetClass, chain);
+				rmi.joinpointInvoker = joinpointInvoker;
+				invocation = rmi;
 				// 通过拦截器链进入连接点
 				retVal = invocation.proceed();
 			}
-
-			// 获取方法的返回类型
-			Class<?> returnType = method.getReturnType();
-
-			if (retVal != null && retVal == target &&
-					returnType != Object.class && returnType.isInstance(proxy) &&
-					!RawTargetAccess.class.isAssignableFrom(method.getDeclaringClass())) {
-				// 如果目标在返回的对象中设置了对自身的引用,只能返回代理本身
-				retVal = proxy;
-			}
-			else if (retVal == null && returnType != Void.TYPE && returnType.isPrimitive()) {
-				throw new AopInvocationException(
-						"advice的返回值为空，与的原始返回类型不匹配: " + method);
-			}
-			return retVal;
+			return processReturnValue(proxy, target, method, retVal);
 		}
 		finally {
 			if (target != null && !targetSource.isStatic()) {
@@ -201,6 +207,28 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 	}
 
 
+	/**
+	 * 处理返回值，目标返回自身的时候替换成代理，并验证没有将null作为原语返回
+	 */
+	@Nullable
+	private static Object processReturnValue(Object proxy, @Nullable Object target, Method method, @Nullable Object retVal) {
+		// 获取方法的返回类型
+		Class<?> returnType = method.getReturnType();
+
+		if (retVal != null && retVal == target &&
+				returnType != Object.class && returnType.isInstance(proxy) &&
+				!RawTargetAccess.class.isAssignableFrom(method.getDeclaringClass())) {
+			// 如果目标在返回的对象中设置了对自身的引用,只能返回代理本身
+			retVal = proxy;
+		}
+		else if (retVal == null && returnType != Void.TYPE && returnType.isPrimitive()) {
+			throw new AopInvocationException(
+					"advice的返回值为空，与的原始返回类型不匹配: " + method);
+		}
+		return retVal;
+	}
+
+
 	/**
 	 * 被比较的对象可以是JdkDynamicAopProxy实例本身，也可以是包装JdkDynamicAopProxy实例的动态代理。
 	 */
@@ -0,0 +1,186 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.aop.support.MethodInvoker;
+import com.chy.summer.framework.core.BridgeMethodResolver;
+import javax.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * 代理方法的槽位表, 保存每个方法对应的拦截器链
+ * <p>
+ * 代理类生成以后, 每次调用传进来的 Method 都是代理类里的同一个静态对象, 所以这里直接用对象的 identity 来查找:
+ * 槽位的下标由 identityHashCode 决定, 冲突的时候往后线性探测, 查找的时候只是几次数组读取, 不需要分配任何对象.
+ * <p>
+ * 表本身是不可变的, 新增方法的时候复制出一张新表(写时复制), 读的时候不需要加锁.
+ * adviceChanged 的时候整张表换成下一代的空表, 旧表里的拦截器链就不会再被用到
+ */
+final class MethodSlotTable {
+
+	/**
+	 * 默认的方法数量
+	 */
+	static final int DEFAULT_METHOD_COUNT = 16;
+
+	/**
+	 * 表的代数, 每次 adviceChanged 加一, 复制出来的新表和原表是同一代
+	 */
+	final int generation;
+
+	/**
+	 * 槽位数组, 长度是 2 的幂, 最多只用一半
+	 */
+	private final Slot[] slots;
+
+	/**
+	 * 已经使用的槽位数量
+	 */
+	private final int size;
+
+	MethodSlotTable(int generation, int expectedMethodCount) {
+		this(generation, new Slot[tableSizeFor(expectedMethodCount)], 0);
+	}
+
+	private MethodSlotTable(int generation, Slot[] slots, int size) {
+		this.generation = generation;
+		this.slots = slots;
+		this.size = size;
+	}
+
+	/**
+	 * 槽位数组的长度
+	 */
+	int capacity() {
+		return this.slots.length;
+	}
+
+	/**
+	 * 查找方法对应的槽位
+	 * @return 没有找到返回 null
+	 */
+	@Nullable
+	Slot get(Method method) {
+		Slot[] slots = this.slots;
+		int mask = slots.length - 1;
+		int index = System.identityHashCode(method) & mask;
+		Slot slot;
+		while ((slot = slots[index]) != null) {
+			if (slot.method == method) {
+				return slot;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * 复制出一张加入了给定槽位的新表, 需要的时候扩容
+	 */
+	MethodSlotTable with(Slot slot) {
+		int capacity = this.slots.length;
+		if ((this.size + 1) * 2 > capacity) {
+			capacity <<= 1;
+		}
+		return copy(capacity, slot);
+	}
+
+	/**
+	 * 保证表能放下给定数量的方法而不需要扩容
+	 */
+	MethodSlotTable presize(int methodCount) {
+		int capacity = tableSizeFor(methodCount);
+		return (capacity > this.slots.length ? copy(capacity, null) : this);
+	}
+
+	private MethodSlotTable copy(int capacity, @Nullable Slot extra) {
+		Slot[] newSlots = new Slot[capacity];
+		int newSize = 0;
+		for (Slot slot : this.slots) {
+			if (slot != null) {
+				place(newSlots, slot);
+				newSize++;
+			}
+		}
+		if (extra != null) {
+			place(newSlots, extra);
+			newSize++;
+		}
+		return new MethodSlotTable(this.generation, newSlots, newSize);
+	}
+
+	/**
+	 * 把槽位放到数组里第一个空的位置上
+	 */
+	private static void place(Slot[] slots, Slot slot) {
+		int mask = slots.length - 1;
+		int index = System.identityHashCode(slot.method) & mask;
+		while (slots[index] != null) {
+			index = (index + 1) & mask;
+		}
+		slots[index] = slot;
+	}
+
+	/**
+	 * 能放下给定数量方法的槽位数组长度: 方法数量两倍以上的 2 的幂
+	 */
+	private static int tableSizeFor(int methodCount) {
+		int capacity = 4;
+		while (capacity < methodCount * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+
+	/**
+	 * 一个方法的槽位
+	 */
+	static final class Slot {
+
+		/**
+		 * 代理类里的方法对象
+		 */
+		final Method method;
+
+		/**
+		 * 方法的拦截器链
+		 */
+		final List<Object> chain;
+
+		/**
+		 * 编译好的拦截器链, 第二次使用这个槽位的时候才会编译
+		 */
+		@Nullable
+		volatile CompiledInterceptorChain compiled;
+
+		/**
+		 * 调用目标方法的调用器
+		 */
+		@Nullable
+		private volatile MethodInvoker joinpointInvoker;
+
+		/**
+		 * joinpointInvoker 是否已经获取过, 获取不到(只能反射调用)的时候也是 true
+		 */
+		private volatile boolean joinpointInvokerResolved;
+
+		Slot(Method method, List<Object> chain) {
+			this.method = method;
+			this.chain = chain;
+		}
+
+		/**
+		 * 获取调用目标方法的调用器, 保存在槽位上以后每次调用不需要再去 MethodInvoker 的缓存里查找
+		 * @return 只能通过反射调用的时候返回 null
+		 */
+		@Nullable
+		MethodInvoker getJoinpointInvoker() {
+			if (!this.joinpointInvokerResolved) {
+				this.joinpointInvoker = MethodInvoker.forMethod(BridgeMethodResolver.findBridgedMethod(this.method));
+				this.joinpointInvokerResolved = true;
+			}
+			return this.joinpointInvoker;
+		}
+	}
+}
@@ -33,12 +33,33 @@ class ObjenesisCglibAopProxy extends CglibAopProxy {
 	 */
 	@Override
 	protected Object createProxyClassAndInstance(Enhancer enhancer, Callback[] callbacks) {
-		Class<?> proxyClass = enhancer.createClass();
+		return instantiate(enhancer.createClass(), callbacks, enhancer.getUseCache());
+	}
+
+	/**
+	 * 通过Objenesis创建的实例不会执行构造器，代理类必须始终拦截方法调用
+	 */
+	@Override
+	protected boolean isInterceptDuringConstruction() {
+		return true;
+	}
+
+	/**
+	 * 使用已经生成好的代理类创建代理实例
+	 * @param proxyClass 代理类
+	 * @param callbacks 回调方法列表
+	 */
+	@Override
+	protected Object createProxyInstance(Class<?> proxyClass, Callback[] callbacks) {
+		return instantiate(proxyClass, callbacks, true);
+	}
+
+	private Object instantiate(Class<?> proxyClass, Callback[] callbacks, boolean useCache) {
 		Object proxyInstance = null;
 
 		if (objenesis.isWorthTrying()) {
 			try {
-				proxyInstance = objenesis.newInstance(proxyClass, enhancer.getUseCache());
+				proxyInstance = objenesis.newInstance(proxyClass, useCache);
 			}
 			catch (Throwable ex) {
 //				logger.debug("Unable to instantiate proxy using Objenesis, " +
@@ -1,5 +1,6 @@
 package com.chy.summer.framework.aop.framework;
 
+import com.chy.summer.framework.core.SummerProperties;
 import com.chy.summer.framework.util.Assert;
 
 import java.io.Serializable;
@@ -9,6 +10,11 @@ import java.io.Serializable;
  */
 public class ProxyConfig implements Serializable {
 
+	/**
+	 * 设置为 true 的时候, 代理默认使用编译好的拦截器链, 见 setCompileInterceptorChains
+	 */
+	public static final String COMPILE_INTERCEPTOR_CHAINS_PROPERTY_NAME = "summer.aop.compile-interceptor-chains";
+
 	/**
 	 * 代理目标的方式
 	 */
@@ -34,6 +40,11 @@ public class ProxyConfig implements Serializable {
 	 */
 	private boolean frozen = false;
 
+	/**
+	 * 是否使用编译好的拦截器链
+	 */
+	private boolean compileInterceptorChains = SummerProperties.getFlag(COMPILE_INTERCEPTOR_CHAINS_PROPERTY_NAME);
+
 
 	/**
 	 * 设置是否直接代理目标类，而不是仅代理特定的接口。 默认值为“ false”。
@@ -116,6 +127,24 @@ public class ProxyConfig implements Serializable {
 	}
 
 
+	/**
+	 * 设置代理是否使用编译好的拦截器链，默认值由系统属性 summer.aop.compile-interceptor-chains 决定
+	 * 开启以后，方法的拦截器链稳定下来(第二次调用)就会被编译成 CompiledInterceptorChain：
+	 * 拦截器展开成数组，动态匹配器提前拆出来，目标方法用生成的 FastClass 直接调用。
+	 * advice发生变化时编译结果作废，先走反射的调用，等新的拦截器链稳定后再重新编译
+	 */
+	public void setCompileInterceptorChains(boolean compileInterceptorChains) {
+		this.compileInterceptorChains = compileInterceptorChains;
+	}
+
+	/**
+	 * 是否使用编译好的拦截器链
+	 */
+	public boolean isCompileInterceptorChains() {
+		return this.compileInterceptorChains;
+	}
+
+
 	/**
 	 * 从另一个配置对象复制配置
 	 */
@@ -126,6 +155,7 @@ public class ProxyConfig implements Serializable {
 		this.exposeProxy = other.exposeProxy;
 		this.frozen = other.frozen;
 		this.opaque = other.opaque;
+		this.compileInterceptorChains = other.compileInterceptorChains;
 	}
 
 	@Override
@@ -135,7 +165,8 @@ public class ProxyConfig implements Serializable {
 		sb.append("optimize=").append(this.optimize).append("; ");
 		sb.append("opaque=").append(this.opaque).append("; ");
 		sb.append("exposeProxy=").append(this.exposeProxy).append("; ");
-		sb.append("frozen=").append(this.frozen);
+		sb.append("frozen=").append(this.frozen).append("; ");
+		sb.append("compileInterceptorChains=").append(this.compileInterceptorChains);
 		return sb.toString();
 	}
 
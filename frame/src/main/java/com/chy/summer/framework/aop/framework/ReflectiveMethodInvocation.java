@@ -4,6 +4,7 @@ import com.chy.summer.framework.aop.ProxyMethodInvocation;
 import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
 import com.chy.summer.framework.aop.aopalliance.intercept.MethodInvocation;
 import com.chy.summer.framework.aop.support.AopUtils;
+import com.chy.summer.framework.aop.support.MethodInvoker;
 import com.chy.summer.framework.core.BridgeMethodResolver;
 import javax.annotation.Nullable;
 
@@ -45,7 +46,7 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
      * 目标类的类型
      */
 	@Nullable
-	private final Class<?> targetClass;
+	protected final Class<?> targetClass;
 
 	/**
 	 * 用户特定属性的延迟初始化映射
@@ -58,9 +59,22 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 	 */
 	protected final List<?> interceptorsAndDynamicMethodMatchers;
 
-    /**
-     * 当前调用的拦截器，在interceptorsAndDynamicMethodMatchers中的位置索引
-     */
+	/**
+	 * 这次调用的连接点对象(AspectJ的JoinPoint)，只有advice需要的时候才会创建
+	 * 用固定的字段保存，不需要为了它创建用户属性的map
+	 */
+	@Nullable
+	private Object joinPoint;
+
+	/**
+	 * 调用目标方法的调用器，由代理从方法的槽位上取出来设置，为空时通过AopUtils调用
+	 */
+	@Nullable
+	MethodInvoker joinpointInvoker;
+
+	/**
+	 * 当前调用的拦截器，在interceptorsAndDynamicMethodMatchers中的位置索引
+	 */
 	private int currentInterceptorIndex = -1;
 
 
@@ -172,6 +186,9 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 	 */
 	@Nullable
 	protected Object invokeJoinpoint() throws Throwable {
+		if (this.joinpointInvoker != null) {
+			return AopUtils.invokeJoinpoint(this.joinpointInvoker, this.target, this.method, this.arguments);
+		}
 		return AopUtils.invokeJoinpointUsingReflection(this.target, this.method, this.arguments);
 	}
 
@@ -244,6 +261,21 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 		return (this.userAttributes != null ? this.userAttributes.get(key) : null);
 	}
 
+	/**
+	 * 获取这次调用的连接点对象
+	 */
+	@Nullable
+	public Object getJoinPoint() {
+		return this.joinPoint;
+	}
+
+	/**
+	 * 设置这次调用的连接点对象
+	 */
+	public void setJoinPoint(@Nullable Object joinPoint) {
+		this.joinPoint = joinPoint;
+	}
+
 	/**
 	 * 返回与此调用关联的用户属性
 	 */
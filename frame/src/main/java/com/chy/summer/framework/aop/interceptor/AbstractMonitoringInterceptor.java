@@ -57,6 +57,13 @@ public abstract class AbstractMonitoringInterceptor extends AbstractTraceInterce
 		this.logTargetClassInvocation = logTargetClassInvocation;
 	}
 
+	/**
+	 * 是否在目标类上记录调用
+	 */
+	protected boolean isLogTargetClassInvocation() {
+		return this.logTargetClassInvocation;
+	}
+
 
 	/**
 	 * 为给定的方法调用创建一个可用于跟踪/日志目的的字符串名称
@@ -7,7 +7,7 @@ import com.chy.summer.framework.beans.BeanFactory;
 import com.chy.summer.framework.core.BridgeMethodResolver;
 import com.chy.summer.framework.core.ordered.Ordered;
 import com.chy.summer.framework.core.task.AsyncTaskExecutor;
-import com.chy.summer.framework.core.task.SimpleAsyncTaskExecutor;
+import com.chy.summer.framework.core.task.ThreadPoolTaskExecutor;
 import com.chy.summer.framework.util.ClassUtils;
 import javax.annotation.Nullable;
 
@@ -95,13 +95,20 @@ public class AsyncExecutionInterceptor extends AsyncExecutionAspectSupport imple
 
 	/**
 	 * 此实现在上下文中搜索唯一的TaskExecutor bean，否则搜索名为“TaskExecutor”的Executor bean。
-	 * 如果两者都不可解析(例如，如果根本没有配置BeanFactory)，则此实现将返回到新创建的SimpleAsyncTaskExecutor实例以供本地使用(如果没有找到默认值)
+	 * 如果两者都不可解析(例如，如果根本没有配置BeanFactory)，则此实现将返回到新创建的ThreadPoolTaskExecutor实例以供本地使用(如果没有找到默认值)
+	 * 线程数和队列都有上限，线程池满了以后在调用者线程里执行，大量调用@Async方法的时候不会为每次调用创建一个线程
 	 */
 	@Override
 	@Nullable
 	protected Executor getDefaultExecutor(@Nullable BeanFactory beanFactory) {
 		Executor defaultExecutor = super.getDefaultExecutor(beanFactory);
-		return (defaultExecutor != null ? defaultExecutor : new SimpleAsyncTaskExecutor());
+		if (defaultExecutor != null) {
+			return defaultExecutor;
+		}
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor("summer-async-");
+		executor.setDaemon(true);
+		executor.setRejectionPolicy(ThreadPoolTaskExecutor.RejectionPolicy.CALLER_RUNS);
+		return executor;
 	}
 
 	/**
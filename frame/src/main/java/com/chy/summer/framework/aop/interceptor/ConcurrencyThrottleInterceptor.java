@@ -12,6 +12,8 @@ import java.io.Serializable;
  * 应用于涉及大量系统资源的本地服务的方法，
  * 在这种情况下，为特定的服务限制并发性比限制整个线程池(例如，web容器的线程池)更有效。
  * 此拦截器的默认并发限制为1。指定“concurrencyLimit”bean属性来更改这个值
+ * 指定“acquireTimeout”属性可以限制等待的时间，为0的时候达到限制立刻拒绝调用
+ * 开启“adaptiveConcurrency”以后，会根据调用的耗时在“minConcurrencyLimit”和“concurrencyLimit”之间自动调整限制
  */
 public class ConcurrencyThrottleInterceptor extends ConcurrencyThrottleSupport
 		implements MethodInterceptor, Serializable {
@@ -23,11 +25,21 @@ public class ConcurrencyThrottleInterceptor extends ConcurrencyThrottleSupport
 	@Override
 	public Object invoke(MethodInvocation methodInvocation) throws Throwable {
 		beforeAccess();
+		if (!isAdaptiveConcurrency()) {
+			try {
+				return methodInvocation.proceed();
+			}
+			finally {
+				afterAccess();
+			}
+		}
+		//自适应模式需要调用的耗时来调整限制
+		long start = System.nanoTime();
 		try {
 			return methodInvocation.proceed();
 		}
 		finally {
-			afterAccess();
+			afterAccess(System.nanoTime() - start);
 		}
 	}
 
@@ -0,0 +1,185 @@
+package com.chy.summer.framework.aop.interceptor;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定内存的耗时直方图
+ * <p>
+ * 桶的划分和HDR直方图一样: 小于32纳秒的值每纳秒一个桶, 之后每个2的幂区间再平均分成16个桶,
+ * 所以任何值的相对误差都不超过 1/16. 超过 MAX_TRACKABLE_NANOS 的值记在最后一个桶里.
+ * <p>
+ * 计数分散在固定数量的分段里, 分段数不超过CPU核数, 线程按线程id落到其中一个分段, 用原子操作累加,
+ * 不同CPU上的线程一般不会争抢同一个分段. 分段在第一次用到的时候才创建, 读取的时候把所有分段合并起来.
+ * 内存只和分段数有关, 不会随着调用线程的数量增长
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 每个2的幂区间划分的桶数(2^SUB_BUCKET_BITS)
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * 能区分的最大耗时, 大约18分钟
+	 */
+	public static final long MAX_TRACKABLE_NANOS = (1L << 40) - 1;
+
+	/**
+	 * 桶的个数
+	 */
+	static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+	/**
+	 * 桶之后的附加槽位: 异常次数、总耗时、最大耗时
+	 */
+	private static final int ERRORS = BUCKET_COUNT;
+
+	private static final int TOTAL = BUCKET_COUNT + 1;
+
+	private static final int MAX = BUCKET_COUNT + 2;
+
+	private static final int SLOT_COUNT = BUCKET_COUNT + 3;
+
+	/**
+	 * 默认的分段数: 不超过CPU核数的最大的2的幂
+	 */
+	private static final int DEFAULT_STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors());
+
+
+	/**
+	 * 分段, 第一次有线程落到这个分段的时候创建
+	 */
+	private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+	private final int stripeMask;
+
+
+	/**
+	 * 使用默认的分段数创建直方图
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * 使用给定的分段数创建直方图, 会向下取到2的幂
+	 * @param stripes 分段数, 至少为1
+	 */
+	LatencyHistogram(int stripes) {
+		int count = Integer.highestOneBit(Math.max(1, stripes));
+		this.stripes = new AtomicReferenceArray<>(count);
+		this.stripeMask = count - 1;
+	}
+
+
+	/**
+	 * 记录一次调用
+	 * @param nanos 调用的耗时(纳秒)
+	 * @param error 调用是否抛出了异常
+	 */
+	public void record(long nanos, boolean error) {
+		AtomicLongArray slots = obtainStripe();
+		slots.incrementAndGet(bucketIndex(nanos));
+		slots.addAndGet(TOTAL, nanos);
+		long max;
+		while (nanos > (max = slots.get(MAX)) && !slots.compareAndSet(MAX, max, nanos)) {
+		}
+		if (error) {
+			slots.incrementAndGet(ERRORS);
+		}
+	}
+
+	/**
+	 * 合并所有分段的记录, 生成当前的快照
+	 * 快照和正在进行的记录之间没有同步, 得到的是近似一致的结果
+	 */
+	public LatencySnapshot snapshot() {
+		long[] slots = new long[SLOT_COUNT];
+		for (int i = 0; i < this.stripes.length(); i++) {
+			AtomicLongArray stripe = this.stripes.get(i);
+			if (stripe != null) {
+				for (int j = 0; j < MAX; j++) {
+					slots[j] += stripe.get(j);
+				}
+				slots[MAX] = Math.max(slots[MAX], stripe.get(MAX));
+			}
+		}
+		long[] buckets = new long[BUCKET_COUNT];
+		System.arraycopy(slots, 0, buckets, 0, BUCKET_COUNT);
+		return new LatencySnapshot(buckets, slots[ERRORS], slots[TOTAL], slots[MAX]);
+	}
+
+	/**
+	 * 获取当前线程落到的分段
+	 * 线程id打散以后取低位, 连续创建的线程会分到不同的分段
+	 */
+	private AtomicLongArray obtainStripe() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		int index = (hash ^ (hash >>> 16)) & this.stripeMask;
+		AtomicLongArray stripe = this.stripes.get(index);
+		if (stripe == null) {
+			stripe = new AtomicLongArray(SLOT_COUNT);
+			if (!this.stripes.compareAndSet(index, null, stripe)) {
+				stripe = this.stripes.get(index);
+			}
+		}
+		return stripe;
+	}
+
+	/**
+	 * 已经创建的分段数
+	 */
+	int getStripeCount() {
+		int count = 0;
+		for (int i = 0; i < this.stripes.length(); i++) {
+			if (this.stripes.get(i) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 计算耗时所在的桶
+	 */
+	static int bucketIndex(long nanos) {
+		if (nanos < 0) {
+			return 0;
+		}
+		if (nanos > MAX_TRACKABLE_NANOS) {
+			nanos = MAX_TRACKABLE_NANOS;
+		}
+		if (nanos < 2 * SUB_BUCKET_COUNT) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (nanos >>> shift);
+	}
+
+	/**
+	 * 桶所代表的最小耗时
+	 */
+	static long bucketLowerBound(int index) {
+		if (index < 2 * SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		return (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+	}
+
+	/**
+	 * 桶所代表的耗时范围的中间值, 作为落在这个桶里的值的估计
+	 */
+	static long bucketMidpoint(int index) {
+		long lower = bucketLowerBound(index);
+		long upper = (index + 1 < BUCKET_COUNT ? bucketLowerBound(index + 1) : MAX_TRACKABLE_NANOS + 1);
+		return lower + (upper - lower - 1) / 2;
+	}
+}
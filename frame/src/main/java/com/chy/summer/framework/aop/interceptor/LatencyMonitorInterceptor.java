@@ -0,0 +1,117 @@
+package com.chy.summer.framework.aop.interceptor;
+
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInvocation;
+import com.chy.summer.framework.util.Assert;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 记录方法耗时分布的拦截器
+ * <p>
+ * 和PerformanceMonitorInterceptor不同, 这个拦截器不依赖日志级别, 总是启用:
+ * 每次调用只是取两次System.nanoTime, 再用原子操作往直方图里当前线程所在的分段(见LatencyHistogram)加一个计数, 不创建对象也不写日志,
+ * 适合一直挂在所有被advice的服务方法上. 统计结果(p50/p99/p999、调用次数、异常比例)从MethodLatencyRegistry读取
+ */
+public class LatencyMonitorInterceptor extends AbstractMonitoringInterceptor {
+
+	private static final long serialVersionUID = 1L;
+
+	private MethodLatencyRegistry registry = new MethodLatencyRegistry();
+
+	/**
+	 * 方法 -> 直方图, 避免每次调用都拼接方法名
+	 * Method不能序列化, 反序列化以后重新创建
+	 */
+	private transient Map<Method, LatencyHistogram> histogramCache = new ConcurrentHashMap<>(64);
+
+
+	/**
+	 * 使用自己的注册表创建一个新的LatencyMonitorInterceptor
+	 */
+	public LatencyMonitorInterceptor() {
+	}
+
+	/**
+	 * 使用给定的注册表创建一个新的LatencyMonitorInterceptor
+	 * @param registry 保存直方图的注册表
+	 */
+	public LatencyMonitorInterceptor(MethodLatencyRegistry registry) {
+		setRegistry(registry);
+	}
+
+
+	/**
+	 * 设置保存直方图的注册表, 多个拦截器可以共用一个注册表
+	 */
+	public void setRegistry(MethodLatencyRegistry registry) {
+		Assert.notNull(registry, "registry不可为空");
+		this.registry = registry;
+		this.histogramCache.clear();
+	}
+
+	/**
+	 * 获取保存直方图的注册表
+	 */
+	public MethodLatencyRegistry getRegistry() {
+		return this.registry;
+	}
+
+	/**
+	 * 总是启用，不依赖日志级别
+	 */
+	@Override
+	protected boolean isInterceptorEnabled(MethodInvocation invocation, Logger logger) {
+		return true;
+	}
+
+	/**
+	 * 记录调用的耗时以及是否抛出了异常
+	 */
+	@Override
+	protected Object invokeUnderTrace(MethodInvocation invocation, Logger logger) throws Throwable {
+		LatencyHistogram histogram = getHistogram(invocation);
+		long start = System.nanoTime();
+		boolean error = true;
+		try {
+			Object result = invocation.proceed();
+			error = false;
+			return result;
+		}
+		finally {
+			histogram.record(System.nanoTime() - start, error);
+		}
+	}
+
+	/**
+	 * 获取调用对应的直方图
+	 * 按目标类记录的时候名称和目标对象有关，只能每次拼接名称再查找
+	 */
+	private LatencyHistogram getHistogram(MethodInvocation invocation) {
+		if (isLogTargetClassInvocation()) {
+			return this.registry.getHistogram(createInvocationTraceName(invocation));
+		}
+		Method method = invocation.getMethod();
+		LatencyHistogram histogram = this.histogramCache.get(method);
+		if (histogram == null) {
+			histogram = this.registry.getHistogram(createInvocationTraceName(invocation));
+			this.histogramCache.put(method, histogram);
+		}
+		return histogram;
+	}
+
+
+	//---------------------------------------------------------------------
+	// 序列化支持
+	//---------------------------------------------------------------------
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		ois.defaultReadObject();
+		this.histogramCache = new ConcurrentHashMap<>(64);
+	}
+
+}
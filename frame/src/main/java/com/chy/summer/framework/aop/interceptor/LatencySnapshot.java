@@ -0,0 +1,114 @@
+package com.chy.summer.framework.aop.interceptor;
+
+import com.chy.summer.framework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LatencyHistogram在某一时刻的快照
+ * 百分位数取桶范围的中间值, 相对误差不超过 1/16
+ */
+public class LatencySnapshot {
+
+	private final long[] buckets;
+
+	private final long count;
+
+	private final long errorCount;
+
+	private final long totalNanos;
+
+	private final long maxNanos;
+
+
+	LatencySnapshot(long[] buckets, long errorCount, long totalNanos, long maxNanos) {
+		this.buckets = buckets;
+		long count = 0;
+		for (long bucket : buckets) {
+			count += bucket;
+		}
+		this.count = count;
+		this.errorCount = errorCount;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * 调用次数
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * 抛出异常的调用次数
+	 */
+	public long getErrorCount() {
+		return this.errorCount;
+	}
+
+	/**
+	 * 抛出异常的调用所占的比例, 没有调用的时候为0
+	 */
+	public double getErrorRate() {
+		return (this.count > 0 ? (double) this.errorCount / this.count : 0);
+	}
+
+	/**
+	 * 平均耗时(纳秒)
+	 */
+	public long getMeanNanos() {
+		return (this.count > 0 ? this.totalNanos / this.count : 0);
+	}
+
+	/**
+	 * 最大耗时(纳秒)
+	 */
+	public long getMaxNanos() {
+		return this.maxNanos;
+	}
+
+	/**
+	 * 获取百分位数的耗时(纳秒)
+	 * @param percentile 0到100之间的百分位
+	 */
+	public long getPercentileNanos(double percentile) {
+		Assert.isTrue(percentile >= 0 && percentile <= 100, "百分位必须在0到100之间");
+		if (this.count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+		long seen = 0;
+		for (int i = 0; i < this.buckets.length; i++) {
+			seen += this.buckets[i];
+			if (seen >= rank) {
+				return Math.min(LatencyHistogram.bucketMidpoint(i), this.maxNanos);
+			}
+		}
+		return this.maxNanos;
+	}
+
+	public long getP50Nanos() {
+		return getPercentileNanos(50);
+	}
+
+	public long getP99Nanos() {
+		return getPercentileNanos(99);
+	}
+
+	public long getP999Nanos() {
+		return getPercentileNanos(99.9);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + this.count + ", errors=" + this.errorCount +
+				", mean=" + micros(getMeanNanos()) + "us, p50=" + micros(getP50Nanos()) +
+				"us, p99=" + micros(getP99Nanos()) + "us, p999=" + micros(getP999Nanos()) +
+				"us, max=" + micros(this.maxNanos) + "us";
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
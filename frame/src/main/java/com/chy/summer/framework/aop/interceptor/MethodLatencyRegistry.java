@@ -0,0 +1,55 @@
+package com.chy.summer.framework.aop.interceptor;
+
+import com.chy.summer.framework.util.Assert;
+import javax.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按名称保存方法耗时直方图的注册表
+ * 可以注册成bean, 让多个LatencyMonitorInterceptor共用, 再由监控端点等读取各个方法的统计
+ * 可以跟着拦截器一起序列化, 已经记录的统计也会保留
+ */
+public class MethodLatencyRegistry implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>(64);
+
+
+	/**
+	 * 获取名称对应的直方图, 不存在的时候创建
+	 * @param name 方法的名称, 一般是 类名.方法名
+	 */
+	public LatencyHistogram getHistogram(String name) {
+		Assert.notNull(name, "name不可为空");
+		LatencyHistogram histogram = this.histograms.get(name);
+		if (histogram == null) {
+			histogram = this.histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+		}
+		return histogram;
+	}
+
+	/**
+	 * 获取一个方法当前的统计
+	 * @return 这个方法还没有被调用过的时候返回null
+	 */
+	@Nullable
+	public LatencySnapshot getSnapshot(String name) {
+		LatencyHistogram histogram = this.histograms.get(name);
+		return (histogram != null ? histogram.snapshot() : null);
+	}
+
+	/**
+	 * 获取所有方法当前的统计, 按名称排序
+	 */
+	public Map<String, LatencySnapshot> getSnapshots() {
+		Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+		this.histograms.forEach((name, histogram) -> snapshots.put(name, histogram.snapshot()));
+		return snapshots;
+	}
+}
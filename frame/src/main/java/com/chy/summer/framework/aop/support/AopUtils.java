@@ -7,6 +7,7 @@ import com.chy.summer.framework.util.ClassUtils;
 import com.chy.summer.framework.util.ReflectionUtils;
 import javax.annotation.Nullable;
 
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -80,8 +81,26 @@ public abstract class AopUtils {
 	public static Object invokeJoinpointUsingReflection(@Nullable Object target, Method method, Object[] args)
 			throws Throwable {
 
-		// 使用反射来调用该方法
+		//优先使用缓存的调用器，不能生成调用器的方法才使用反射
+		return invokeJoinpoint(MethodInvoker.forMethod(method), target, method, args);
+	}
+
+	/**
+	 * 使用给定的调用器调用目标方法，调用器为null的时候使用反射
+	 * @param invoker 目标方法的调用器，比如代理的方法槽位上缓存的调用器
+	 * @param target 目标对象
+	 * @param method 调用的方法
+	 * @param args 方法的参数
+	 */
+	@Nullable
+	public static Object invokeJoinpoint(@Nullable MethodInvoker invoker, @Nullable Object target, Method method, Object[] args)
+			throws Throwable {
+
 		try {
+			if (invoker != null) {
+				return invoker.invoke(target, args);
+			}
+			// 使用反射来调用该方法
 			//将需要调用的方法设置成可访问
 			ReflectionUtils.makeAccessible(method);
 			return method.invoke(target, args);
@@ -89,14 +108,34 @@ public abstract class AopUtils {
 		catch (InvocationTargetException ex) {
 			throw ex.getTargetException();
 		}
-		catch (IllegalArgumentException ex) {
-			throw new AopInvocationException("AOP配置似乎无效: 尝试执行 [" + target + "]中的[" + method + "]方法", ex);
+		catch (RuntimeException ex) {
+			throw translateJoinpointException(ex, method, target, args);
 		}
 		catch (IllegalAccessException ex) {
 			throw new AopInvocationException("无法访问 [" + method + "]方法", ex);
 		}
 	}
 
+	/**
+	 * 转换直接调用目标方法(调用器，FastMethod，MethodProxy)时抛出的异常
+	 * 调用器不会包装目标方法的异常，参数和方法签名对不上的时候(比如拦截器换了参数，基本类型的参数传了null)
+	 * 是AOP配置的问题，转换成 AopInvocationException，对得上的话就是目标方法自己抛出来的，原样返回
+	 * @param ex 调用时抛出的异常
+	 * @param method 调用的方法
+	 * @param target 目标对象
+	 * @param args 方法的参数
+	 */
+	public static RuntimeException translateJoinpointException(RuntimeException ex, Method method,
+			@Nullable Object target, @Nullable Object[] args) {
+
+		if ((ex instanceof IllegalArgumentException || ex instanceof ClassCastException ||
+				ex instanceof WrongMethodTypeException || ex instanceof NullPointerException) &&
+				MethodInvoker.isArgumentMismatch(method, target, args)) {
+			return new AopInvocationException("AOP配置似乎无效: 尝试执行 [" + target + "]中的[" + method + "]方法", ex);
+		}
+		return ex;
+	}
+
 	/**
 	 * 确定在指定的Advisor列表中适用于给定类的Advisor
 	 * @param candidateAdvisors 需要评估的advisor
@@ -0,0 +1,432 @@
+package com.chy.summer.framework.aop.support;
+
+import com.chy.summer.framework.util.ClassUtils;
+import com.chy.summer.framework.util.ConcurrentReferenceHashMap;
+import com.chy.summer.framework.util.ReflectionUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 缓存在每个 Method 上的调用器, 用来代替 Method.invoke 调用目标方法和 advice 方法
+ * <p>
+ * 按下面的顺序选择调用方式:
+ * 1. 参数不超过 3 个的 public 方法, 用 LambdaMetafactory 生成一个实现了固定参数个数接口的类,
+ *    里面是直接的 invokevirtual/invokeinterface, JIT 可以把目标方法内联进来, 参数也不需要再放进数组里检查
+ * 2. 其他的方法用 MethodHandle, 参数数组展开成方法的参数, 不走反射的访问检查
+ * 3. 连 MethodHandle 都拿不到的(不可访问的成员), forMethod 返回 null, 由调用方继续用原来的 Method.invoke
+ * <p>
+ * 调用器抛出的都是目标方法自己的异常, 不会包装成 InvocationTargetException
+ */
+@Slf4j
+public abstract class MethodInvoker {
+
+	/**
+	 * 能用 LambdaMetafactory 生成调用器的最大参数个数
+	 */
+	private static final int MAX_LAMBDA_ARITY = 3;
+
+	private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	/**
+	 * 每个声明类上最多记录多少个 Method 对象的快速查找
+	 */
+	private static final int MAX_IDENTITY_ENTRIES = 64;
+
+	private static final Map<Method, MethodInvoker> invokerCache = new ConcurrentReferenceHashMap<>(256);
+
+	/**
+	 * 按 Method 对象的 identity 查找调用器的快速缓存, 挂在方法的声明类上, 类卸载的时候跟着一起回收.
+	 * 代理每次调用传进来的都是同一个 Method 对象, 这里只需要比较几次引用, 不用再计算 Method 的 hashCode 和 equals
+	 */
+	private static final ClassValue<IdentityEntries> identityCache = new ClassValue<IdentityEntries>() {
+		@Override
+		protected IdentityEntries computeValue(Class<?> type) {
+			return new IdentityEntries();
+		}
+	};
+
+
+	/**
+	 * 不能生成调用器的方法在缓存里的占位
+	 */
+	private static final MethodInvoker NO_INVOKER = new MethodHandleInvoker(MethodHandles.constant(Object.class, null), true);
+
+
+	/**
+	 * 获取给定方法的调用器, 同一个方法只会生成一次
+	 * @return 不能生成调用器(只能用反射调用)的时候返回 null
+	 */
+	@Nullable
+	public static MethodInvoker forMethod(Method method) {
+		IdentityEntries entries = identityCache.get(method.getDeclaringClass());
+		MethodInvoker invoker = entries.get(method);
+		if (invoker == null) {
+			invoker = invokerCache.get(method);
+			if (invoker == null) {
+				invoker = createInvoker(method);
+				invokerCache.put(method, invoker);
+			}
+			entries.add(method, invoker);
+		}
+		return (invoker != NO_INVOKER ? invoker : null);
+	}
+
+	/**
+	 * 调用方法
+	 * @param target 调用的对象, 静态方法传 null
+	 * @param args 方法参数, 没有参数可以是 null
+	 */
+	@Nullable
+	public abstract Object invoke(@Nullable Object target, @Nullable Object[] args) throws Throwable;
+
+
+	/**
+	 * 判断调用的对象和参数是不是和方法的签名对不上
+	 * <p>
+	 * 调用器不会像 Method.invoke 那样把目标方法的异常包装起来, 所以调用器抛出 ClassCastException,
+	 * WrongMethodTypeException, IllegalArgumentException 的时候, 要用这个方法区分是参数不对, 还是目标方法自己抛出来的
+	 * @param method 调用的方法
+	 * @param target 调用的对象, 静态方法传 null
+	 * @param args 方法参数, 没有参数可以是 null
+	 */
+	public static boolean isArgumentMismatch(Method method, @Nullable Object target, @Nullable Object[] args) {
+		if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(target)) {
+			return true;
+		}
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		int argCount = (args != null ? args.length : 0);
+		if (argCount != parameterTypes.length) {
+			return true;
+		}
+		for (int i = 0; i < argCount; i++) {
+			if (!ClassUtils.isAssignableValue(parameterTypes[i], args[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	private static MethodInvoker createInvoker(Method method) {
+		try {
+			if (canUseLambda(method)) {
+				return createLambdaInvoker(method);
+			}
+		}
+		catch (Throwable ex) {
+			log.debug("方法 [{}] 生成 lambda 调用器失败, 使用 MethodHandle 原因: [{}]", method, ex.getMessage());
+		}
+		try {
+			return createMethodHandleInvoker(method);
+		}
+		catch (Throwable ex) {
+			log.debug("方法 [{}] 生成 MethodHandle 失败, 使用反射调用 原因: [{}]", method, ex.getMessage());
+		}
+		return NO_INVOKER;
+	}
+
+	/**
+	 * 生成的 lambda 类寄宿在 MethodInvoker 上, 里面直接调用目标方法,
+	 * 所以方法和它用到的类型都要对 MethodInvoker 可见, 可以访问
+	 */
+	private static boolean canUseLambda(Method method) {
+		if (method.getParameterCount() > MAX_LAMBDA_ARITY || Modifier.isStatic(method.getModifiers()) ||
+				!Modifier.isPublic(method.getModifiers()) || !isAccessibleType(method.getDeclaringClass())) {
+			return false;
+		}
+		for (Class<?> parameterType : method.getParameterTypes()) {
+			if (!isAccessibleType(parameterType)) {
+				return false;
+			}
+		}
+		return isAccessibleType(method.getReturnType());
+	}
+
+	private static boolean isAccessibleType(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+			if (!Modifier.isPublic(current.getModifiers())) {
+				return false;
+			}
+		}
+		return ClassUtils.isVisible(type, MethodInvoker.class.getClassLoader());
+	}
+
+	private static MethodInvoker createLambdaInvoker(Method method) throws Throwable {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle implMethod = lookup.unreflect(method);
+		boolean isVoid = (method.getReturnType() == void.class);
+		int arity = method.getParameterCount();
+		Class<?> samType = (isVoid ? VOID_LAMBDA_TYPES : LAMBDA_TYPES)[arity];
+
+		//接口方法的签名全部是 Object, 实际的类型(包括基本类型的装箱拆箱)交给 LambdaMetafactory 去适配
+		MethodType samMethodType = MethodType.genericMethodType(arity + 1);
+		MethodType instantiatedMethodType = implMethod.type().wrap();
+		if (isVoid) {
+			samMethodType = samMethodType.changeReturnType(void.class);
+			instantiatedMethodType = instantiatedMethodType.changeReturnType(void.class);
+		}
+		Object lambda = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(samType),
+				samMethodType, implMethod, instantiatedMethodType).getTarget().invoke();
+		switch (arity) {
+			case 0:
+				return (isVoid ? new VoidLambdaInvoker0((VoidInvoker0) lambda) : new LambdaInvoker0((Invoker0) lambda));
+			case 1:
+				return (isVoid ? new VoidLambdaInvoker1((VoidInvoker1) lambda) : new LambdaInvoker1((Invoker1) lambda));
+			case 2:
+				return (isVoid ? new VoidLambdaInvoker2((VoidInvoker2) lambda) : new LambdaInvoker2((Invoker2) lambda));
+			default:
+				return (isVoid ? new VoidLambdaInvoker3((VoidInvoker3) lambda) : new LambdaInvoker3((Invoker3) lambda));
+		}
+	}
+
+	private static MethodInvoker createMethodHandleInvoker(Method method) throws IllegalAccessException {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle handle;
+		try {
+			handle = lookup.unreflect(method);
+		}
+		catch (IllegalAccessException ex) {
+			//不是 public 的方法, 设置成可访问以后再生成
+			ReflectionUtils.makeAccessible(method);
+			handle = lookup.unreflect(method);
+		}
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		handle = handle.asType(handle.type().generic())
+				.asSpreader(Object[].class, method.getParameterCount())
+				.asType(SPREAD_TYPE);
+		return new MethodHandleInvoker(handle, method.getParameterCount() == 0);
+	}
+
+
+	private static final Class<?>[] LAMBDA_TYPES = {Invoker0.class, Invoker1.class, Invoker2.class, Invoker3.class};
+
+	private static final Class<?>[] VOID_LAMBDA_TYPES =
+			{VoidInvoker0.class, VoidInvoker1.class, VoidInvoker2.class, VoidInvoker3.class};
+
+	/*
+	 * 下面是给 LambdaMetafactory 实现的接口, 第一个参数是调用的对象, 后面是方法的参数.
+	 * 没有返回值的方法要单独的接口, LambdaMetafactory 不能把 void 适配成 Object
+	 */
+
+	interface Invoker0 {
+		Object invoke(Object target);
+	}
+
+	interface Invoker1 {
+		Object invoke(Object target, Object arg0);
+	}
+
+	interface Invoker2 {
+		Object invoke(Object target, Object arg0, Object arg1);
+	}
+
+	interface Invoker3 {
+		Object invoke(Object target, Object arg0, Object arg1, Object arg2);
+	}
+
+	interface VoidInvoker0 {
+		void invoke(Object target);
+	}
+
+	interface VoidInvoker1 {
+		void invoke(Object target, Object arg0);
+	}
+
+	interface VoidInvoker2 {
+		void invoke(Object target, Object arg0, Object arg1);
+	}
+
+	interface VoidInvoker3 {
+		void invoke(Object target, Object arg0, Object arg1, Object arg2);
+	}
+
+
+	private static final class LambdaInvoker0 extends MethodInvoker {
+
+		private final Invoker0 lambda;
+
+		LambdaInvoker0(Invoker0 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			return this.lambda.invoke(target);
+		}
+	}
+
+	private static final class LambdaInvoker1 extends MethodInvoker {
+
+		private final Invoker1 lambda;
+
+		LambdaInvoker1(Invoker1 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			return this.lambda.invoke(target, args[0]);
+		}
+	}
+
+	private static final class LambdaInvoker2 extends MethodInvoker {
+
+		private final Invoker2 lambda;
+
+		LambdaInvoker2(Invoker2 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			return this.lambda.invoke(target, args[0], args[1]);
+		}
+	}
+
+	private static final class LambdaInvoker3 extends MethodInvoker {
+
+		private final Invoker3 lambda;
+
+		LambdaInvoker3(Invoker3 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			return this.lambda.invoke(target, args[0], args[1], args[2]);
+		}
+	}
+
+	private static final class VoidLambdaInvoker0 extends MethodInvoker {
+
+		private final VoidInvoker0 lambda;
+
+		VoidLambdaInvoker0(VoidInvoker0 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			this.lambda.invoke(target);
+			return null;
+		}
+	}
+
+	private static final class VoidLambdaInvoker1 extends MethodInvoker {
+
+		private final VoidInvoker1 lambda;
+
+		VoidLambdaInvoker1(VoidInvoker1 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			this.lambda.invoke(target, args[0]);
+			return null;
+		}
+	}
+
+	private static final class VoidLambdaInvoker2 extends MethodInvoker {
+
+		private final VoidInvoker2 lambda;
+
+		VoidLambdaInvoker2(VoidInvoker2 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			this.lambda.invoke(target, args[0], args[1]);
+			return null;
+		}
+	}
+
+	private static final class VoidLambdaInvoker3 extends MethodInvoker {
+
+		private final VoidInvoker3 lambda;
+
+		VoidLambdaInvoker3(VoidInvoker3 lambda) {
+			this.lambda = lambda;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) {
+			this.lambda.invoke(target, args[0], args[1], args[2]);
+			return null;
+		}
+	}
+
+	/**
+	 * 一个类上 Method 对象 --> 调用器 的快速查找表, 写时复制, 读的时候不加锁
+	 */
+	private static final class IdentityEntries {
+
+		private volatile Object[] entries = new Object[0];
+
+		@Nullable
+		MethodInvoker get(Method method) {
+			Object[] entries = this.entries;
+			for (int i = 0; i < entries.length; i += 2) {
+				if (entries[i] == method) {
+					return (MethodInvoker) entries[i + 1];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * 超过上限的不再记录, 还是通过 invokerCache 查找
+		 */
+		synchronized void add(Method method, MethodInvoker invoker) {
+			Object[] entries = this.entries;
+			if (entries.length >= MAX_IDENTITY_ENTRIES * 2 || get(method) != null) {
+				return;
+			}
+			Object[] newEntries = Arrays.copyOf(entries, entries.length + 2);
+			newEntries[entries.length] = method;
+			newEntries[entries.length + 1] = invoker;
+			this.entries = newEntries;
+		}
+	}
+
+	/**
+	 * 参数数组展开成方法参数的 MethodHandle, 类型已经适配成 (Object,Object[])Object
+	 */
+	private static final class MethodHandleInvoker extends MethodInvoker {
+
+		private static final Object[] NO_ARGS = new Object[0];
+
+		private final MethodHandle handle;
+
+		private final boolean noArgs;
+
+		MethodHandleInvoker(MethodHandle handle, boolean noArgs) {
+			this.handle = handle;
+			this.noArgs = noArgs;
+		}
+
+		@Override
+		public Object invoke(@Nullable Object target, @Nullable Object[] args) throws Throwable {
+			Object[] argsToUse = (this.noArgs || args == null ? NO_ARGS : args);
+			return (Object) this.handle.invokeExact(target, argsToUse);
+		}
+	}
+}
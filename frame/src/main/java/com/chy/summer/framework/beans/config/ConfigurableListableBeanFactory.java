@@ -5,6 +5,7 @@ import com.chy.summer.framework.beans.BeanFactory;
 import com.chy.summer.framework.beans.ConfigurableBeanFactory;
 import com.chy.summer.framework.beans.factory.DependencyDescriptor;
 import com.chy.summer.framework.context.event.ApplicationEventMulticaster;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
 import com.chy.summer.framework.exception.BeansException;
 import com.chy.summer.framework.exception.NoSuchBeanDefinitionException;
 
@@ -48,4 +49,11 @@ public interface ConfigurableListableBeanFactory extends ListableBeanFactory,Con
     BeanDefinition getBeanDefinition(String beanName) throws NoSuchBeanDefinitionException;
 
     Object resolveDependency(DependencyDescriptor desc, String beanName, Set<String> autowiredBeanNames);
+
+    /**
+     * 设置启动步骤的记录器, 创建 bean 的耗时会记录到这里面
+     */
+    void setApplicationStartup(ApplicationStartup applicationStartup);
+
+    ApplicationStartup getApplicationStartup();
 }
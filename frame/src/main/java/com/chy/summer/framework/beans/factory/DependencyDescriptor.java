@@ -6,6 +6,7 @@ import lombok.Setter;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.util.Objects;
 
 
 /**
@@ -79,6 +80,39 @@ public class DependencyDescriptor extends InjectionPoint {
         return methodParameter.getParameterType();
     }
 
+    /**
+     * 同一个 属性/方法参数 生成的描述对象认为是同一个注入点, 依赖注入的快捷方式缓存是用它来做 key 的
+     * MethodParameter 里有一些懒加载的缓存字段, 不能直接用它的 equals, 这里只比较 方法 和 参数的位置
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+        DependencyDescriptor otherDesc = (DependencyDescriptor) other;
+        if (this.required != otherDesc.required || this.eager != otherDesc.eager
+                || this.containingClass != otherDesc.containingClass) {
+            return false;
+        }
+        if (this.field != null) {
+            return this.field.equals(otherDesc.field);
+        }
+        return otherDesc.methodParameter != null
+                && this.methodParameter.getExecutable().equals(otherDesc.methodParameter.getExecutable())
+                && this.methodParameter.getParameterIndex() == otherDesc.methodParameter.getParameterIndex()
+                && this.methodParameter.getNestingLevel() == otherDesc.methodParameter.getNestingLevel();
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (this.field != null ? this.field.hashCode() :
+                this.methodParameter.getExecutable().hashCode() * 31 + this.methodParameter.getParameterIndex());
+        return hash * 31 + Objects.hashCode(this.containingClass);
+    }
+
     @Override
     public String toString() {
         return "DependencyDescriptor{" +
@@ -8,6 +8,8 @@ import com.chy.summer.framework.beans.factory.DependencyDescriptor;
 import com.chy.summer.framework.core.DefaultParameterNameDiscoverer;
 import com.chy.summer.framework.core.ParameterNameDiscoverer;
 import com.chy.summer.framework.core.ResolvableType;
+import com.chy.summer.framework.core.SummerProperties;
+import com.chy.summer.framework.core.metrics.StartupStep;
 import com.chy.summer.framework.exception.BeanCreationException;
 import com.chy.summer.framework.exception.BeanDefinitionStoreException;
 import com.chy.summer.framework.exception.BeansException;
@@ -46,7 +48,17 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
      */
     private final ConcurrentMap<String, BeanWrapper> factoryBeanInstanceCache = new ConcurrentHashMap<>(16);
 
-    private InstantiationStrategy instantiationStrategy = new SimpleInstantiationStrategy();
+    /**
+     * 设置为 true 的时候所有的 bean 都用反射来实例化, 不生成 FastClass
+     */
+    public static final String REFLECTIVE_INSTANTIATION_PROPERTY_NAME = "summer.beans.instantiation.reflective";
+
+    /**
+     * 实例化策略, 默认非单例的 bean 会用生成的 FastClass 来调用构造器, 单例始终使用反射, 见 FastClassInstantiationStrategy
+     */
+    @Setter
+    private InstantiationStrategy instantiationStrategy = SummerProperties.getFlag(REFLECTIVE_INSTANTIATION_PROPERTY_NAME) ?
+            new SimpleInstantiationStrategy() : new FastClassInstantiationStrategy();
 
     @Getter
     @Setter
@@ -68,28 +80,38 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
     @Override
     protected Object createBean(String beanName, RootBeanDefinition mbd, Object[] args) {
         log.debug("开始生成实例 {}", beanName);
-        RootBeanDefinition mbdToUse = mbd;
-        Class<?> resolvedClass = resolveBeanClass(mbdToUse);
+        //记录一下每个 bean 创建的耗时, 创建过程中顺带创建的依赖 bean 会作为子步骤记录在它下面
+        StartupStep creationStep = getApplicationStartup().start("summer.beans.instantiate")
+                .tag("beanName", beanName);
+        try {
+            RootBeanDefinition mbdToUse = mbd;
+            Class<?> resolvedClass = resolveBeanClass(mbdToUse);
+            if (resolvedClass != null) {
+                creationStep.tag("beanType", resolvedClass.getName());
+            }
 
-        //其实 基本 99.99999% 是进不去这里的
-        //如果真的进去了说明 class没有正确拿到,只能做一下clone 防止后面出什么问题了
-        if (resolvedClass != null && !mbd.hasBeanClass() && mbd.getBeanClassName() != null) {
-            //这里深拷贝,不污染入参
-            mbdToUse = new RootBeanDefinition(mbd);
-            mbdToUse.setBeanClass(resolvedClass);
-        }
+            //其实 基本 99.99999% 是进不去这里的
+            //如果真的进去了说明 class没有正确拿到,只能做一下clone 防止后面出什么问题了
+            if (resolvedClass != null && !mbd.hasBeanClass() && mbd.getBeanClassName() != null) {
+                //这里深拷贝,不污染入参
+                mbdToUse = new RootBeanDefinition(mbd);
+                mbdToUse.setBeanClass(resolvedClass);
+            }
 
-        //执行了 bean 初始化前的前置处理器,这里如果是 aop的对象就会在这个前置过滤器执行的时候生成代理对象
-        //这里如果是 factoryBean 还会计算出 真正的 工厂方法的返回类型,不过又塞入 bd里面了
-        Object bean = resolveBeforeInstantiation(beanName, mbdToUse);
-        if (bean != null) {
-            return bean;
-        }
+            //执行了 bean 初始化前的前置处理器,这里如果是 aop的对象就会在这个前置过滤器执行的时候生成代理对象
+            //这里如果是 factoryBean 还会计算出 真正的 工厂方法的返回类型,不过又塞入 bd里面了
+            Object bean = resolveBeforeInstantiation(beanName, mbdToUse);
+            if (bean != null) {
+                return bean;
+            }
 
-        //这里正真去创建对象了
-        Object beanInstance = doCreateBean(beanName, mbdToUse, args);
-        log.debug("实例 {} 创建完成", beanName);
-        return beanInstance;
+            //这里正真去创建对象了
+            Object beanInstance = doCreateBean(beanName, mbdToUse, args);
+            log.debug("实例 {} 创建完成", beanName);
+            return beanInstance;
+        } finally {
+            creationStep.end();
+        }
     }
 
     protected Object doCreateBean(final String beanName, final RootBeanDefinition mbd, final Object[] args)
@@ -7,6 +7,7 @@ import com.chy.summer.framework.beans.config.BeanDefinition;
 import com.chy.summer.framework.beans.config.BeanDefinitionHolder;
 import com.chy.summer.framework.beans.config.BeanPostProcessor;
 import com.chy.summer.framework.core.StringValueResolver;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
 import com.chy.summer.framework.exception.*;
 import com.chy.summer.framework.util.Assert;
 import com.chy.summer.framework.util.BeanFactoryUtils;
@@ -35,6 +36,21 @@ public abstract class AbstractBeanFactory extends DefaultSingletonBeanRegistry i
     protected final Map<String, RootBeanDefinition> mergedBeanDefinitions = new ConcurrentHashMap<>(256);
 
     private final List<StringValueResolver> embeddedValueResolvers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 启动步骤的记录器, 默认什么都不记录
+     */
+    private ApplicationStartup applicationStartup = ApplicationStartup.DEFAULT;
+
+    public void setApplicationStartup(ApplicationStartup applicationStartup) {
+        Assert.notNull(applicationStartup, "applicationStartup 不能为 null");
+        this.applicationStartup = applicationStartup;
+    }
+
+    public ApplicationStartup getApplicationStartup() {
+        return this.applicationStartup;
+    }
+
     /**
      * 判断是否已经开始创建 bean 对象了
      *
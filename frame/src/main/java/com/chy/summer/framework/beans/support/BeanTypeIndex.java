@@ -0,0 +1,148 @@
+package com.chy.summer.framework.beans.support;
+
+import com.chy.summer.framework.beans.FactoryBean;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 冻结配置以后构建的 类型 --> beanName 的索引
+ * <p>
+ * 把每个 bean 预测出来的类型的 所有父类和接口 都映射到这个 beanName 上, 按类型查找 beanName 的时候
+ * 只需要去检查索引里对应的那几个 bean, 不用再把所有的 beanDefinition 都遍历一遍.
+ * <p>
+ * 索引只是用来缩小范围的, 最终是否匹配还是走 isTypeMatch 的判断, 所以下面这些不能提前确定类型的 bean
+ * 会放到 unresolvedNames 里, 每次查找都会带上它们:
+ * 预测不出类型的(比如还没有创建的 @Bean 方法), FactoryBean (真正的类型要看 getObjectType)
+ * <p>
+ * 单例对象创建出来以后, 它的实际类型(比如代理对象)可能会多出一些接口, 这些会通过 registerInstanceType 追加进来
+ */
+@Slf4j
+class BeanTypeIndex {
+
+    /**
+     * key: 类型  value: 可能匹配这个类型的 beanName
+     */
+    private final Map<Class<?>, Set<String>> beanNamesByType = new ConcurrentHashMap<>(256);
+
+    /**
+     * 不能提前确定类型的 beanName, 每次查找都要检查
+     */
+    private final List<String> unresolvedNames = new ArrayList<>();
+
+    /**
+     * beanName 在 beanDefinitionNames 中的位置, 用来保证查找结果的顺序和注册顺序一致
+     */
+    private final Map<String, Integer> registrationOrder;
+
+    private BeanTypeIndex(int size) {
+        this.registrationOrder = new HashMap<>(size * 2);
+    }
+
+    /**
+     * 根据当前所有的 beanDefinition 构建索引
+     *
+     * @param beanFactory
+     * @param beanDefinitionNames
+     * @return
+     */
+    static BeanTypeIndex build(DefaultListableBeanFactory beanFactory, List<String> beanDefinitionNames) {
+        BeanTypeIndex index = new BeanTypeIndex(beanDefinitionNames.size());
+        for (String beanName : beanDefinitionNames) {
+            if (beanFactory.isAlias(beanName)) {
+                continue;
+            }
+            index.registrationOrder.put(beanName, index.registrationOrder.size());
+            Class<?> beanType = null;
+            try {
+                RootBeanDefinition mbd = beanFactory.getMergedLocalBeanDefinition(beanName);
+                if (mbd.isAbstract()) {
+                    continue;
+                }
+                beanType = beanFactory.predictBeanType(mbd);
+                //已经创建好的单例,实际类型也要加进去
+                Object beanInstance = beanFactory.getSingleton(beanName, false);
+                if (beanInstance != null && !(beanInstance instanceof FactoryBean)) {
+                    index.registerInstanceType(beanName, beanInstance.getClass());
+                }
+            } catch (Exception ex) {
+                log.debug("构建类型索引的时候 预测 bean [{}] 的类型失败 原因: [{}]", beanName, ex.getMessage());
+            }
+
+            if (beanType == null || FactoryBean.class.isAssignableFrom(beanType)) {
+                index.unresolvedNames.add(beanName);
+            } else {
+                index.registerInstanceType(beanName, beanType);
+            }
+        }
+        log.debug("类型索引构建完成 bean 数量 [{}] 类型数量 [{}] 无法预测类型的 bean 数量 [{}]",
+                index.registrationOrder.size(), index.beanNamesByType.size(), index.unresolvedNames.size());
+        return index;
+    }
+
+    /**
+     * 把 beanType 的所有父类和接口都映射到 beanName 上
+     *
+     * @param beanName
+     * @param beanType
+     * @return 这次新加入的 beanName 的类型, 这些类型之前的查找结果都需要作废
+     */
+    Set<Class<?>> registerInstanceType(String beanName, Class<?> beanType) {
+        Set<Class<?>> added = new HashSet<>();
+        for (Class<?> type : getTypeHierarchy(beanType)) {
+            Set<String> beanNames = this.beanNamesByType.computeIfAbsent(type, k -> ConcurrentHashMap.newKeySet());
+            if (beanNames.add(beanName)) {
+                added.add(type);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 获取可能匹配这个类型的 beanName, 顺序和 bean 的注册顺序一致
+     *
+     * @param type
+     * @return
+     */
+    List<String> getCandidateNames(Class<?> type) {
+        Set<String> indexed = this.beanNamesByType.get(type);
+        if (indexed == null || indexed.isEmpty()) {
+            return this.unresolvedNames;
+        }
+        List<String> result = new ArrayList<>(indexed.size() + this.unresolvedNames.size());
+        result.addAll(indexed);
+        result.addAll(this.unresolvedNames);
+        result.sort(Comparator.comparingInt(name -> this.registrationOrder.getOrDefault(name, Integer.MAX_VALUE)));
+        return result;
+    }
+
+    /**
+     * 数组类型的 isAssignableFrom 是按元素类型来判断的, 没办法放到索引里
+     */
+    boolean supports(Class<?> type) {
+        return type != null && !type.isArray();
+    }
+
+    /**
+     * 获取一个类的所有父类 和 所有接口(包括接口继承的接口)
+     */
+    private Set<Class<?>> getTypeHierarchy(Class<?> beanType) {
+        Set<Class<?>> result = new LinkedHashSet<>();
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        queue.add(beanType);
+        while (!queue.isEmpty()) {
+            Class<?> current = queue.poll();
+            if (!result.add(current)) {
+                continue;
+            }
+            if (current.getSuperclass() != null) {
+                queue.add(current.getSuperclass());
+            }
+            queue.addAll(Arrays.asList(current.getInterfaces()));
+        }
+        //接口的父类是 null, 但是 Object 类型的查找应该能匹配到所有的 bean
+        result.add(Object.class);
+        return result;
+    }
+}
@@ -194,6 +194,14 @@ public class ConstructorResolver {
 
         ConstructorArgumentValues resolvedValues = new ConstructorArgumentValues();
 
+        //之前已经选出过构造器了(比如原型 bean 再次创建), 直接用上次选中的构造器, 只需要重新解析参数
+        if (explicitArgs == null) {
+            Constructor<?> resolvedConstructor = getResolvedConstructor(mbd, ctors);
+            if (resolvedConstructor != null) {
+                ctors = new Constructor<?>[]{resolvedConstructor};
+            }
+        }
+
         //排序走一波 也是参数多的放前面
         AutowireUtils.sortFactoryMethods(ctors);
 
@@ -256,6 +264,25 @@ public class ConstructorResolver {
     }
 
 
+    /**
+     * 获取之前缓存在 mbd 上的构造器, 只有在这次的候选构造器里面才会返回
+     */
+    private Constructor<?> getResolvedConstructor(RootBeanDefinition mbd, Constructor<?>[] ctors) {
+        Executable resolved;
+        synchronized (mbd.constructorArgumentLock) {
+            if (!mbd.constructorArgumentsResolved) {
+                return null;
+            }
+            resolved = mbd.resolvedConstructorOrFactoryMethod;
+        }
+        for (Constructor<?> candidate : ctors) {
+            if (candidate.equals(resolved)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
     /**
      * 把 工厂方法上的参数 给全部封装到 ArgumentsHolder 对象里
      * 同时还会更具方法的名字去 ioc 容器里获取对应的对象
@@ -8,7 +8,9 @@ import com.chy.summer.framework.beans.factory.DependencyDescriptor;
 import com.chy.summer.framework.core.ResolvableType;
 import com.chy.summer.framework.exception.*;
 import com.chy.summer.framework.util.*;
+import com.chy.summer.framework.core.SummerProperties;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.IllegalStateException;
@@ -24,6 +26,11 @@ import static com.chy.summer.framework.util.BeanFactoryUtils.transformedBeanName
 @Slf4j
 public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFactory implements ConfigurableListableBeanFactory, BeanDefinitionRegistry {
 
+    /**
+     * 设置成 true 的时候, 预先初始化单例对象会按照依赖关系并行创建
+     */
+    public static final String PARALLEL_PRE_INSTANTIATION_PROPERTY_NAME = "summer.beans.parallel-pre-instantiation";
+
     private final Map<String, BeanDefinition> beanDefinitionMap = new ConcurrentHashMap<String, BeanDefinition>(256);
 
     /**
@@ -59,6 +66,12 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
      */
     private final Map<Class<?>, String[]> singletonBeanNamesByType = new ConcurrentHashMap<>(64);
 
+    /**
+     * 依赖注入的快捷方式缓存  key: 注入点 + 宿主beanName  value: 上次解析出来要注入的 beanName
+     * 命中以后直接 getBean 拿对象, 不用再去找候选人 和 筛选候选人了, 注册表发生变化的时候整个清空
+     */
+    private final Map<DependencyShortcutKey, DependencyShortcut> dependencyShortcuts = new ConcurrentHashMap<>(256);
+
 
     /**
      * 正向的依赖  A 依赖 <B,C,D>
@@ -72,6 +85,11 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 
     private volatile boolean configurationFrozen = false;
 
+    /**
+     * 冻结配置以后构建的 类型 --> beanName 索引, 配置没有冻结 或者 冻结以后又注册了新的 bean 的时候为 null
+     */
+    private volatile BeanTypeIndex frozenBeanTypeIndex;
+
 
     /**
      * 自动注入解析器,可以通过自定义添加这个解析器来自定义 注入的行为, 比如 @value注解 里面 ${} 表达式的解析
@@ -82,6 +100,20 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 
     private Comparator<Object> dependencyComparator;
 
+    /**
+     * 是否开启并行的预先初始化单例对象, 默认关闭, 可以用 summer.beans.parallel-pre-instantiation 属性打开
+     */
+    @Getter
+    @Setter
+    private boolean parallelPreInstantiation = SummerProperties.getFlag(PARALLEL_PRE_INSTANTIATION_PROPERTY_NAME);
+
+    /**
+     * 并行预先初始化时候的并行度
+     */
+    @Getter
+    @Setter
+    private int preInstantiationParallelism = Runtime.getRuntime().availableProcessors();
+
 
     /**
      * `
@@ -157,7 +189,14 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
     private String[] doGetBeanNamesForType(ResolvableType type, boolean includeNonSingletons, boolean allowEagerInit) {
         List<String> result = new ArrayList<>();
 
-        for (String beanName : this.beanDefinitionNames) {
+        //配置冻结以后 只需要检查类型索引里可能匹配的那些 bean, 没冻结就只能全部遍历一遍
+        List<String> candidateNames = this.beanDefinitionNames;
+        BeanTypeIndex typeIndex = getFrozenBeanTypeIndex();
+        if (typeIndex != null && typeIndex.supports(type.resolve())) {
+            candidateNames = typeIndex.getCandidateNames(type.resolve());
+        }
+
+        for (String beanName : candidateNames) {
             //如果是别名,直接跳过
             if (isAlias(beanName)) {
                 continue;
@@ -355,6 +394,9 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
             //正常的注册逻辑
             registerBeanDefinitionHandle(beanName, beanDefinition);
         }
+        //新注册的 bean 可能会匹配之前已经查过的类型, 类型索引也要重新构建
+        this.frozenBeanTypeIndex = null;
+        clearByTypeCache();
     }
 
     @Override
@@ -378,6 +420,8 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
         }
         //除了从容器里删除了 bd 如果这个 bd 已经生成了 单例对象,执行了一些后置处理器,这边都需要全部撤回
         resetBeanDefinition(beanName);
+        this.frozenBeanTypeIndex = null;
+        clearByTypeCache();
     }
 
 
@@ -402,9 +446,51 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
         clearByTypeCache();
     }
 
+    /**
+     * 冻结配置以后, 单例对象的实际类型(比如被代理了)可能会比预测的类型多出一些接口, 这里追加到类型索引里
+     * 同时把这些类型之前的查找缓存作废
+     */
+    @Override
+    protected void addSingleton(String beanName, Object singletonObject) {
+        super.addSingleton(beanName, singletonObject);
+        BeanTypeIndex typeIndex = this.frozenBeanTypeIndex;
+        if (typeIndex != null && !(singletonObject instanceof FactoryBean) && containsBeanDefinition(beanName)) {
+            Set<Class<?>> addedTypes = typeIndex.registerInstanceType(beanName, singletonObject.getClass());
+            for (Class<?> type : addedTypes) {
+                this.allBeanNamesByType.remove(type);
+                this.singletonBeanNamesByType.remove(type);
+            }
+            //这些类型多了一个候选人, 之前解析出来的快捷方式也不一定对了
+            if (!addedTypes.isEmpty()) {
+                this.dependencyShortcuts.keySet().removeIf(key -> addedTypes.contains(key.descriptor.getDependencyType()));
+            }
+        }
+    }
+
+    /**
+     * 获取类型索引, 配置已经冻结 但是索引因为注册了新的 bean 被作废了的时候, 会重新构建一次
+     */
+    private BeanTypeIndex getFrozenBeanTypeIndex() {
+        if (!this.configurationFrozen) {
+            return null;
+        }
+        BeanTypeIndex typeIndex = this.frozenBeanTypeIndex;
+        if (typeIndex == null) {
+            synchronized (this.beanDefinitionMap) {
+                typeIndex = this.frozenBeanTypeIndex;
+                if (typeIndex == null) {
+                    typeIndex = BeanTypeIndex.build(this, new ArrayList<>(this.beanDefinitionNames));
+                    this.frozenBeanTypeIndex = typeIndex;
+                }
+            }
+        }
+        return typeIndex;
+    }
+
     private void clearByTypeCache() {
         this.allBeanNamesByType.clear();
         this.singletonBeanNamesByType.clear();
+        this.dependencyShortcuts.clear();
     }
 
 
@@ -544,12 +630,21 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
                 this.manualSingletonNames.add(beanName);
             }
         }
+        clearByTypeCache();
 
     }
 
     @Override
     public void freezeConfiguration() {
         this.configurationFrozen = true;
+        //配置已经不会再变了, 这里把所有 bean 的类型层级一次性算好, 后面按类型查找就只需要查索引
+        this.frozenBeanTypeIndex = null;
+        clearByTypeCache();
+        getFrozenBeanTypeIndex();
+    }
+
+    public boolean isConfigurationFrozen() {
+        return this.configurationFrozen;
     }
 
     @Override
@@ -557,6 +652,7 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
         log.debug("==============预先初始化单列对象 开始========== ;");
 
         List<String> beanNames = new ArrayList<>(this.beanDefinitionNames);
+        List<String> singletonNames = new ArrayList<>(beanNames.size());
 
         //迭代所有的 beanDefinitionNames
         for (String beanName : beanNames) {
@@ -566,12 +662,21 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
                 if (isFactoryBean(beanName)) {
                     //TODO FactoryBean 的初始化流程,这里只会先初始化 SmartFactoryBean 接口的
                 } else {
-                    //这里就直接初始化 单例对象了.
-                    getBean(beanName);
+                    singletonNames.add(beanName);
                 }
             }
         }
 
+        if (this.parallelPreInstantiation && this.preInstantiationParallelism > 1 && singletonNames.size() > 1) {
+            //按照依赖关系 并行的去创建单例对象
+            new ParallelSingletonInstantiator(this, this.preInstantiationParallelism).instantiate(singletonNames);
+        } else {
+            for (String beanName : singletonNames) {
+                //这里就直接初始化 单例对象了.
+                getBean(beanName);
+            }
+        }
+
         //TODO 在 bean 生成单列对象后 , 如果实现了 SmartInitializingSingleton 接口,还会调用 这个接口去做一些后置处理的事情
     }
 
@@ -680,6 +785,22 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
         //获取了要注入的对象的类型
         Class<?> type = descriptor.getDependencyType();
 
+        //之前解析过这个注入点, 直接用上次选出来的 beanName
+        DependencyShortcutKey shortcutKey = new DependencyShortcutKey(descriptor, beanName);
+        DependencyShortcut shortcut = this.dependencyShortcuts.get(shortcutKey);
+        if (shortcut != null) {
+            //已经创建完成的单例直接用, 原型之类的还是要走 getBean 每次拿新的
+            Object shortcutBean = (shortcut.singletonInstance != null ? shortcut.singletonInstance : getBean(shortcut.beanName));
+            if (ClassUtils.isAssignableValue(type, shortcutBean)) {
+                if (autowiredBeanNames != null) {
+                    autowiredBeanNames.add(shortcut.beanName);
+                }
+                return shortcutBean;
+            }
+            //类型对不上了(比如 FactoryBean 产出的对象变了), 作废掉重新解析
+            this.dependencyShortcuts.remove(shortcutKey, shortcut);
+        }
+
         Object value = getAutowireCandidateResolver().getSuggestedValue(descriptor);
         if (value != null) {
             if (value instanceof String) {
@@ -742,9 +863,63 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
         if (!ClassUtils.isAssignableValue(type, result)) {
             throw new BeanNotOfRequiredTypeException(autowiredBeanName, type, instanceCandidate.getClass());
         }
+        //记下这次选出来的 beanName, 下次同一个注入点直接用
+        if (containsBeanDefinition(autowiredBeanName) || containsSingleton(autowiredBeanName)) {
+            //注入的就是单例池里那个已经创建完成的对象的话, 把对象也记下来; 还在创建中的半成品不能记
+            Object singletonInstance = (containsSingleton(autowiredBeanName)
+                    && getSingleton(autowiredBeanName, false) == result ? result : null);
+            this.dependencyShortcuts.put(shortcutKey, new DependencyShortcut(autowiredBeanName, singletonInstance));
+        }
         return result;
     }
 
+    /**
+     * 依赖注入的快捷方式, 记录上次选出来的 beanName, 如果是已经创建完成的单例 连对象也一起记下来
+     */
+    private static final class DependencyShortcut {
+
+        private final String beanName;
+
+        private final Object singletonInstance;
+
+        DependencyShortcut(String beanName, Object singletonInstance) {
+            this.beanName = beanName;
+            this.singletonInstance = singletonInstance;
+        }
+    }
+
+    /**
+     * 依赖注入快捷方式的 key, 同一个注入点在不同的宿主 bean 里排除自己引用自己以后, 候选人可能不一样, 所以要带上宿主的 beanName
+     */
+    private static final class DependencyShortcutKey {
+
+        private final DependencyDescriptor descriptor;
+
+        private final String beanName;
+
+        DependencyShortcutKey(DependencyDescriptor descriptor, String beanName) {
+            this.descriptor = descriptor;
+            this.beanName = beanName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof DependencyShortcutKey)) {
+                return false;
+            }
+            DependencyShortcutKey otherKey = (DependencyShortcutKey) other;
+            return this.descriptor.equals(otherKey.descriptor) && Objects.equals(this.beanName, otherKey.beanName);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.descriptor.hashCode() * 31 + Objects.hashCode(this.beanName);
+        }
+    }
+
     /**
      * 寻找可能注入的对象
      *
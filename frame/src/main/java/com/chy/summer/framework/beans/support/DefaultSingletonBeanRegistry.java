@@ -11,9 +11,19 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 单例对象的处理都在这里面
+ * <p>
+ * 创建单例的时候不会锁住整个单例容器, 而是每个 beanName 各自持有一把创建锁, 不相关的 bean 可以同时创建.
+ * <p>
+ * 一个线程在创建某个单例的过程中顺带创建出来的单例(里层的单例), 要等最外层的单例创建完成以后才一起放入单例容器,
+ * 在这之前只有这个线程自己能拿到, 创建锁也一直持有到那个时候. 半成品对象同样只会给到创建它的线程, 不会借给其他线程.
+ * <p>
+ * 如果多个线程之间互相等待对方的创建锁(跨线程的循环依赖), 环上的线程里只有一个会退让: 放弃它这次创建的所有东西,
+ * 释放持有的创建锁, 等其他线程把整个环创建完以后再重新获取, 效果和串行创建时一个线程解开循环依赖是一样的
  */
 @Slf4j
 public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
@@ -24,14 +34,31 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
     private final Map<String, Object> singletonObjects = new ConcurrentHashMap<>(256);
 
     /** 缓存单例对象的工厂:  name --> ObjectFactory */
-    private final Map<String, ObjectFactory<?>> singletonFactories = new HashMap<>(16);
+    private final Map<String, ObjectFactory<?>> singletonFactories = new ConcurrentHashMap<>(16);
 
     /** 缓存半成品的单例对象 */
-    private final Map<String, Object> earlySingletonObjects = new HashMap<>(16);
+    private final Map<String, Object> earlySingletonObjects = new ConcurrentHashMap<>(16);
 
     /** 把单例对象的名字都给放进去 */
-    private final Set<String> registeredSingletons = new LinkedHashSet<>(256);
+    private final Set<String> registeredSingletons = Collections.newSetFromMap(new ConcurrentHashMap<>(256));
 
+    /**
+     * 等待创建锁的时候, 每隔多久检查一次有没有发生线程之间的互相等待
+     * 开始等待的时候就会先检查一次, 这里只影响 环上被选中退让的线程 发现自己需要退让的延迟
+     */
+    private static final long DEADLOCK_CHECK_INTERVAL_MILLIS = 10;
+
+    /** 每个单例对象的创建锁:  name --> lock */
+    private final Map<String, CreationLock> singletonCreationLocks = new ConcurrentHashMap<>(256);
+
+    /** 正在等待创建锁的线程:  thread --> 在等待的 beanName, 用来做死锁检测 */
+    private final Map<Thread, String> threadsWaitingForCreation = new ConcurrentHashMap<>(16);
+
+    /** 已经创建完成, 但是所在线程最外层的创建还没结束的单例:  name --> bean, 只有持有这个bean创建锁的线程会来读 */
+    private final Map<String, Object> pendingSingletons = new ConcurrentHashMap<>(16);
+
+    /** 当前线程正在进行的单例创建, 没有在创建单例的时候为空 */
+    private final ThreadLocal<SingletonCreation> currentCreation = new ThreadLocal<>();
 
 
     @Override
@@ -63,28 +90,43 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
 
     /**
      * 获取单例对象
+     * 里层已经创建好但还没放入单例容器的对象, 以及半成品对象, 都只会给到持有这个bean创建锁的线程(也就是正在创建它的线程),
+     * 其他线程只能拿到已经创建完成的单例对象
      * @param beanName
      * @param allowEarlyReference true 就算是半成品的单例对象也把他给拿出来
      * @return
      */
     protected Object getSingleton(String beanName, boolean allowEarlyReference) {
         Object singletonObject = this.singletonObjects.get(beanName);
-        //缓存里没有，并且并不是正在创建中，那么就继续
-        if (singletonObject == null && isSingletonCurrentlyInCreation(beanName)) {
-            synchronized (this.singletonObjects) {
-                //在单例对象的容器里没有找到，那么去半成品的容器里 瞅一瞅有没有
-                singletonObject = this.earlySingletonObjects.get(beanName);
-                //半成品也没有，那么如果传入了 allowEarlyReference 允许现场造一个半成品
-                if (singletonObject == null && allowEarlyReference) {
-                    //对于循环依赖的情况来说, 当第二次访问到某个未完成的beanName的时候,会在 singletonFactories 里放入一个工厂方法,这个工厂方法执行后就能获取到那个未完成的bean
-                    ObjectFactory<?> singletonFactory = this.singletonFactories.get(beanName);
-                    if (singletonFactory != null) {
-                        //从工厂里生成真正的bean, 然后放入 earlySingletonObjects 容器里面
-                        singletonObject = singletonFactory.getObject();
-                        this.earlySingletonObjects.put(beanName, singletonObject);
-                        this.singletonFactories.remove(beanName);
-                    }
-                }
+        //缓存里没有，并且是当前线程正在创建的，那么就继续
+        if (singletonObject == null && isCreationLockHeldByCurrentThread(beanName)) {
+            singletonObject = this.pendingSingletons.get(beanName);
+            if (singletonObject == null && isSingletonCurrentlyInCreation(beanName)) {
+                singletonObject = getEarlySingleton(beanName, allowEarlyReference);
+            }
+        }
+        return singletonObject;
+    }
+
+    /**
+     * 获取半成品的单例对象, 调用的线程必须持有这个bean的创建锁
+     * @param beanName
+     * @param allowEarlyReference 半成品也没有的时候, 是否允许用 singletonFactories 里的工厂现场造一个半成品
+     * @return
+     */
+    private Object getEarlySingleton(String beanName, boolean allowEarlyReference) {
+        //在单例对象的容器里没有找到，那么去半成品的容器里 瞅一瞅有没有
+        Object singletonObject = this.earlySingletonObjects.get(beanName);
+        //半成品也没有，那么如果传入了 allowEarlyReference 允许现场造一个半成品
+        if (singletonObject == null && allowEarlyReference) {
+            //对于循环依赖的情况来说, 当第二次访问到某个未完成的beanName的时候,会在 singletonFactories 里放入一个工厂方法,这个工厂方法执行后就能获取到那个未完成的bean
+            //只有持有创建锁的线程能走到这里, 所以半成品只会被造一次
+            ObjectFactory<?> singletonFactory = this.singletonFactories.get(beanName);
+            if (singletonFactory != null) {
+                //从工厂里生成真正的bean, 然后放入 earlySingletonObjects 容器里面
+                singletonObject = singletonFactory.getObject();
+                this.earlySingletonObjects.put(beanName, singletonObject);
+                this.singletonFactories.remove(beanName);
             }
         }
         return singletonObject;
@@ -93,8 +135,10 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
     /**
      *
      * 这里同样是获取单列对象.没有就会从 singletonFactory 里去调用 getObject 获取
-     * 其实这个方法就是用来生成对象后放入单例容器里面的,因为上了锁,并不适合频繁访问去获取单例对象
+     * 其实这个方法就是用来生成对象后放入单例容器里面的,因为要获取创建锁,并不适合频繁访问去获取单例对象
      * 如果要获取单例请使用 #getSingleton(String beanName, boolean allowEarlyReference)
+     * <p>
+     * 在创建其他单例的过程中调用(里层)的时候, 创建出来的对象要等最外层的单例创建完成以后才放入单例容器
      *
      * @param beanName
      * @param singletonFactory
@@ -102,25 +146,203 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
      */
     public Object getSingleton(String beanName, ObjectFactory<?> singletonFactory) {
         Assert.notNull(beanName, "Bean name 不能为空的哦");
-        synchronized (this.singletonObjects) {
-            Object singletonObject = this.singletonObjects.get(beanName);
-            if (singletonObject == null) {
-                log.debug("开始创建单例对象 : {}",beanName);
-                beforeSingletonCreation(beanName);
+        Object singletonObject = this.singletonObjects.get(beanName);
+        if (singletonObject != null) {
+            return singletonObject;
+        }
+
+        SingletonCreation creation = this.currentCreation.get();
+        if (creation != null) {
+            return doGetSingleton(beanName, singletonFactory, creation);
+        }
+
+        creation = new SingletonCreation();
+        this.currentCreation.set(creation);
+        try {
+            while (true) {
                 try {
-                    //去生成真正的对象
-                    singletonObject = singletonFactory.getObject();
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    throw new BeanCreationException(beanName,ex.getMessage());
+                    singletonObject = doGetSingleton(beanName, singletonFactory, creation);
+                    if (!creation.backingOff) {
+                        return singletonObject;
+                    }
+                } catch (RuntimeException ex) {
+                    if (!creation.backingOff) {
+                        throw ex;
+                    }
+                } finally {
+                    if (creation.backingOff) {
+                        discardPendingSingletons(creation);
+                    } else {
+                        publishPendingSingletons(creation);
+                    }
                 }
+                //和其他线程互相等待的时候退让了, 这次创建的东西已经全部作废, 锁也都释放了
+                //先等对方把当时在等的那个bean创建完(这时候当前线程什么锁都没有, 不会再互相等待), 再重新获取, 不然马上又会抢到锁再撞上一次
+                awaitCreation(creation.contendedBeanName);
+                log.debug("线程 [{}] 退让以后重新获取 bean [{}]", Thread.currentThread().getName(), beanName);
+                creation.backingOff = false;
+                creation.contendedBeanName = null;
+            }
+        } finally {
+            this.currentCreation.remove();
+        }
+    }
+
+    /**
+     * 拿到创建锁以后创建单例, 创建好的对象先放在 pendingSingletons 里, 并且多持有一次创建锁,
+     * 由最外层的 getSingleton 统一提交或者作废
+     */
+    private Object doGetSingleton(String beanName, ObjectFactory<?> singletonFactory, SingletonCreation creation) {
+        CreationLock lock = this.singletonCreationLocks.computeIfAbsent(beanName, k -> new CreationLock());
+        if (!acquireCreationLock(beanName, lock)) {
+            //被选中退让, 抛出异常一路退回到最外层, 沿途每一层都会清理自己正在创建的bean
+            creation.backingOff = true;
+            creation.contendedBeanName = beanName;
+            throw new BeanCurrentlyInCreationException(beanName,
+                    "多个线程在互相等待对方创建的bean, 当前线程退让, 放弃这次创建以后重试");
+        }
+
+        try {
+            //拿到锁之后再检查一次,可能已经被别的线程创建好了, 也可能是当前线程刚刚在里层创建好的
+            Object singletonObject = this.singletonObjects.get(beanName);
+            if (singletonObject == null) {
+                singletonObject = this.pendingSingletons.get(beanName);
+            }
+            if (singletonObject != null) {
+                return singletonObject;
+            }
 
-                //这里把创建好的对象给放入 单例容器
-                addSingleton(beanName, singletonObject);
+            log.debug("开始创建单例对象 : {}",beanName);
+            beforeSingletonCreation(beanName);
+            try {
+                //去生成真正的对象
+                singletonObject = singletonFactory.getObject();
+            } catch (Exception ex) {
+                //创建失败了, 提前暴露的半成品也要清理掉
+                removeEarlySingleton(beanName);
+                if (creation.backingOff) {
+                    throw (ex instanceof RuntimeException ? (RuntimeException) ex : new BeanCreationException(beanName, "创建被中止", ex));
+                }
+                ex.printStackTrace();
+                throw new BeanCreationException(beanName,ex.getMessage());
+            } finally {
+                afterSingletonCreation(beanName);
             }
+
+            //先只对当前线程可见, 最外层结束的时候再放入单例容器
+            this.pendingSingletons.put(beanName, singletonObject);
+            this.singletonFactories.remove(beanName);
+            this.earlySingletonObjects.remove(beanName);
+            lock.lock();
+            creation.pending.put(beanName, lock);
             return singletonObject;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待其他线程释放 beanName 的创建锁, 也就是等它所在的那次创建结束
+     */
+    private void awaitCreation(String beanName) {
+        CreationLock lock = this.singletonCreationLocks.get(beanName);
+        if (lock != null) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把当前线程创建好的单例放入单例容器, 然后释放它们的创建锁, 等着的线程拿到锁以后就能从单例容器里拿到
+     */
+    private void publishPendingSingletons(SingletonCreation creation) {
+        for (Map.Entry<String, CreationLock> entry : creation.pending.entrySet()) {
+            String beanName = entry.getKey();
+            //这里把创建好的对象给放入 单例容器
+            addSingleton(beanName, this.pendingSingletons.get(beanName));
+            this.pendingSingletons.remove(beanName);
+            entry.getValue().unlock();
         }
+        creation.pending.clear();
+    }
+
+    /**
+     * 退让的时候作废当前线程创建好的单例, 它们可能引用了已经作废的半成品, 其他线程从来没有拿到过它们
+     */
+    private void discardPendingSingletons(SingletonCreation creation) {
+        for (Map.Entry<String, CreationLock> entry : creation.pending.entrySet()) {
+            this.pendingSingletons.remove(entry.getKey());
+            this.registeredSingletons.remove(entry.getKey());
+            entry.getValue().unlock();
+        }
+        creation.pending.clear();
+    }
+
+    private void removeEarlySingleton(String beanName) {
+        this.singletonFactories.remove(beanName);
+        this.earlySingletonObjects.remove(beanName);
+        if (!this.singletonObjects.containsKey(beanName)) {
+            this.registeredSingletons.remove(beanName);
+        }
+    }
+
+    /**
+     * 获取 beanName 对应的创建锁, 拿不到的时候会定时检查是不是和其他线程互相等待了
+     * @param beanName
+     * @param lock
+     * @return true 拿到了锁,  false 和其他线程互相等待了, 并且当前线程被选中退让, 没有拿到锁
+     */
+    private boolean acquireCreationLock(String beanName, CreationLock lock) {
+        if (lock.tryLock()) {
+            return true;
+        }
+        Thread currentThread = Thread.currentThread();
+        this.threadsWaitingForCreation.put(currentThread, beanName);
+        try {
+            do {
+                if (isChosenToBackOff(currentThread, beanName)) {
+                    log.warn("线程 [{}] 在等待 bean [{}] 创建的时候和其他线程互相等待, 当前线程退让", currentThread.getName(), beanName);
+                    return false;
+                }
+            } while (!lock.tryLock(DEADLOCK_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationException(beanName, "等待单例对象创建的时候线程被中断", ex);
+        } finally {
+            this.threadsWaitingForCreation.remove(currentThread);
+        }
+    }
+
+    /**
+     * 沿着 "锁的持有线程 --> 它正在等待的bean --> 这个bean锁的持有线程" 一路找下去,如果又回到了当前线程说明出现了死锁
+     * 环上的每个线程都会找到同一个环, 只让其中 id 最大的线程退让, 其他线程继续等待
+     * @param currentThread
+     * @param beanName
+     * @return
+     */
+    private boolean isChosenToBackOff(Thread currentThread, String beanName) {
+        String waitingFor = beanName;
+        long maxThreadId = currentThread.getId();
+        //最多走 等待线程数+1 步, 防止其他线程状态变化的时候在这里死循环
+        for (int i = 0; i <= this.threadsWaitingForCreation.size() && waitingFor != null; i++) {
+            CreationLock lock = this.singletonCreationLocks.get(waitingFor);
+            Thread owner = (lock != null ? lock.getOwnerThread() : null);
+            if (owner == null) {
+                return false;
+            }
+            if (owner == currentThread) {
+                return maxThreadId == currentThread.getId();
+            }
+            maxThreadId = Math.max(maxThreadId, owner.getId());
+            waitingFor = this.threadsWaitingForCreation.get(owner);
+        }
+        return false;
+    }
 
+    private boolean isCreationLockHeldByCurrentThread(String beanName) {
+        CreationLock lock = this.singletonCreationLocks.get(beanName);
+        return lock != null && lock.isHeldByCurrentThread();
     }
 
 
@@ -134,6 +356,14 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
         }
     }
 
+    /**
+     * 单例创建完成(或者失败)之后, 把beanName 从正在创建的容器里移除
+     * @param beanName
+     */
+    protected void afterSingletonCreation(String beanName) {
+        this.singletonsCurrentlyInCreation.remove(beanName);
+    }
+
     public boolean isSingletonCurrentlyInCreation(String beanName) {
         return this.singletonsCurrentlyInCreation.contains(beanName);
     }
@@ -147,14 +377,12 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
     public void registerSingleton(String beanName, Object singletonObject){
         Assert.notNull(beanName, "注册单例对象的时候 beanName 不能为空");
         Assert.notNull(singletonObject, "单例对象不能为空");
-        synchronized (this.singletonObjects) {
-            Object oldObject = this.singletonObjects.get(beanName);
-            if (oldObject != null) {
-                throw new IllegalStateException("不能够注册单列对象 [%s] 因为对应的beanName [%s] 已经被对象 [%s] 给占用",
-                        singletonObject, beanName, oldObject);
-            }
-            addSingleton(beanName, singletonObject);
+        Object oldObject = this.singletonObjects.putIfAbsent(beanName, singletonObject);
+        if (oldObject != null) {
+            throw new IllegalStateException("不能够注册单列对象 [%s] 因为对应的beanName [%s] 已经被对象 [%s] 给占用",
+                    singletonObject, beanName, oldObject);
         }
+        addSingleton(beanName, singletonObject);
     }
 
     /**
@@ -212,17 +440,15 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
     }
 
     protected void addSingleton(String beanName, Object singletonObject) {
-        synchronized (this.singletonObjects) {
-            //把单例放入容器
-            this.singletonObjects.put(beanName, singletonObject);
-            //删除单例创建工厂
-            //@see doCreateBean 方法的时候会放入半成品的创建工厂,主要是用了执行 半成品的后置处理器
-            this.singletonFactories.remove(beanName);
-            //把半成品容器里的删了
-            this.earlySingletonObjects.remove(beanName);
-            //注册名字到容器,正式成为一名单例对象
-            this.registeredSingletons.add(beanName);
-        }
+        //把单例放入容器, 先放入再清理半成品, 这样其他线程在任何时刻都至少能拿到其中一个
+        this.singletonObjects.put(beanName, singletonObject);
+        //删除单例创建工厂
+        //@see doCreateBean 方法的时候会放入半成品的创建工厂,主要是用了执行 半成品的后置处理器
+        this.singletonFactories.remove(beanName);
+        //把半成品容器里的删了
+        this.earlySingletonObjects.remove(beanName);
+        //注册名字到容器,正式成为一名单例对象
+        this.registeredSingletons.add(beanName);
     }
 
     protected Object getCachedObjectForFactoryBean(String beanName) {
@@ -257,11 +483,37 @@ public class DefaultSingletonBeanRegistry implements SingletonBeanRegistry {
     }
 
     protected void removeSingleton(String beanName) {
-        synchronized (this.singletonObjects) {
-            this.singletonObjects.remove(beanName);
-            this.singletonFactories.remove(beanName);
-            this.earlySingletonObjects.remove(beanName);
-            this.registeredSingletons.remove(beanName);
+        this.singletonObjects.remove(beanName);
+        this.singletonFactories.remove(beanName);
+        this.earlySingletonObjects.remove(beanName);
+        this.registeredSingletons.remove(beanName);
+    }
+
+
+    /**
+     * 一个线程里正在进行的单例创建, 从这个线程第一次进入 getSingleton 创建单例开始, 到这个单例创建完成(或者失败)结束
+     */
+    private static class SingletonCreation {
+
+        /** 已经创建完成还没放入单例容器的单例, 以及它们的创建锁(每个多持有一次, 提交或者作废的时候释放) */
+        final Map<String, CreationLock> pending = new LinkedHashMap<>();
+
+        /** 当前线程被选中退让, 这次创建的东西都要作废 */
+        boolean backingOff;
+
+        /** 退让的时候在等待的 beanName */
+        String contendedBeanName;
+    }
+
+    /**
+     * 单例对象的创建锁, 主要是为了能拿到持有锁的线程做死锁检测
+     */
+    private static class CreationLock extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        Thread getOwnerThread() {
+            return getOwner();
         }
     }
 }
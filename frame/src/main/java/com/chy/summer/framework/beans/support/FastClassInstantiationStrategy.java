@@ -0,0 +1,130 @@
+package com.chy.summer.framework.beans.support;
+
+import com.chy.summer.framework.beans.BeanFactory;
+import com.chy.summer.framework.core.cglib.SummerNamingPolicy;
+import com.chy.summer.framework.exception.BeanInstantiationException;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastConstructor;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用 cglib 生成的 FastClass 来调用构造器的实例化策略
+ * <p>
+ * FastClass 是用 ASM 生成的一个类, 里面按下标直接 new 出对象, 调用的时候不走 Constructor.newInstance 的反射检查.
+ * 第一次创建的时候生成, 按构造器缓存在策略里, 同时记在 RootBeanDefinition 上, 后面同一个 bean 再创建就是一次普通的方法调用.
+ * <p>
+ * 只有非单例(原型, request 等作用域)的 bean 会使用 FastClass, 下面这些情况都还是走父类的反射:
+ * <ul>
+ *     <li>单例: 只会创建一次, 生成一个类的开销比一次反射调用大得多, 对启动时间只有坏处</li>
+ *     <li>有方法覆盖(lookup-method 等)的 bean: 需要先生成 cglib 子类, 由父类处理</li>
+ *     <li>生成失败的构造器(比如 private 的构造器): 失败的结果同样按构造器缓存, 不会重复尝试, 也不影响同一个 bean 的其他构造器</li>
+ * </ul>
+ * 所以这个策略不会改变单例 bean 的创建速度, 设置 summer.beans.instantiation.reflective=true 可以让所有 bean 都使用反射
+ */
+@Slf4j
+public class FastClassInstantiationStrategy extends SimpleInstantiationStrategy {
+
+    /**
+     * 不能生成 FastConstructor 的构造器在缓存里的占位
+     */
+    private static final Object UNAVAILABLE = new Object();
+
+    /**
+     * key: 构造器  value: 生成好的 FastConstructor 或者 UNAVAILABLE, 同一个类的多个 bean 定义共用
+     */
+    private final Map<Constructor<?>, Object> fastConstructorCache = new ConcurrentHashMap<>();
+
+    @Override
+    public Object instantiate(RootBeanDefinition bd, String beanName, BeanFactory owner) {
+        if (bd.isSingleton() || bd.hasMethodOverrides()) {
+            return super.instantiate(bd, beanName, owner);
+        }
+        FastConstructor fastConstructor = bd.resolvedFastConstructor;
+        if (fastConstructor == null || fastConstructor.getJavaConstructor().getParameterCount() != 0) {
+            Class<?> clazz = bd.getBeanClass();
+            if (clazz.isInterface()) {
+                throw new BeanInstantiationException("[%s] 是一个接口不能够实例化", clazz);
+            }
+            Constructor<?> constructorToUse;
+            try {
+                constructorToUse = clazz.getDeclaredConstructor();
+            } catch (Throwable ex) {
+                throw new BeanInstantiationException("类 [%s] 的无参构造器没有发现", clazz);
+            }
+            fastConstructor = obtainFastConstructor(bd, beanName, constructorToUse);
+            if (fastConstructor == null) {
+                return super.instantiate(bd, beanName, owner);
+            }
+        }
+        return newInstance(fastConstructor);
+    }
+
+    @Override
+    public Object instantiate(RootBeanDefinition bd, String beanName, BeanFactory owner,
+                              final Constructor<?> ctor, Object... args) {
+        if (bd.isSingleton()) {
+            return super.instantiate(bd, beanName, owner, ctor, args);
+        }
+        FastConstructor fastConstructor = bd.resolvedFastConstructor;
+        if (fastConstructor == null || !ctor.equals(fastConstructor.getJavaConstructor())) {
+            fastConstructor = obtainFastConstructor(bd, beanName, ctor);
+            if (fastConstructor == null) {
+                return super.instantiate(bd, beanName, owner, ctor, args);
+            }
+        }
+        return newInstance(fastConstructor, args);
+    }
+
+    /**
+     * 拿到构造器对应的 FastConstructor 并且记到 bd 上, 不能生成的返回 null
+     * 这里不加锁, 多个线程同时生成的话 cglib 自己有类的缓存, 拿到的是同一个生成类
+     */
+    private FastConstructor obtainFastConstructor(RootBeanDefinition bd, String beanName, Constructor<?> ctor) {
+        Object cached = this.fastConstructorCache.get(ctor);
+        if (cached == null) {
+            FastConstructor generated = generateFastConstructor(beanName, ctor);
+            cached = (generated != null ? generated : UNAVAILABLE);
+            this.fastConstructorCache.putIfAbsent(ctor, cached);
+        }
+        if (cached == UNAVAILABLE) {
+            return null;
+        }
+        FastConstructor fastConstructor = (FastConstructor) cached;
+        bd.resolvedFastConstructor = fastConstructor;
+        return fastConstructor;
+    }
+
+    private FastConstructor generateFastConstructor(String beanName, Constructor<?> ctor) {
+        if (Modifier.isPrivate(ctor.getModifiers())) {
+            return null;
+        }
+        try {
+            FastClass.Generator generator = new FastClass.Generator();
+            generator.setType(ctor.getDeclaringClass());
+            generator.setClassLoader(ctor.getDeclaringClass().getClassLoader());
+            generator.setNamingPolicy(SummerNamingPolicy.INSTANCE);
+            FastClass fastClass = generator.create();
+            if (fastClass.getIndex(ctor.getParameterTypes()) >= 0) {
+                return fastClass.getConstructor(ctor);
+            }
+        } catch (Throwable ex) {
+            log.debug("bean [{}] 生成 FastClass 失败, 使用反射实例化 原因: [{}]", beanName, ex.getMessage());
+        }
+        return null;
+    }
+
+    private Object newInstance(FastConstructor fastConstructor, Object... args) {
+        try {
+            return fastConstructor.newInstance(args);
+        } catch (InvocationTargetException ex) {
+            Throwable targetException = ex.getTargetException();
+            throw new BeanInstantiationException(String.format("创建bean异常: [%s]", targetException.getMessage()), targetException);
+        }
+    }
+}
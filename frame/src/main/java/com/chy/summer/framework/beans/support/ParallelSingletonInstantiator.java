@@ -0,0 +1,237 @@
+package com.chy.summer.framework.beans.support;
+
+import com.chy.summer.framework.annotation.beans.Autowired;
+import com.chy.summer.framework.exception.BeanCreationException;
+import com.chy.summer.framework.exception.BeansException;
+import com.chy.summer.framework.util.AnnotatedElementUtils;
+import com.chy.summer.framework.util.ClassUtils;
+import com.chy.summer.framework.util.ObjectUtils;
+import com.chy.summer.framework.util.ReflectionUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并行的预先初始化单例对象
+ * <p>
+ * 先用 RootBeanDefinition 推算出单例之间的依赖关系(dependsOn / 工厂bean / 构造器参数 / @Autowired 注入点)构成一张有向图,
+ * 没有依赖关系的 bean 会在 ForkJoinPool 里同时创建, 一个 bean 只有在它依赖的 bean 都创建完成之后才会开始创建.
+ * <p>
+ * 这张图只是用来排序的, 真正的创建还是走 getBean 的正常流程, 所以就算漏掉了某条依赖也只是在当前线程里顺带把依赖给创建了.
+ * 有环的那部分 bean 不参与并行, 最后在调用线程里按注册顺序串行创建, 循环依赖依然走半成品提前暴露的那一套
+ */
+@Slf4j
+class ParallelSingletonInstantiator {
+
+    private final DefaultListableBeanFactory beanFactory;
+
+    private final int parallelism;
+
+    ParallelSingletonInstantiator(DefaultListableBeanFactory beanFactory, int parallelism) {
+        this.beanFactory = beanFactory;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 并行创建传入的单例对象, 传入的 beanName 必须都是非抽象,非懒加载的单例
+     *
+     * @param beanNames
+     */
+    public void instantiate(List<String> beanNames) {
+        Map<String, Set<String>> dependencies = buildDependencyGraph(beanNames);
+        List<String> sorted = new ArrayList<>(beanNames.size());
+        List<String> cyclic = new ArrayList<>();
+        topologicalSort(beanNames, dependencies, sorted, cyclic);
+
+        log.debug("并行创建单例对象 : 共 [{}] 个, 其中 [{}] 个存在循环依赖将串行创建, 并行度 [{}]",
+                beanNames.size(), cyclic.size(), this.parallelism);
+
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism,
+                new PreInstantiationThreadFactory(Thread.currentThread().getContextClassLoader()), null, false);
+        try {
+            Map<String, CompletableFuture<Void>> futures = new HashMap<>(sorted.size());
+            //按照拓扑顺序来构建 future, 这样每个bean 在构建的时候它所依赖的 future 都已经存在了
+            for (String beanName : sorted) {
+                CompletableFuture<?>[] upstream = dependencies.get(beanName).stream()
+                        .map(futures::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                CompletableFuture<Void> future = CompletableFuture.allOf(upstream)
+                        .thenRunAsync(() -> this.beanFactory.getBean(beanName), pool);
+                futures.put(beanName, future);
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof BeansException) {
+                throw (BeansException) cause;
+            }
+            throw new BeanCreationException("并行创建单例对象失败", cause);
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        //有环的部分,交给调用线程按顺序串行创建,循环依赖靠半成品对象解决
+        for (String beanName : cyclic) {
+            this.beanFactory.getBean(beanName);
+        }
+    }
+
+    /**
+     * Kahn 算法做拓扑排序, 排不进去的就是环上(或者依赖了环)的 bean
+     */
+    private void topologicalSort(List<String> beanNames, Map<String, Set<String>> dependencies,
+                                 List<String> sorted, List<String> cyclic) {
+        Map<String, Integer> inDegree = new HashMap<>(beanNames.size());
+        Map<String, List<String>> dependents = new HashMap<>(beanNames.size());
+        for (String beanName : beanNames) {
+            inDegree.put(beanName, dependencies.get(beanName).size());
+            for (String dependency : dependencies.get(beanName)) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(beanName);
+            }
+        }
+
+        Deque<String> ready = new ArrayDeque<>();
+        for (String beanName : beanNames) {
+            if (inDegree.get(beanName) == 0) {
+                ready.add(beanName);
+            }
+        }
+        while (!ready.isEmpty()) {
+            String beanName = ready.poll();
+            sorted.add(beanName);
+            for (String dependent : dependents.getOrDefault(beanName, Collections.emptyList())) {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        Set<String> sortedSet = new HashSet<>(sorted);
+        for (String beanName : beanNames) {
+            if (!sortedSet.contains(beanName)) {
+                cyclic.add(beanName);
+            }
+        }
+    }
+
+    /**
+     * 构建依赖关系图 key: beanName  value: 这个bean 依赖的(同样需要预先初始化的) beanName
+     */
+    private Map<String, Set<String>> buildDependencyGraph(List<String> beanNames) {
+        Set<String> candidates = new HashSet<>(beanNames);
+        Map<String, Set<String>> graph = new LinkedHashMap<>(beanNames.size());
+        for (String beanName : beanNames) {
+            Set<String> dependencies = new LinkedHashSet<>();
+            try {
+                collectDependencies(beanName, this.beanFactory.getMergedLocalBeanDefinition(beanName), dependencies);
+            } catch (Exception ex) {
+                //推算失败也没关系,这个bean 在创建的时候会自己把依赖给创建出来
+                log.debug("推算 bean [{}] 的依赖关系失败 原因: [{}]", beanName, ex.getMessage());
+            }
+            dependencies.retainAll(candidates);
+            dependencies.remove(beanName);
+            graph.put(beanName, dependencies);
+        }
+        return graph;
+    }
+
+    private void collectDependencies(String beanName, RootBeanDefinition mbd, Set<String> dependencies) {
+        //1. 显式声明的 dependsOn
+        if (!ObjectUtils.isEmpty(mbd.getDependsOn())) {
+            dependencies.addAll(Arrays.asList(mbd.getDependsOn()));
+        }
+
+        //2. @Bean 方法所在的 工厂bean, 以及工厂方法的参数
+        String factoryBeanName = mbd.getFactoryBeanName();
+        if (factoryBeanName != null) {
+            dependencies.add(factoryBeanName);
+            Class<?> factoryClass = this.beanFactory.getType(factoryBeanName);
+            if (factoryClass != null) {
+                for (Method method : ReflectionUtils.getUniqueDeclaredMethods(ClassUtils.getUserClass(factoryClass))) {
+                    if (mbd.isFactoryMethod(method)) {
+                        addTypeDependencies(method.getParameterTypes(), dependencies);
+                    }
+                }
+            }
+            return;
+        }
+
+        Class<?> beanClass = this.beanFactory.resolveBeanClass(mbd);
+        if (beanClass == null) {
+            return;
+        }
+
+        //3. 构造器参数, 只有一个构造器 或者 打了 @Autowired 的构造器才会被用来注入
+        Constructor<?>[] constructors = beanClass.getDeclaredConstructors();
+        for (Constructor<?> constructor : constructors) {
+            if (constructors.length == 1 || isAutowired(constructor)) {
+                addTypeDependencies(constructor.getParameterTypes(), dependencies);
+            }
+        }
+
+        //4. @Autowired 的属性和方法, 父类的也要算上
+        Class<?> targetClass = beanClass;
+        do {
+            for (Field field : targetClass.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && isAutowired(field)) {
+                    addTypeDependencies(new Class<?>[]{field.getType()}, dependencies);
+                }
+            }
+            for (Method method : targetClass.getDeclaredMethods()) {
+                if (!Modifier.isStatic(method.getModifiers()) && isAutowired(method)) {
+                    addTypeDependencies(method.getParameterTypes(), dependencies);
+                }
+            }
+            targetClass = targetClass.getSuperclass();
+        } while (targetClass != null && targetClass != Object.class);
+    }
+
+    private boolean isAutowired(java.lang.reflect.AnnotatedElement element) {
+        return element.getAnnotations().length > 0
+                && AnnotatedElementUtils.getMergedAnnotationAttributes(element, Autowired.class) != null;
+    }
+
+    private void addTypeDependencies(Class<?>[] types, Set<String> dependencies) {
+        for (Class<?> type : types) {
+            if (type.isPrimitive() || type == String.class) {
+                continue;
+            }
+            dependencies.addAll(Arrays.asList(this.beanFactory.getBeanNamesForType(type, true, false)));
+        }
+    }
+
+
+    /**
+     * 预先初始化用的线程工厂, 主要是把调用线程的 ClassLoader 传递下去, 并且给线程起个名字方便排查
+     */
+    private static class PreInstantiationThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final ClassLoader classLoader;
+
+        PreInstantiationThreadFactory(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("summer-pre-instantiation-" + thread.getPoolIndex());
+            thread.setContextClassLoader(this.classLoader);
+            return thread;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.chy.summer.framework.util.ClassUtils;
 import javax.annotation.Nullable;
 import lombok.Getter;
 import lombok.Setter;
+import net.sf.cglib.reflect.FastConstructor;
 
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Executable;
@@ -49,6 +50,11 @@ public class RootBeanDefinition extends AbstractBeanDefinition {
 
     Object[] preparedConstructorArguments;
 
+    /**
+     * 非单例 bean 用 FastClass 生成的构造器调用, 由 FastClassInstantiationStrategy 在第一次创建的时候设置
+     */
+    volatile FastConstructor resolvedFastConstructor;
+
 
     boolean postProcessed = false;
 
@@ -5,7 +5,11 @@ import com.chy.summer.framework.beans.config.ConfigurableListableBeanFactory;
 import com.chy.summer.framework.beans.factory.DependencyDescriptor;
 import com.chy.summer.framework.util.Assert;
 import com.chy.summer.framework.util.ReflectionUtils;
+import lombok.extern.slf4j.Slf4j;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -13,17 +17,37 @@ import java.util.Set;
 /**
  * 这个类是用来执行 属性的注入的
  * 需要注入的属性字段 存放在 member属性里面,所以也就是说每一个 讲会注入的属性将会有一个 AutowiredFieldElement 对象
+ * <p>
+ * 注入的是 bean 的时候不缓存对象本身(原型的依赖每次都要是新的), 而是每次都去容器里解析,
+ * 容器里对同一个注入点有快捷方式缓存, 第二次开始解析只是一次 getBean.
+ * 属性的赋值用 MethodHandle 来做, 第一次注入的时候生成, 后面重复创建原型对象的时候不用再走 Field.set 的反射检查
  */
+@Slf4j
 public class AutowiredFieldElement extends InjectedElement {
 
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
     private final boolean required;
 
     private ConfigurableListableBeanFactory beanFactory;
 
+    /**
+     * 这个属性的依赖描述, 同一个注入点只生成一次, 容器里的快捷方式缓存用它做 key
+     */
+    private volatile DependencyDescriptor descriptor;
+
+    /**
+     * 不是 bean 的注入值(比如 @Value 解析出来的配置), 解析一次就缓存起来
+     */
     private volatile Object cachedFieldValue;
 
     private volatile boolean cached = false;
 
+    /**
+     * 给属性赋值用的 MethodHandle, 类型已经适配成 (Object,Object)void
+     */
+    private volatile MethodHandle fieldSetter;
+
     public AutowiredFieldElement(Field field, ConfigurableListableBeanFactory beanFactory, boolean required) {
         super(field, null);
         Assert.state(beanFactory != null, "beanFactory 不能是Null");
@@ -35,10 +59,9 @@ public class AutowiredFieldElement extends InjectedElement {
     public void inject(Object bean, String beanName, PropertyValues pvs) throws Throwable {
         Field field = (Field) this.member;
         Object value = getFieldValue(field, bean, beanName);
-        //如果获取到了,就用反射把他设置进去
+        //如果获取到了,就把他设置进去
         if (value != null) {
-            ReflectionUtils.makeAccessible(field);
-            field.set(bean, value);
+            obtainFieldSetter(field).invokeExact(bean, value);
         }
     }
 
@@ -46,23 +69,44 @@ public class AutowiredFieldElement extends InjectedElement {
         if (cached) {
             return cachedFieldValue;
         }
-        //构造依赖注入的实体对象
-        DependencyDescriptor desc = new DependencyDescriptor(field, this.required);
-        //设置一下这个 需要注入的对象所依赖的父类
-        desc.setContainingClass(bean.getClass());
+        DependencyDescriptor desc = this.descriptor;
+        if (desc == null) {
+            //构造依赖注入的实体对象
+            desc = new DependencyDescriptor(field, this.required);
+            //设置一下这个 需要注入的对象所依赖的父类
+            desc.setContainingClass(bean.getClass());
+            this.descriptor = desc;
+        }
         Set<String> autowiredBeanNames = new LinkedHashSet<>(1);
         //开始去 ioc容器里获取 这个 依赖属性 需要注入的对象
-        Object result;
-        synchronized (this) {
-            if (cached) {
-                return cachedFieldValue;
-            }
-            //去ioc容器中寻找依赖
-            result = beanFactory.resolveDependency(desc, beanName, autowiredBeanNames);
-            cached = true;
+        //这里不加锁,解析依赖的时候可能会去创建别的bean,加锁的话会和 bean的创建锁 互相等待, 多个线程同时解析拿到的也是同一个单例
+        Object result = beanFactory.resolveDependency(desc, beanName, autowiredBeanNames);
+        //注入的不是容器里的 bean, 结果不会变, 直接缓存
+        if (autowiredBeanNames.isEmpty()) {
             cachedFieldValue = result;
+            cached = true;
         }
         return result;
     }
 
+    /**
+     * 获取给属性赋值用的 MethodHandle
+     * final 的属性 MethodHandle 不允许赋值, 这种情况退回到 Field.set
+     */
+    private MethodHandle obtainFieldSetter(Field field) throws ReflectiveOperationException {
+        MethodHandle setter = this.fieldSetter;
+        if (setter == null) {
+            ReflectionUtils.makeAccessible(field);
+            try {
+                setter = MethodHandles.lookup().unreflectSetter(field);
+            } catch (IllegalAccessException ex) {
+                log.debug("属性 [{}] 不能生成 MethodHandle, 使用反射赋值 原因: [{}]", field, ex.getMessage());
+                setter = MethodHandles.lookup().findVirtual(Field.class, "set", SETTER_TYPE).bindTo(field);
+            }
+            setter = setter.asType(SETTER_TYPE);
+            this.fieldSetter = setter;
+        }
+        return setter;
+    }
+
 }
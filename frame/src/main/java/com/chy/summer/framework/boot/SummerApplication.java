@@ -6,6 +6,8 @@ import com.chy.summer.framework.beans.factory.annotation.AutowiredAnnotationBean
 import com.chy.summer.framework.boot.ansi.AnsiColor;
 import com.chy.summer.framework.boot.ansi.AnsiOutput;
 import com.chy.summer.framework.boot.ansi.AnsiStyle;
+import com.chy.summer.framework.boot.context.metrics.BufferingApplicationStartup;
+import com.chy.summer.framework.boot.context.metrics.StartupTimeline;
 import com.chy.summer.framework.boot.listeners.SummerApplicationRunListener;
 import com.chy.summer.framework.boot.listeners.SummerApplicationRunListeners;
 import com.chy.summer.framework.context.ApplicationContext;
@@ -18,7 +20,9 @@ import com.chy.summer.framework.core.GenericTypeResolver;
 import com.chy.summer.framework.core.evn.ConfigurableEnvironment;
 import com.chy.summer.framework.core.evn.propertysource.*;
 import com.chy.summer.framework.core.io.ResourceLoader;
+import com.chy.summer.framework.core.SummerProperties;
 import com.chy.summer.framework.core.io.support.SummerFactoriesLoader;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
 import com.chy.summer.framework.core.ordered.AnnotationAwareOrderComparator;
 import com.chy.summer.framework.util.Assert;
 import com.chy.summer.framework.util.ClassUtils;
@@ -29,9 +33,15 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Slf4j
 public class SummerApplication {
@@ -78,6 +88,34 @@ public class SummerApplication {
     @Setter
     private boolean addCommandLineProperties = true;
 
+    /**
+     * 设置是否注册JVM关闭钩子, JVM退出的时候关闭容器
+     */
+    @Setter
+    private boolean registerShutdownHook = true;
+
+    /**
+     * 启动时间线输出成 json 文件的路径, 设置了以后会自动使用 BufferingApplicationStartup 来记录启动过程
+     */
+    public static final String STARTUP_TIMELINE_JSON_PROPERTY_NAME = "summer.startup.timeline.json";
+
+    /**
+     * 启动时间线输出成 flame graph (collapsed stack 格式) 文件的路径, 同上
+     */
+    public static final String STARTUP_TIMELINE_FLAMEGRAPH_PROPERTY_NAME = "summer.startup.timeline.flamegraph";
+
+    /**
+     * 启动完成以后 日志里打印最慢的 bean 的数量
+     */
+    private static final int SLOWEST_BEANS_TO_LOG = 10;
+
+    /**
+     * 启动步骤的记录器, 会设置到 applicationContext 里, 默认什么都不记录
+     */
+    @Getter
+    @Setter
+    private ApplicationStartup applicationStartup = ApplicationStartup.DEFAULT;
+
 
     public SummerApplication(Class<?>... primarySources) {
         this(null,primarySources);
@@ -222,6 +260,7 @@ public class SummerApplication {
             printBanner(environment);
             //把 applicationContext 给实例化完成了,这里默认用 AnnotationConfigServletWebServerApplicationContext
             context = createApplicationContext();
+            context.setApplicationStartup(deduceApplicationStartup());
             //对context 做一些前期的配置工作,把入口类给注册进入ioc容器 把一些事先准备好的后置处理器给注册进入IOC容器,为后面的refresh 做准备
             //@see load(ApplicationContext, Set)
             prepareContext(context, environment, listeners, applicationArguments);
@@ -232,6 +271,8 @@ public class SummerApplication {
             stopWatch.stop();
             //打印启动时间
             startupInfoLogger(stopWatch);
+            //如果记录了启动时间线, 打印最慢的几个 bean, 配置了输出路径的话写到文件里
+            reportStartupTimeline(context.getApplicationStartup());
             //监听器开始
             listeners.started(context);
             //在整个boot项目初始化完成之后干一些事情 一个扩展点
@@ -257,6 +298,52 @@ public class SummerApplication {
         System.out.println(AnsiOutput.toString(AnsiColor.GREEN,text, AnsiStyle.NORMAL));
     }
 
+    /**
+     * 配置了时间线的输出路径, 但是没有手动设置记录器的时候, 自动换成 BufferingApplicationStartup
+     */
+    private ApplicationStartup deduceApplicationStartup() {
+        if (this.applicationStartup == ApplicationStartup.DEFAULT
+                && (SummerProperties.getProperty(STARTUP_TIMELINE_JSON_PROPERTY_NAME) != null
+                || SummerProperties.getProperty(STARTUP_TIMELINE_FLAMEGRAPH_PROPERTY_NAME) != null)) {
+            this.applicationStartup = new BufferingApplicationStartup();
+        }
+        return this.applicationStartup;
+    }
+
+    private void reportStartupTimeline(ApplicationStartup applicationStartup) {
+        if (!(applicationStartup instanceof BufferingApplicationStartup)) {
+            return;
+        }
+        BufferingApplicationStartup bufferingStartup = (BufferingApplicationStartup) applicationStartup;
+        StartupTimeline timeline = bufferingStartup.getBufferedTimeline();
+        if (bufferingStartup.getDroppedCount() > 0) {
+            log.warn("启动时间线超出容量, 丢弃了 [{}] 个步骤", bufferingStartup.getDroppedCount());
+        }
+        for (StartupTimeline.TimelineEntry entry : timeline.getSlowest("summer.beans.instantiate", SLOWEST_BEANS_TO_LOG)) {
+            log.info("bean [{}] 创建耗时 [{} ms]", entry.getTags().get("beanName"),
+                    TimeUnit.NANOSECONDS.toMillis(entry.getDurationNanos()));
+        }
+        writeStartupTimeline(SummerProperties.getProperty(STARTUP_TIMELINE_JSON_PROPERTY_NAME), timeline::toJson);
+        writeStartupTimeline(SummerProperties.getProperty(STARTUP_TIMELINE_FLAMEGRAPH_PROPERTY_NAME), timeline::toFlameGraph);
+    }
+
+    private void writeStartupTimeline(String location, Supplier<String> content) {
+        if (location == null) {
+            return;
+        }
+        try {
+            Path path = Paths.get(location);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, content.get().getBytes(StandardCharsets.UTF_8));
+            log.info("启动时间线已经写入 [{}]", path.toAbsolutePath());
+        } catch (IOException ex) {
+            //输出失败不应该影响启动
+            log.warn("启动时间线写入 [{}] 失败 原因: [{}]", location, ex.getMessage());
+        }
+    }
+
     private void callRunners(ConfigurableApplicationContext context, ApplicationArguments applicationArguments) {
     }
 
@@ -265,6 +352,9 @@ public class SummerApplication {
 
     private void refreshContext(ConfigurableApplicationContext context) {
         refresh(context);
+        if (this.registerShutdownHook) {
+            context.registerShutdownHook();
+        }
     }
 
     protected void refresh(ApplicationContext applicationContext) {
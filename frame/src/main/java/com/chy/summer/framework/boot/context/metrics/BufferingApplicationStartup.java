@@ -0,0 +1,178 @@
+package com.chy.summer.framework.boot.context.metrics;
+
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
+import com.chy.summer.framework.core.metrics.StartupStep;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 把启动步骤缓存在内存里的 ApplicationStartup, 启动完成以后可以拿到完整的时间线 {@link StartupTimeline}
+ * <p>
+ * 每个线程各自维护一个正在进行中的步骤栈, 新开始的步骤的父步骤就是当前线程栈顶的那个步骤,
+ * 所以并行创建 bean 的时候各个线程记录的步骤也不会互相串掉.
+ * 缓存的步骤数量有上限, 超出的部分直接丢弃, 丢弃的数量可以通过 {@link #getDroppedCount()} 拿到
+ */
+@Slf4j
+public class BufferingApplicationStartup implements ApplicationStartup {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int capacity;
+
+    /**
+     * 记录器创建的时间, 时间线里的时间都是相对这个时间的
+     */
+    private final Instant startTime = Instant.now();
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong idSequence = new AtomicLong();
+
+    private final ThreadLocal<Deque<BufferedStartupStep>> activeSteps = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final Queue<StartupTimeline.TimelineEntry> events = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger estimatedSize = new AtomicInteger();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public BufferingApplicationStartup() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BufferingApplicationStartup(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public StartupStep start(String name) {
+        Deque<BufferedStartupStep> stack = this.activeSteps.get();
+        BufferedStartupStep parent = stack.peek();
+        BufferedStartupStep step = new BufferedStartupStep(this.idSequence.incrementAndGet(), name,
+                parent != null ? parent.getId() : null, System.nanoTime());
+        stack.push(step);
+        return step;
+    }
+
+    private void record(BufferedStartupStep step, long endNanos) {
+        Deque<BufferedStartupStep> stack = this.activeSteps.get();
+        //正常情况下结束的一定是栈顶的步骤, 这里兼容一下没有按顺序结束的情况
+        if (stack.peek() == step) {
+            stack.pop();
+        } else {
+            stack.remove(step);
+        }
+        if (stack.isEmpty()) {
+            this.activeSteps.remove();
+        }
+
+        if (this.estimatedSize.incrementAndGet() > this.capacity) {
+            this.estimatedSize.decrementAndGet();
+            this.droppedCount.incrementAndGet();
+            return;
+        }
+        this.events.add(new StartupTimeline.TimelineEntry(step.getId(), step.getParentId(), step.getName(),
+                step.getTags(), step.startNanos - this.startNanos, endNanos - this.startNanos, step.threadName));
+    }
+
+    /**
+     * 获取当前缓存的时间线, 不会清空缓存
+     */
+    public StartupTimeline getBufferedTimeline() {
+        return new StartupTimeline(this.startTime, new ArrayList<>(this.events));
+    }
+
+    /**
+     * 获取当前缓存的时间线, 并且清空缓存
+     */
+    public StartupTimeline drainBufferedTimeline() {
+        List<StartupTimeline.TimelineEntry> entries = new ArrayList<>();
+        StartupTimeline.TimelineEntry entry;
+        while ((entry = this.events.poll()) != null) {
+            entries.add(entry);
+            this.estimatedSize.decrementAndGet();
+        }
+        return new StartupTimeline(this.startTime, entries);
+    }
+
+    /**
+     * 因为超出容量被丢弃的步骤数量
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+
+    private class BufferedStartupStep implements StartupStep {
+
+        private final long id;
+
+        private final String name;
+
+        private final Long parentId;
+
+        private final long startNanos;
+
+        private final String threadName = Thread.currentThread().getName();
+
+        private final Map<String, String> tags = new LinkedHashMap<>();
+
+        private volatile boolean ended = false;
+
+        BufferedStartupStep(long id, String name, Long parentId, long startNanos) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public long getId() {
+            return this.id;
+        }
+
+        @Override
+        public Long getParentId() {
+            return this.parentId;
+        }
+
+        @Override
+        public StartupStep tag(String key, String value) {
+            if (this.ended) {
+                throw new IllegalStateException("步骤 [" + this.name + "] 已经结束了, 不能再打标签");
+            }
+            this.tags.put(key, value);
+            return this;
+        }
+
+        @Override
+        public StartupStep tag(String key, Supplier<String> value) {
+            return tag(key, value.get());
+        }
+
+        @Override
+        public Map<String, String> getTags() {
+            return Collections.unmodifiableMap(this.tags);
+        }
+
+        @Override
+        public void end() {
+            if (this.ended) {
+                return;
+            }
+            this.ended = true;
+            record(this, System.nanoTime());
+        }
+    }
+}
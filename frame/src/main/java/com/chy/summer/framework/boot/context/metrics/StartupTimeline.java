@@ -0,0 +1,214 @@
+package com.chy.summer.framework.boot.context.metrics;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动过程的时间线, 由 {@link BufferingApplicationStartup} 生成
+ * <p>
+ * 可以输出成 json, 或者 flame graph 工具(如 flamegraph.pl / speedscope) 能直接读取的 collapsed stack 格式
+ */
+public class StartupTimeline {
+
+    /**
+     * 记录开始的时间
+     */
+    @Getter
+    private final Instant startTime;
+
+    /**
+     * 按开始时间排好序的所有步骤
+     */
+    @Getter
+    private final List<TimelineEntry> events;
+
+    StartupTimeline(Instant startTime, List<TimelineEntry> events) {
+        this.startTime = startTime;
+        events.sort(Comparator.comparingLong(TimelineEntry::getStartNanos).thenComparingLong(TimelineEntry::getId));
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * 获取耗时最长的几个步骤
+     *
+     * @param name 只看这个名称的步骤, 为 null 就是所有步骤
+     * @param limit 最多返回几个
+     */
+    public List<TimelineEntry> getSlowest(String name, int limit) {
+        List<TimelineEntry> result = new ArrayList<>();
+        for (TimelineEntry entry : this.events) {
+            if (name == null || name.equals(entry.getName())) {
+                result.add(entry);
+            }
+        }
+        result.sort(Comparator.comparingLong(TimelineEntry::getDurationNanos).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 输出成 json 格式
+     * <pre>
+     * {"startTime":"...","events":[{"id":1,"parentId":null,"name":"...","thread":"main",
+     *   "startNanos":0,"endNanos":100,"durationNanos":100,"tags":{"beanName":"xxx"}}]}
+     * </pre>
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(this.events.size() * 160 + 64);
+        json.append("{\"startTime\":");
+        appendJsonString(json, this.startTime.toString());
+        json.append(",\"events\":[");
+        for (int i = 0; i < this.events.size(); i++) {
+            TimelineEntry entry = this.events.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(entry.getId())
+                    .append(",\"parentId\":").append(entry.getParentId())
+                    .append(",\"name\":");
+            appendJsonString(json, entry.getName());
+            json.append(",\"thread\":");
+            appendJsonString(json, entry.getThreadName());
+            json.append(",\"startNanos\":").append(entry.getStartNanos())
+                    .append(",\"endNanos\":").append(entry.getEndNanos())
+                    .append(",\"durationNanos\":").append(entry.getDurationNanos())
+                    .append(",\"tags\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> tag : entry.getTags().entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJsonString(json, tag.getKey());
+                json.append(':');
+                appendJsonString(json, tag.getValue());
+            }
+            json.append("}}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * 输出成 collapsed stack 格式, 每一行是 "父步骤;子步骤;孙步骤 自身耗时(微秒)"
+     * 自身耗时 = 步骤的耗时 - 子步骤的耗时, 相同调用栈的会合并累加
+     */
+    public String toFlameGraph() {
+        Map<Long, TimelineEntry> entriesById = new HashMap<>(this.events.size() * 2);
+        Map<Long, Long> childrenNanos = new HashMap<>();
+        for (TimelineEntry entry : this.events) {
+            entriesById.put(entry.getId(), entry);
+            if (entry.getParentId() != null) {
+                childrenNanos.merge(entry.getParentId(), entry.getDurationNanos(), Long::sum);
+            }
+        }
+
+        Map<String, Long> stacks = new LinkedHashMap<>();
+        for (TimelineEntry entry : this.events) {
+            long selfNanos = entry.getDurationNanos() - childrenNanos.getOrDefault(entry.getId(), 0L);
+            long selfMicros = TimeUnit.NANOSECONDS.toMicros(Math.max(selfNanos, 0L));
+            if (selfMicros == 0) {
+                continue;
+            }
+            Deque<String> frames = new ArrayDeque<>();
+            for (TimelineEntry current = entry; current != null;
+                 current = current.getParentId() != null ? entriesById.get(current.getParentId()) : null) {
+                frames.push(current.getFrameName());
+            }
+            stacks.merge(String.join(";", frames), selfMicros, Long::sum);
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+            result.append(stack.getKey()).append(' ').append(stack.getValue()).append('\n');
+        }
+        return result.toString();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+
+    /**
+     * 时间线上的一个步骤, 时间都是相对记录开始时间的纳秒数
+     */
+    @Getter
+    public static class TimelineEntry {
+
+        private final long id;
+
+        private final Long parentId;
+
+        private final String name;
+
+        private final Map<String, String> tags;
+
+        private final long startNanos;
+
+        private final long endNanos;
+
+        private final String threadName;
+
+        TimelineEntry(long id, Long parentId, String name, Map<String, String> tags,
+                      long startNanos, long endNanos, String threadName) {
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.tags = tags;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.threadName = threadName;
+        }
+
+        public long getDurationNanos() {
+            return this.endNanos - this.startNanos;
+        }
+
+        /**
+         * 在 flame graph 里显示的名称, 有 beanName 或者 postProcessor 标签的会带上, 方便定位到具体是哪个 bean
+         * 分号和空格是 collapsed stack 格式里的分隔符, 这里替换掉
+         */
+        String getFrameName() {
+            String detail = this.tags.get("beanName");
+            if (detail == null) {
+                detail = this.tags.get("postProcessor");
+            }
+            String frame = detail != null ? this.name + "[" + detail + "]" : this.name;
+            return frame.replace(';', ',').replace(' ', '_');
+        }
+    }
+}
@@ -2,7 +2,7 @@ package com.chy.summer.framework.context;
 
 import com.chy.summer.framework.beans.BeanFactory;
 
-public interface ApplicationContext extends BeanFactory {
+public interface ApplicationContext extends BeanFactory, ApplicationEventPublisher {
 
     ApplicationContext getParent();
 
@@ -0,0 +1,31 @@
+package com.chy.summer.framework.context;
+
+import com.chy.summer.framework.context.event.ApplicationEvent;
+import com.chy.summer.framework.context.event.PayloadApplicationEvent;
+
+/**
+ * 事件发布者
+ * 发布的事件会交给所有匹配的监听器, 每个监听器按照自己的投递方式(见 EventDelivery)接收
+ */
+public interface ApplicationEventPublisher {
+
+    /**
+     * 发布一个事件
+     * @param event 需要发布的事件
+     */
+    void publishEvent(ApplicationEvent event);
+
+    /**
+     * 发布任意对象, 不是 ApplicationEvent 的对象会包装成 PayloadApplicationEvent
+     * @param event 需要发布的对象
+     */
+    default void publishEvent(Object event) {
+        if (event instanceof ApplicationEvent) {
+            publishEvent((ApplicationEvent) event);
+        }
+        else {
+            publishEvent(new PayloadApplicationEvent<>(this, event));
+        }
+    }
+
+}
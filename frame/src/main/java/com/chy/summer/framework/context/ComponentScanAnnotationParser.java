@@ -29,16 +29,26 @@ public class ComponentScanAnnotationParser {
     private final Environment environment;
     private final BeanDefinitionRegistry resourceLoader;
     private final BeanNameGenerator beanNameGenerator;
+    private final MetadataReaderFactory metadataReaderFactory;
 
     public ComponentScanAnnotationParser(Environment environment,
                                          ResourceLoader resourceLoader,
                                          BeanNameGenerator componentScanBeanNameGenerator,
                                          BeanDefinitionRegistry registry) {
+        this(environment, resourceLoader, componentScanBeanNameGenerator, registry, null);
+    }
+
+    public ComponentScanAnnotationParser(Environment environment,
+                                         ResourceLoader resourceLoader,
+                                         BeanNameGenerator componentScanBeanNameGenerator,
+                                         BeanDefinitionRegistry registry,
+                                         MetadataReaderFactory metadataReaderFactory) {
 
         this.registry = registry;
         this.environment = environment;
         this.resourceLoader = registry;
         this.beanNameGenerator = componentScanBeanNameGenerator;
+        this.metadataReaderFactory = metadataReaderFactory;
 
     }
 
@@ -57,6 +67,10 @@ public class ComponentScanAnnotationParser {
             beanNameGenerator = BeanUtils.instantiateClass(generatorClass);
         }
         scanner.setBeanNameGenerator(beanNameGenerator);
+        //和配置类解析器共用同一个元数据读取器工厂, 扫描时解析过的类后面解析配置类的时候就不用再解析一遍了
+        if (this.metadataReaderFactory != null) {
+            scanner.setMetadataReaderFactory(this.metadataReaderFactory);
+        }
 
         //下面开始处理扫描路径
         //这是一个扫描路径的容器
@@ -1,7 +1,9 @@
 package com.chy.summer.framework.context;
 
 import com.chy.summer.framework.beans.config.ConfigurableListableBeanFactory;
+import com.chy.summer.framework.context.event.ApplicationListener;
 import com.chy.summer.framework.core.evn.ConfigurableEnvironment;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
 
 public interface ConfigurableApplicationContext extends ApplicationContext {
 
@@ -10,4 +12,26 @@ public interface ConfigurableApplicationContext extends ApplicationContext {
     ConfigurableEnvironment getEnvironment();
 
     ConfigurableListableBeanFactory getBeanFactory();
+
+    /**
+     * 添加一个监听器, 容器已经初始化好事件广播器的时候直接注册到广播器里
+     */
+    void addApplicationListener(ApplicationListener<?> listener);
+
+    /**
+     * 设置启动步骤的记录器, 用来记录 refresh 过程中每个阶段的耗时
+     */
+    void setApplicationStartup(ApplicationStartup applicationStartup);
+
+    ApplicationStartup getApplicationStartup();
+
+    /**
+     * 关闭容器, 发布 ContextClosedEvent, 重复调用没有效果
+     */
+    void close();
+
+    /**
+     * 注册JVM关闭钩子, JVM退出的时候关闭容器
+     */
+    void registerShutdownHook();
 }
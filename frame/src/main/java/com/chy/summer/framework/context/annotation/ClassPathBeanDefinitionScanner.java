@@ -13,30 +13,47 @@ import com.chy.summer.framework.beans.config.BeanDefinitionRegistry;
 import com.chy.summer.framework.beans.support.BeanDefinitionReaderUtils;
 import com.chy.summer.framework.beans.support.BeanNameGenerator;
 import com.chy.summer.framework.context.annotation.utils.AnnotationConfigUtils;
+import com.chy.summer.framework.context.index.CandidateComponentsIndex;
+import com.chy.summer.framework.context.index.CandidateComponentsIndexLoader;
 import com.chy.summer.framework.core.io.support.PathMatchingResourcePatternResolver;
 import com.chy.summer.framework.core.io.support.Resource;
 import com.chy.summer.framework.core.io.support.ResourcePatternResolver;
 import com.chy.summer.framework.core.type.AnnotationMetadata;
+import com.chy.summer.framework.core.type.classreading.CachingMetadataReaderFactory;
 import com.chy.summer.framework.core.type.classreading.DefaultMetadataReaderFactory;
 import com.chy.summer.framework.core.type.classreading.MetadataReader;
 import com.chy.summer.framework.core.type.classreading.MetadataReaderFactory;
 import com.chy.summer.framework.core.type.filter.AnnotationTypeFilter;
 import com.chy.summer.framework.core.type.filter.TypeFilter;
+import com.chy.summer.framework.util.AnnotatedElementUtils;
 import com.chy.summer.framework.util.ClassUtils;
+import com.chy.summer.framework.core.SummerProperties;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.lang.annotation.Annotation;
+import java.util.*;
 
 /**
  * 定义bean的扫描器，检测指定包路径上的所有class，找出bean的候选类，
  * 使用指定的注册器注册相应的bean。
  * 默认扫描带有@component、@repository、@service或@controller的类
  */
+@Slf4j
 public class ClassPathBeanDefinitionScanner{
 
+    /**
+     * 扫描时解析 class 文件的并行度, 设置成 1 就是串行解析
+     */
+    public static final String SCAN_PARALLELISM_PROPERTY_NAME = "summer.scan.parallelism";
+
+    /**
+     * class 文件数量少于这个值的时候直接串行解析, 开线程池的代价比解析本身还要大
+     */
+    public static final int PARALLEL_SCAN_THRESHOLD = 256;
+
     private  Environment environment;
 
     /**
@@ -51,7 +68,7 @@ public class ClassPathBeanDefinitionScanner{
     /**
      * 元数据读取器工厂，可以为每个原始资源创建用于缓存元数据的读取器
      */
-    private DefaultMetadataReaderFactory metadataReaderFactory;
+    private MetadataReaderFactory metadataReaderFactory;
 
     /**
      * 用于判断 一个class是否是符合标准的类型,比如 是否是打了注解 @Component的
@@ -73,6 +90,18 @@ public class ClassPathBeanDefinitionScanner{
 
     private ConditionEvaluator conditionEvaluator;
 
+    /**
+     * 编译期生成的候选组件索引 META-INF/summer.components, 没有索引文件的时候为 null
+     */
+    private CandidateComponentsIndex componentsIndex;
+
+    /**
+     * 解析 class 文件的并行度
+     */
+    @Getter
+    @Setter
+    private int scanParallelism = resolveScanParallelism();
+
     /**
      * 根据定义对象创建ClassPathBeanDefinitionScanner
      *
@@ -81,6 +110,7 @@ public class ClassPathBeanDefinitionScanner{
     public ClassPathBeanDefinitionScanner(BeanDefinitionRegistry registry) {
         this.registry = registry;
         this.resourcePatternResolver = new PathMatchingResourcePatternResolver();
+        this.componentsIndex = CandidateComponentsIndexLoader.loadIndex(this.resourcePatternResolver.getClassLoader());
         registerDefaultFilters();
     }
 
@@ -88,6 +118,7 @@ public class ClassPathBeanDefinitionScanner{
         this.registry = registry;
         this.environment = environment;
         this.resourcePatternResolver = new PathMatchingResourcePatternResolver();
+        this.componentsIndex = CandidateComponentsIndexLoader.loadIndex(this.resourcePatternResolver.getClassLoader());
         registerDefaultFilters();
 
     }
@@ -141,14 +172,31 @@ public class ClassPathBeanDefinitionScanner{
 
 
     /**
-     * 扫描所有class文件然后用asm加载后 判断是否有注解,有的就放入 set中
+     * 找出指定包路径下的候选组件, 如果存在候选组件索引, 所有的 includeFilter 都能用索引来判断,
+     * 并且索引完整覆盖了这个包路径(见 CandidateComponentsIndex#covers), 就直接读取索引, 否则扫描包路径下的所有 class 文件
      *
      * @param basePackage
      * @return
      * @throws IOException
      */
-
     public Set<BeanDefinition> scanCandidateComponents(String basePackage) throws IOException {
+        if (this.componentsIndex != null && indexSupportsIncludeFilters()) {
+            if (this.componentsIndex.covers(basePackage, this.resourcePatternResolver.getClassLoader())) {
+                return addCandidateComponentsFromIndex(this.componentsIndex, basePackage);
+            }
+            log.debug("包路径 [{}] 不在候选组件索引的覆盖范围内, 扫描 class 文件", basePackage);
+        }
+        return scanCandidateComponentsFromClasspath(basePackage);
+    }
+
+    /**
+     * 扫描所有class文件然后用asm加载后 判断是否有注解,有的就放入 set中
+     *
+     * @param basePackage
+     * @return
+     * @throws IOException
+     */
+    private Set<BeanDefinition> scanCandidateComponentsFromClasspath(String basePackage) throws IOException {
         Set<BeanDefinition> result = new LinkedHashSet<>();
         //先把路径里面的 . 全部变成 /
         basePackage = ClassUtils.convertClassNameToResourcePath(basePackage);
@@ -157,13 +205,29 @@ public class ClassPathBeanDefinitionScanner{
         //扫描class文件，全部放入resource中，这里的实例类是FileSystemResource
         //resources会保存文件的句柄
         Resource[] resources = getResourcePatternResolver().getResources(packageSearchPath);
+        //文件系统返回的顺序是不固定的, 这里排个序 保证每次扫描出来的顺序(也就是注册顺序)是一致的
+        Arrays.sort(resources, Comparator.comparing(Resource::getDescription));
+        //共享的缓存至少要能放下这次扫描到的所有类, 不然后面配置类解析的时候又得重新解析一遍
+        if (getMetadataReaderFactory() instanceof CachingMetadataReaderFactory) {
+            ((CachingMetadataReaderFactory) getMetadataReaderFactory()).ensureCacheLimit(resources.length);
+        }
         //拿到所有的class后用asm加载,判断是否有对应的注解,这里用 元数据处理器来解析
-        for (Resource resource : resources) {
-            MetadataReader metadataReader = getMetadataReaderFactory().getMetadataReader(resource);
+        //class 文件比较多的时候用多个线程同时解析, 解析结果和 resources 的顺序一一对应
+        MetadataReader[] metadataReaders;
+        if (this.scanParallelism > 1 && resources.length >= PARALLEL_SCAN_THRESHOLD) {
+            metadataReaders = new ParallelMetadataReader(getMetadataReaderFactory(), this.scanParallelism).read(resources);
+        } else {
+            metadataReaders = new MetadataReader[resources.length];
+            for (int i = 0; i < resources.length; i++) {
+                metadataReaders[i] = getMetadataReaderFactory().getMetadataReader(resources[i]);
+            }
+        }
+        for (int i = 0; i < resources.length; i++) {
+            MetadataReader metadataReader = metadataReaders[i];
             //判断class 文件是否符合条件,比如是否有某个注解
             if(isCandidateComponent(metadataReader)){
                 ScannedGenericBeanDefinition scannedGenericBeanDefinition = new ScannedGenericBeanDefinition(metadataReader);
-                scannedGenericBeanDefinition.setResource(resource);
+                scannedGenericBeanDefinition.setResource(resources[i]);
                 //接口和抽象类剔除
                 if(isCandidateComponent(scannedGenericBeanDefinition)){
                     result.add(scannedGenericBeanDefinition);
@@ -173,6 +237,71 @@ public class ClassPathBeanDefinitionScanner{
         return result;
     }
 
+    /**
+     * 从候选组件索引中读取候选组件, 只会去解析索引中列出来的类
+     * 索引里已经按注解筛选过了, 这里只需要再走一遍 excludeFilter, 打了 @Conditional 的再判断一下条件
+     *
+     * @param index
+     * @param basePackage
+     * @return
+     * @throws IOException
+     */
+    private Set<BeanDefinition> addCandidateComponentsFromIndex(CandidateComponentsIndex index, String basePackage)
+            throws IOException {
+        Set<BeanDefinition> result = new LinkedHashSet<>();
+        Set<String> stereotypes = new LinkedHashSet<>();
+        for (TypeFilter filter : this.includeFilters) {
+            stereotypes.add(((AnnotationTypeFilter) filter).getAnnotationType().getName());
+        }
+        List<CandidateComponentsIndex.Entry> entries = index.getCandidateTypes(basePackage, stereotypes);
+        log.debug("包路径 [{}] 使用候选组件索引, 索引中的候选组件数量 [{}]", basePackage, entries.size());
+        for (CandidateComponentsIndex.Entry entry : entries) {
+            MetadataReader metadataReader = getMetadataReaderFactory().getMetadataReader(entry.getClassName());
+            if (isExcluded(metadataReader)) {
+                continue;
+            }
+            if (entry.isConditional() && !isConditionMatch(metadataReader)) {
+                continue;
+            }
+            ScannedGenericBeanDefinition scannedGenericBeanDefinition = new ScannedGenericBeanDefinition(metadataReader);
+            scannedGenericBeanDefinition.setResource(metadataReader.getResource());
+            if (isCandidateComponent(scannedGenericBeanDefinition)) {
+                result.add(scannedGenericBeanDefinition);
+            }
+        }
+        return result;
+    }
+
+    private static int resolveScanParallelism() {
+        String parallelism = SummerProperties.getProperty(SCAN_PARALLELISM_PROPERTY_NAME);
+        if (parallelism != null) {
+            return Integer.parseInt(parallelism.trim());
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 索引中只记录了 打了 @Component(包括作为元注解) 的类, 所以只有当所有 includeFilter 都是
+     * 匹配 @Component 或者其派生注解 的 AnnotationTypeFilter 的时候才能使用索引
+     */
+    private boolean indexSupportsIncludeFilters() {
+        for (TypeFilter includeFilter : this.includeFilters) {
+            if (!(includeFilter instanceof AnnotationTypeFilter)) {
+                return false;
+            }
+            Class<? extends Annotation> annotationType = ((AnnotationTypeFilter) includeFilter).getAnnotationType();
+            if (annotationType != Component.class &&
+                    AnnotatedElementUtils.getMergedAnnotationAttributes(annotationType, Component.class) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    public void setMetadataReaderFactory(MetadataReaderFactory metadataReaderFactory) {
+        this.metadataReaderFactory = metadataReaderFactory;
+    }
 
     public final MetadataReaderFactory getMetadataReaderFactory() {
         if (this.metadataReaderFactory == null) {
@@ -190,10 +319,8 @@ public class ClassPathBeanDefinitionScanner{
     }
 
     protected boolean isCandidateComponent(MetadataReader metadataReader) throws IOException {
-        for (TypeFilter tf : this.excludeFilters) {
-            if (tf.match(metadataReader, getMetadataReaderFactory())) {
-                return false;
-            }
+        if (isExcluded(metadataReader)) {
+            return false;
         }
         for (TypeFilter tf : this.includeFilters) {
             if (tf.match(metadataReader, getMetadataReaderFactory())) {
@@ -204,9 +331,19 @@ public class ClassPathBeanDefinitionScanner{
         return false;
     }
 
+    private boolean isExcluded(MetadataReader metadataReader) throws IOException {
+        for (TypeFilter tf : this.excludeFilters) {
+            if (tf.match(metadataReader, getMetadataReaderFactory())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isConditionMatch(MetadataReader metadataReader) {
         if (this.conditionEvaluator == null) {
-            this.conditionEvaluator = new ConditionEvaluator(registry, this.environment, this.resourcePatternResolver);
+            this.conditionEvaluator = new ConditionEvaluator(registry, this.environment, this.resourcePatternResolver,
+                    getMetadataReaderFactory());
         }
         return !this.conditionEvaluator.shouldSkip(metadataReader.getAnnotationMetadata(),null);
     }
@@ -78,8 +78,9 @@ public class ConfigurationClassParser {
         this.environment = environment;
         this.resourceLoader = resourceLoader;
         this.registry = registry;
-        this.componentScanParser = new ComponentScanAnnotationParser(environment, resourceLoader, componentScanBeanNameGenerator, registry);
-        this.conditionEvaluator = new ConditionEvaluator(registry, environment, resourceLoader);
+        this.componentScanParser = new ComponentScanAnnotationParser(environment, resourceLoader,
+                componentScanBeanNameGenerator, registry, metadataReaderFactory);
+        this.conditionEvaluator = new ConditionEvaluator(registry, environment, resourceLoader, metadataReaderFactory);
     }
 
 
@@ -6,9 +6,13 @@ import com.chy.summer.framework.beans.support.DefaultBeanNameGenerator;
 import com.chy.summer.framework.core.PriorityOrdered;
 import com.chy.summer.framework.core.evn.Environment;
 import com.chy.summer.framework.core.io.DefaultResourceLoader;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
+import com.chy.summer.framework.core.metrics.StartupStep;
 import com.chy.summer.framework.core.io.ResourceLoader;
 import com.chy.summer.framework.core.type.AnnotationMetadata;
-import com.chy.summer.framework.core.type.classreading.DefaultMetadataReaderFactory;
+import com.chy.summer.framework.beans.config.SingletonBeanRegistry;
+import com.chy.summer.framework.core.annotation.AnnotationUtils;
+import com.chy.summer.framework.core.type.classreading.CachingMetadataReaderFactory;
 import com.chy.summer.framework.core.type.classreading.MetadataReaderFactory;
 import com.chy.summer.framework.exception.BeansException;
 import com.chy.summer.framework.util.Assert;
@@ -35,7 +39,12 @@ public class ConfigurationClassPostProcessor implements BeanDefinitionRegistryPo
 
     private ResourceLoader resourceLoader = new DefaultResourceLoader();
 
-    private MetadataReaderFactory metadataReaderFactory = new DefaultMetadataReaderFactory();
+    private MetadataReaderFactory metadataReaderFactory = new CachingMetadataReaderFactory();
+
+    /**
+     * 是否是外部设置进来的 元数据读取器工厂, 不是的话解析完成以后要自己清理缓存
+     */
+    private boolean setMetadataReaderFactoryCalled = false;
 
     private BeanNameGenerator componentScanBeanNameGenerator = new AnnotationBeanNameGenerator();
 
@@ -110,6 +119,15 @@ public class ConfigurationClassPostProcessor implements BeanDefinitionRegistryPo
             this.environment = new StandardServletEnvironment();
         }
 
+        //如果容器里有 refresh 期间共享的 元数据读取器工厂 就用共享的那个, 这样扫描/解析配置类/条件判断 都能共用同一份缓存
+        if (!this.setMetadataReaderFactoryCalled && registry instanceof SingletonBeanRegistry) {
+            Object sharedMetadataReaderFactory = ((SingletonBeanRegistry) registry)
+                    .getSingleton(AnnotationUtils.METADATA_READER_FACTORY_BEAN_NAME);
+            if (sharedMetadataReaderFactory instanceof MetadataReaderFactory) {
+                setMetadataReaderFactory((MetadataReaderFactory) sharedMetadataReaderFactory);
+            }
+        }
+
         // 生成 配置类的解析器
         ConfigurationClassParser parser = new ConfigurationClassParser(this.metadataReaderFactory, this.environment,
                 this.resourceLoader, this.componentScanBeanNameGenerator, registry);
@@ -118,7 +136,14 @@ public class ConfigurationClassPostProcessor implements BeanDefinitionRegistryPo
 
         //这里就把所有的配置类给扫描了,然后放入 parser的configurationClasses对象里
         //这里如果扫描到的class有 @ComponentScan 注解,会扫描对应的目录,并且生成对应的bd放入 IOC容器里
-        parser.parse(candidates);
+        ApplicationStartup applicationStartup = registry instanceof ConfigurableListableBeanFactory ?
+                ((ConfigurableListableBeanFactory) registry).getApplicationStartup() : ApplicationStartup.DEFAULT;
+        StartupStep parseStep = applicationStartup.start("summer.context.config-classes.parse");
+        try {
+            parser.parse(candidates);
+        } finally {
+            parseStep.tag("classCount", () -> String.valueOf(parser.getConfigurationClasses().size())).end();
+        }
         //这边又迭代了一次,去检查扫描到的类里面有没有  @Configuration 并且这个类是 final 类型的有的话报错,这里先忽略
         //parser.validate();
         //把上面的解析结果给全部转成 set 集合
@@ -133,6 +158,22 @@ public class ConfigurationClassPostProcessor implements BeanDefinitionRegistryPo
         //开始解析处理上面扫描出来的配置类, @bean注解 等配置的处理就在这里面
         this.reader.loadBeanDefinitions(configClasses);
         candidates.clear();
+
+        //自己创建的缓存在这里就用不到了, 共享的那个会在 refresh 完成以后由容器来清理
+        if (!this.setMetadataReaderFactoryCalled && this.metadataReaderFactory instanceof CachingMetadataReaderFactory) {
+            ((CachingMetadataReaderFactory) this.metadataReaderFactory).clearCache();
+        }
+    }
+
+    /**
+     * 设置 元数据读取器工厂, 一般是设置一个在整个 refresh 过程中共享的 CachingMetadataReaderFactory
+     *
+     * @param metadataReaderFactory
+     */
+    public void setMetadataReaderFactory(MetadataReaderFactory metadataReaderFactory) {
+        Assert.notNull(metadataReaderFactory, "MetadataReaderFactory 不能为空");
+        this.metadataReaderFactory = metadataReaderFactory;
+        this.setMetadataReaderFactoryCalled = true;
     }
 
 
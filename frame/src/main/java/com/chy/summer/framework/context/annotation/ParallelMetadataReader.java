@@ -0,0 +1,123 @@
+package com.chy.summer.framework.context.annotation;
+
+import com.chy.summer.framework.core.io.support.Resource;
+import com.chy.summer.framework.core.type.classreading.MetadataReader;
+import com.chy.summer.framework.core.type.classreading.MetadataReaderFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行的用 asm 解析 class 文件
+ * <p>
+ * 把资源列表切分成若干段, 丢到一个有界的线程池里同时解析, 解析结果按照资源原本的下标放回数组里,
+ * 所以不管哪个线程先解析完, 返回的结果顺序都和传入的资源顺序一致, 后面生成的 beanName 和注册顺序也就是稳定的
+ * <p>
+ * 这里只做解析, 是否是候选组件的判断(会涉及到 @Conditional 等有状态的逻辑) 还是交给调用线程串行去做
+ */
+@Slf4j
+class ParallelMetadataReader {
+
+    /**
+     * 每个线程分到的段数, 分得细一点可以让各个线程的负载更均匀
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    private final MetadataReaderFactory metadataReaderFactory;
+
+    private final int parallelism;
+
+    ParallelMetadataReader(MetadataReaderFactory metadataReaderFactory, int parallelism) {
+        this.metadataReaderFactory = metadataReaderFactory;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 解析所有的资源, 返回的数组和传入的资源一一对应
+     *
+     * @param resources
+     * @return
+     * @throws IOException
+     */
+    public MetadataReader[] read(Resource[] resources) throws IOException {
+        MetadataReader[] result = new MetadataReader[resources.length];
+        int threads = Math.min(this.parallelism, resources.length);
+        int chunkCount = Math.min(resources.length, threads * CHUNKS_PER_THREAD);
+        int chunkSize = (resources.length + chunkCount - 1) / chunkCount;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ScannerThreadFactory(Thread.currentThread().getContextClassLoader()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(chunkCount);
+            for (int start = 0; start < resources.length; start += chunkSize) {
+                int from = start;
+                int to = Math.min(start + chunkSize, resources.length);
+                futures.add(executor.submit(() -> {
+                    for (int i = from; i < to; i++) {
+                        result[i] = this.metadataReaderFactory.getMetadataReader(resources[i]);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                waitFor(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.debug("并行解析了 [{}] 个 class 文件, 线程数 [{}]", resources.length, threads);
+        return result;
+    }
+
+    private void waitFor(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解析 class 文件的时候线程被中断", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("解析 class 文件失败", cause);
+        }
+    }
+
+
+    /**
+     * 扫描用的线程工厂, 把调用线程的 ClassLoader 传递下去, 线程设置成守护线程, 不会阻止jvm退出
+     */
+    private static class ScannerThreadFactory implements ThreadFactory {
+
+        private final ClassLoader classLoader;
+
+        private final String namePrefix = "summer-scanner-" + poolNumber.getAndIncrement() + "-";
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        ScannerThreadFactory(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, this.namePrefix + this.threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(this.classLoader);
+            return thread;
+        }
+    }
+}
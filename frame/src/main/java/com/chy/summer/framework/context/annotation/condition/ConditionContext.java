@@ -4,6 +4,7 @@ import com.chy.summer.framework.beans.config.BeanDefinitionRegistry;
 import com.chy.summer.framework.beans.config.ConfigurableListableBeanFactory;
 import com.chy.summer.framework.core.evn.Environment;
 import com.chy.summer.framework.core.io.ResourceLoader;
+import com.chy.summer.framework.core.type.classreading.MetadataReaderFactory;
 
 /**
  *  让 confition 使用的上下文对象,可以在里面拿到各种容器的重要信息
@@ -44,4 +45,10 @@ public interface ConditionContext {
      */
     ClassLoader getClassLoader();
 
+    /**
+     * 获取 元数据读取器工厂, 条件里需要读取其他类的元数据的时候用这个, 可以命中 refresh 期间共享的缓存
+     * @return
+     */
+    MetadataReaderFactory getMetadataReaderFactory();
+
 }
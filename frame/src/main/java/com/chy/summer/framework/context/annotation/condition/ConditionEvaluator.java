@@ -6,6 +6,7 @@ import com.chy.summer.framework.beans.config.BeanDefinitionRegistry;
 import com.chy.summer.framework.core.annotation.AnnotationAttributes;
 import com.chy.summer.framework.core.evn.Environment;
 import com.chy.summer.framework.core.io.ResourceLoader;
+import com.chy.summer.framework.core.type.classreading.MetadataReaderFactory;
 import com.chy.summer.framework.core.ordered.AnnotationAwareOrderComparator;
 import com.chy.summer.framework.core.type.AnnotationBehavior;
 import com.chy.summer.framework.core.type.AnnotationMetadata;
@@ -28,8 +29,12 @@ public class ConditionEvaluator {
 
     public ConditionEvaluator(BeanDefinitionRegistry registry,
                               Environment environment, ResourceLoader resourceLoader) {
-        context = new DefaultConditionContext(registry,environment,resourceLoader);
+        this(registry, environment, resourceLoader, null);
+    }
 
+    public ConditionEvaluator(BeanDefinitionRegistry registry, Environment environment,
+                              ResourceLoader resourceLoader, MetadataReaderFactory metadataReaderFactory) {
+        context = new DefaultConditionContext(registry, environment, resourceLoader, metadataReaderFactory);
     }
 
     public boolean shouldSkip(AnnotationBehavior annotationBehavior, ConfigurationPhase phase) {
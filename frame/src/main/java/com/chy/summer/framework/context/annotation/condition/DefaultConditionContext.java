@@ -6,6 +6,8 @@ import com.chy.summer.framework.context.ConfigurableApplicationContext;
 import com.chy.summer.framework.core.evn.Environment;
 import com.chy.summer.framework.core.io.DefaultResourceLoader;
 import com.chy.summer.framework.core.io.ResourceLoader;
+import com.chy.summer.framework.core.type.classreading.DefaultMetadataReaderFactory;
+import com.chy.summer.framework.core.type.classreading.MetadataReaderFactory;
 import com.chy.summer.framework.util.ClassUtils;
 import lombok.Getter;
 
@@ -30,14 +32,24 @@ public class DefaultConditionContext implements ConditionContext {
     @Getter
     private final ClassLoader classLoader;
 
+    @Getter
+    private final MetadataReaderFactory metadataReaderFactory;
+
     public DefaultConditionContext(BeanDefinitionRegistry registry,
                                 Environment environment, ResourceLoader resourceLoader) {
+        this(registry, environment, resourceLoader, null);
+    }
+
+    public DefaultConditionContext(BeanDefinitionRegistry registry, Environment environment,
+                                   ResourceLoader resourceLoader, MetadataReaderFactory metadataReaderFactory) {
 
         this.registry = registry;
         this.beanFactory = deduceBeanFactory(registry);
         this.environment = environment;
         this.resourceLoader = (resourceLoader != null ? resourceLoader : deduceResourceLoader(registry));
         this.classLoader = deduceClassLoader(resourceLoader, this.beanFactory);
+        this.metadataReaderFactory = (metadataReaderFactory != null ? metadataReaderFactory :
+                new DefaultMetadataReaderFactory(this.resourceLoader));
     }
 
     private ConfigurableListableBeanFactory deduceBeanFactory(BeanDefinitionRegistry source) {
@@ -2,10 +2,12 @@ package com.chy.summer.framework.context.event;
 
 import com.chy.summer.framework.aop.framework.AopProxyUtils;
 import com.chy.summer.framework.beans.BeanFactory;
+import com.chy.summer.framework.beans.ConfigurableBeanFactory;
 import com.chy.summer.framework.core.ResolvableType;
 import com.chy.summer.framework.core.ordered.AnnotationAwareOrderComparator;
 import com.chy.summer.framework.exception.NoSuchBeanDefinitionException;
 import com.chy.summer.framework.util.Assert;
+import com.chy.summer.framework.util.ClassUtils;
 import com.chy.summer.framework.util.ObjectUtils;
 import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
@@ -13,15 +15,29 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 事件广播器的基础实现, 负责保存监听器以及根据事件找到对应的监听器
+ * <p>
+ * 每种 事件类型+事件来源类型 找到的监听器会缓存起来, 已经排好序.
+ * 监听器增加或者删除的时候整个缓存作废, 之后第一次发布事件时重新计算, 稳定以后发布事件只是遍历缓存的数组, 不需要加锁
+ */
 @Slf4j
 public abstract class AbstractApplicationEventMulticaster implements ApplicationEventMulticaster {
 
     /**
-     * 一个正真保存 事件监听器的 内部类容器
+     * 一个正真保存 事件监听器的 内部类容器, 修改监听器的时候用它加锁
      */
-    private final ListenerRetriever defaultRetriever = new ListenerRetriever(false);
+    private final ListenerRetriever defaultRetriever = new ListenerRetriever();
 
-    final Map<ListenerCacheKey, ListenerRetriever> retrieverCache = new ConcurrentHashMap<>(64);
+    /**
+     * 事件类型+事件来源类型 -> 排好序的监听器
+     */
+    final Map<ListenerCacheKey, CachedListeners> retrieverCache = new ConcurrentHashMap<>(64);
+
+    /**
+     * 监听器的版本, 每次修改监听器都会加一, 用来丢弃修改之前计算出来的结果
+     */
+    private volatile int listenerVersion;
 
 
     private BeanFactory beanFactory;
@@ -34,39 +50,65 @@ public abstract class AbstractApplicationEventMulticaster implements Application
     public AbstractApplicationEventMulticaster() {
     }
 
+    /**
+     * 添加监听
+     * @param listener
+     */
     @Override
-    public void addApplicationListenerBean(String listenerBeanName) {
+    public void addApplicationListener(ApplicationListener<?> listener) {
+        synchronized (this.defaultRetriever) {
+            Object singletonTarget = AopProxyUtils.getSingletonTarget(listener);
+            if (singletonTarget instanceof ApplicationListener) {
+                this.defaultRetriever.applicationListeners.remove(singletonTarget);
+            }
+            this.defaultRetriever.applicationListeners.add(listener);
+            listenersChanged();
+        }
+    }
 
+    /**
+     * 添加 ioc 容器里的监听器, 第一次发布对应的事件时才会去容器里拿
+     * @param listenerBeanName
+     */
+    @Override
+    public void addApplicationListenerBean(String listenerBeanName) {
+        synchronized (this.defaultRetriever) {
+            this.defaultRetriever.applicationListenerBeans.add(listenerBeanName);
+            listenersChanged();
+        }
     }
 
     @Override
     public void removeApplicationListener(ApplicationListener<?> listener) {
-
+        synchronized (this.defaultRetriever) {
+            this.defaultRetriever.applicationListeners.remove(listener);
+            listenersChanged();
+        }
     }
 
     @Override
     public void removeApplicationListenerBean(String listenerBeanName) {
-
+        synchronized (this.defaultRetriever) {
+            this.defaultRetriever.applicationListenerBeans.remove(listenerBeanName);
+            listenersChanged();
+        }
     }
 
     @Override
     public void removeAllListeners() {
-
+        synchronized (this.defaultRetriever) {
+            this.defaultRetriever.applicationListeners.clear();
+            this.defaultRetriever.applicationListenerBeans.clear();
+            listenersChanged();
+        }
     }
 
     /**
-     * 添加监听
-     * @param listener
+     * 监听器变化以后, 作废所有缓存的结果, 调用的时候必须持有defaultRetriever的锁
      */
-    @Override
-    public void addApplicationListener(ApplicationListener<?> listener) {
-        synchronized (defaultRetriever){
-            Object singletonTarget = AopProxyUtils.getSingletonTarget(listener);
-            if (singletonTarget instanceof ApplicationListener) {
-                this.defaultRetriever.applicationListeners.remove(singletonTarget);
-            }
-            this.defaultRetriever.applicationListeners.add(listener);
-        }
+    private void listenersChanged() {
+        this.listenerVersion++;
+        this.retrieverCache.clear();
     }
 
     public BeanFactory getBeanFactory() {
@@ -75,6 +117,9 @@ public abstract class AbstractApplicationEventMulticaster implements Application
 
     public void setBeanFactory(BeanFactory beanFactory) {
         this.beanFactory = beanFactory;
+        synchronized (this.defaultRetriever) {
+            listenersChanged();
+        }
     }
 
 
@@ -82,7 +127,7 @@ public abstract class AbstractApplicationEventMulticaster implements Application
      * 通过事件找到对应的监听器
      * @param event
      * @param eventType
-     * @return
+     * @return 已经排好序的监听器, 不能修改
      */
     protected Collection<ApplicationListener<?>> getApplicationListeners(
             ApplicationEvent event, ResolvableType eventType) {
@@ -94,12 +139,32 @@ public abstract class AbstractApplicationEventMulticaster implements Application
 
         ListenerCacheKey cacheKey = new ListenerCacheKey(eventType, sourceType);
 
-        ListenerRetriever retriever = this.retrieverCache.get(cacheKey);
-        if (retriever != null) {
-            return retriever.getApplicationListeners();
+        CachedListeners cached = this.retrieverCache.get(cacheKey);
+        if (cached != null) {
+            return cached.getApplicationListeners();
+        }
+
+        int version = this.listenerVersion;
+        CachedListeners retrieved = retrieveApplicationListeners(eventType, sourceType);
+        if (isCacheSafe(event.getClass(), sourceType)) {
+            synchronized (this.defaultRetriever) {
+                //计算期间监听器有变化的话, 这个结果就不能缓存了
+                if (version == this.listenerVersion) {
+                    this.retrieverCache.putIfAbsent(cacheKey, retrieved);
+                }
+            }
         }
+        return retrieved.getApplicationListeners();
+    }
 
-        return retrieveApplicationListeners(eventType, sourceType, null);
+    /**
+     * 事件和来源的类都能被容器的类加载器看到的时候才缓存, 避免持有其他类加载器加载的类
+     */
+    private boolean isCacheSafe(Class<?> eventClass, @Nullable Class<?> sourceType) {
+        ClassLoader classLoader = (this.beanFactory instanceof ConfigurableBeanFactory ?
+                ((ConfigurableBeanFactory) this.beanFactory).getBeanClassLoader() : ClassUtils.getDefaultClassLoader());
+        return ClassUtils.isCacheSafe(eventClass, classLoader) &&
+                (sourceType == null || ClassUtils.isCacheSafe(sourceType, classLoader));
     }
 
 
@@ -107,13 +172,12 @@ public abstract class AbstractApplicationEventMulticaster implements Application
      * 用事件把对应的监听器给找出来
      * @param eventType
      * @param sourceType
-     * @param retriever
      * @return
      */
-    private Collection<ApplicationListener<?>> retrieveApplicationListeners(
-            ResolvableType eventType, @Nullable Class<?> sourceType, @Nullable ListenerRetriever retriever) {
+    private CachedListeners retrieveApplicationListeners(ResolvableType eventType, @Nullable Class<?> sourceType) {
 
         List<ApplicationListener<?>> allListeners = new ArrayList<>();
+        List<String> nonSingletonListenerBeans = new ArrayList<>();
         Set<ApplicationListener<?>> listeners;
         Set<String> listenerBeans;
         //保证 applicationListeners和applicationListenerBeans 是统一的
@@ -125,9 +189,6 @@ public abstract class AbstractApplicationEventMulticaster implements Application
         for (ApplicationListener<?> listener : listeners) {
             //从事件类型,事件来源类上 上判断是不是属于对应的监听器
             if (supportsEvent(listener, eventType, sourceType)) {
-                if (retriever != null) {
-                    retriever.applicationListeners.add(listener);
-                }
                 allListeners.add(listener);
             }
         }
@@ -143,21 +204,33 @@ public abstract class AbstractApplicationEventMulticaster implements Application
                         ApplicationListener<?> listener = beanFactory.getBean(listenerBeanName, ApplicationListener.class);
                         //如果 这个监听器还没被注册,并且和对应的事件类型匹配上
                         if (!allListeners.contains(listener) && supportsEvent(listener, eventType, sourceType)) {
-                            if (retriever != null) {
-                                retriever.applicationListenerBeans.add(listenerBeanName);
+                            //单例可以直接缓存实例, 其他作用域的bean每次发布事件都要重新获取
+                            if (beanFactory.isSingleton(listenerBeanName)) {
+                                allListeners.add(listener);
+                            }
+                            else {
+                                checkNonSingletonListener(listenerBeanName, listener);
+                                nonSingletonListenerBeans.add(listenerBeanName);
                             }
-                            allListeners.add(listener);
                         }
                     }
                 }
                 catch (NoSuchBeanDefinitionException ex) {
-                    log.debug("[%s] 事件 在查找对应监听器的时候发生异常: %s",ex.getMessage());
+                    log.debug("[{}] 事件 在查找对应监听器的时候发生异常: {}", eventType, ex.getMessage());
                 }
             }
         }
         //排序
         AnnotationAwareOrderComparator.sort(allListeners);
-        return allListeners;
+        return new CachedListeners(allListeners, nonSingletonListenerBeans);
+    }
+
+    /**
+     * 找到不是单例的监听器bean的时候调用, 子类可以在这里拒绝不支持的监听器, 默认什么都不做
+     * @param listenerBeanName
+     * @param listener 这次从容器里拿到的实例
+     */
+    protected void checkNonSingletonListener(String listenerBeanName, ApplicationListener<?> listener) {
     }
 
     protected boolean supportsEvent(Class<?> listenerType, ResolvableType eventType) {
@@ -190,41 +263,59 @@ public abstract class AbstractApplicationEventMulticaster implements Application
     }
 
 
-    private class ListenerRetriever {
+    /**
+     * 保存注册的监听器
+     */
+    private static class ListenerRetriever {
 
-        public final Set<ApplicationListener<?>> applicationListeners;
+        public final Set<ApplicationListener<?>> applicationListeners = new LinkedHashSet<>();
 
-        public final Set<String> applicationListenerBeans;
+        public final Set<String> applicationListenerBeans = new LinkedHashSet<>();
+    }
+
+    /**
+     * 某一种事件对应的监听器, 创建以后不再修改
+     */
+    private final class CachedListeners {
 
-        private final boolean preFiltered;
+        /**
+         * 排好序的监听器
+         */
+        private final List<ApplicationListener<?>> applicationListeners;
 
-        public ListenerRetriever(boolean preFiltered) {
-            this.applicationListeners = new LinkedHashSet<>();
-            this.applicationListenerBeans = new LinkedHashSet<>();
-            this.preFiltered = preFiltered;
+        /**
+         * 不是单例的监听器bean, 每次都要从容器里重新获取
+         */
+        private final String[] listenerBeans;
+
+        CachedListeners(List<ApplicationListener<?>> applicationListeners, List<String> listenerBeans) {
+            this.applicationListeners = Collections.unmodifiableList(
+                    Arrays.asList(applicationListeners.toArray(new ApplicationListener<?>[0])));
+            this.listenerBeans = listenerBeans.toArray(new String[0]);
         }
 
         /**
-         * 获取 所有的 监听器,除了上面 applicationListeners保存下来的,还有以已经注册进入ioc容器的,然后做了去重处理
+         * 获取 所有的 监听器, 只有单例监听器的时候直接返回缓存的结果
          * @return
          */
-        public Collection<ApplicationListener<?>> getApplicationListeners() {
+        Collection<ApplicationListener<?>> getApplicationListeners() {
+            if (this.listenerBeans.length == 0) {
+                return this.applicationListeners;
+            }
             List<ApplicationListener<?>> allListeners = new ArrayList<>(
-                    this.applicationListeners.size() + this.applicationListenerBeans.size());
+                    this.applicationListeners.size() + this.listenerBeans.length);
             allListeners.addAll(this.applicationListeners);
-            if (!this.applicationListenerBeans.isEmpty()) {
-                BeanFactory beanFactory = getBeanFactory();
-                for (String listenerBeanName : this.applicationListenerBeans) {
-                    try {
-                        ApplicationListener<?> listener = beanFactory.getBean(listenerBeanName, ApplicationListener.class);
-                        if (this.preFiltered || !allListeners.contains(listener)) {
-                            allListeners.add(listener);
-                        }
-                    }
-                    catch (NoSuchBeanDefinitionException ex) {
-                        log.warn("getApplicationListeners 发生 NoSuchBeanDefinitionException异常 : [%s] 获取失败",listenerBeanName);
+            BeanFactory beanFactory = getBeanFactory();
+            for (String listenerBeanName : this.listenerBeans) {
+                try {
+                    ApplicationListener<?> listener = beanFactory.getBean(listenerBeanName, ApplicationListener.class);
+                    if (!allListeners.contains(listener)) {
+                        allListeners.add(listener);
                     }
                 }
+                catch (NoSuchBeanDefinitionException ex) {
+                    log.warn("getApplicationListeners 发生 NoSuchBeanDefinitionException异常 : [{}] 获取失败", listenerBeanName);
+                }
             }
             //排序
             AnnotationAwareOrderComparator.sort(allListeners);
@@ -20,5 +20,11 @@ public interface ApplicationEventMulticaster {
 
     void multicastEvent(ApplicationEvent event);
 
+    /**
+     * 容器关闭的时候调用, 释放广播器自己创建的线程, 默认什么都不做
+     */
+    default void shutdown() {
+    }
+
 
 }
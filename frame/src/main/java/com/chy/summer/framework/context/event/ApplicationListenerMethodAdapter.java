@@ -0,0 +1,313 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.beans.BeanFactory;
+import com.chy.summer.framework.context.ApplicationEventPublisher;
+import com.chy.summer.framework.core.ResolvableType;
+import com.chy.summer.framework.core.annotation.AnnotationUtils;
+import com.chy.summer.framework.core.ordered.Order;
+import com.chy.summer.framework.core.ordered.Ordered;
+import com.chy.summer.framework.util.Assert;
+import com.chy.summer.framework.util.ClassUtils;
+import com.chy.summer.framework.util.ReflectionUtils;
+import com.chy.summer.framework.util.StringUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把一个 @EventListener 方法适配成监听器
+ * <p>
+ * 监听的类型、条件表达式、顺序在创建的时候就解析好, 方法转成了 MethodHandle.
+ * 能不能处理某种事件只在广播器第一次遇到这种事件的时候判断一次, 结果由广播器按事件类型缓存,
+ * 之后每次收到事件只是 instanceof 判断、对条件的语法树求值和调用 MethodHandle, 没有反射也没有泛型解析.
+ * <p>
+ * bean在第一次收到事件的时候才从容器里获取, 单例bean获取以后绑定到方法句柄上缓存起来
+ */
+@Slf4j
+public class ApplicationListenerMethodAdapter implements GenericApplicationListener {
+
+    /**
+     * 事件不是这个方法要监听的
+     */
+    private static final Object NO_MATCH = new Object();
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+
+    private final String beanName;
+
+    private final Class<?> targetClass;
+
+    private final Method method;
+
+    private final BeanFactory beanFactory;
+
+    private final ApplicationEventPublisher publisher;
+
+    /**
+     * 监听的 ApplicationEvent 子类
+     */
+    private final Class<?>[] eventTypes;
+
+    /**
+     * 监听的普通对象的类型, 对应 PayloadApplicationEvent 里的对象
+     */
+    private final Class<?>[] payloadTypes;
+
+    @Nullable
+    private final EventConditionExpression condition;
+
+    private final int order;
+
+    /**
+     * (bean, 参数)Object 类型的方法句柄, 没有参数的方法会忽略第二个参数
+     */
+    private final MethodHandle invoker;
+
+    /**
+     * 单例bean的时候, 绑定好bean的 (参数)Object 方法句柄
+     */
+    @Nullable
+    private volatile MethodHandle boundInvoker;
+
+
+    public ApplicationListenerMethodAdapter(String beanName, Class<?> targetClass, Method method,
+                                            BeanFactory beanFactory, ApplicationEventPublisher publisher) {
+        Assert.notNull(beanName, "beanName不可为空");
+        Assert.notNull(method, "method不可为空");
+        this.beanName = beanName;
+        this.targetClass = targetClass;
+        this.method = method;
+        this.beanFactory = beanFactory;
+        this.publisher = publisher;
+
+        EventListener eventListener = AnnotationUtils.findAnnotation(method, EventListener.class);
+        Assert.notNull(eventListener, "方法上没有 @EventListener: " + method);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Assert.isTrue(parameterTypes.length <= 1, "@EventListener 方法最多只能有一个参数: " + method);
+
+        Set<Class<?>> declaredTypes = new LinkedHashSet<>();
+        for (Class<?> type : eventListener.value()) {
+            declaredTypes.add(type);
+        }
+        for (Class<?> type : eventListener.classes()) {
+            declaredTypes.add(type);
+        }
+        if (declaredTypes.isEmpty()) {
+            Assert.isTrue(parameterTypes.length == 1, "@EventListener 方法没有参数的时候必须指定监听的事件类型: " + method);
+            declaredTypes.add(ClassUtils.resolvePrimitiveIfNecessary(parameterTypes[0]));
+        }
+        List<Class<?>> eventTypes = new ArrayList<>();
+        List<Class<?>> payloadTypes = new ArrayList<>();
+        for (Class<?> type : declaredTypes) {
+            if (parameterTypes.length == 1) {
+                Assert.isTrue(ClassUtils.isAssignable(parameterTypes[0], type),
+                        "@EventListener 监听的类型 [" + type.getName() + "] 不能赋值给方法的参数: " + method);
+            }
+            if (ApplicationEvent.class.isAssignableFrom(type)) {
+                eventTypes.add(type);
+            }
+            else {
+                payloadTypes.add(type);
+            }
+        }
+        this.eventTypes = eventTypes.toArray(new Class<?>[0]);
+        this.payloadTypes = payloadTypes.toArray(new Class<?>[0]);
+
+        this.condition = (StringUtils.hasText(eventListener.condition()) ?
+                EventConditionExpression.parse(eventListener.condition(), argumentNames(method)) : null);
+
+        Order order = AnnotationUtils.findAnnotation(method, Order.class);
+        this.order = (order != null ? order.value() : Ordered.LOWEST_PRECEDENCE);
+
+        this.invoker = createInvoker(method);
+    }
+
+    /**
+     * 条件表达式里代表方法参数的变量名
+     */
+    private static Set<String> argumentNames(Method method) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add("payload");
+        if (method.getParameterCount() == 1) {
+            names.add("p0");
+            names.add("a0");
+            Parameter parameter = method.getParameters()[0];
+            if (parameter.isNamePresent()) {
+                names.add(parameter.getName());
+            }
+        }
+        return names;
+    }
+
+    private static MethodHandle createInvoker(Method method) {
+        ReflectionUtils.makeAccessible(method);
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        }
+        catch (IllegalAccessException ex) {
+            throw new IllegalStateException("不能访问 @EventListener 方法: " + method, ex);
+        }
+        if (method.getParameterCount() == 0) {
+            handle = MethodHandles.dropArguments(handle, 1, Object.class);
+        }
+        return handle.asType(INVOKER_TYPE);
+    }
+
+
+    @Override
+    public boolean supportsEventType(ResolvableType eventType) {
+        Class<?> eventClass = eventType.resolve();
+        if (eventClass == null) {
+            return false;
+        }
+        for (Class<?> type : this.eventTypes) {
+            if (type.isAssignableFrom(eventClass)) {
+                return true;
+            }
+        }
+        return (this.payloadTypes.length > 0 && PayloadApplicationEvent.class.isAssignableFrom(eventClass));
+    }
+
+    @Override
+    public boolean supportsSourceType(@Nullable Class<?> sourceType) {
+        return true;
+    }
+
+    @Override
+    public int getOrder() {
+        return this.order;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        Object argument = resolveArgument(event);
+        if (argument == NO_MATCH) {
+            return;
+        }
+        if (this.condition != null && !this.condition.matches(event, argument)) {
+            return;
+        }
+        Object result = invoke(argument);
+        if (result != null) {
+            handleResult(result);
+        }
+    }
+
+    /**
+     * 找出传给方法的参数, 监听的是普通对象的时候传的是事件里包装的对象
+     */
+    private Object resolveArgument(ApplicationEvent event) {
+        for (Class<?> type : this.eventTypes) {
+            if (type.isInstance(event)) {
+                return event;
+            }
+        }
+        if (this.payloadTypes.length > 0 && event instanceof PayloadApplicationEvent) {
+            Object payload = ((PayloadApplicationEvent<?>) event).getPayload();
+            for (Class<?> type : this.payloadTypes) {
+                if (type.isInstance(payload)) {
+                    return payload;
+                }
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private Object invoke(Object argument) {
+        MethodHandle invoker = this.boundInvoker;
+        if (invoker == null) {
+            invoker = bind(this.beanFactory.getBean(this.beanName));
+            if (this.beanFactory.isSingleton(this.beanName)) {
+                this.boundInvoker = invoker;
+            }
+        }
+        try {
+            return invoker.invokeExact(argument);
+        }
+        catch (RuntimeException | Error ex) {
+            throw ex;
+        }
+        catch (Throwable ex) {
+            throw new UndeclaredThrowableException(ex, "@EventListener 方法 [" + this + "] 抛出了异常");
+        }
+    }
+
+    /**
+     * 把方法句柄绑定到bean上
+     * bean是JDK动态代理的时候, 目标类的方法不能直接在代理上调用, 要换成接口上同名同参数的方法
+     */
+    private MethodHandle bind(Object bean) {
+        MethodHandle invoker = this.invoker;
+        if (!this.method.getDeclaringClass().isInstance(bean)) {
+            Method proxyMethod;
+            try {
+                proxyMethod = bean.getClass().getMethod(this.method.getName(), this.method.getParameterTypes());
+            }
+            catch (NoSuchMethodException ex) {
+                throw new IllegalStateException("bean [" + this.beanName + "] 是代理对象, @EventListener 方法 [" +
+                        this.method.getName() + "] 需要声明在代理的接口上", ex);
+            }
+            invoker = createInvoker(proxyMethod);
+        }
+        return invoker.bindTo(bean);
+    }
+
+    /**
+     * 方法的返回值作为新的事件发布出去
+     */
+    private void handleResult(Object result) {
+        if (result instanceof Object[]) {
+            for (Object event : (Object[]) result) {
+                publishResult(event);
+            }
+        }
+        else if (result instanceof Collection) {
+            for (Object event : (Collection<?>) result) {
+                publishResult(event);
+            }
+        }
+        else {
+            publishResult(result);
+        }
+    }
+
+    private void publishResult(@Nullable Object event) {
+        if (event != null) {
+            log.debug("@EventListener 方法 [{}] 的返回值 [{}] 作为事件发布", this, event);
+            this.publisher.publishEvent(event);
+        }
+    }
+
+    public String getBeanName() {
+        return this.beanName;
+    }
+
+    /**
+     * 方法所在的bean的类, 广播器按照这个类上的 @EventDelivery 决定投递方式
+     */
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public String toString() {
+        return this.targetClass.getName() + "." + this.method.getName() + "()";
+    }
+
+}
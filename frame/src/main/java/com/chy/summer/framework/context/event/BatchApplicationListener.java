@@ -0,0 +1,26 @@
+package com.chy.summer.framework.context.event;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可以一次接收多个事件的监听器, 配合 @EventDelivery(DeliveryMode.BATCH) 使用
+ * @param <E> 监听的事件类型
+ */
+public interface BatchApplicationListener<E extends ApplicationEvent> extends ApplicationListener<E> {
+
+    /**
+     * 接收一个时间窗口内合并起来的事件, 顺序和发布的顺序一致
+     * @param events 合并起来的事件, 不会为空
+     */
+    void onApplicationEvents(List<E> events);
+
+    /**
+     * 单个事件的时候(比如没有按BATCH方式投递)当成只有一个元素的列表
+     */
+    @Override
+    default void onApplicationEvent(E event) {
+        onApplicationEvents(Collections.singletonList(event));
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.context.ApplicationContext;
+
+/**
+ * 容器关闭的时候发布的事件, 线程池之类需要释放资源的bean可以监听它
+ * 不管广播器怎么配置, 这个事件都在关闭容器的线程里同步投递, 所有监听器处理完以后容器才继续关闭
+ */
+public class ContextClosedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    public ContextClosedEvent(ApplicationContext source) {
+        super(source);
+    }
+
+    public ApplicationContext getApplicationContext() {
+        return (ApplicationContext) getSource();
+    }
+
+}
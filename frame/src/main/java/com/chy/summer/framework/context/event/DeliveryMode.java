@@ -0,0 +1,30 @@
+package com.chy.summer.framework.context.event;
+
+/**
+ * 事件投递给监听器的方式
+ */
+public enum DeliveryMode {
+
+    /**
+     * 在发布事件的线程里直接调用监听器
+     */
+    SYNC,
+
+    /**
+     * 交给事件线程池执行, 不保证同一个监听器收到事件的顺序
+     */
+    ASYNC,
+
+    /**
+     * 交给事件线程池执行, 每个监听器有自己的队列, 同一时间只有一个线程在消费,
+     * 监听器收到事件的顺序和发布的顺序一致
+     */
+    ORDERED,
+
+    /**
+     * 在一个时间窗口内发布的事件合并成一个列表, 一次交给监听器, 同样保证顺序
+     * 监听器实现 BatchApplicationListener 的时候收到整个列表, 否则逐个收到
+     */
+    BATCH
+
+}
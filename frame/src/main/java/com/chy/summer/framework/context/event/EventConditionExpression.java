@@ -0,0 +1,537 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.util.ConcurrentReferenceHashMap;
+import com.chy.summer.framework.util.ReflectionUtils;
+import com.chy.summer.framework.util.StringUtils;
+import javax.annotation.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @EventListener 的 condition 表达式, 语法见 EventListener#condition
+ * <p>
+ * 启动的时候解析成语法树, 语法错误和不认识的变量在启动时就会报错.
+ * 发布事件的时候只是对树求值, 属性访问使用的 MethodHandle 按对象的类缓存, 不需要每次反射
+ */
+final class EventConditionExpression {
+
+    private final String expression;
+
+    private final Node root;
+
+    private EventConditionExpression(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * 解析表达式
+     * @param expression 表达式
+     * @param argumentNames 代表方法参数的变量名(不带#)
+     * @throws IllegalArgumentException 表达式不合法
+     */
+    static EventConditionExpression parse(String expression, Set<String> argumentNames) {
+        Parser parser = new Parser(expression, argumentNames);
+        return new EventConditionExpression(expression, parser.parse());
+    }
+
+    /**
+     * 对表达式求值
+     * @param event 发布的事件
+     * @param argument 方法收到的参数
+     */
+    boolean matches(ApplicationEvent event, @Nullable Object argument) {
+        Object value = this.root.evaluate(event, argument);
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new IllegalStateException("条件表达式 [" + this.expression + "] 的结果不是boolean: " + value);
+    }
+
+    @Override
+    public String toString() {
+        return this.expression;
+    }
+
+
+    private interface Node {
+
+        @Nullable
+        Object evaluate(ApplicationEvent event, @Nullable Object argument);
+    }
+
+    private static boolean toBoolean(Node node, ApplicationEvent event, @Nullable Object argument) {
+        Object value = node.evaluate(event, argument);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value == null) {
+            return false;
+        }
+        throw new IllegalStateException("条件表达式里 && || ! 的操作数不是boolean: " + value);
+    }
+
+    private static boolean valueEquals(@Nullable Object left, @Nullable Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right) == 0;
+        }
+        if (left instanceof Enum && right instanceof String) {
+            return ((Enum<?>) left).name().equals(right);
+        }
+        if (left instanceof String && right instanceof Enum) {
+            return ((Enum<?>) right).name().equals(left);
+        }
+        return left.equals(right);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(@Nullable Object left, @Nullable Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right);
+        }
+        if (left instanceof Comparable && right != null && left.getClass().isInstance(right)) {
+            return ((Comparable) left).compareTo(right);
+        }
+        throw new IllegalStateException("条件表达式里不能比较大小: [" + left + "] 和 [" + right + "]");
+    }
+
+    private static int compareNumbers(Number left, Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            return Long.compare(left.longValue(), right.longValue());
+        }
+        if (left instanceof BigDecimal || right instanceof BigDecimal ||
+                left instanceof BigInteger || right instanceof BigInteger) {
+            return new BigDecimal(left.toString()).compareTo(new BigDecimal(right.toString()));
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte);
+    }
+
+
+    private static final class Literal implements Node {
+
+        @Nullable
+        private final Object value;
+
+        Literal(@Nullable Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(ApplicationEvent event, @Nullable Object argument) {
+            return this.value;
+        }
+    }
+
+    private static final class Variable implements Node {
+
+        /**
+         * true 代表事件本身, false 代表方法的参数
+         */
+        private final boolean event;
+
+        Variable(boolean event) {
+            this.event = event;
+        }
+
+        @Override
+        public Object evaluate(ApplicationEvent event, @Nullable Object argument) {
+            return (this.event ? event : argument);
+        }
+    }
+
+    /**
+     * 访问属性, 对象为null的时候结果也是null
+     */
+    private static final class Property implements Node {
+
+        private final Node target;
+
+        private final String name;
+
+        /**
+         * 对象的类 -> 读取属性的方法, 类型是 (Object)Object
+         */
+        private final Map<Class<?>, MethodHandle> accessorCache = new ConcurrentReferenceHashMap<>(4);
+
+        /**
+         * 上一次用到的类和方法, 事件类型固定的时候连缓存都不用查
+         */
+        @Nullable
+        private volatile Accessor lastAccessor;
+
+        Property(Node target, String name) {
+            this.target = target;
+            this.name = name;
+        }
+
+        @Override
+        public Object evaluate(ApplicationEvent event, @Nullable Object argument) {
+            Object target = this.target.evaluate(event, argument);
+            if (target == null) {
+                return null;
+            }
+            if (target instanceof Map) {
+                return ((Map<?, ?>) target).get(this.name);
+            }
+            Class<?> targetClass = target.getClass();
+            Accessor accessor = this.lastAccessor;
+            if (accessor == null || accessor.type != targetClass) {
+                MethodHandle handle = this.accessorCache.get(targetClass);
+                if (handle == null) {
+                    handle = findAccessor(targetClass);
+                    this.accessorCache.put(targetClass, handle);
+                }
+                accessor = new Accessor(targetClass, handle);
+                this.lastAccessor = accessor;
+            }
+            try {
+                return accessor.handle.invokeExact(target);
+            }
+            catch (RuntimeException | Error ex) {
+                throw ex;
+            }
+            catch (Throwable ex) {
+                throw new IllegalStateException("读取属性 [" + this.name + "] 失败", ex);
+            }
+        }
+
+        private MethodHandle findAccessor(Class<?> targetClass) {
+            String suffix = StringUtils.capitalize(this.name);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                for (String candidate : new String[]{"get" + suffix, "is" + suffix, this.name}) {
+                    Method method = ReflectionUtils.findMethod(targetClass, candidate);
+                    if (method != null && method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+                        ReflectionUtils.makeAccessible(method);
+                        return lookup.unreflect(method).asType(MethodType.methodType(Object.class, Object.class));
+                    }
+                }
+                Field field = ReflectionUtils.findField(targetClass, this.name);
+                if (field != null && Modifier.isPublic(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+                    ReflectionUtils.makeAccessible(field);
+                    return lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                }
+            }
+            catch (IllegalAccessException ex) {
+                throw new IllegalStateException("不能访问类 [" + targetClass.getName() + "] 的属性 [" + this.name + "]", ex);
+            }
+            throw new IllegalStateException("类 [" + targetClass.getName() + "] 没有属性 [" + this.name + "]");
+        }
+    }
+
+    private static final class Accessor {
+
+        final Class<?> type;
+
+        final MethodHandle handle;
+
+        Accessor(Class<?> type, MethodHandle handle) {
+            this.type = type;
+            this.handle = handle;
+        }
+    }
+
+    private static final class Not implements Node {
+
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Object evaluate(ApplicationEvent event, @Nullable Object argument) {
+            return !toBoolean(this.operand, event, argument);
+        }
+    }
+
+    private static final class Logical implements Node {
+
+        private final boolean and;
+
+        private final Node left;
+
+        private final Node right;
+
+        Logical(boolean and, Node left, Node right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Object evaluate(ApplicationEvent event, @Nullable Object argument) {
+            boolean left = toBoolean(this.left, event, argument);
+            if (this.and ? !left : left) {
+                return left;
+            }
+            return toBoolean(this.right, event, argument);
+        }
+    }
+
+    private static final class Comparison implements Node {
+
+        private final String operator;
+
+        private final Node left;
+
+        private final Node right;
+
+        Comparison(String operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Object evaluate(ApplicationEvent event, @Nullable Object argument) {
+            Object left = this.left.evaluate(event, argument);
+            Object right = this.right.evaluate(event, argument);
+            switch (this.operator) {
+                case "==":
+                    return valueEquals(left, right);
+                case "!=":
+                    return !valueEquals(left, right);
+                case "<":
+                    return compare(left, right) < 0;
+                case "<=":
+                    return compare(left, right) <= 0;
+                case ">":
+                    return compare(left, right) > 0;
+                default:
+                    return compare(left, right) >= 0;
+            }
+        }
+    }
+
+
+    /**
+     * 递归下降的解析器
+     * or := and ('||' and)* ; and := comparison ('&&' comparison)* ;
+     * comparison := unary (op unary)? ; unary := '!' unary | primary ('.' name)*
+     */
+    private static final class Parser {
+
+        private final String expression;
+
+        private final Set<String> argumentNames;
+
+        private final List<String> tokens;
+
+        private int position;
+
+        Parser(String expression, Set<String> argumentNames) {
+            this.expression = expression;
+            this.argumentNames = argumentNames;
+            this.tokens = tokenize(expression);
+        }
+
+        Node parse() {
+            Node node = parseOr();
+            if (this.position != this.tokens.size()) {
+                throw error("多余的 [" + this.tokens.get(this.position) + "]");
+            }
+            return node;
+        }
+
+        private Node parseOr() {
+            Node node = parseAnd();
+            while (accept("||") || accept("or")) {
+                node = new Logical(false, node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseComparison();
+            while (accept("&&") || accept("and")) {
+                node = new Logical(true, node, parseComparison());
+            }
+            return node;
+        }
+
+        private Node parseComparison() {
+            Node node = parseUnary();
+            String token = peek();
+            if ("==".equals(token) || "!=".equals(token) || "<".equals(token) ||
+                    "<=".equals(token) || ">".equals(token) || ">=".equals(token)) {
+                this.position++;
+                node = new Comparison(token, node, parseUnary());
+            }
+            return node;
+        }
+
+        private Node parseUnary() {
+            if (accept("!") || accept("not")) {
+                return new Not(parseUnary());
+            }
+            Node node = parsePrimary();
+            while (accept(".")) {
+                String name = next();
+                if (!isIdentifier(name)) {
+                    throw error(". 后面应该是属性名, 实际是 [" + name + "]");
+                }
+                node = new Property(node, name);
+            }
+            return node;
+        }
+
+        private Node parsePrimary() {
+            String token = next();
+            if ("(".equals(token)) {
+                Node node = parseOr();
+                if (!accept(")")) {
+                    throw error("缺少 )");
+                }
+                return node;
+            }
+            if (token.startsWith("#")) {
+                String name = token.substring(1);
+                if ("event".equals(name)) {
+                    return new Variable(true);
+                }
+                if (this.argumentNames.contains(name)) {
+                    return new Variable(false);
+                }
+                throw error("不认识的变量 [" + token + "]");
+            }
+            if (token.startsWith("'") || token.startsWith("\"")) {
+                return new Literal(token.substring(1));
+            }
+            if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '-') {
+                try {
+                    return new Literal(token.indexOf('.') >= 0 ? (Object) Double.valueOf(token) : (Object) Long.valueOf(token));
+                }
+                catch (NumberFormatException ex) {
+                    throw error("不合法的数字 [" + token + "]");
+                }
+            }
+            switch (token) {
+                case "true":
+                    return new Literal(Boolean.TRUE);
+                case "false":
+                    return new Literal(Boolean.FALSE);
+                case "null":
+                    return new Literal(null);
+                default:
+                    throw error("不认识的 [" + token + "]");
+            }
+        }
+
+        private boolean accept(String token) {
+            if (token.equals(peek())) {
+                this.position++;
+                return true;
+            }
+            return false;
+        }
+
+        @Nullable
+        private String peek() {
+            return (this.position < this.tokens.size() ? this.tokens.get(this.position) : null);
+        }
+
+        private String next() {
+            if (this.position >= this.tokens.size()) {
+                throw error("表达式不完整");
+            }
+            return this.tokens.get(this.position++);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("条件表达式 [" + this.expression + "] 不合法: " + message);
+        }
+
+        private static boolean isIdentifier(String token) {
+            return Character.isJavaIdentifierStart(token.charAt(0));
+        }
+
+        /**
+         * 拆分成记号, 字符串记号保留开头的引号、去掉结尾的引号, 以便和名字区分
+         */
+        private List<String> tokenize(String expression) {
+            List<String> tokens = new ArrayList<>();
+            int length = expression.length();
+            int i = 0;
+            while (i < length) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                }
+                else if (c == '\'' || c == '"') {
+                    StringBuilder sb = new StringBuilder().append(c);
+                    int j = i + 1;
+                    while (j < length && expression.charAt(j) != c) {
+                        if (expression.charAt(j) == '\\' && j + 1 < length) {
+                            j++;
+                        }
+                        sb.append(expression.charAt(j++));
+                    }
+                    if (j >= length) {
+                        throw error("字符串没有结束");
+                    }
+                    tokens.add(sb.toString());
+                    i = j + 1;
+                }
+                else if (Character.isDigit(c) || (c == '-' && i + 1 < length && Character.isDigit(expression.charAt(i + 1)))) {
+                    int j = i + 1;
+                    while (j < length && (Character.isDigit(expression.charAt(j)) || expression.charAt(j) == '.')) {
+                        j++;
+                    }
+                    tokens.add(expression.substring(i, j));
+                    i = j;
+                }
+                else if (c == '#' || Character.isJavaIdentifierStart(c)) {
+                    int j = i + 1;
+                    while (j < length && Character.isJavaIdentifierPart(expression.charAt(j))) {
+                        j++;
+                    }
+                    if (c == '#' && j == i + 1) {
+                        throw error("# 后面缺少变量名");
+                    }
+                    tokens.add(expression.substring(i, j));
+                    i = j;
+                }
+                else if (i + 1 < length && isTwoCharOperator(expression.substring(i, i + 2))) {
+                    tokens.add(expression.substring(i, i + 2));
+                    i += 2;
+                }
+                else if ("().<>!".indexOf(c) >= 0) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                }
+                else {
+                    throw error("不认识的字符 [" + c + "]");
+                }
+            }
+            return tokens;
+        }
+
+        private static boolean isTwoCharOperator(String operator) {
+            return "==".equals(operator) || "!=".equals(operator) || "<=".equals(operator) ||
+                    ">=".equals(operator) || "&&".equals(operator) || "||".equals(operator);
+        }
+    }
+
+}
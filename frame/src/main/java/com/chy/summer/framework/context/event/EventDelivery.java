@@ -0,0 +1,36 @@
+package com.chy.summer.framework.context.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在监听器的类上, 指定事件投递给这个监听器的方式
+ * 没有标注的监听器, 广播器设置了 taskExecutor 的时候异步执行, 否则同步执行
+ * ORDERED 和 BATCH 只能用在单例的监听器上
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface EventDelivery {
+
+    /**
+     * 投递方式
+     */
+    DeliveryMode value() default DeliveryMode.SYNC;
+
+    /**
+     * BATCH 方式合并事件的时间窗口(毫秒)
+     */
+    long batchWindow() default 100;
+
+    /**
+     * BATCH 方式每次交给监听器的最大事件数, 窗口内的事件更多的时候分成多次
+     */
+    int maxBatchSize() default 1000;
+
+}
@@ -0,0 +1,47 @@
+package com.chy.summer.framework.context.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把bean的方法标记成事件监听器, 不需要实现 ApplicationListener 接口
+ * <p>
+ * 方法最多只能有一个参数. 参数是 ApplicationEvent 的子类的时候监听这种事件,
+ * 否则监听发布的普通对象(见 PayloadApplicationEvent), 参数就是发布的对象.
+ * 方法的返回值不为null的时候会作为新的事件发布出去, 数组和集合里的每个元素都会发布一次.
+ * <p>
+ * 容器里所有的单例创建完以后统一查找标注的方法, 每个方法生成一个 ApplicationListenerMethodAdapter 注册到事件广播器,
+ * 之后发布事件不再需要反射. 方法上可以用 @Order 指定顺序, bean的类上可以用 @EventDelivery 指定投递方式.
+ * bean被代理的时候调用的是代理对象上的方法, 所以方法不能是private的
+ */
+@Target({ElementType.METHOD, ElementType.ANNOTATION_TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface EventListener {
+
+    /**
+     * 监听的事件类型, 和 classes 一样
+     */
+    Class<?>[] value() default {};
+
+    /**
+     * 监听的事件类型, 不指定的时候使用方法参数的类型
+     * 方法没有参数的时候必须指定, 有参数的时候每个类型都必须能赋值给参数
+     */
+    Class<?>[] classes() default {};
+
+    /**
+     * 执行方法的条件, 为空的时候总是执行
+     * <p>
+     * 可以使用的变量: #event 事件本身, #payload 方法收到的参数(没有参数的时候是事件),
+     * #p0 和 #a0 方法的第一个参数, 编译时保留了参数名的时候也可以直接用参数名.
+     * 变量后面可以用 . 访问属性(getter或者public字段).
+     * 支持 true false null、数字、单引号或双引号的字符串, 以及 == != &lt; &lt;= &gt; &gt;= ! &amp;&amp; || and or not 和括号.
+     * 枚举和字符串比较的时候比较的是枚举的名字, 例如 {@code #payload.status == 'PAID' && #payload.amount > 100}
+     */
+    String condition() default "";
+
+}
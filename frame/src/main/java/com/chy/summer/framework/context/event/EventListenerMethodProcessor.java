@@ -0,0 +1,78 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.beans.config.ConfigurableListableBeanFactory;
+import com.chy.summer.framework.context.ConfigurableApplicationContext;
+import com.chy.summer.framework.core.annotation.AnnotationUtils;
+import com.chy.summer.framework.exception.NoSuchBeanDefinitionException;
+import com.chy.summer.framework.util.ClassUtils;
+import com.chy.summer.framework.util.ReflectionUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查找容器里所有bean的 @EventListener 方法, 每个方法生成一个 ApplicationListenerMethodAdapter 注册成监听器
+ * 在所有单例创建完以后由容器调用一次, 只根据bean的类型查找, 不会提前创建bean
+ */
+@Slf4j
+public class EventListenerMethodProcessor {
+
+    private final ConfigurableApplicationContext applicationContext;
+
+    public EventListenerMethodProcessor(ConfigurableApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    public void processBeans() {
+        ConfigurableListableBeanFactory beanFactory = this.applicationContext.getBeanFactory();
+        //同一个类的多个bean只查找一次
+        Map<Class<?>, List<Method>> listenerMethodsCache = new HashMap<>(64);
+        int count = 0;
+        for (String beanName : beanFactory.getBeanNamesForType(Object.class, true, false)) {
+            Class<?> beanType;
+            try {
+                beanType = beanFactory.getType(beanName);
+            }
+            catch (NoSuchBeanDefinitionException ex) {
+                log.debug("获取 bean [{}] 的类型失败: {}", beanName, ex.getMessage());
+                continue;
+            }
+            if (beanType == null) {
+                continue;
+            }
+            Class<?> targetClass = ClassUtils.getUserClass(beanType);
+            List<Method> methods = listenerMethodsCache.computeIfAbsent(targetClass, this::findListenerMethods);
+            for (Method method : methods) {
+                this.applicationContext.addApplicationListener(
+                        new ApplicationListenerMethodAdapter(beanName, targetClass, method, beanFactory, this.applicationContext));
+                count++;
+            }
+        }
+        log.debug("注册了 [{}] 个 @EventListener 方法", count);
+    }
+
+    private List<Method> findListenerMethods(Class<?> targetClass) {
+        if (targetClass.getName().startsWith("java.")) {
+            return Collections.emptyList();
+        }
+        List<Method> methods = null;
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass)) {
+            if (method.isBridge() || method.isSynthetic()) {
+                continue;
+            }
+            if (AnnotationUtils.findAnnotation(method, EventListener.class) != null) {
+                if (methods == null) {
+                    methods = new ArrayList<>(2);
+                }
+                methods.add(method);
+            }
+        }
+        return (methods != null ? methods : Collections.emptyList());
+    }
+
+}
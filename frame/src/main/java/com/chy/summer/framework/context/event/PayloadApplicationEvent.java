@@ -0,0 +1,26 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.util.Assert;
+
+/**
+ * 包装任意对象的事件
+ * 发布一个不是 ApplicationEvent 的对象时, 会包装成这个事件, @EventListener 方法可以直接接收里面的对象
+ * @param <T> 包装的对象的类型
+ */
+public class PayloadApplicationEvent<T> extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final T payload;
+
+    public PayloadApplicationEvent(Object source, T payload) {
+        super(source);
+        Assert.notNull(payload, "payload不可为空");
+        this.payload = payload;
+    }
+
+    public T getPayload() {
+        return this.payload;
+    }
+
+}
@@ -0,0 +1,525 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.beans.BeanFactory;
+import com.chy.summer.framework.beans.BeanFactoryAware;
+import com.chy.summer.framework.core.ResolvableType;
+import com.chy.summer.framework.util.Assert;
+import com.chy.summer.framework.util.core.CustomizableThreadCreator;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于环形缓冲区的事件广播器, 适合发布频率很高的事件
+ * <p>
+ * 缓冲区的槽位在启动的时候就分配好, 发布事件只是通过CAS抢一个序号, 把事件和监听器写进对应的槽位,
+ * 不会为每个监听器创建任务对象, 也不需要加锁.
+ * 消费线程有固定的几个, 每个线程有自己的消费序号, 每个监听器按照identityHashCode固定分给其中一个线程,
+ * 所以同一个监听器收到事件的顺序和序号的顺序一致, 一个慢的监听器只会拖慢和它同一个线程的监听器.
+ * <p>
+ * 发布者不会覆盖还有消费线程没有处理的槽位, 消费跟不上的时候发布者按照等待策略等待,
+ * 超过 publishTimeout 以后抛出异常.
+ * 监听器里再发布事件又碰到缓冲区已满的时候, 等待会造成死锁, 这个事件不进入缓冲区:
+ * 分给当前消费线程的监听器直接在当前线程里执行, 分给其他消费线程的监听器交给那个线程的溢出队列, 仍然在它自己的线程里执行.
+ * 这是顺序保证的唯一例外, 这样投递的事件会比缓冲区里还没有处理的事件先到达监听器.
+ * <p>
+ * ContextClosedEvent 同样进入缓冲区, 但是发布者会先等所有消费线程都处理完之前的事件才写入它, 再等所有消费线程都处理完它才返回,
+ * 所以任何一个监听器收到关闭事件的时候, 所有监听器都已经处理完之前的事件.
+ * 在消费线程里关闭容器的时候不能等待, 直接在当前线程里执行所有监听器.
+ * <p>
+ * 使用的时候注册一个名字为 applicationEventMulticaster 的bean:
+ * <pre>
+ * &#64;Bean(AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME)
+ * public RingBufferApplicationEventMulticaster applicationEventMulticaster() {
+ *     RingBufferApplicationEventMulticaster multicaster = new RingBufferApplicationEventMulticaster();
+ *     multicaster.setBufferSize(4096);
+ *     return multicaster;
+ * }
+ * </pre>
+ * 缓冲区在第一次发布事件的时候创建, 之后就不能再修改配置
+ */
+@Slf4j
+public class RingBufferApplicationEventMulticaster extends AbstractApplicationEventMulticaster implements BeanFactoryAware {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * 槽位的个数, 必须是2的幂
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * 消费线程的个数
+     */
+    private int consumerCount = 1;
+
+    private RingBufferWaitStrategy waitStrategy = RingBufferWaitStrategy.PARKING;
+
+    /**
+     * 缓冲区满的时候发布者最多等待的时间(毫秒), 小于0表示一直等待, 0表示不等待
+     */
+    private long publishTimeout = -1;
+
+    private String threadNamePrefix = "summer-event-ring-";
+
+    @Nullable
+    private volatile RingBuffer ringBuffer;
+
+    private volatile boolean shutdown;
+
+
+    public RingBufferApplicationEventMulticaster() {
+    }
+
+    public RingBufferApplicationEventMulticaster(BeanFactory beanFactory) {
+        super(beanFactory);
+    }
+
+
+    public void setBufferSize(int bufferSize) {
+        Assert.isTrue(bufferSize > 0 && Integer.bitCount(bufferSize) == 1, "bufferSize 必须是2的幂");
+        assertNotStarted();
+        this.bufferSize = bufferSize;
+    }
+
+    public void setConsumerCount(int consumerCount) {
+        Assert.isTrue(consumerCount > 0, "consumerCount 必须大于0");
+        assertNotStarted();
+        this.consumerCount = consumerCount;
+    }
+
+    public void setWaitStrategy(RingBufferWaitStrategy waitStrategy) {
+        Assert.notNull(waitStrategy, "waitStrategy不可为空");
+        assertNotStarted();
+        this.waitStrategy = waitStrategy;
+    }
+
+    public void setPublishTimeout(long publishTimeout) {
+        this.publishTimeout = publishTimeout;
+    }
+
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        Assert.hasText(threadNamePrefix, "threadNamePrefix不可为空");
+        assertNotStarted();
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    private void assertNotStarted() {
+        Assert.state(this.ringBuffer == null, "环形缓冲区已经启动, 不能再修改配置");
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event) {
+        Assert.notNull(event, "event不可为空");
+        Collection<ApplicationListener<?>> listeners = getApplicationListeners(event, ResolvableType.forClass(event.getClass()));
+        if (listeners.isEmpty()) {
+            return;
+        }
+        if (event instanceof ContextClosedEvent) {
+            RingBuffer ringBuffer = this.ringBuffer;
+            if (ringBuffer != null && !this.shutdown) {
+                ringBuffer.publishAndWait(event, listeners);
+            }
+            else {
+                //还没有发布过事件, 不需要照顾顺序
+                for (ApplicationListener<?> listener : listeners) {
+                    invokeListener(listener, event);
+                }
+            }
+            return;
+        }
+        getRingBuffer().publish(event, listeners);
+    }
+
+    private RingBuffer getRingBuffer() {
+        RingBuffer ringBuffer = this.ringBuffer;
+        if (ringBuffer == null) {
+            synchronized (this) {
+                Assert.state(!this.shutdown, "事件广播器已经关闭");
+                ringBuffer = this.ringBuffer;
+                if (ringBuffer == null) {
+                    ringBuffer = new RingBuffer(this.bufferSize, this.consumerCount, this.waitStrategy, this.threadNamePrefix);
+                    this.ringBuffer = ringBuffer;
+                }
+            }
+        }
+        return ringBuffer;
+    }
+
+    /**
+     * 关闭广播器, 消费线程处理完已经发布的事件以后退出, 之后不能再发布事件
+     */
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            this.shutdown = true;
+        }
+        RingBuffer ringBuffer = this.ringBuffer;
+        if (ringBuffer != null) {
+            ringBuffer.shutdown();
+        }
+    }
+
+    /**
+     * 已经发布的事件数
+     */
+    public long getPublishedCount() {
+        RingBuffer ringBuffer = this.ringBuffer;
+        return (ringBuffer != null ? ringBuffer.cursor.get() + 1 : 0);
+    }
+
+    /**
+     * 还能发布多少个事件而不需要等待
+     */
+    public long getRemainingCapacity() {
+        RingBuffer ringBuffer = this.ringBuffer;
+        if (ringBuffer == null) {
+            return this.bufferSize;
+        }
+        long current = ringBuffer.cursor.get();
+        return ringBuffer.slots.length - (current - ringBuffer.minimumSequence(current));
+    }
+
+    /**
+     * 发布者因为缓冲区已满而等待的次数
+     */
+    public long getBackpressureCount() {
+        RingBuffer ringBuffer = this.ringBuffer;
+        return (ringBuffer != null ? ringBuffer.backpressureCount.sum() : 0);
+    }
+
+    /**
+     * 在消费线程里执行监听器, 异常只能记录下来
+     */
+    @SuppressWarnings("unchecked")
+    protected void invokeListener(ApplicationListener<?> listener, ApplicationEvent event) {
+        try {
+            ((ApplicationListener<ApplicationEvent>) listener).onApplicationEvent(event);
+        }
+        catch (Throwable ex) {
+            log.error("监听器 [{}] 处理事件 [{}] 的时候出错", listener, event, ex);
+        }
+    }
+
+
+    /**
+     * 一个槽位, 发布者写入, 消费线程读取
+     * 字段是普通的写, 由 available 数组的volatile写保证消费线程能看到.
+     * 最后一个处理完的消费线程把引用清掉, 事件和监听器不会因为槽位还没有被覆盖而一直留在内存里
+     */
+    private static final class EventSlot {
+
+        ApplicationEvent event;
+
+        Collection<ApplicationListener<?>> listeners;
+
+        /**
+         * 还有几个消费线程没有处理这个槽位
+         */
+        final AtomicInteger pendingConsumers = new AtomicInteger();
+    }
+
+
+    /**
+     * 环形缓冲区和它的消费线程, 启动以后配置不再变化
+     */
+    private final class RingBuffer {
+
+        private final EventSlot[] slots;
+
+        private final int mask;
+
+        private final int indexShift;
+
+        /**
+         * 每个槽位当前发布到了第几圈, 消费线程通过它判断槽位里的事件是否已经发布完成
+         */
+        private final AtomicIntegerArray available;
+
+        /**
+         * 已经被发布者抢到的最大序号
+         */
+        private final AtomicLong cursor = new AtomicLong(-1);
+
+        /**
+         * 上一次算出来的消费线程的最小序号, 只是一个提示, 不需要严格同步
+         */
+        private volatile long gatingSequenceCache = -1;
+
+        private final Consumer[] consumers;
+
+        private final RingBufferWaitStrategy waitStrategy;
+
+        private final LongAdder backpressureCount = new LongAdder();
+
+        private volatile boolean running = true;
+
+        RingBuffer(int bufferSize, int consumerCount, RingBufferWaitStrategy waitStrategy, String threadNamePrefix) {
+            this.slots = new EventSlot[bufferSize];
+            for (int i = 0; i < bufferSize; i++) {
+                this.slots[i] = new EventSlot();
+            }
+            this.mask = bufferSize - 1;
+            this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+            this.available = new AtomicIntegerArray(bufferSize);
+            for (int i = 0; i < bufferSize; i++) {
+                this.available.set(i, -1);
+            }
+            this.waitStrategy = waitStrategy;
+
+            CustomizableThreadCreator threadCreator = new CustomizableThreadCreator(threadNamePrefix);
+            threadCreator.setDaemon(true);
+            this.consumers = new Consumer[consumerCount];
+            for (int i = 0; i < consumerCount; i++) {
+                this.consumers[i] = new Consumer(i);
+            }
+            for (Consumer consumer : this.consumers) {
+                consumer.thread = threadCreator.createThread(consumer);
+                consumer.thread.start();
+            }
+            log.debug("事件环形缓冲区启动, 槽位 [{}] 个, 消费线程 [{}] 个, 等待策略 [{}]",
+                    bufferSize, consumerCount, waitStrategy);
+        }
+
+        void publish(ApplicationEvent event, Collection<ApplicationListener<?>> listeners) {
+            long sequence = claim();
+            if (sequence < 0) {
+                publishOverflow(event, listeners);
+                return;
+            }
+            write(sequence, event, listeners);
+        }
+
+        /**
+         * 发布事件, 等到所有消费线程都处理完它再返回
+         */
+        void publishAndWait(ApplicationEvent event, Collection<ApplicationListener<?>> listeners) {
+            if (currentConsumer() != null) {
+                for (ApplicationListener<?> listener : listeners) {
+                    invokeListener(listener, event);
+                }
+                return;
+            }
+            long sequence = claim();
+            //每个消费线程只执行自己的监听器, 必须等所有消费线程都处理完之前的事件才能放出这个事件,
+            //否则一个线程上的监听器收到关闭事件的时候, 其他线程可能还在投递之前的事件
+            awaitConsumed(sequence - 1);
+            write(sequence, event, listeners);
+            awaitConsumed(sequence);
+        }
+
+        private void awaitConsumed(long sequence) {
+            int attempt = 0;
+            while (minimumSequence(sequence) < sequence) {
+                this.waitStrategy.idle(++attempt);
+            }
+        }
+
+        private void write(long sequence, ApplicationEvent event, Collection<ApplicationListener<?>> listeners) {
+            int index = (int) sequence & this.mask;
+            EventSlot slot = this.slots[index];
+            slot.event = event;
+            slot.listeners = listeners;
+            slot.pendingConsumers.set(this.consumers.length);
+            this.available.set(index, (int) (sequence >>> this.indexShift));
+        }
+
+        /**
+         * 抢一个序号, 序号对应的槽位还有消费线程没有处理的时候等待
+         * @return 抢到的序号, 消费线程自己发布事件而缓冲区已满的时候返回-1
+         */
+        private long claim() {
+            int attempt = 0;
+            long deadline = 0;
+            while (true) {
+                Assert.state(this.running, "事件广播器已经关闭");
+                long current = this.cursor.get();
+                long next = current + 1;
+                long wrapPoint = next - this.slots.length;
+                if (wrapPoint > this.gatingSequenceCache) {
+                    long minSequence = minimumSequence(current);
+                    if (wrapPoint > minSequence) {
+                        if (attempt == 0) {
+                            this.backpressureCount.increment();
+                            if (currentConsumer() != null) {
+                                return -1;
+                            }
+                            if (publishTimeout > 0) {
+                                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(publishTimeout);
+                            }
+                        }
+                        if (publishTimeout == 0 || (publishTimeout > 0 && System.nanoTime() - deadline > 0)) {
+                            throw new IllegalStateException("事件环形缓冲区已满, 消费线程跟不上发布的速度, 槽位 [" +
+                                    this.slots.length + "] 个");
+                        }
+                        this.waitStrategy.idle(++attempt);
+                        continue;
+                    }
+                    this.gatingSequenceCache = minSequence;
+                }
+                if (this.cursor.compareAndSet(current, next)) {
+                    return next;
+                }
+            }
+        }
+
+        /**
+         * 监听器里发布事件, 而缓冲区已满, 分给当前消费线程的监听器直接执行, 其他的交给它们自己的消费线程
+         */
+        private void publishOverflow(ApplicationEvent event, Collection<ApplicationListener<?>> listeners) {
+            Consumer current = currentConsumer();
+            for (ApplicationListener<?> listener : listeners) {
+                Consumer owner = this.consumers[laneOf(listener)];
+                if (owner == current) {
+                    invokeListener(listener, event);
+                }
+                else {
+                    owner.overflow.offer(new OverflowEvent(event, listener));
+                }
+            }
+        }
+
+        /**
+         * 监听器固定分给哪个消费线程
+         */
+        private int laneOf(ApplicationListener<?> listener) {
+            int consumerCount = this.consumers.length;
+            return (consumerCount == 1 ? 0 : (System.identityHashCode(listener) & Integer.MAX_VALUE) % consumerCount);
+        }
+
+        long minimumSequence(long minimum) {
+            for (Consumer consumer : this.consumers) {
+                minimum = Math.min(minimum, consumer.sequence.get());
+            }
+            return minimum;
+        }
+
+        @Nullable
+        private Consumer currentConsumer() {
+            Thread current = Thread.currentThread();
+            for (Consumer consumer : this.consumers) {
+                if (consumer.thread == current) {
+                    return consumer;
+                }
+            }
+            return null;
+        }
+
+        void shutdown() {
+            this.running = false;
+            for (Consumer consumer : this.consumers) {
+                LockSupport.unpark(consumer.thread);
+            }
+        }
+
+
+        /**
+         * 消费线程, 按序号依次处理槽位, 只执行分给自己的监听器
+         */
+        private final class Consumer implements Runnable {
+
+            private final int lane;
+
+            /**
+             * 已经处理完的最大序号
+             */
+            private final AtomicLong sequence = new AtomicLong(-1);
+
+            /**
+             * 其他消费线程在缓冲区已满的时候交给这个线程的事件
+             */
+            private final Queue<OverflowEvent> overflow = new ConcurrentLinkedQueue<>();
+
+            private volatile Thread thread;
+
+            Consumer(int lane) {
+                this.lane = lane;
+            }
+
+            @Override
+            public void run() {
+                long next = this.sequence.get() + 1;
+                int attempt = 0;
+                while (true) {
+                    if (drainOverflow()) {
+                        attempt = 0;
+                    }
+                    int index = (int) next & mask;
+                    if (available.get(index) == (int) (next >>> indexShift)) {
+                        EventSlot slot = slots[index];
+                        dispatch(slot.event, slot.listeners);
+                        release(slot);
+                        this.sequence.lazySet(next);
+                        next++;
+                        attempt = 0;
+                    }
+                    else if (!running && next > cursor.get()) {
+                        drainOverflow();
+                        break;
+                    }
+                    else {
+                        waitStrategy.idle(++attempt);
+                    }
+                }
+                log.debug("事件环形缓冲区的消费线程 [{}] 退出", this.lane);
+            }
+
+            private void dispatch(ApplicationEvent event, Collection<ApplicationListener<?>> listeners) {
+                for (ApplicationListener<?> listener : listeners) {
+                    if (laneOf(listener) == this.lane) {
+                        invokeListener(listener, event);
+                    }
+                }
+            }
+
+            /**
+             * 最后一个处理完槽位的消费线程清掉引用, 必须在更新自己的序号之前, 之后发布者就可能重新写入这个槽位
+             */
+            private void release(EventSlot slot) {
+                if (slot.pendingConsumers.decrementAndGet() == 0) {
+                    slot.event = null;
+                    slot.listeners = null;
+                }
+            }
+
+            /**
+             * @return 是否处理了溢出的事件
+             */
+            private boolean drainOverflow() {
+                boolean drained = false;
+                OverflowEvent overflowEvent;
+                while ((overflowEvent = this.overflow.poll()) != null) {
+                    invokeListener(overflowEvent.listener, overflowEvent.event);
+                    drained = true;
+                }
+                return drained;
+            }
+        }
+    }
+
+
+    /**
+     * 缓冲区已满的时候, 监听器里发布的事件交给其他消费线程的形式
+     */
+    private static final class OverflowEvent {
+
+        final ApplicationEvent event;
+
+        final ApplicationListener<?> listener;
+
+        OverflowEvent(ApplicationEvent event, ApplicationListener<?> listener) {
+            this.event = event;
+            this.listener = listener;
+        }
+    }
+
+}
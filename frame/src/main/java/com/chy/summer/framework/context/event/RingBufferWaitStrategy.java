@@ -0,0 +1,70 @@
+package com.chy.summer.framework.context.event;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 环形缓冲区里没有事件可消费(或者缓冲区已满, 发布者等待空位)的时候怎么等待
+ * 等待的时间越短, 事件的延迟越低, 但是空闲的时候占用的CPU越多
+ */
+public enum RingBufferWaitStrategy {
+
+    /**
+     * 一直空转, 延迟最低, 但是会一直占满一个CPU, 只适合消费线程数少于CPU核数的场景
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(int attempt) {
+        }
+    },
+
+    /**
+     * 空转一段时间以后让出CPU, 延迟很低, 空闲的时候CPU占用依然很高
+     */
+    YIELDING {
+        @Override
+        void idle(int attempt) {
+            if (attempt > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+
+    /**
+     * 先空转, 再让出CPU, 最后挂起线程, 挂起的时间逐渐加长到1毫秒
+     * 空闲的时候几乎不占CPU, 空闲以后的第一个事件最多延迟1毫秒
+     */
+    PARKING {
+        @Override
+        void idle(int attempt) {
+            if (attempt <= SPIN_TRIES) {
+                return;
+            }
+            if (attempt <= SPIN_TRIES * 2) {
+                Thread.yield();
+                return;
+            }
+            int shift = Math.min(attempt - SPIN_TRIES * 2, MAX_PARK_SHIFT);
+            LockSupport.parkNanos(MIN_PARK_NANOS << shift);
+        }
+    };
+
+    /**
+     * 开始让出CPU之前空转的次数
+     */
+    private static final int SPIN_TRIES = 100;
+
+    private static final long MIN_PARK_NANOS = 1000;
+
+    /**
+     * 挂起时间最多翻倍的次数, 1微秒 << 10 约等于1毫秒
+     */
+    private static final int MAX_PARK_SHIFT = 10;
+
+
+    /**
+     * 等待一次
+     * @param attempt 连续等待的次数, 从1开始, 拿到事件(或空位)以后重新计数
+     */
+    abstract void idle(int attempt);
+
+}
@@ -1,20 +1,76 @@
 package com.chy.summer.framework.context.event;
 
-import com.chy.summer.framework.beans.BeanFactory;
+import com.chy.summer.framework.aop.framework.AopProxyUtils;
 import com.chy.summer.framework.beans.config.ConfigurableListableBeanFactory;
 import com.chy.summer.framework.core.ResolvableType;
+import com.chy.summer.framework.core.annotation.AnnotationUtils;
+import com.chy.summer.framework.core.task.ThreadPoolTaskExecutor;
+import com.chy.summer.framework.util.Assert;
+import com.chy.summer.framework.util.ConcurrentReferenceHashMap;
+import com.chy.summer.framework.util.core.CustomizableThreadCreator;
+import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 @Slf4j
 public class SimpleApplicationEventMulticaster extends AbstractApplicationEventMulticaster {
 
+    /**
+     * 关闭的时候最多等待 BATCH 调度线程多少秒
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * 关闭容器的时候等待事件队列被其他线程消费完, 每次检查之间的间隔
+     */
+    private static final long FLUSH_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
     private  ConfigurableListableBeanFactory beanFactory;
 
     private Executor taskExecutor;
 
+    /**
+     * ASYNC/ORDERED/BATCH 方式投递事件使用的线程池, 没有设置的时候第一次使用时创建
+     */
+    @Nullable
+    private volatile Executor deliveryExecutor;
+
+    /**
+     * 没有设置 deliveryExecutor 的时候自己创建的线程池, 关闭的时候只关闭自己创建的
+     */
+    @Nullable
+    private ThreadPoolTaskExecutor defaultDeliveryExecutor;
+
+    /**
+     * BATCH 方式用来等待时间窗口的调度线程, 第一次使用时创建
+     */
+    @Nullable
+    private volatile ScheduledExecutorService batchScheduler;
+
+    /**
+     * 监听器类 -> 投递方式
+     */
+    private final Map<Class<?>, DeliveryPolicy> deliveryPolicyCache = new ConcurrentReferenceHashMap<>(64);
+
+    /**
+     * ORDERED/BATCH 方式的监听器 -> 它的事件队列
+     * 只有单例的监听器会放进来, 监听器被删除的时候一起删除
+     */
+    private final Map<ApplicationListener<?>, ListenerMailbox> mailboxes = new ConcurrentHashMap<>(16);
+
     public SimpleApplicationEventMulticaster(ConfigurableListableBeanFactory beanFactory) {
         super(beanFactory);
         this.beanFactory = beanFactory;
@@ -35,27 +91,415 @@ public class SimpleApplicationEventMulticaster extends AbstractApplicationEventM
     private void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
         ResolvableType type = (eventType != null ? eventType : ResolvableType.forClass(event.getClass()));
 
-        Executor executor = getTaskExecutor();
+        if (event instanceof ContextClosedEvent) {
+            //容器关闭的事件不管怎么配置都同步投递, 一个监听器出错不影响其他监听器释放资源
+            //ORDERED/BATCH 的监听器先处理完队列里的事件, 保证关闭事件是它收到的最后一个事件
+            for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+                ListenerMailbox mailbox = this.mailboxes.get(listener);
+                if (mailbox != null) {
+                    mailbox.flushAndDeliver(event);
+                }
+                else {
+                    invokeListenerSafely(listener, event);
+                }
+            }
+            return;
+        }
+
         //根据事件类型 来拿到对应事件下面的所有 监听器
         for (final ApplicationListener<?> listener : getApplicationListeners(event, type)) {
-            //这里如果有 executor 那么就讲会在线程中执行 监听回调
-            if (executor != null) {
-                executor.execute(() -> invokeListener(listener, event));
+            DeliveryPolicy policy = getDeliveryPolicy(listener);
+            if (policy.mode == null) {
+                //没有标注 @EventDelivery 的监听器
+                //这里如果有 executor 那么就讲会在线程中执行 监听回调
+                Executor executor = getTaskExecutor();
+                if (executor != null) {
+                    executor.execute(() -> invokeListener(listener, event));
+                }
+                else {
+                    //这里是同步的方式执行
+                    invokeListener(listener, event);
+                }
+                continue;
             }
-            else {
-                //这里是同步的方式执行
-                invokeListener(listener, event);
+            switch (policy.mode) {
+                case ASYNC:
+                    getDeliveryExecutor().execute(() -> invokeListenerSafely(listener, event));
+                    break;
+                case ORDERED:
+                case BATCH:
+                    this.mailboxes.computeIfAbsent(listener, key -> new ListenerMailbox(key, policy)).offer(event);
+                    break;
+                default:
+                    //SYNC, 在发布事件的线程里执行
+                    invokeListener(listener, event);
             }
         }
     }
 
+    /**
+     * 设置没有标注 @EventDelivery 的监听器使用的线程池, 不设置的时候这些监听器同步执行
+     */
+    public void setTaskExecutor(@Nullable Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
     protected Executor getTaskExecutor() {
         return this.taskExecutor;
     }
 
-    protected void invokeListener(ApplicationListener listener, ApplicationEvent event) {
-        log.debug("事件 [%s] 触发了监听器 [%s] 执行",event,listener);
-        listener.onApplicationEvent(event);
+    /**
+     * 设置 ASYNC/ORDERED/BATCH 方式投递事件使用的线程池
+     * 不设置的时候使用一个线程数和队列都有上限的守护线程池, 线程名以 summer-event- 开头,
+     * 线程池满了以后在发布事件的线程里执行, 发布的速度会被拖慢到和监听器处理的速度一致
+     */
+    public void setDeliveryExecutor(@Nullable Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    protected Executor getDeliveryExecutor() {
+        Executor executor = this.deliveryExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.deliveryExecutor;
+                if (executor == null) {
+                    ThreadPoolTaskExecutor threadPool = new ThreadPoolTaskExecutor("summer-event-");
+                    threadPool.setDaemon(true);
+                    threadPool.setRejectionPolicy(ThreadPoolTaskExecutor.RejectionPolicy.CALLER_RUNS);
+                    threadPool.initialize();
+                    executor = threadPool;
+                    this.defaultDeliveryExecutor = threadPool;
+                    this.deliveryExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ScheduledExecutorService getBatchScheduler() {
+        ScheduledExecutorService scheduler = this.batchScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = this.batchScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(
+                            daemonThreadCreator("summer-event-batch-")::createThread);
+                    this.batchScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * 关闭自己创建的事件线程池和 BATCH 的调度线程, 已经到达时间窗口的批次和排队的事件会处理完
+     * 设置进来的线程池由它的所有者负责关闭. 之后再发布事件会重新创建线程池
+     */
+    @Override
+    public void shutdown() {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = this.batchScheduler;
+            this.batchScheduler = null;
+        }
+        if (scheduler != null) {
+            //还没有到时间窗口的批次在关闭以后依然会执行, 这里等它们交给事件线程池
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("BATCH 调度线程在 [{}] 秒内没有结束", SHUTDOWN_TIMEOUT_SECONDS);
+                    scheduler.shutdownNow();
+                }
+            }
+            catch (InterruptedException ex) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        //调度线程结束以后才能摘掉事件线程池, 否则窗口到期的批次会交给一个新建的线程池
+        ThreadPoolTaskExecutor executor;
+        synchronized (this) {
+            executor = this.defaultDeliveryExecutor;
+            this.defaultDeliveryExecutor = null;
+            if (executor != null && this.deliveryExecutor == executor) {
+                this.deliveryExecutor = null;
+            }
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static CustomizableThreadCreator daemonThreadCreator(String threadNamePrefix) {
+        CustomizableThreadCreator threadCreator = new CustomizableThreadCreator(threadNamePrefix);
+        threadCreator.setDaemon(true);
+        return threadCreator;
+    }
+
+    @Override
+    public void removeApplicationListener(ApplicationListener<?> listener) {
+        super.removeApplicationListener(listener);
+        this.mailboxes.remove(listener);
+    }
+
+    @Override
+    public void removeAllListeners() {
+        super.removeAllListeners();
+        this.mailboxes.clear();
+    }
+
+    /**
+     * 当前有多少个 ORDERED/BATCH 方式的事件队列
+     */
+    int getMailboxCount() {
+        return this.mailboxes.size();
+    }
+
+    /**
+     * ORDERED/BATCH 方式的事件队列按监听器实例保存, 不是单例的监听器每次发布事件都是一个新的实例,
+     * 队列会越积越多, 顺序也没有意义, 所以不允许这样用
+     */
+    @Override
+    protected void checkNonSingletonListener(String listenerBeanName, ApplicationListener<?> listener) {
+        DeliveryMode mode = getDeliveryPolicy(listener).mode;
+        if (mode == DeliveryMode.ORDERED || mode == DeliveryMode.BATCH) {
+            throw new IllegalStateException("监听器 [" + listenerBeanName + "] 不是单例, 不能使用 " + mode + " 方式投递事件");
+        }
+    }
+
+    /**
+     * 获取监听器的投递方式, 按照监听器的目标类上的 @EventDelivery 决定
+     */
+    private DeliveryPolicy getDeliveryPolicy(ApplicationListener<?> listener) {
+        //@EventListener 方法看方法所在的bean的类
+        Class<?> listenerClass = (listener instanceof ApplicationListenerMethodAdapter ?
+                ((ApplicationListenerMethodAdapter) listener).getTargetClass() : AopProxyUtils.ultimateTargetClass(listener));
+        DeliveryPolicy policy = this.deliveryPolicyCache.get(listenerClass);
+        if (policy == null) {
+            EventDelivery delivery = AnnotationUtils.findAnnotation(listenerClass, EventDelivery.class);
+            policy = (delivery != null ? new DeliveryPolicy(delivery) : DeliveryPolicy.DEFAULT);
+            this.deliveryPolicyCache.put(listenerClass, policy);
+        }
+        return policy;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void invokeListener(ApplicationListener<?> listener, ApplicationEvent event) {
+        log.debug("事件 [{}] 触发了监听器 [{}] 执行", event, listener);
+        ((ApplicationListener<ApplicationEvent>) listener).onApplicationEvent(event);
+    }
+
+    /**
+     * 一次把多个事件交给监听器
+     * 实现了 BatchApplicationListener 的监听器收到整个列表, 其他的监听器逐个收到
+     */
+    @SuppressWarnings("unchecked")
+    protected void invokeListener(ApplicationListener<?> listener, List<ApplicationEvent> events) {
+        if (listener instanceof BatchApplicationListener) {
+            log.debug("[{}] 个事件合并触发了监听器 [{}] 执行", events.size(), listener);
+            ((BatchApplicationListener<ApplicationEvent>) listener).onApplicationEvents(events);
+        }
+        else {
+            for (ApplicationEvent event : events) {
+                invokeListenerSafely(listener, event);
+            }
+        }
+    }
+
+    /**
+     * 在事件线程里执行监听器, 异常没有人能接住, 只能记录下来
+     */
+    private void invokeListenerSafely(ApplicationListener<?> listener, ApplicationEvent event) {
+        try {
+            invokeListener(listener, event);
+        }
+        catch (Throwable ex) {
+            log.error("监听器 [{}] 处理事件 [{}] 的时候出错", listener, event, ex);
+        }
+    }
+
+
+    /**
+     * 解析好的 @EventDelivery
+     */
+    private static final class DeliveryPolicy {
+
+        /**
+         * 没有标注 @EventDelivery 的监听器, mode 为null
+         */
+        static final DeliveryPolicy DEFAULT = new DeliveryPolicy(null, 0, 0);
+
+        @Nullable
+        final DeliveryMode mode;
+
+        final long batchWindow;
+
+        final int maxBatchSize;
+
+        DeliveryPolicy(EventDelivery delivery) {
+            this(delivery.value(), delivery.batchWindow(), delivery.maxBatchSize());
+            Assert.isTrue(this.batchWindow >= 0, "batchWindow 不能小于0");
+            Assert.isTrue(this.maxBatchSize > 0, "maxBatchSize 必须大于0");
+        }
+
+        private DeliveryPolicy(@Nullable DeliveryMode mode, long batchWindow, int maxBatchSize) {
+            this.mode = mode;
+            this.batchWindow = batchWindow;
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
+
+
+    /**
+     * ORDERED/BATCH 方式下一个监听器的事件队列
+     * <p>
+     * 发布的线程只负责入队, 入队以后如果队列还没有被调度就提交一次消费任务,
+     * 所以同一时间最多只有一个线程在消费, 监听器收到事件的顺序就是入队的顺序.
+     * 消费完以后先清掉调度标记再检查一次队列, 避免清标记之前刚入队的事件没有人处理, 还有事件的话在当前线程里继续消费,
+     * 不再重新提交, 线程池满了在提交者线程里执行的时候不会一层层递归.
+     * BATCH 方式第一次入队的时候不立刻消费, 而是等 batchWindow 毫秒, 把这段时间的事件一起交给监听器
+     */
+    private final class ListenerMailbox implements Runnable {
+
+        private final ApplicationListener<?> listener;
+
+        private final DeliveryPolicy policy;
+
+        private final Queue<ApplicationEvent> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * 正在消费的线程
+         */
+        @Nullable
+        private volatile Thread consumerThread;
+
+        ListenerMailbox(ApplicationListener<?> listener, DeliveryPolicy policy) {
+            this.listener = listener;
+            this.policy = policy;
+        }
+
+        void offer(ApplicationEvent event) {
+            this.queue.offer(event);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!this.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (this.policy.mode == DeliveryMode.BATCH && this.policy.batchWindow > 0) {
+                    getBatchScheduler().schedule(this::dispatch, this.policy.batchWindow, TimeUnit.MILLISECONDS);
+                }
+                else {
+                    getDeliveryExecutor().execute(this);
+                }
+            }
+            catch (RejectedExecutionException ex) {
+                this.scheduled.set(false);
+                throw ex;
+            }
+        }
+
+        /**
+         * 窗口到了以后交给事件线程池消费, 调度线程不去执行监听器, 除非线程池已经满了
+         */
+        private void dispatch() {
+            try {
+                getDeliveryExecutor().execute(this);
+            }
+            catch (RejectedExecutionException ex) {
+                this.scheduled.set(false);
+                log.error("事件线程池拒绝了监听器 [{}] 的 [{}] 个事件", this.listener, this.queue.size(), ex);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                consume();
+                if (this.queue.isEmpty()) {
+                    return;
+                }
+                if (this.policy.mode == DeliveryMode.BATCH && this.policy.batchWindow > 0) {
+                    //新的一批事件要重新等一个时间窗口, 交给调度线程, 不会在当前线程里递归
+                    schedule();
+                    return;
+                }
+                if (!this.scheduled.compareAndSet(false, true)) {
+                    //已经被其他线程接手了
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 在当前线程里处理完队列里已有的事件, 再把给定的事件交给监听器, 容器关闭的时候使用
+         * 有线程正在消费(或者 BATCH 正在等时间窗口)的时候等它结束再接手
+         */
+        void flushAndDeliver(ApplicationEvent event) {
+            if (this.consumerThread == Thread.currentThread()) {
+                //监听器自己关闭了容器, 当前线程就是消费线程, 不能等待自己
+                invokeListenerSafely(this.listener, event);
+                return;
+            }
+            while (!this.scheduled.compareAndSet(false, true)) {
+                LockSupport.parkNanos(FLUSH_WAIT_NANOS);
+            }
+            consume();
+            invokeListenerSafely(this.listener, event);
+            if (!this.queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /**
+         * 消费队列里的事件, 调用之前必须已经设置了调度标记, 结束的时候清掉
+         */
+        private void consume() {
+            this.consumerThread = Thread.currentThread();
+            try {
+                if (this.policy.mode == DeliveryMode.BATCH) {
+                    drainBatches();
+                }
+                else {
+                    ApplicationEvent event;
+                    while ((event = this.queue.poll()) != null) {
+                        invokeListenerSafely(this.listener, event);
+                    }
+                }
+            }
+            finally {
+                this.consumerThread = null;
+                this.scheduled.set(false);
+            }
+        }
+
+        private void drainBatches() {
+            List<ApplicationEvent> batch = new ArrayList<>(Math.min(this.policy.maxBatchSize, 64));
+            ApplicationEvent event;
+            while ((event = this.queue.poll()) != null) {
+                batch.add(event);
+                if (batch.size() == this.policy.maxBatchSize) {
+                    deliver(batch);
+                    batch = new ArrayList<>(Math.min(this.policy.maxBatchSize, 64));
+                }
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        }
+
+        private void deliver(List<ApplicationEvent> batch) {
+            try {
+                invokeListener(this.listener, batch);
+            }
+            catch (Throwable ex) {
+                log.error("监听器 [{}] 处理 [{}] 个事件的时候出错", this.listener, batch.size(), ex);
+            }
+        }
     }
 
 }
@@ -0,0 +1,177 @@
+package com.chy.summer.framework.context.index;
+
+import com.chy.summer.framework.context.annotation.constant.ScopeType;
+import com.chy.summer.framework.util.StringUtils;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * 编译期生成的候选组件索引, 对应 META-INF/summer.components 文件
+ * <p>
+ * 文件里每一行的格式为:
+ * <pre>
+ * 类的全路径=注解1,注解2,...,scope:PROTOTYPE,lazy:true,conditional:true
+ * </pre>
+ * 注解部分是这个类上直接或者间接(元注解)打上的所有注解, scope/lazy/conditional 只有在类上打了对应注解的时候才会写入
+ * <p>
+ * 有了这个索引, 扫描器就只需要解析索引里列出来的类, 不用再去遍历整个包路径下的 class 文件.
+ * 索引只对生成了索引文件的 classpath 根路径(classes 目录或者 jar 包)有效, 见 {@link #covers}
+ */
+public class CandidateComponentsIndex {
+
+    public static final String SCOPE_PREFIX = "scope:";
+
+    public static final String LAZY_PREFIX = "lazy:";
+
+    public static final String CONDITIONAL_PREFIX = "conditional:";
+
+    /**
+     * key: 类的全路径  value: 索引条目, 保持文件中的顺序
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * 带有索引文件的 classpath 根路径, 如: file:/app/target/classes/ 或者 jar:file:/lib/a.jar!/
+     */
+    private final Set<String> indexedRoots;
+
+    CandidateComponentsIndex(List<Properties> content, Set<String> indexedRoots) {
+        this.indexedRoots = indexedRoots;
+        for (Properties properties : content) {
+            //properties 本身是无序的, 这里按类名排序, 保证每次启动扫描出来的顺序是一致的
+            List<String> classNames = new ArrayList<>(properties.stringPropertyNames());
+            Collections.sort(classNames);
+            for (String className : classNames) {
+                Entry entry = parseEntry(className, properties.getProperty(className));
+                //多个jar包中存在同一个类的时候, 以 classpath 靠前的为准
+                this.entries.putIfAbsent(className, entry);
+            }
+        }
+    }
+
+    private Entry parseEntry(String className, String value) {
+        Entry entry = new Entry(className);
+        for (String token : StringUtils.commaDelimitedListToStringArray(value)) {
+            token = token.trim();
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (token.startsWith(SCOPE_PREFIX)) {
+                entry.scope = ScopeType.valueOf(token.substring(SCOPE_PREFIX.length()));
+            } else if (token.startsWith(LAZY_PREFIX)) {
+                entry.lazy = Boolean.valueOf(token.substring(LAZY_PREFIX.length()));
+            } else if (token.startsWith(CONDITIONAL_PREFIX)) {
+                entry.conditional = Boolean.parseBoolean(token.substring(CONDITIONAL_PREFIX.length()));
+            } else {
+                entry.stereotypes.add(token);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 获取指定包路径下, 打了任意一个指定注解的候选组件
+     *
+     * @param basePackage 包路径 如: com.chy.test
+     * @param stereotypes 注解的全路径
+     * @return
+     */
+    public List<Entry> getCandidateTypes(String basePackage, Collection<String> stereotypes) {
+        String packagePrefix = basePackage.endsWith(".") ? basePackage : basePackage + ".";
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : this.entries.values()) {
+            if (!entry.getClassName().startsWith(packagePrefix)) {
+                continue;
+            }
+            for (String stereotype : stereotypes) {
+                if (entry.getStereotypes().contains(stereotype)) {
+                    result.add(entry);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 判断这个包路径能不能只用索引来找候选组件, 以索引条目的包路径为准: 索引里要有这个包(或者子包)下的条目.
+     * 没有开启注解处理器编译出来的模块, 它的包在索引里没有条目, 会继续扫描 class 文件, 组件不会被漏掉.
+     * <p>
+     * 另外, classloader 能找到这个包目录的根路径里, 只要有一个没有索引文件, 就说明同一个包分散在了没有索引的模块里, 也要扫描 class 文件.
+     * 这一步只是补充检查, 打包的时候没有写入目录条目的 jar 包在这里找不到, 不影响上面的判断
+     *
+     * @param basePackage 包路径 如: com.chy.test
+     * @param classLoader
+     * @return
+     * @throws IOException
+     */
+    public boolean covers(String basePackage, ClassLoader classLoader) throws IOException {
+        String packagePrefix = basePackage.endsWith(".") ? basePackage : basePackage + ".";
+        boolean hasEntries = false;
+        for (String className : this.entries.keySet()) {
+            if (className.startsWith(packagePrefix)) {
+                hasEntries = true;
+                break;
+            }
+        }
+        if (!hasEntries) {
+            return false;
+        }
+        String packagePath = packagePrefix.replace('.', '/');
+        Enumeration<URL> urls = classLoader.getResources(packagePath);
+        while (urls.hasMoreElements()) {
+            String url = urls.nextElement().toString();
+            if (url.endsWith(packagePath) && !this.indexedRoots.contains(url.substring(0, url.length() - packagePath.length()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+
+    /**
+     * 索引中的一个条目, 对应一个候选组件
+     */
+    @Getter
+    public static class Entry {
+
+        private final String className;
+
+        /**
+         * 类上直接或者间接打上的所有注解
+         */
+        private final Set<String> stereotypes = new LinkedHashSet<>();
+
+        /**
+         * 类上 @Scope 的值, 没有打 @Scope 就是 null
+         * 注册的时候作用域还是以 class 文件里的注解为准(索引里没有 proxyMode), 这个值给不加载类就想了解组件情况的工具使用
+         */
+        private ScopeType scope;
+
+        /**
+         * 类上 @Lazy 的值, 没有打 @Lazy 就是 null, 和 scope 一样注册的时候以 class 文件为准
+         */
+        private Boolean lazy;
+
+        /**
+         * 是否打了 @Conditional (包括作为元注解), 没打的话扫描的时候就不用再去做条件判断了
+         */
+        private boolean conditional;
+
+        Entry(String className) {
+            this.className = className;
+        }
+
+        @Override
+        public String toString() {
+            return this.className;
+        }
+    }
+}
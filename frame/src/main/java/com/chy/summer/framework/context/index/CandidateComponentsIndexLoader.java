@@ -0,0 +1,76 @@
+package com.chy.summer.framework.context.index;
+
+import com.chy.summer.framework.core.SummerProperties;
+import com.chy.summer.framework.core.io.UrlResource;
+import com.chy.summer.framework.core.io.support.PropertiesLoaderUtils;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 加载 META-INF/summer.components 候选组件索引
+ */
+@Slf4j
+public abstract class CandidateComponentsIndexLoader {
+
+    public static final String COMPONENTS_RESOURCE_LOCATION = "META-INF/summer.components";
+
+    /**
+     * 设置成 true 以后就算 classpath 中存在索引文件也不会去使用, 依然走扫描 class 文件的方式
+     * 索引只覆盖了部分 jar 包的时候不需要这个开关, 没有索引的包路径会自动扫描 class 文件
+     */
+    public static final String IGNORE_INDEX = "summer.index.ignore";
+
+    private static final boolean shouldIgnoreIndex = SummerProperties.getFlag(IGNORE_INDEX);
+
+    /**
+     * 没有索引文件的时候也要缓存下来, 所以这里用 Optional 包一层
+     */
+    private static final Map<ClassLoader, Optional<CandidateComponentsIndex>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 加载索引文件, 如果 classpath 中没有索引文件 或者 设置了忽略索引 就返回 null
+     *
+     * @param classLoader
+     * @return
+     */
+    @Nullable
+    public static CandidateComponentsIndex loadIndex(@Nullable ClassLoader classLoader) {
+        ClassLoader classLoaderToUse = classLoader;
+        if (classLoaderToUse == null) {
+            classLoaderToUse = CandidateComponentsIndexLoader.class.getClassLoader();
+        }
+        return cache.computeIfAbsent(classLoaderToUse, cl -> Optional.ofNullable(doLoadIndex(cl))).orElse(null);
+    }
+
+    @Nullable
+    private static CandidateComponentsIndex doLoadIndex(ClassLoader classLoader) {
+        if (shouldIgnoreIndex) {
+            return null;
+        }
+        try {
+            Enumeration<URL> urls = classLoader.getResources(COMPONENTS_RESOURCE_LOCATION);
+            if (!urls.hasMoreElements()) {
+                return null;
+            }
+            List<Properties> result = new ArrayList<>();
+            Set<String> indexedRoots = new HashSet<>();
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                result.add(PropertiesLoaderUtils.loadProperties(new UrlResource(url)));
+                String location = url.toString();
+                indexedRoots.add(location.substring(0, location.length() - COMPONENTS_RESOURCE_LOCATION.length()));
+            }
+            CandidateComponentsIndex index = new CandidateComponentsIndex(result, indexedRoots);
+            log.debug("从 [{}] 个 {} 文件中加载了 [{}] 个候选组件", result.size(), COMPONENTS_RESOURCE_LOCATION, index.size());
+            return index;
+        } catch (IOException ex) {
+            throw new IllegalStateException("不能够加载候选组件索引文件 [" + COMPONENTS_RESOURCE_LOCATION + "]", ex);
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.chy.summer.framework.context.index.processor;
+
+import com.chy.summer.framework.annotation.stereotype.Component;
+import com.chy.summer.framework.context.annotation.Lazy;
+import com.chy.summer.framework.context.annotation.Scope;
+import com.chy.summer.framework.context.annotation.condition.Conditional;
+import com.chy.summer.framework.context.annotation.constant.ScopeType;
+import com.chy.summer.framework.context.index.CandidateComponentsIndex;
+import com.chy.summer.framework.context.index.CandidateComponentsIndexLoader;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 编译期生成 META-INF/summer.components 候选组件索引的注解处理器
+ * <p>
+ * 编译的时候把所有直接或者间接打了 @Component 的具体类记录下来, 连同 @Scope/@Lazy/@Conditional 的信息一起写入索引文件,
+ * 启动的时候 ClassPathBeanDefinitionScanner 发现有索引文件就只去解析索引里的类, 不再遍历整个包路径
+ * <p>
+ * 为了不影响 frame 模块自身的编译, 这里没有通过 META-INF/services 自动注册, 需要使用的模块在编译插件里显式指定:
+ * <pre>
+ * &lt;annotationProcessors&gt;
+ *     &lt;annotationProcessor&gt;lombok.launch.AnnotationProcessorHider$AnnotationProcessor&lt;/annotationProcessor&gt;
+ *     &lt;annotationProcessor&gt;com.chy.summer.framework.context.index.processor.CandidateComponentsIndexer&lt;/annotationProcessor&gt;
+ * &lt;/annotationProcessors&gt;
+ * </pre>
+ * 或者 javac -processor com.chy.summer.framework.context.index.processor.CandidateComponentsIndexer
+ */
+public class CandidateComponentsIndexer extends AbstractProcessor {
+
+    /**
+     * key: 类的全路径  value: 这个类在索引文件里的那一行的值
+     */
+    private final Map<String, String> entries = new TreeMap<>();
+
+    /**
+     * 这一次编译中处理过的类, 增量编译的时候用来判断老索引里的条目是否需要被覆盖
+     */
+    private final Set<String> processedTypes = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            processElement(element);
+        }
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    /**
+     * 处理一个类, 静态内部类也需要递归处理
+     */
+    private void processElement(Element element) {
+        if (!(element instanceof TypeElement)) {
+            return;
+        }
+        TypeElement typeElement = (TypeElement) element;
+        for (Element enclosed : typeElement.getEnclosedElements()) {
+            if (enclosed.getModifiers().contains(Modifier.STATIC)) {
+                processElement(enclosed);
+            }
+        }
+        String className = this.processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+        this.processedTypes.add(className);
+        //接口,注解,枚举,抽象类 都不可能成为组件
+        if (typeElement.getKind() != ElementKind.CLASS || typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
+            return;
+        }
+
+        Set<String> stereotypes = new LinkedHashSet<>();
+        collectStereotypes(typeElement, stereotypes, new HashSet<>());
+        if (!stereotypes.contains(Component.class.getName())) {
+            return;
+        }
+
+        List<String> values = new ArrayList<>(stereotypes);
+        for (AnnotationMirror mirror : typeElement.getAnnotationMirrors()) {
+            String annotationName = getAnnotationName(mirror);
+            if (Scope.class.getName().equals(annotationName)) {
+                Object scope = getAttributeValue(mirror, "value");
+                values.add(CandidateComponentsIndex.SCOPE_PREFIX + (scope == null ? ScopeType.SINGLETON.name() : scope));
+            } else if (Lazy.class.getName().equals(annotationName)) {
+                Object lazy = getAttributeValue(mirror, "value");
+                values.add(CandidateComponentsIndex.LAZY_PREFIX + (lazy == null ? Boolean.TRUE : lazy));
+            }
+        }
+        if (stereotypes.contains(Conditional.class.getName())) {
+            values.add(CandidateComponentsIndex.CONDITIONAL_PREFIX + true);
+        }
+        this.entries.put(className, String.join(",", values));
+    }
+
+    /**
+     * 递归收集类上的注解 以及 注解上的元注解, java.lang.annotation 下的注解直接忽略
+     */
+    private void collectStereotypes(Element element, Set<String> stereotypes, Set<String> visited) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String annotationName = getAnnotationName(mirror);
+            if (annotationName.startsWith("java.lang.annotation") || !visited.add(annotationName)) {
+                continue;
+            }
+            stereotypes.add(annotationName);
+            collectStereotypes(mirror.getAnnotationType().asElement(), stereotypes, visited);
+        }
+    }
+
+    private String getAnnotationName(AnnotationMirror mirror) {
+        TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+        return annotationType.getQualifiedName().toString();
+    }
+
+    /**
+     * 获取注解上显式设置的属性值, 没有设置就返回 null, 枚举类型的值返回枚举常量的名称
+     */
+    private Object getAttributeValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                Object value = entry.getValue().getValue();
+                if (value instanceof VariableElement) {
+                    return ((VariableElement) value).getSimpleName().toString();
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写出索引文件, 增量编译的时候会把老索引中 这次没有处理到 并且依然存在的类 也合并进来
+     */
+    private void writeIndex() {
+        Map<String, String> result = new TreeMap<>(readExistingIndex());
+        result.keySet().removeAll(this.processedTypes);
+        result.keySet().removeIf(className ->
+                this.processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) == null);
+        result.putAll(this.entries);
+        if (result.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    CandidateComponentsIndexLoader.COMPONENTS_RESOURCE_LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("#由 " + getClass().getSimpleName() + " 在编译期生成, 请不要手动修改\n");
+                for (Map.Entry<String, String> entry : result.entrySet()) {
+                    writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("写入候选组件索引文件 ["
+                    + CandidateComponentsIndexLoader.COMPONENTS_RESOURCE_LOCATION + "] 失败", ex);
+        }
+    }
+
+    private Map<String, String> readExistingIndex() {
+        Map<String, String> result = new HashMap<>();
+        try {
+            FileObject file = this.processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    CandidateComponentsIndexLoader.COMPONENTS_RESOURCE_LOCATION);
+            try (InputStream is = file.openInputStream()) {
+                Properties properties = new Properties();
+                properties.load(new InputStreamReader(is, StandardCharsets.UTF_8));
+                for (String className : properties.stringPropertyNames()) {
+                    result.put(className, properties.getProperty(className));
+                }
+            }
+        } catch (IOException ex) {
+            //第一次编译 还没有索引文件
+        }
+        return result;
+    }
+}
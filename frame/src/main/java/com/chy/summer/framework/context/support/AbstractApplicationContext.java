@@ -2,13 +2,22 @@ package com.chy.summer.framework.context.support;
 
 import com.chy.summer.framework.beans.config.BeanFactoryPostProcessor;
 import com.chy.summer.framework.beans.config.ConfigurableListableBeanFactory;
+import com.chy.summer.framework.context.ApplicationContext;
 import com.chy.summer.framework.context.ConfigurableApplicationContext;
 import com.chy.summer.framework.context.event.ApplicationEvent;
 import com.chy.summer.framework.context.event.ApplicationEventMulticaster;
 import com.chy.summer.framework.context.event.ApplicationListener;
+import com.chy.summer.framework.context.event.ContextClosedEvent;
+import com.chy.summer.framework.context.event.EventListenerMethodProcessor;
 import com.chy.summer.framework.context.event.SimpleApplicationEventMulticaster;
+import com.chy.summer.framework.core.annotation.AnnotationUtils;
 import com.chy.summer.framework.core.evn.ConfigurableEnvironment;
 import com.chy.summer.framework.core.evn.resolver.PropertySourcesPlaceholderConfigurer;
+import com.chy.summer.framework.core.type.classreading.CachingMetadataReaderFactory;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
+import com.chy.summer.framework.core.metrics.StartupStep;
+import com.chy.summer.framework.util.Assert;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
@@ -70,64 +79,106 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
      */
     private ApplicationEventMulticaster applicationEventMulticaster;
 
+    /**
+     * 启动步骤的记录器, 默认什么都不记录
+     */
+    @Getter
+    private ApplicationStartup applicationStartup = ApplicationStartup.DEFAULT;
+
+    /**
+     * 已经注册的JVM关闭钩子
+     */
+    private Thread shutdownHook;
+
 
     /**
      * 开启summer的生命周期
      */
     public void refresh() {
         synchronized (startupShutdownMonitor) {
-            //容器刷新之前的准备，记录一下活动状态，以及容器开始刷新的时间
-            prepareRefresh();
+            //整个 refresh 过程作为一个父步骤, 下面每个阶段都是它的子步骤
+            StartupStep contextRefresh = this.applicationStartup.start("summer.context.refresh");
+            try {
+                try {
+                    //容器刷新之前的准备，记录一下活动状态，以及容器开始刷新的时间
+                    runStep("summer.context.refresh.prepare", this::prepareRefresh);
 
-            // 生成对应的 beanFactory 工厂
-            ConfigurableListableBeanFactory beanFactory = obtainFreshBeanFactory();
+                    // 生成对应的 beanFactory 工厂
+                    ConfigurableListableBeanFactory beanFactory = obtainFreshBeanFactory();
 
-            // beanFactory 工厂 的准备工作，设置一些属性
-            prepareBeanFactory(beanFactory);
+                    // beanFactory 工厂 的准备工作，设置一些属性
+                    runStep("summer.context.beanfactory.prepare", () -> prepareBeanFactory(beanFactory));
 
-            try {
-                //beanFactory 初始化结束后做一些事情，在spring里面这是个扩展点。
-                //这里开始扫描包路径下的类，把标记了注解的玩意生成 beanDefintion
-                //这里要传了包路径才会真正的扫描，如果是spring boot这样的启动则不会在这里去扫描
-                postProcessBeanFactory(beanFactory);
+                    //beanFactory 初始化结束后做一些事情，在spring里面这是个扩展点。
+                    //这里开始扫描包路径下的类，把标记了注解的玩意生成 beanDefintion
+                    //这里要传了包路径才会真正的扫描，如果是spring boot这样的启动则不会在这里去扫描
+                    runStep("summer.context.beanfactory.post-process", () -> {
+                        postProcessBeanFactory(beanFactory);
 
-                //执行了bean工厂的后置处理器
-                invokeBeanFactoryPostProcessors(beanFactory);
+                        //执行了bean工厂的后置处理器
+                        invokeBeanFactoryPostProcessors(beanFactory);
+                    });
 
-                // 注册 bean 的后置处理器 BeanPostProcessor 的接口的bean会被注册进去
-                registerBeanPostProcessors(beanFactory);
+                    // 注册 bean 的后置处理器 BeanPostProcessor 的接口的bean会被注册进去
+                    runStep("summer.context.beans.post-process", () -> registerBeanPostProcessors(beanFactory));
 
-                // 国际化
-                initMessageSource();
+                    // 国际化
+                    runStep("summer.context.message-source.init", this::initMessageSource);
 
-                // 初始化事件广播器
-                initApplicationEventMulticaster();
+                    // 初始化事件广播器
+                    runStep("summer.context.event-multicaster.init", this::initApplicationEventMulticaster);
 
-                //这里是一个扩展点,如果是初始化 WebApplicationContext 的一些构建就从这里开始
-                //明显也是启动tomcat的站点
-                onRefresh();
+                    //这里是一个扩展点,如果是初始化 WebApplicationContext 的一些构建就从这里开始
+                    //明显也是启动tomcat的站点
+                    runStep("summer.context.on-refresh", this::onRefresh);
 
-                //检查监听bean 然后注册监听器
-                registerListeners();
+                    //检查监听bean 然后注册监听器
+                    runStep("summer.context.listeners.register", this::registerListeners);
 
-                // 创建所有非懒加载的单例类
-                //执行bean的 SmartFactoryBean 接口
-                finishBeanFactoryInitialization(beanFactory);
+                    // 创建所有非懒加载的单例类
+                    //执行bean的 SmartFactoryBean 接口
+                    runStep("summer.context.beans.pre-instantiate", () -> finishBeanFactoryInitialization(beanFactory));
 
-                //最后的一些完成工作
-                //清除缓存,发布事件,注册application
-                finishRefresh();
+                    //最后的一些完成工作
+                    //清除缓存,发布事件,注册application
+                    runStep("summer.context.refresh.finish", this::finishRefresh);
 
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new RuntimeException(e.getMessage());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(e.getMessage());
+                }
+            } finally {
+                contextRefresh.end();
             }
 
 
         }
     }
 
+    /**
+     * 把 refresh 的一个阶段包在一个启动步骤里执行, 阶段抛出异常的时候步骤也会结束, 不会一直挂着没有结束时间
+     *
+     * @param stepName 步骤的名称
+     * @param phase    要执行的阶段
+     */
+    private void runStep(String stepName, RefreshPhase phase) throws Exception {
+        StartupStep step = this.applicationStartup.start(stepName);
+        try {
+            phase.run();
+        } finally {
+            step.end();
+        }
+    }
+
+    /**
+     * refresh 里的一个阶段, 允许抛出受检异常
+     */
+    @FunctionalInterface
+    private interface RefreshPhase {
+        void run() throws Exception;
+    }
+
     protected abstract void finishRefresh();
 
     private void finishBeanFactoryInitialization(ConfigurableListableBeanFactory beanFactory) {
@@ -139,6 +190,23 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
         // 开始实例化非懒加载的实例对象
         beanFactory.preInstantiateSingletons();
 
+        // 单例都创建好了, 把 @EventListener 方法注册成监听器
+        new EventListenerMethodProcessor(this).processBeans();
+
+        // 所有的类都已经解析完了, 共享的元数据缓存也就没用了
+        clearMetadataReaderCache(beanFactory);
+    }
+
+    private void clearMetadataReaderCache(ConfigurableListableBeanFactory beanFactory) {
+        if (!beanFactory.containsLocalBean(AnnotationUtils.METADATA_READER_FACTORY_BEAN_NAME)) {
+            return;
+        }
+        CachingMetadataReaderFactory metadataReaderFactory = beanFactory.getBean(
+                AnnotationUtils.METADATA_READER_FACTORY_BEAN_NAME, CachingMetadataReaderFactory.class);
+        log.debug("元数据读取器缓存 命中 [{}] 次, 解析 class 文件 [{}] 次, 清理缓存 [{}] 个",
+                metadataReaderFactory.getHitCount(), metadataReaderFactory.getMissCount(),
+                metadataReaderFactory.getCacheSize());
+        metadataReaderFactory.clearCache();
     }
 
     private void registerListeners() {
@@ -165,6 +233,15 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
         }
     }
 
+    @Override
+    public void addApplicationListener(ApplicationListener<?> listener) {
+        Assert.notNull(listener, "listener不可为空");
+        if (this.applicationEventMulticaster != null) {
+            this.applicationEventMulticaster.addApplicationListener(listener);
+        }
+        this.applicationListeners.add(listener);
+    }
+
     public Collection<ApplicationListener<?>> getApplicationListeners() {
         return this.applicationListeners;
     }
@@ -173,6 +250,31 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
         return this.applicationEventMulticaster;
     }
 
+    /**
+     * 发布事件
+     * 监听器还没有注册完的时候先把事件积压起来, 等 registerListeners 的时候再广播
+     * 有父容器的时候, 事件也会在父容器里发布一次
+     */
+    @Override
+    public void publishEvent(ApplicationEvent event) {
+        Assert.notNull(event, "event不可为空");
+        if (this.earlyApplicationEvents != null) {
+            this.earlyApplicationEvents.add(event);
+        }
+        else {
+            ApplicationEventMulticaster multicaster = getApplicationEventMulticaster();
+            if (multicaster == null) {
+                throw new IllegalStateException("事件广播器还没有初始化, 请先调用 refresh(): " + this);
+            }
+            multicaster.multicastEvent(event);
+        }
+
+        ApplicationContext parent = getParent();
+        if (parent != null) {
+            parent.publishEvent(event);
+        }
+    }
+
 
     private void onRefresh() {
     }
@@ -221,6 +323,13 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
     private void prepareBeanFactory(ConfigurableListableBeanFactory beanFactory) {
         //TODO 用了给beanFactory 设置一些属性，添加一些可能忽略的类什么的， 同时也注册一些常用的bean进入 ioc容器中，现在这里仅仅选择必要的一部分
         beanFactory.addBeanPostProcessor(new ApplicationContextAwareProcessor(this));
+        beanFactory.setApplicationStartup(getApplicationStartup());
+
+        //注册一个在整个 refresh 过程中共享的 元数据读取器工厂, 扫描器/配置类解析器/条件判断 都会用它来缓存解析结果
+        if (!beanFactory.containsLocalBean(AnnotationUtils.METADATA_READER_FACTORY_BEAN_NAME)) {
+            beanFactory.registerSingleton(AnnotationUtils.METADATA_READER_FACTORY_BEAN_NAME,
+                    new CachingMetadataReaderFactory());
+        }
     }
 
     private ConfigurableListableBeanFactory obtainFreshBeanFactory() {
@@ -235,6 +344,64 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
         this.earlyApplicationEvents = new LinkedHashSet<>();
     }
 
+    @Override
+    public void close() {
+        synchronized (this.startupShutdownMonitor) {
+            doClose();
+            if (this.shutdownHook != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+                }
+                catch (IllegalStateException ex) {
+                    //JVM 已经在关闭了, 钩子正在执行
+                }
+                this.shutdownHook = null;
+            }
+        }
+    }
+
+    @Override
+    public void registerShutdownHook() {
+        synchronized (this.startupShutdownMonitor) {
+            if (this.shutdownHook == null) {
+                this.shutdownHook = new Thread(() -> {
+                    synchronized (this.startupShutdownMonitor) {
+                        doClose();
+                    }
+                }, "summer-context-shutdown-hook");
+                Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+            }
+        }
+    }
+
+    /**
+     * 真正关闭容器, 只有启动过并且还没有关闭的时候才执行
+     * 监听 ContextClosedEvent 的bean在这里释放资源, 比如 ThreadPoolTaskExecutor 会等待已经提交的任务执行完
+     * 事件同步投递完以后再关闭事件广播器, 释放它自己创建的线程
+     */
+    protected void doClose() {
+        if (!this.active.get() || !this.closed.compareAndSet(false, true)) {
+            return;
+        }
+        log.debug("关闭容器 [{}]", this);
+        try {
+            publishEvent(new ContextClosedEvent(this));
+        }
+        catch (Throwable ex) {
+            log.warn("容器关闭时 ContextClosedEvent 的监听器抛出了异常", ex);
+        }
+        ApplicationEventMulticaster multicaster = getApplicationEventMulticaster();
+        if (multicaster != null) {
+            try {
+                multicaster.shutdown();
+            }
+            catch (Throwable ex) {
+                log.warn("容器关闭时关闭事件广播器失败", ex);
+            }
+        }
+        this.active.set(false);
+    }
+
     //==========================GenericApplicationContext 来实现的模板方法==========================
 
     @Override
@@ -258,4 +425,15 @@ public abstract class AbstractApplicationContext implements ConfigurableApplicat
     public ConfigurableEnvironment getEnvironment() {
         return environment;
     }
+
+    /**
+     * 设置启动步骤的记录器, 需要在 refresh 之前设置
+     */
+    @Override
+    public void setApplicationStartup(ApplicationStartup applicationStartup) {
+        if (applicationStartup == null) {
+            throw new IllegalArgumentException("applicationStartup 不能为 null");
+        }
+        this.applicationStartup = applicationStartup;
+    }
 }
@@ -5,6 +5,8 @@ import com.chy.summer.framework.beans.config.*;
 import com.chy.summer.framework.beans.support.DefaultListableBeanFactory;
 import com.chy.summer.framework.beans.support.MergedBeanDefinitionPostProcessor;
 import com.chy.summer.framework.core.PriorityOrdered;
+import com.chy.summer.framework.core.metrics.ApplicationStartup;
+import com.chy.summer.framework.core.metrics.StartupStep;
 import com.chy.summer.framework.core.ordered.OrderComparator;
 import com.chy.summer.framework.core.ordered.Ordered;
 
@@ -30,7 +32,7 @@ public class PostProcessorRegistrationDelegate {
             for (BeanFactoryPostProcessor postProcessor : beanFactoryPostProcessors) {
                 if (postProcessor instanceof BeanDefinitionRegistryPostProcessor) {
                     BeanDefinitionRegistryPostProcessor registryProcessor = (BeanDefinitionRegistryPostProcessor) postProcessor;
-                    registryProcessor.postProcessBeanDefinitionRegistry(registry);
+                    invokeBeanDefinitionRegistryPostProcessors(Collections.singletonList(registryProcessor), registry);
                     registryProcessors.add(registryProcessor);
                 }
                 else {
@@ -183,8 +185,15 @@ public class PostProcessorRegistrationDelegate {
     private static void invokeBeanDefinitionRegistryPostProcessors(
             Collection<? extends BeanDefinitionRegistryPostProcessor> postProcessors, BeanDefinitionRegistry registry) {
 
+        ApplicationStartup applicationStartup = getApplicationStartup(registry);
         for (BeanDefinitionRegistryPostProcessor postProcessor : postProcessors) {
-            postProcessor.postProcessBeanDefinitionRegistry(registry);
+            StartupStep step = applicationStartup.start("summer.context.beandef-registry.post-processor")
+                    .tag("postProcessor", postProcessor.getClass().getName());
+            try {
+                postProcessor.postProcessBeanDefinitionRegistry(registry);
+            } finally {
+                step.end();
+            }
         }
     }
 
@@ -194,9 +203,23 @@ public class PostProcessorRegistrationDelegate {
     private static void invokeBeanFactoryPostProcessors(
             Collection<? extends BeanFactoryPostProcessor> postProcessors, ConfigurableListableBeanFactory beanFactory) {
 
+        ApplicationStartup applicationStartup = beanFactory.getApplicationStartup();
         for (BeanFactoryPostProcessor postProcessor : postProcessors) {
-            postProcessor.postProcessBeanFactory(beanFactory);
+            StartupStep step = applicationStartup.start("summer.context.beanfactory.post-processor")
+                    .tag("postProcessor", postProcessor.getClass().getName());
+            try {
+                postProcessor.postProcessBeanFactory(beanFactory);
+            } finally {
+                step.end();
+            }
+        }
+    }
+
+    private static ApplicationStartup getApplicationStartup(BeanDefinitionRegistry registry) {
+        if (registry instanceof ConfigurableListableBeanFactory) {
+            return ((ConfigurableListableBeanFactory) registry).getApplicationStartup();
         }
+        return ApplicationStartup.DEFAULT;
     }
 
 
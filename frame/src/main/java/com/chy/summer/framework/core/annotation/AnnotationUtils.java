@@ -60,6 +60,12 @@ public abstract class AnnotationUtils {
     public static final String AUTOWIRED_ANNOTATION_PROCESSOR_BEAN_NAME =
             "chy.summer.internalAutowiredAnnotationProcessor";
 
+    /**
+     * 在一次 refresh 中共享的 带缓存的元数据读取器工厂
+     */
+    public static final String METADATA_READER_FACTORY_BEAN_NAME =
+            "chy.summer.internalCachingMetadataReaderFactory";
+
 
     /**
      * 把注解里的属性给抽出来放入 AnnotationAttributes
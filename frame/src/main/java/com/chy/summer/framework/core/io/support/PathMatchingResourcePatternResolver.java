@@ -2,19 +2,48 @@ package com.chy.summer.framework.core.io.support;
 
 import com.chy.summer.framework.core.io.DefaultResourceLoader;
 import com.chy.summer.framework.core.io.ResourceLoader;
+import com.chy.summer.framework.core.io.UrlResource;
+import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 根据路径找出路径下所有的 class 文件
+ * <p>
+ * classpath*: 开头的路径会通过 ClassLoader.getResources 找出所有 classpath 根目录(包括各个jar包)下的同名路径,
+ * 文件夹用 Files.walkFileTree 遍历, jar包 用 zip FileSystem 读取里面的条目,
+ * 每个 jar包 的条目列表只会读取一次, 在这个解析器的生命周期内一直缓存着
+ */
+@Slf4j
 public class PathMatchingResourcePatternResolver implements ResourcePatternResolver{
 
+    /**
+     * 需要扫描的文件后缀
+     */
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    /**
+     * jar 包的 url 中, jar包路径 和 jar包里面条目路径 的分隔符
+     */
+    private static final String JAR_URL_SEPARATOR = "!/";
+
     /**
      * 资源加载器
      */
     ResourceLoader resourceLoader;
 
+    /**
+     * jar包里条目的索引  key: jar包的 uri  value: jar包里所有文件条目的路径, 已经排好序
+     */
+    private final Map<URI, List<String>> jarEntryIndex = new ConcurrentHashMap<>();
+
     /**
      * 初始化资源加载器
      */
@@ -38,64 +67,173 @@ public class PathMatchingResourcePatternResolver implements ResourcePatternResol
      */
     @Override
     public Resource[] getResources(String locationPattern) throws IOException {
-        URL resourceURL = null;
-        //如果是classpath*： 开头的把 classpath*: 给换成 classes文件夹的绝对路径
-        if(locationPattern.startsWith(CLASSPATH_ALL_URL_PREFIX)){
-            String location  = locationPattern.substring(CLASSPATH_ALL_URL_PREFIX.length());
-            //获取绝对路径
-            resourceURL = getResourceLoader().getClassLoader().getResource(location);
-        }else{
-            resourceURL = new URL(locationPattern);
+        List<URL> rootUrls = new ArrayList<>();
+        //如果是classpath*： 开头的, 把所有 classpath 根目录 (包括jar包) 下的这个路径都找出来
+        if (locationPattern.startsWith(CLASSPATH_ALL_URL_PREFIX)) {
+            String location = locationPattern.substring(CLASSPATH_ALL_URL_PREFIX.length());
+            //jar包 里的目录条目是以 / 结尾的, 不加上 / 的话有些 jar包 里会找不到
+            if (!location.isEmpty() && !location.endsWith("/")) {
+                location = location + "/";
+            }
+            Enumeration<URL> urls = getClassLoader().getResources(location);
+            while (urls.hasMoreElements()) {
+                rootUrls.add(urls.nextElement());
+            }
+        } else if (locationPattern.startsWith(CLASSPATH_URL_PREFIX)) {
+            URL url = getClassLoader().getResource(locationPattern.substring(CLASSPATH_URL_PREFIX.length()));
+            if (url != null) {
+                rootUrls.add(url);
+            }
+        } else {
+            rootUrls.add(new URL(locationPattern));
         }
-        //通过url 把 所有的文件扫描出来，放set里
-        Set<Resource> resources = doFindPathMatchingFileResources(resourceURL);
-        return resources.toArray(new Resource[0]);
 
+        //通过url 把 所有的文件扫描出来，放set里, 同一个资源只保留一个
+        Set<Resource> result = new LinkedHashSet<>();
+        for (URL rootUrl : rootUrls) {
+            if (isJarURL(rootUrl)) {
+                result.addAll(doFindPathMatchingJarResources(rootUrl));
+            } else {
+                result.addAll(doFindPathMatchingFileResources(rootUrl));
+            }
+        }
+        return result.toArray(new Resource[0]);
     }
 
+    private boolean isJarURL(URL url) {
+        String protocol = url.getProtocol();
+        return "jar".equals(protocol) || "zip".equals(protocol) || "wsjar".equals(protocol);
+    }
 
     /**
-     * 真正扫描文件的方法
-     * @param url 硬盘路径可能是绝对路径 也可能是相对路径
+     * 扫描文件夹下的所有 class 文件
+     * @param rootUrl 文件夹的url
      * @return 指定路径下的所有class类型的文件
      */
-    private Set<Resource> doFindPathMatchingFileResources(URL url){
-        //硬盘索引指定路径的文件或文件夹
-        File rootFile = new File(url.getFile());
-        Set<Resource> result = new HashSet<>();
-        //查询后缀名为class的文件
-        fileHandle(result,rootFile,"class");
+    private Set<Resource> doFindPathMatchingFileResources(URL rootUrl) throws IOException {
+        Path rootPath;
+        try {
+            rootPath = Paths.get(rootUrl.toURI());
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException ex) {
+            log.debug("不能解析的路径 [{}] 原因: [{}]", rootUrl, ex.getMessage());
+            return Collections.emptySet();
+        }
+        if (!Files.exists(rootPath)) {
+            return Collections.emptySet();
+        }
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && file.getFileName().toString().endsWith(CLASS_FILE_SUFFIX)) {
+                            files.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                        //没有权限之类的文件直接跳过, 不影响其他文件的扫描
+                        log.debug("不能访问的文件 [{}] 原因: [{}]", file, ex.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        Collections.sort(files);
+        Set<Resource> result = new LinkedHashSet<>(files.size());
+        for (Path file : files) {
+            //将文件解析成资源对象
+            result.add(new FileSystemResource(file.toFile()));
+        }
         return result;
     }
 
     /**
-     * 递归扫描所有的class文件
-     * @param result 存放文件的容器对象
-     * @param file 硬盘索引到的文件或者文件夹
-     * @param type 文件类型（文件后缀名)
+     * 扫描 jar包 里指定路径下的所有 class 文件
+     *
+     * @param rootUrl 形如 jar:file:/xxx/app.jar!/com/chy/
+     * @return
      */
-    private void fileHandle(Set<Resource> result,File file , String type){
-
-        //如果是文件夹就递归扫描
-        if(file.isDirectory()){
-            Arrays.stream(Optional.ofNullable(file.list()).orElse(new String[0])).forEach(path->{
-                fileHandle(result,new File(file.getPath()+"/"+path),type);
-            });
-            return;
+    private Set<Resource> doFindPathMatchingJarResources(URL rootUrl) throws IOException {
+        String urlFile = rootUrl.getFile();
+        int separatorIndex = urlFile.indexOf(JAR_URL_SEPARATOR);
+        if (separatorIndex == -1) {
+            return Collections.emptySet();
         }
-        //获取文件名
-        String fileName = file.getName();
-        //获取后缀名
-        String suffix = fileName.substring(fileName.lastIndexOf(".") + 1);
-        //判断是否是指定的后缀文件
-        if(!type.equals(suffix)){
-            return;
+        String jarFileUrl = urlFile.substring(0, separatorIndex);
+        String rootEntryPath = urlFile.substring(separatorIndex + JAR_URL_SEPARATOR.length());
+        //jar包里面又套了一层 jar包 的情况, zip FileSystem 不能直接打开, 这里不做处理
+        if (rootEntryPath.contains(JAR_URL_SEPARATOR)) {
+            log.debug("不支持扫描嵌套的 jar包 [{}]", rootUrl);
+            return Collections.emptySet();
         }
-        //将文件解析成资源对象
-        Resource fileSystemResource = new FileSystemResource(file);
-        //放入容器
-        result.add(fileSystemResource);
+        if (!rootEntryPath.isEmpty() && !rootEntryPath.endsWith("/")) {
+            rootEntryPath = rootEntryPath + "/";
+        }
+
+        URI jarUri;
+        try {
+            jarUri = ResourceUtils.toURI(jarFileUrl);
+        } catch (URISyntaxException ex) {
+            log.debug("不能解析的 jar包 路径 [{}] 原因: [{}]", jarFileUrl, ex.getMessage());
+            return Collections.emptySet();
+        }
+        List<String> entries = getJarEntries(jarUri);
+
+        Set<Resource> result = new LinkedHashSet<>();
+        //条目是排好序的, 用二分查找定位到前缀开始的位置, 然后一直往后读到前缀不匹配为止
+        int index = Collections.binarySearch(entries, rootEntryPath);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        String jarUrlPrefix = ResourceUtils.JAR_URL_PREFIX + jarFileUrl + JAR_URL_SEPARATOR;
+        for (int i = index; i < entries.size(); i++) {
+            String entry = entries.get(i);
+            if (!entry.startsWith(rootEntryPath)) {
+                break;
+            }
+            if (entry.endsWith(CLASS_FILE_SUFFIX)) {
+                result.add(new UrlResource(new URL(jarUrlPrefix + entry)));
+            }
+        }
+        return result;
+    }
 
+    /**
+     * 获取 jar包 里的所有文件条目, 第一次会用 zip FileSystem 读取, 后面直接走缓存
+     *
+     * @param jarUri jar包 的 uri
+     * @return 排好序的条目路径, 不以 / 开头
+     */
+    private List<String> getJarEntries(URI jarUri) throws IOException {
+        List<String> entries = this.jarEntryIndex.get(jarUri);
+        if (entries != null) {
+            return entries;
+        }
+        entries = readJarEntries(Paths.get(jarUri));
+        List<String> existing = this.jarEntryIndex.putIfAbsent(jarUri, entries);
+        return existing != null ? existing : entries;
+    }
+
+    private List<String> readJarEntries(Path jarPath) throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (FileSystem zipFileSystem = FileSystems.newFileSystem(jarPath, (ClassLoader) null)) {
+            for (Path root : zipFileSystem.getRootDirectories()) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            String entry = file.toString();
+                            entries.add(entry.startsWith("/") ? entry.substring(1) : entry);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        }
+        Collections.sort(entries);
+        log.debug("读取 jar包 [{}] 的条目 [{}] 个", jarPath, entries.size());
+        return Collections.unmodifiableList(entries);
     }
 
 
@@ -109,4 +247,3 @@ public class PathMatchingResourcePatternResolver implements ResourcePatternResol
         return resourceLoader.getClassLoader();
     }
 }
-
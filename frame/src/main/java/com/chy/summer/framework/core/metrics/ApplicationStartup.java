@@ -0,0 +1,23 @@
+package com.chy.summer.framework.core.metrics;
+
+/**
+ * 启动过程的记录器, 容器在 refresh 的各个阶段 / 创建 bean / 执行后置处理器 / 解析配置类 的时候都会通过它记录一个步骤
+ * <p>
+ * 默认的实现 {@link #DEFAULT} 什么都不做, 需要分析启动耗时的时候换成能保存数据的实现
+ */
+public interface ApplicationStartup {
+
+    /**
+     * 默认的实现, 不做任何记录
+     */
+    ApplicationStartup DEFAULT = new DefaultApplicationStartup();
+
+    /**
+     * 开始一个新的步骤, 当前线程上一个还没有结束的步骤会成为它的父步骤
+     *
+     * @param name 步骤的名称, 如: summer.beans.instantiate
+     * @return 用完以后必须调用 {@link StartupStep#end()}
+     */
+    StartupStep start(String name);
+
+}
@@ -0,0 +1,56 @@
+package com.chy.summer.framework.core.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 什么都不记录的 ApplicationStartup, 所有的步骤都是同一个空对象, 不会产生任何额外的开销
+ */
+class DefaultApplicationStartup implements ApplicationStartup {
+
+    private static final DefaultStartupStep DEFAULT_STARTUP_STEP = new DefaultStartupStep();
+
+    @Override
+    public StartupStep start(String name) {
+        return DEFAULT_STARTUP_STEP;
+    }
+
+
+    static class DefaultStartupStep implements StartupStep {
+
+        @Override
+        public String getName() {
+            return "default";
+        }
+
+        @Override
+        public long getId() {
+            return 0L;
+        }
+
+        @Override
+        public Long getParentId() {
+            return null;
+        }
+
+        @Override
+        public StartupStep tag(String key, String value) {
+            return this;
+        }
+
+        @Override
+        public StartupStep tag(String key, Supplier<String> value) {
+            return this;
+        }
+
+        @Override
+        public Map<String, String> getTags() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+}
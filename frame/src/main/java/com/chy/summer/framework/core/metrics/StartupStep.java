@@ -0,0 +1,46 @@
+package com.chy.summer.framework.core.metrics;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 启动过程中的一个步骤, 从 {@link ApplicationStartup#start(String)} 开始 到 {@link #end()} 结束
+ */
+public interface StartupStep {
+
+    /**
+     * 步骤的名称
+     */
+    String getName();
+
+    /**
+     * 步骤的唯一id
+     */
+    long getId();
+
+    /**
+     * 父步骤的id, 没有父步骤就是 null
+     */
+    Long getParentId();
+
+    /**
+     * 给步骤打上一个标签, 比如 beanName
+     */
+    StartupStep tag(String key, String value);
+
+    /**
+     * 同上, 值是延迟计算的, 不做记录的实现不会去调用 supplier
+     */
+    StartupStep tag(String key, Supplier<String> value);
+
+    /**
+     * 所有的标签
+     */
+    Map<String, String> getTags();
+
+    /**
+     * 结束这个步骤
+     */
+    void end();
+
+}
@@ -132,8 +132,21 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator
 		//判断是否需要装饰任务
 		Runnable taskToUse = (this.taskDecorator != null ? this.taskDecorator.decorate(task) : task);
 		if (isThrottleActive() && startTimeout > TIMEOUT_IMMEDIATE) {
-			this.concurrencyThrottle.beforeAccess();
-			doExecute(new ConcurrencyThrottlingRunnable(taskToUse));
+			//TIMEOUT_INDEFINITE的时候一直等到有空闲的位置，否则最多等待startTimeout毫秒
+			if (startTimeout == TIMEOUT_INDEFINITE) {
+				this.concurrencyThrottle.beforeAccess();
+			}
+			else {
+				this.concurrencyThrottle.beforeAccess(startTimeout);
+			}
+			try {
+				doExecute(new ConcurrencyThrottlingRunnable(taskToUse));
+			}
+			catch (RuntimeException | Error ex) {
+				//任务没有启动，归还占用的位置
+				this.concurrencyThrottle.afterAccess();
+				throw ex;
+			}
 		}
 		else {
 			//不带任务时间执行
@@ -201,10 +214,21 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator
 			super.beforeAccess();
 		}
 
+		@Override
+		protected void beforeAccess(long timeout) {
+			super.beforeAccess(timeout);
+		}
+
 		@Override
 		protected void afterAccess() {
 			super.afterAccess();
 		}
+
+		@Override
+		protected RuntimeException accessRejected(long timeout) {
+			return new TaskTimeoutException("任务在 " + timeout + " 毫秒内没有获得执行的许可，并发限制为 " +
+					getCurrentConcurrencyLimit());
+		}
 	}
 
 
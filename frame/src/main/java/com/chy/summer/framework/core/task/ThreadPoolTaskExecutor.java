@@ -0,0 +1,489 @@
+package com.chy.summer.framework.core.task;
+
+import com.chy.summer.framework.context.event.ApplicationListener;
+import com.chy.summer.framework.context.event.ContextClosedEvent;
+import com.chy.summer.framework.util.Assert;
+import com.chy.summer.framework.util.core.CustomizableThreadCreator;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于线程池的TaskExecutor, 线程可以重用, 线程数和排队的任务数都有上限
+ * <p>
+ * 任务先交给核心线程, 核心线程都在忙的时候进入队列, 队列满了以后再创建新线程直到 maxPoolSize,
+ * 线程和队列都满了的时候按照 rejectionPolicy 处理, 默认抛出 TaskRejectedException.
+ * 执行大量短任务的时候应该用它代替 SimpleAsyncTaskExecutor, 后者每个任务都会创建一个新线程.
+ * <p>
+ * 线程池在第一次执行任务(或者调用 initialize)的时候创建. 注册成bean以后, 容器关闭时(收到 ContextClosedEvent)
+ * 不再接收新任务, 并等待已经提交的任务执行完, 最多等待 awaitTerminationSeconds 秒
+ */
+@Slf4j
+public class ThreadPoolTaskExecutor extends CustomizableThreadCreator
+		implements AsyncListenableTaskExecutor, ThreadFactory, ApplicationListener<ContextClosedEvent> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 线程和队列都满了的时候怎么处理新任务
+	 */
+	public enum RejectionPolicy {
+
+		/**
+		 * 抛出 TaskRejectedException
+		 */
+		ABORT,
+
+		/**
+		 * 在提交任务的线程里直接执行, 提交的速度会被拖慢到和执行的速度一致
+		 */
+		CALLER_RUNS,
+
+		/**
+		 * 丢弃新任务, 提交时拿到的 Future 会被取消
+		 */
+		DISCARD,
+
+		/**
+		 * 丢弃队列里最早的任务, 再重新提交新任务
+		 */
+		DISCARD_OLDEST
+	}
+
+
+	private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+	private final Object poolSizeMonitor = new Object();
+
+	private int corePoolSize = DEFAULT_POOL_SIZE;
+
+	private int maxPoolSize = DEFAULT_POOL_SIZE * 2;
+
+	private int keepAliveSeconds = 60;
+
+	private int queueCapacity = 1024;
+
+	private boolean allowCoreThreadTimeOut = false;
+
+	private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+	private boolean waitForTasksToCompleteOnShutdown = true;
+
+	private long awaitTerminationSeconds = 30;
+
+	@Nullable
+	private TaskDecorator taskDecorator;
+
+	@Nullable
+	private transient volatile ThreadPoolExecutor threadPoolExecutor;
+
+	/** 被拒绝的任务数 */
+	private final LongAdder rejectedCount = new LongAdder();
+
+	/** 开始执行的任务数, 用来计算平均排队时间 */
+	private final LongAdder startedCount = new LongAdder();
+
+	/** 所有任务排队时间的总和(纳秒) */
+	private final LongAdder totalQueueWaitNanos = new LongAdder();
+
+	/** 最长的排队时间(纳秒) */
+	private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+
+	public ThreadPoolTaskExecutor() {
+		super();
+	}
+
+	public ThreadPoolTaskExecutor(String threadNamePrefix) {
+		super(threadNamePrefix);
+	}
+
+
+	/**
+	 * 设置核心线程数, 线程池启动以后也可以修改
+	 */
+	public void setCorePoolSize(int corePoolSize) {
+		Assert.isTrue(corePoolSize >= 0, "corePoolSize 不能小于0");
+		synchronized (this.poolSizeMonitor) {
+			this.corePoolSize = corePoolSize;
+			ThreadPoolExecutor executor = this.threadPoolExecutor;
+			if (executor != null) {
+				executor.setCorePoolSize(corePoolSize);
+			}
+		}
+	}
+
+	public int getCorePoolSize() {
+		synchronized (this.poolSizeMonitor) {
+			return this.corePoolSize;
+		}
+	}
+
+	/**
+	 * 设置最大线程数, 线程池启动以后也可以修改
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		Assert.isTrue(maxPoolSize > 0, "maxPoolSize 必须大于0");
+		synchronized (this.poolSizeMonitor) {
+			this.maxPoolSize = maxPoolSize;
+			ThreadPoolExecutor executor = this.threadPoolExecutor;
+			if (executor != null) {
+				executor.setMaximumPoolSize(maxPoolSize);
+			}
+		}
+	}
+
+	public int getMaxPoolSize() {
+		synchronized (this.poolSizeMonitor) {
+			return this.maxPoolSize;
+		}
+	}
+
+	/**
+	 * 设置超过核心线程数的线程空闲多久以后退出(秒), 线程池启动以后也可以修改
+	 */
+	public void setKeepAliveSeconds(int keepAliveSeconds) {
+		Assert.isTrue(keepAliveSeconds >= 0, "keepAliveSeconds 不能小于0");
+		synchronized (this.poolSizeMonitor) {
+			this.keepAliveSeconds = keepAliveSeconds;
+			ThreadPoolExecutor executor = this.threadPoolExecutor;
+			if (executor != null) {
+				executor.setKeepAliveTime(keepAliveSeconds, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	/**
+	 * 设置队列的容量, 0表示不排队, 没有空闲线程的时候直接创建新线程
+	 * 只能在线程池启动之前设置
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		Assert.isTrue(queueCapacity >= 0, "queueCapacity 不能小于0");
+		assertNotInitialized();
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * 设置核心线程空闲的时候是否也会退出
+	 */
+	public void setAllowCoreThreadTimeOut(boolean allowCoreThreadTimeOut) {
+		assertNotInitialized();
+		this.allowCoreThreadTimeOut = allowCoreThreadTimeOut;
+	}
+
+	public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+		Assert.notNull(rejectionPolicy, "rejectionPolicy不可为空");
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	/**
+	 * 设置关闭的时候是否等待已经提交的任务执行完, 默认等待
+	 * 不等待的时候会中断正在执行的任务, 取消还在排队的任务
+	 */
+	public void setWaitForTasksToCompleteOnShutdown(boolean waitForTasksToCompleteOnShutdown) {
+		this.waitForTasksToCompleteOnShutdown = waitForTasksToCompleteOnShutdown;
+	}
+
+	/**
+	 * 设置关闭的时候最多等待多少秒, 超时以后强制停止, 0表示不等待
+	 */
+	public void setAwaitTerminationSeconds(long awaitTerminationSeconds) {
+		Assert.isTrue(awaitTerminationSeconds >= 0, "awaitTerminationSeconds 不能小于0");
+		this.awaitTerminationSeconds = awaitTerminationSeconds;
+	}
+
+	/**
+	 * 指定一个自定义TaskDecorator应用于要执行的任何Runnable
+	 */
+	public void setTaskDecorator(@Nullable TaskDecorator taskDecorator) {
+		this.taskDecorator = taskDecorator;
+	}
+
+	private void assertNotInitialized() {
+		Assert.state(this.threadPoolExecutor == null, "线程池已经启动, 不能再修改这个配置");
+	}
+
+
+	/**
+	 * 创建线程池, 重复调用没有效果
+	 */
+	public void initialize() {
+		getThreadPoolExecutor();
+	}
+
+	/**
+	 * 获取底层的线程池, 还没有创建的时候创建
+	 */
+	public ThreadPoolExecutor getThreadPoolExecutor() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		if (executor == null) {
+			synchronized (this.poolSizeMonitor) {
+				executor = this.threadPoolExecutor;
+				if (executor == null) {
+					Assert.isTrue(this.maxPoolSize >= this.corePoolSize, "maxPoolSize 不能小于 corePoolSize");
+					BlockingQueue<Runnable> queue = (this.queueCapacity > 0 ?
+							new LinkedBlockingQueue<>(this.queueCapacity) : new SynchronousQueue<>());
+					executor = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize,
+							this.keepAliveSeconds, TimeUnit.SECONDS, queue, this, new RejectionHandler());
+					executor.allowCoreThreadTimeOut(this.allowCoreThreadTimeOut);
+					this.threadPoolExecutor = executor;
+					log.debug("创建线程池 [{}], 核心线程 [{}] 个, 最大线程 [{}] 个, 队列容量 [{}]",
+							getThreadNamePrefix(), this.corePoolSize, this.maxPoolSize, this.queueCapacity);
+				}
+			}
+		}
+		return executor;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		return createThread(runnable);
+	}
+
+
+	/**
+	 * 执行给定的任务
+	 * @throws TaskRejectedException 线程池已满(拒绝策略为ABORT)或者已经关闭
+	 */
+	@Override
+	public void execute(Runnable task) {
+		Assert.notNull(task, "Runnable不能为空");
+		Runnable taskToUse = (this.taskDecorator != null ? this.taskDecorator.decorate(task) : task);
+		getThreadPoolExecutor().execute(new QueuedTask(taskToUse));
+	}
+
+	/**
+	 * 线程池里的任务按顺序排队, startTimeout 没有作用
+	 */
+	@Override
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		FutureTask<Object> future = new FutureTask<>(task, null);
+		execute(future);
+		return future;
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		FutureTask<T> future = new FutureTask<>(task);
+		execute(future);
+		return future;
+	}
+
+	@Override
+	public ListenableFuture<?> submitListenable(Runnable task) {
+		ListenableFutureTask<Object> future = ListenableFutureTask.create(task, null);
+		execute(future);
+		return future;
+	}
+
+	@Override
+	public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+		ListenableFutureTask<T> future = ListenableFutureTask.create(task);
+		execute(future);
+		return future;
+	}
+
+
+	/**
+	 * 容器关闭的时候关闭线程池
+	 */
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		shutdown();
+	}
+
+	/**
+	 * 关闭线程池
+	 * 默认不再接收新任务, 等已经提交的任务执行完, 超过 awaitTerminationSeconds 以后中断还在执行的任务
+	 */
+	public void shutdown() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		if (executor == null || executor.isShutdown()) {
+			return;
+		}
+		log.debug("关闭线程池 [{}], 正在执行 [{}] 个任务, 排队 [{}] 个任务",
+				getThreadNamePrefix(), executor.getActiveCount(), executor.getQueue().size());
+		if (this.waitForTasksToCompleteOnShutdown) {
+			executor.shutdown();
+		}
+		else {
+			cancelRemainingTasks(executor.shutdownNow());
+		}
+		if (this.awaitTerminationSeconds > 0) {
+			try {
+				if (!executor.awaitTermination(this.awaitTerminationSeconds, TimeUnit.SECONDS)) {
+					log.warn("线程池 [{}] 在 [{}] 秒内没有执行完所有任务, 强制停止",
+							getThreadNamePrefix(), this.awaitTerminationSeconds);
+					cancelRemainingTasks(executor.shutdownNow());
+				}
+			}
+			catch (InterruptedException ex) {
+				cancelRemainingTasks(executor.shutdownNow());
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 取消没有机会执行的任务, 等待它们结果的线程不会一直阻塞
+	 */
+	private void cancelRemainingTasks(List<Runnable> tasks) {
+		for (Runnable task : tasks) {
+			Runnable target = (task instanceof QueuedTask ? ((QueuedTask) task).target : task);
+			if (target instanceof Future) {
+				((Future<?>) target).cancel(true);
+			}
+		}
+	}
+
+
+	/**
+	 * 当前的线程数
+	 */
+	public int getPoolSize() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		return (executor != null ? executor.getPoolSize() : 0);
+	}
+
+	/**
+	 * 出现过的最大线程数
+	 */
+	public int getLargestPoolSize() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		return (executor != null ? executor.getLargestPoolSize() : 0);
+	}
+
+	/**
+	 * 正在执行任务的线程数
+	 */
+	public int getActiveCount() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		return (executor != null ? executor.getActiveCount() : 0);
+	}
+
+	/**
+	 * 正在排队的任务数
+	 */
+	public int getQueueSize() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		return (executor != null ? executor.getQueue().size() : 0);
+	}
+
+	/**
+	 * 已经执行完的任务数
+	 */
+	public long getCompletedTaskCount() {
+		ThreadPoolExecutor executor = this.threadPoolExecutor;
+		return (executor != null ? executor.getCompletedTaskCount() : 0);
+	}
+
+	/**
+	 * 被拒绝的任务数, 包括按照 CALLER_RUNS 在提交者线程里执行的任务
+	 */
+	public long getRejectedCount() {
+		return this.rejectedCount.sum();
+	}
+
+	/**
+	 * 任务从提交到开始执行的平均等待时间(纳秒)
+	 */
+	public long getAverageQueueWaitNanos() {
+		long started = this.startedCount.sum();
+		return (started > 0 ? this.totalQueueWaitNanos.sum() / started : 0);
+	}
+
+	/**
+	 * 任务从提交到开始执行的最长等待时间(纳秒)
+	 */
+	public long getMaxQueueWaitNanos() {
+		return this.maxQueueWaitNanos.get();
+	}
+
+
+	/**
+	 * 记录任务的提交时间, 开始执行的时候统计排队时间
+	 */
+	private final class QueuedTask implements Runnable {
+
+		private final Runnable target;
+
+		private final long submitTime = System.nanoTime();
+
+		QueuedTask(Runnable target) {
+			this.target = target;
+		}
+
+		@Override
+		public void run() {
+			long waitNanos = System.nanoTime() - this.submitTime;
+			startedCount.increment();
+			totalQueueWaitNanos.add(waitNanos);
+			long max;
+			while (waitNanos > (max = maxQueueWaitNanos.get()) && !maxQueueWaitNanos.compareAndSet(max, waitNanos)) {
+			}
+			this.target.run();
+		}
+
+		@Override
+		public String toString() {
+			return this.target.toString();
+		}
+	}
+
+	/**
+	 * 按照 rejectionPolicy 处理线程池拒绝的任务
+	 */
+	private final class RejectionHandler implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			rejectedCount.increment();
+			if (executor.isShutdown()) {
+				throw new TaskRejectedException("线程池 [" + getThreadNamePrefix() + "] 已经关闭, 不再接收任务: " + task);
+			}
+			switch (rejectionPolicy) {
+				case CALLER_RUNS:
+					task.run();
+					break;
+				case DISCARD:
+					log.debug("线程池 [{}] 已满, 丢弃任务 [{}]", getThreadNamePrefix(), task);
+					cancelRemainingTasks(Collections.singletonList(task));
+					break;
+				case DISCARD_OLDEST:
+					Runnable oldest = executor.getQueue().poll();
+					log.debug("线程池 [{}] 已满, 丢弃最早的任务 [{}]", getThreadNamePrefix(), oldest);
+					if (oldest != null) {
+						cancelRemainingTasks(Collections.singletonList(oldest));
+					}
+					executor.execute(task);
+					break;
+				default:
+					throw new TaskRejectedException("线程池 [" + getThreadNamePrefix() + "] 已满, 拒绝执行任务 [" + task +
+							"], 正在执行 [" + executor.getActiveCount() + "] 个, 排队 [" + executor.getQueue().size() +
+							"] 个, 最大线程数 [" + executor.getMaximumPoolSize() + "]");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+package com.chy.summer.framework.core.type.classreading;
+
+import com.chy.summer.framework.core.io.ResourceLoader;
+import com.chy.summer.framework.core.io.support.Resource;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带缓存的元数据读取器工厂
+ * <p>
+ * 扫描器, 配置类解析器, 条件判断 经常会反复去解析同一个 class 文件, 这里用一个有上限的 LRU 缓存把解析结果存起来,
+ * 按资源对象 和 类的全路径 都可以命中. 缓存的上限按类的数量来算, 每个类只占一个位置. 在一次 refresh 中共享同一个实例, refresh 结束以后清空
+ */
+public class CachingMetadataReaderFactory extends DefaultMetadataReaderFactory {
+
+    /**
+     * 默认最多缓存多少个类, 扫描的时候会按扫描到的 class 文件数量自动调大
+     */
+    public static final int DEFAULT_CACHE_LIMIT = 1024;
+
+    private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+    /**
+     * key: 类的全路径  value: 解析好的元数据读取器, 按访问顺序排列, 超过上限的时候淘汰最久没用过的
+     */
+    private final LruCache metadataReaderCache = new LruCache();
+
+    /**
+     * key: Resource  value: 类的全路径, 只是 metadataReaderCache 的索引, 类被淘汰的时候一起删掉
+     */
+    private final Map<Resource, String> resourceIndex = new HashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CachingMetadataReaderFactory() {
+        super();
+    }
+
+    public CachingMetadataReaderFactory(ResourceLoader resourceLoader) {
+        super(resourceLoader);
+    }
+
+    /**
+     * 设置最多缓存多少个类, 设置成 0 就是不缓存
+     *
+     * @param cacheLimit
+     */
+    public void setCacheLimit(int cacheLimit) {
+        this.cacheLimit = cacheLimit;
+        if (cacheLimit <= 0) {
+            clearCache();
+        }
+    }
+
+    public int getCacheLimit() {
+        return this.cacheLimit;
+    }
+
+    /**
+     * 保证缓存至少能放下 classCount 个类, 扫描器拿到 class 文件列表以后调用, 避免一次扫描里自己把自己挤出缓存
+     * 已经设置成不缓存的话不会改动
+     *
+     * @param classCount
+     */
+    public void ensureCacheLimit(int classCount) {
+        synchronized (this.metadataReaderCache) {
+            if (this.cacheLimit > 0 && this.cacheLimit < classCount) {
+                this.cacheLimit = classCount;
+            }
+        }
+    }
+
+    @Override
+    public MetadataReader getMetadataReader(String className) throws IOException {
+        MetadataReader metadataReader = getCached(className);
+        if (metadataReader != null) {
+            return metadataReader;
+        }
+        //这里会走到下面的 getMetadataReader(Resource), 解析完以后就已经放入缓存了
+        return super.getMetadataReader(className);
+    }
+
+    @Override
+    public MetadataReader getMetadataReader(Resource resource) throws IOException {
+        MetadataReader metadataReader = getCached(resource);
+        if (metadataReader != null) {
+            return metadataReader;
+        }
+        //解析的过程不上锁, 并行扫描的时候多个线程可以同时解析, 同一个资源被重复解析的话结果也是一样的
+        this.missCount.incrementAndGet();
+        metadataReader = super.getMetadataReader(resource);
+        putCached(resource, metadataReader);
+        return metadataReader;
+    }
+
+    private MetadataReader getCached(String className) {
+        if (getCacheLimit() <= 0) {
+            return null;
+        }
+        CachedReader cached;
+        synchronized (this.metadataReaderCache) {
+            cached = this.metadataReaderCache.get(className);
+        }
+        return hit(cached);
+    }
+
+    private MetadataReader getCached(Resource resource) {
+        if (getCacheLimit() <= 0) {
+            return null;
+        }
+        CachedReader cached = null;
+        synchronized (this.metadataReaderCache) {
+            String className = this.resourceIndex.get(resource);
+            if (className != null) {
+                cached = this.metadataReaderCache.get(className);
+            }
+        }
+        return hit(cached);
+    }
+
+    private MetadataReader hit(CachedReader cached) {
+        if (cached == null) {
+            return null;
+        }
+        this.hitCount.incrementAndGet();
+        return cached.metadataReader;
+    }
+
+    private void putCached(Resource resource, MetadataReader metadataReader) {
+        if (getCacheLimit() <= 0) {
+            return;
+        }
+        String className = metadataReader.getClassMetadata().getClassName();
+        synchronized (this.metadataReaderCache) {
+            CachedReader previous = this.metadataReaderCache.put(className, new CachedReader(metadataReader, resource));
+            //同名的类换了一个资源(比如不同的 jar 里有同一个类), 旧资源的索引就没用了
+            if (previous != null && !previous.resource.equals(resource)) {
+                this.resourceIndex.remove(previous.resource);
+            }
+            this.resourceIndex.put(resource, className);
+        }
+    }
+
+    /**
+     * 清空缓存, 命中次数 和 未命中次数 不会被清空
+     */
+    public void clearCache() {
+        synchronized (this.metadataReaderCache) {
+            this.metadataReaderCache.clear();
+            this.resourceIndex.clear();
+        }
+    }
+
+    /**
+     * 缓存命中的次数
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * 缓存没有命中, 真正去解析 class 文件的次数
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * 当前缓存了多少个类
+     */
+    public int getCacheSize() {
+        synchronized (this.metadataReaderCache) {
+            return this.metadataReaderCache.size();
+        }
+    }
+
+
+    private static class CachedReader {
+
+        private final MetadataReader metadataReader;
+
+        private final Resource resource;
+
+        CachedReader(MetadataReader metadataReader, Resource resource) {
+            this.metadataReader = metadataReader;
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的 LRU 缓存, 淘汰一个类的时候顺便删掉它的资源索引, 调用方需要持有它的锁
+     */
+    private class LruCache extends LinkedHashMap<String, CachedReader> {
+
+        private static final long serialVersionUID = 1L;
+
+        LruCache() {
+            super(DEFAULT_CACHE_LIMIT, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedReader> eldest) {
+            if (size() > getCacheLimit()) {
+                resourceIndex.remove(eldest.getValue().resource);
+                return true;
+            }
+            return false;
+        }
+    }
+}
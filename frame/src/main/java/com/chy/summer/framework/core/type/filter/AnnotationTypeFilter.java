@@ -17,6 +17,9 @@ public class AnnotationTypeFilter implements TypeFilter {
 
     }
 
+    public Class<? extends Annotation> getAnnotationType() {
+        return annotationType;
+    }
 
     @Override
     public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) throws IOException {
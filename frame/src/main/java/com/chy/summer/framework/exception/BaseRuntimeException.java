@@ -14,6 +14,10 @@ public abstract class BaseRuntimeException extends RuntimeException {
         this(String.format(format,param));
     }
 
+    public BaseRuntimeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
     /**
      * 检查此异常是否包含给定类型的异常:它是给定类本身的异常，还是包含给定类型的嵌套原因。
      * @param exType 要查找的异常类型
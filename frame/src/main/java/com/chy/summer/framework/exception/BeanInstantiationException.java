@@ -8,4 +8,8 @@ public class BeanInstantiationException extends BaseRuntimeException{
     public BeanInstantiationException(String format, Object... param) {
         super(format, param);
     }
+
+    public BeanInstantiationException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
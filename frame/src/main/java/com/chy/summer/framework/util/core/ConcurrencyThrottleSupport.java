@@ -1,11 +1,17 @@
 
 package com.chy.summer.framework.util.core;
 
+import com.chy.summer.framework.util.Assert;
+import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Support class for throttling concurrent access to a specific resource.
@@ -28,7 +34,6 @@ import java.io.Serializable;
  */
 @Slf4j
 public abstract class ConcurrencyThrottleSupport implements Serializable {
-	//TODO GYX 没有完成
 	/**
 	 * Permit any number of concurrent invocations: that is, don't throttle concurrency.
 	 */
@@ -39,11 +44,48 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 	 */
 	public static final int NO_CONCURRENCY = 0;
 
-	private transient Object monitor = new Object();
+	/**
+	 * Default multiplier applied to the adaptive limit when overload is detected.
+	 */
+	private static final double ADAPTIVE_BACKOFF_RATIO = 0.9;
+
+	/**
+	 * Weight of a slower sample when the baseline latency drifts upwards.
+	 */
+	private static final double BASELINE_DRIFT = 0.01;
+
+
+	private volatile int concurrencyLimit = UNBOUNDED_CONCURRENCY;
+
+	private long acquireTimeout = -1;
+
+	private boolean adaptiveConcurrency = false;
+
+	private int minConcurrencyLimit = 1;
+
+	private double latencyTolerance = 2.0;
+
+	/** Permits for the current (possibly adapted) limit; {@code null} while unbounded. */
+	@Nullable
+	private transient volatile LimitSemaphore permits;
+
+	/** The limit currently enforced by {@link #permits}. */
+	private transient volatile int currentLimit = UNBOUNDED_CONCURRENCY;
+
+	private transient AtomicInteger concurrencyCount = new AtomicInteger();
+
+	private transient LongAdder rejectedCount = new LongAdder();
 
-	private int concurrencyLimit = UNBOUNDED_CONCURRENCY;
+	private transient LongAdder waitedCount = new LongAdder();
 
-	private int concurrencyCount = 0;
+	/** Completions seen in the current adaptive window. */
+	private transient AtomicInteger windowSamples = new AtomicInteger();
+
+	/** Whether the current adaptive window saw an overloaded sample. */
+	private transient volatile boolean overloadSeen;
+
+	/** Estimated no-load latency in nanoseconds, 0 before the first sample. */
+	private transient volatile long baselineLatency;
 
 
 	/**
@@ -54,9 +96,11 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 	 * <p>NOTE: Do not switch between -1 and any concrete limit at runtime,
 	 * as this will lead to inconsistent concurrency counts: A limit
 	 * of -1 effectively turns off concurrency counting completely.
+	 * <p>In adaptive mode this is the upper bound of the adapted limit.
 	 */
 	public void setConcurrencyLimit(int concurrencyLimit) {
 		this.concurrencyLimit = concurrencyLimit;
+		resize(concurrencyLimit);
 	}
 
 	/**
@@ -75,63 +119,271 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 		return (this.concurrencyLimit >= 0);
 	}
 
+	/**
+	 * Set how long {@link #beforeAccess()} may wait for a free slot, in milliseconds.
+	 * <p>Default is -1: wait until a slot frees up. 0 rejects immediately
+	 * (fail-fast) when the limit is reached.
+	 * @see #accessRejected
+	 */
+	public void setAcquireTimeout(long acquireTimeout) {
+		this.acquireTimeout = acquireTimeout;
+	}
+
+	/**
+	 * Return how long {@link #beforeAccess()} may wait for a free slot, in milliseconds.
+	 */
+	public long getAcquireTimeout() {
+		return this.acquireTimeout;
+	}
+
+	/**
+	 * Set whether the enforced limit adapts to observed latency.
+	 * <p>Adaptive mode works AIMD style on latency samples passed to
+	 * {@link #afterAccess(long)}: once per window of as many completions as
+	 * the current limit, the limit shrinks by 10% if any call in the window
+	 * was slower than {@link #setLatencyTolerance tolerance} times the
+	 * baseline latency, and grows by one otherwise. The limit stays between
+	 * {@link #setMinConcurrencyLimit minConcurrencyLimit} and
+	 * {@link #setConcurrencyLimit concurrencyLimit}.
+	 */
+	public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+		if (!adaptiveConcurrency) {
+			resize(this.concurrencyLimit);
+		}
+	}
+
+	/**
+	 * Return whether the enforced limit adapts to observed latency.
+	 */
+	public boolean isAdaptiveConcurrency() {
+		return this.adaptiveConcurrency;
+	}
+
+	/**
+	 * Set the lower bound of the adapted limit. Default is 1.
+	 */
+	public void setMinConcurrencyLimit(int minConcurrencyLimit) {
+		Assert.isTrue(minConcurrencyLimit > 0, "minConcurrencyLimit必须大于0");
+		this.minConcurrencyLimit = minConcurrencyLimit;
+	}
+
+	/**
+	 * Return the lower bound of the adapted limit.
+	 */
+	public int getMinConcurrencyLimit() {
+		return this.minConcurrencyLimit;
+	}
+
+	/**
+	 * Set how many times slower than the baseline latency a call may be
+	 * before it counts as overload in adaptive mode. Default is 2.0.
+	 */
+	public void setLatencyTolerance(double latencyTolerance) {
+		Assert.isTrue(latencyTolerance > 1.0, "latencyTolerance必须大于1");
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * Return how many times slower than the baseline latency a call may be.
+	 */
+	public double getLatencyTolerance() {
+		return this.latencyTolerance;
+	}
+
+	/**
+	 * Return the limit currently enforced: the adapted limit in adaptive
+	 * mode, else the configured concurrency limit.
+	 */
+	public int getCurrentConcurrencyLimit() {
+		return (this.permits != null ? this.currentLimit : this.concurrencyLimit);
+	}
+
+	/**
+	 * Return the number of invocations currently inside the throttle.
+	 */
+	public int getConcurrencyCount() {
+		return this.concurrencyCount.get();
+	}
+
+	/**
+	 * Return the number of invocations rejected so far.
+	 */
+	public long getRejectedCount() {
+		return this.rejectedCount.sum();
+	}
+
+	/**
+	 * Return the number of invocations that had to wait for a slot so far.
+	 */
+	public long getWaitedCount() {
+		return this.waitedCount.sum();
+	}
+
+	/**
+	 * Return the estimated no-load latency in nanoseconds used by adaptive mode.
+	 */
+	public long getBaselineLatency() {
+		return this.baselineLatency;
+	}
+
 
 	/**
 	 * To be invoked before the main execution logic of concrete subclasses.
-	 * <p>This implementation applies the concurrency throttle.
+	 * <p>This implementation applies the concurrency throttle, waiting at most
+	 * the configured {@link #setAcquireTimeout acquire timeout}.
 	 * @see #afterAccess()
 	 */
 	protected void beforeAccess() {
+		beforeAccess(this.acquireTimeout);
+	}
+
+	/**
+	 * To be invoked before the main execution logic of concrete subclasses.
+	 * <p>Takes a slot without locking when one is free; otherwise waits for
+	 * one, up to the given timeout.
+	 * @param timeout how long to wait in milliseconds: -1 to wait until a slot
+	 * frees up, 0 to reject right away
+	 * @see #afterAccess()
+	 */
+	protected void beforeAccess(long timeout) {
 		if (this.concurrencyLimit == NO_CONCURRENCY) {
 			throw new IllegalStateException(
 					"Currently no invocations allowed - concurrency limit set to NO_CONCURRENCY");
 		}
-		if (this.concurrencyLimit > 0) {
-			boolean debug = log.isDebugEnabled();
-			synchronized (this.monitor) {
-				boolean interrupted = false;
-				while (this.concurrencyCount >= this.concurrencyLimit) {
-					if (interrupted) {
-						throw new IllegalStateException("Thread was interrupted while waiting for invocation access, " +
-								"but concurrency limit still does not allow for entering");
-					}
-					if (debug) {
-						log.debug("Concurrency count " + this.concurrencyCount +
-								" has reached limit " + this.concurrencyLimit + " - blocking");
-					}
-					try {
-						this.monitor.wait();
-					}
-					catch (InterruptedException ex) {
-						// Re-interrupt current thread, to allow other threads to react.
-						Thread.currentThread().interrupt();
-						interrupted = true;
-					}
+		LimitSemaphore permits = this.permits;
+		if (permits == null) {
+			return;
+		}
+		if (!permits.tryAcquire()) {
+			if (timeout == 0) {
+				this.rejectedCount.increment();
+				throw accessRejected(timeout);
+			}
+			this.waitedCount.increment();
+			if (log.isDebugEnabled()) {
+				log.debug("Concurrency count " + this.concurrencyCount.get() +
+						" has reached limit " + this.currentLimit + " - blocking");
+			}
+			boolean acquired;
+			try {
+				if (timeout < 0) {
+					permits.acquire();
+					acquired = true;
 				}
-				if (debug) {
-					log.debug("Entering throttle at concurrency count " + this.concurrencyCount);
+				else {
+					acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
 				}
-				this.concurrencyCount++;
 			}
+			catch (InterruptedException ex) {
+				// Re-interrupt current thread, to allow other threads to react.
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Thread was interrupted while waiting for invocation access, " +
+						"but concurrency limit still does not allow for entering");
+			}
+			if (!acquired) {
+				this.rejectedCount.increment();
+				throw accessRejected(timeout);
+			}
+		}
+		int count = this.concurrencyCount.getAndIncrement();
+		if (log.isDebugEnabled()) {
+			log.debug("Entering throttle at concurrency count " + count);
 		}
 	}
 
+	/**
+	 * Create the exception thrown by {@link #beforeAccess} when no slot became
+	 * free in time. The default is an {@link IllegalStateException}.
+	 * @param timeout the timeout that passed, in milliseconds
+	 */
+	protected RuntimeException accessRejected(long timeout) {
+		return new IllegalStateException("Concurrency limit " + this.currentLimit + " reached" +
+				(timeout > 0 ? " - no invocation access within " + timeout + " ms" : ""));
+	}
+
 	/**
 	 * To be invoked after the main execution logic of concrete subclasses.
 	 * @see #beforeAccess()
 	 */
 	protected void afterAccess() {
-		if (this.concurrencyLimit >= 0) {
-			synchronized (this.monitor) {
-				this.concurrencyCount--;
+		LimitSemaphore permits = this.permits;
+		if (permits != null) {
+			int count = this.concurrencyCount.decrementAndGet();
+			if (log.isDebugEnabled()) {
+				log.debug("Returning from throttle at concurrency count " + count);
+			}
+			permits.release();
+		}
+	}
+
+	/**
+	 * To be invoked after the main execution logic of concrete subclasses,
+	 * reporting how long the access took so that adaptive mode can adjust the limit.
+	 * @param elapsedNanos the duration of the access in nanoseconds
+	 * @see #setAdaptiveConcurrency
+	 */
+	protected void afterAccess(long elapsedNanos) {
+		afterAccess();
+		if (this.adaptiveConcurrency && this.permits != null) {
+			onLatencySample(elapsedNanos);
+		}
+	}
+
+	private void onLatencySample(long elapsedNanos) {
+		long baseline = this.baselineLatency;
+		if (baseline == 0 || elapsedNanos < baseline) {
+			baseline = elapsedNanos;
+		}
+		else {
+			// Let the baseline follow a slower system, slowly enough that overload does not hide itself.
+			baseline += (long) ((elapsedNanos - baseline) * BASELINE_DRIFT);
+		}
+		this.baselineLatency = baseline;
+		if (elapsedNanos > baseline * this.latencyTolerance) {
+			this.overloadSeen = true;
+		}
+
+		int limit = this.currentLimit;
+		int samples = this.windowSamples.incrementAndGet();
+		if (samples >= limit && this.windowSamples.compareAndSet(samples, 0)) {
+			boolean overloaded = this.overloadSeen;
+			this.overloadSeen = false;
+			int newLimit = (overloaded ? Math.min(limit - 1, (int) (limit * ADAPTIVE_BACKOFF_RATIO)) : limit + 1);
+			newLimit = Math.max(this.minConcurrencyLimit, Math.min(this.concurrencyLimit, newLimit));
+			if (newLimit != limit) {
 				if (log.isDebugEnabled()) {
-					log.debug("Returning from throttle at concurrency count " + this.concurrencyCount);
+					log.debug("Adapting concurrency limit from " + limit + " to " + newLimit +
+							(overloaded ? " after overload" : ""));
 				}
-				this.monitor.notify();
+				resize(newLimit);
 			}
 		}
 	}
 
+	/**
+	 * Apply a new enforced limit, adjusting the free permits by the difference.
+	 * Only taken when the limit changes, never on the access path.
+	 */
+	private synchronized void resize(int newLimit) {
+		if (newLimit <= 0) {
+			this.permits = null;
+			this.currentLimit = newLimit;
+			return;
+		}
+		LimitSemaphore permits = this.permits;
+		if (permits == null) {
+			this.permits = new LimitSemaphore(newLimit);
+		}
+		else if (newLimit > this.currentLimit) {
+			permits.release(newLimit - this.currentLimit);
+		}
+		else if (newLimit < this.currentLimit) {
+			permits.reducePermits(this.currentLimit - newLimit);
+		}
+		this.currentLimit = newLimit;
+	}
+
 
 	//---------------------------------------------------------------------
 	// Serialization support
@@ -142,7 +394,29 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 		ois.defaultReadObject();
 
 		// Initialize transient fields.
-		this.monitor = new Object();
+		this.concurrencyCount = new AtomicInteger();
+		this.rejectedCount = new LongAdder();
+		this.waitedCount = new LongAdder();
+		this.windowSamples = new AtomicInteger();
+		this.currentLimit = UNBOUNDED_CONCURRENCY;
+		resize(this.concurrencyLimit);
+	}
+
+
+	/**
+	 * Semaphore whose permits can shrink while they are taken.
+	 */
+	@SuppressWarnings("serial")
+	private static final class LimitSemaphore extends Semaphore {
+
+		LimitSemaphore(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
 	}
 
 }
@@ -0,0 +1,189 @@
+package com.chy.summer.framework.aop.aspectj;
+
+import com.chy.summer.framework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.*;
+import org.aspectj.weaver.tools.JoinPointMatch;
+import org.aspectj.weaver.tools.PointcutParameter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * advice 方法参数按预先计算好的绑定计划绑定: JoinPoint, StaticPart, 切入点参数, 返回值和异常都要放到正确的位置上
+ */
+public class AdviceArgumentBindingTest {
+
+	@Test
+	public void adviceArgumentsAreBoundByPlan() {
+		BindingAspect aspect = new BindingAspect();
+		Service proxy = createProxy(aspect);
+
+		//多调用几次, 之后的调用使用的是第一次生成的绑定计划
+		for (int i = 0; i < 3; i++) {
+			aspect.calls.clear();
+			assertEquals("[a-2]", proxy.repeat("a", 2));
+			assertEquals(Arrays.asList(
+					"around:repeat:a",
+					"before:repeat:a:2",
+					"afterReturning:repeat:a-2"), aspect.calls);
+		}
+	}
+
+	@Test
+	public void thrownExceptionIsBound() {
+		BindingAspect aspect = new BindingAspect();
+		Service proxy = createProxy(aspect);
+
+		for (int i = 0; i < 3; i++) {
+			aspect.calls.clear();
+			try {
+				proxy.fail("boom");
+				fail("目标方法的异常应该抛出来");
+			}
+			catch (IllegalStateException ex) {
+				assertEquals("boom", ex.getMessage());
+			}
+			assertEquals(Arrays.asList("around:fail:boom", "afterThrowing:boom"), aspect.calls);
+		}
+	}
+
+	@Test
+	public void pointcutParametersInUnexpectedOrderAreBoundByName() {
+		Map<String, Integer> bindings = new HashMap<>();
+		bindings.put("prefix", 1);
+		bindings.put("count", 0);
+		ArgumentBindingPlan plan = new ArgumentBindingPlan(2, -1, -1, bindings, null, null,
+				new String[]{"prefix", "count"});
+
+		Object[] inOrder = plan.bind(null, match(parameter("prefix", "a"), parameter("count", 2)), null, null);
+		Object[] reversed = plan.bind(null, match(parameter("count", 2), parameter("prefix", "a")), null, null);
+
+		assertArrayEquals(new Object[]{2, "a"}, inOrder);
+		assertArrayEquals("切入点参数的顺序和计划不一致的时候应该按名称绑定", new Object[]{2, "a"}, reversed);
+	}
+
+	@Test
+	public void missingBindingsAreRejected() {
+		Map<String, Integer> bindings = new HashMap<>();
+		bindings.put("result", 0);
+		bindings.put("name", 1);
+		ArgumentBindingPlan plan = new ArgumentBindingPlan(2, -1, -1, bindings, "result", null, new String[]{"name"});
+
+		try {
+			plan.bind(null, null, "value", null);
+			fail("切入点没有匹配出参数的时候应该报错");
+		}
+		catch (IllegalStateException ex) {
+			assertTrue(ex.getMessage().contains("2"));
+		}
+	}
+
+	@Test
+	public void planWithoutParametersNeedsNothing() {
+		ArgumentBindingPlan plan = new ArgumentBindingPlan(0, -1, -1, null, null, null, null);
+
+		assertEquals(0, plan.bind(null, null, null, null).length);
+		assertFalse(plan.needsJoinPoint());
+		assertFalse("没有按名称绑定的参数就不需要切入点匹配的结果", plan.needsJoinPointMatch());
+	}
+
+	private static Service createProxy(Object aspect) {
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new SimpleService());
+		proxyFactory.addAspect(aspect);
+		return proxyFactory.getProxy();
+	}
+
+	private static JoinPointMatch match(PointcutParameter... parameters) {
+		return new JoinPointMatch() {
+			@Override
+			public boolean matches() {
+				return true;
+			}
+
+			@Override
+			public PointcutParameter[] getParameterBindings() {
+				return parameters;
+			}
+		};
+	}
+
+	private static PointcutParameter parameter(String name, Object binding) {
+		return new PointcutParameter() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public Class getType() {
+				return binding.getClass();
+			}
+
+			@Override
+			public Object getBinding() {
+				return binding;
+			}
+		};
+	}
+
+	public interface Service {
+
+		String repeat(String prefix, int count);
+
+		void fail(String message);
+	}
+
+	public static class SimpleService implements Service {
+
+		@Override
+		public String repeat(String prefix, int count) {
+			return prefix + "-" + count;
+		}
+
+		@Override
+		public void fail(String message) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+	@Aspect
+	public static class BindingAspect {
+
+		final List<String> calls = new ArrayList<>();
+
+		@Pointcut("execution(* com.chy.summer.framework.aop.aspectj.AdviceArgumentBindingTest.Service.*(..))")
+		public void serviceMethods() {
+		}
+
+		@Around(value = "serviceMethods() && args(prefix, ..)", argNames = "pjp,prefix")
+		public Object around(ProceedingJoinPoint pjp, String prefix) throws Throwable {
+			this.calls.add("around:" + pjp.getSignature().getName() + ":" + prefix);
+			Object result = pjp.proceed();
+			return (result instanceof String ? "[" + result + "]" : result);
+		}
+
+		//advice 方法参数的顺序和 args 里的顺序不一样
+		@Before(value = "serviceMethods() && args(prefix, count)", argNames = "jp,count,prefix")
+		public void before(JoinPoint jp, int count, String prefix) {
+			this.calls.add("before:" + jp.getSignature().getName() + ":" + prefix + ":" + count);
+		}
+
+		@AfterReturning(pointcut = "serviceMethods()", returning = "result", argNames = "staticPart,result")
+		public void afterReturning(JoinPoint.StaticPart staticPart, String result) {
+			this.calls.add("afterReturning:" + staticPart.getSignature().getName() + ":" + result);
+		}
+
+		@AfterThrowing(pointcut = "serviceMethods()", throwing = "ex", argNames = "ex")
+		public void afterThrowing(IllegalStateException ex) {
+			this.calls.add("afterThrowing:" + ex.getMessage());
+		}
+	}
+}
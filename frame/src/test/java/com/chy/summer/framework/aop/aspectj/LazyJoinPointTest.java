@@ -0,0 +1,106 @@
+package com.chy.summer.framework.aop.aspectj;
+
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
+import com.chy.summer.framework.aop.aspectj.annotation.AspectJProxyFactory;
+import com.chy.summer.framework.aop.framework.ReflectiveMethodInvocation;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * advice 方法没有 JoinPoint 参数的时候不创建连接点, 需要的时候保存在 ReflectiveMethodInvocation 的字段上, 同一次调用共用一个
+ */
+public class LazyJoinPointTest {
+
+	@Test
+	public void joinPointIsNotCreatedWithoutJoinPointParameters() {
+		List<ReflectiveMethodInvocation> invocations = new ArrayList<>();
+		Service proxy = createProxy(new PlainAspect(), invocations);
+
+		assertEquals("ok", proxy.call());
+
+		ReflectiveMethodInvocation invocation = invocations.get(0);
+		assertNull("advice 方法不需要连接点的时候不应该创建", invocation.getJoinPoint());
+		assertNull(invocation.getUserAttribute(AbstractAspectJAdvice.JOIN_POINT_KEY));
+	}
+
+	@Test
+	public void joinPointIsSharedWithinOneInvocation() {
+		JoinPointAspect aspect = new JoinPointAspect();
+		List<ReflectiveMethodInvocation> invocations = new ArrayList<>();
+		Service proxy = createProxy(aspect, invocations);
+
+		proxy.call();
+
+		ReflectiveMethodInvocation invocation = invocations.get(0);
+		assertNotNull(invocation.getJoinPoint());
+		assertEquals(2, aspect.joinPoints.size());
+		assertSame("同一次调用里的 advice 应该拿到同一个连接点", aspect.joinPoints.get(0), aspect.joinPoints.get(1));
+		assertSame(invocation.getJoinPoint(), aspect.joinPoints.get(0));
+		assertNull("连接点不应该再放到用户属性里", invocation.getUserAttribute(AbstractAspectJAdvice.JOIN_POINT_KEY));
+
+		proxy.call();
+		assertNotSame("每次调用都要有自己的连接点", aspect.joinPoints.get(0), aspect.joinPoints.get(2));
+	}
+
+	/**
+	 * 在切面的 advice 之后再加一个拦截器, 记录下这次调用的 MethodInvocation
+	 */
+	private static Service createProxy(Object aspect, List<ReflectiveMethodInvocation> invocations) {
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new SimpleService());
+		proxyFactory.addAspect(aspect);
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+			invocations.add((ReflectiveMethodInvocation) invocation);
+			return invocation.proceed();
+		});
+		return proxyFactory.getProxy();
+	}
+
+	public interface Service {
+
+		String call();
+	}
+
+	public static class SimpleService implements Service {
+
+		@Override
+		public String call() {
+			return "ok";
+		}
+	}
+
+	@Aspect
+	public static class PlainAspect {
+
+		@Before("execution(* com.chy.summer.framework.aop.aspectj.LazyJoinPointTest.Service.*(..))")
+		public void before() {
+		}
+
+		@After("execution(* com.chy.summer.framework.aop.aspectj.LazyJoinPointTest.Service.*(..))")
+		public void after() {
+		}
+	}
+
+	@Aspect
+	public static class JoinPointAspect {
+
+		final List<JoinPoint> joinPoints = new ArrayList<>();
+
+		@Before(value = "execution(* com.chy.summer.framework.aop.aspectj.LazyJoinPointTest.Service.*(..))", argNames = "jp")
+		public void before(JoinPoint jp) {
+			this.joinPoints.add(jp);
+		}
+
+		@After(value = "execution(* com.chy.summer.framework.aop.aspectj.LazyJoinPointTest.Service.*(..))", argNames = "jp")
+		public void after(JoinPoint jp) {
+			this.joinPoints.add(jp);
+		}
+	}
+}
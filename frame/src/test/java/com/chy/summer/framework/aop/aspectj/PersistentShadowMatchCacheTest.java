@@ -0,0 +1,125 @@
+package com.chy.summer.framework.aop.aspectj;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * 切入点匹配结果的保存和加载, 类路径指纹变化以后作废, 依赖匹配上下文的切入点不保存
+ */
+public class PersistentShadowMatchCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void savedMatchesAreLoadedBack() throws Exception {
+		File file = new File(temporaryFolder.getRoot(), "cache/shadow-matches.bin");
+		Method method = Service.class.getMethod("handle", String.class);
+		String member = PersistentShadowMatchCache.methodMatch(method, Service.class, false);
+
+		PersistentShadowMatchCache cache = new PersistentShadowMatchCache(file, "fingerprint");
+		cache.put("execution(* *(..))|", Service.class, PersistentShadowMatchCache.TYPE_MATCH, true);
+		cache.put("execution(* *(..))|", Service.class, member, true);
+		cache.put("within(java..*)|", Service.class, member, false);
+		cache.save();
+		assertTrue(file.isFile());
+
+		PersistentShadowMatchCache loaded = new PersistentShadowMatchCache(file, "fingerprint");
+		loaded.load();
+		assertEquals(Boolean.TRUE, loaded.get("execution(* *(..))|", Service.class, PersistentShadowMatchCache.TYPE_MATCH));
+		assertEquals(Boolean.TRUE, loaded.get("execution(* *(..))|", Service.class, member));
+		assertEquals(Boolean.FALSE, loaded.get("within(java..*)|", Service.class, member));
+		assertNull(loaded.get("within(java..*)|", Service.class, PersistentShadowMatchCache.TYPE_MATCH));
+	}
+
+	@Test
+	public void fingerprintMismatchDiscardsTheFile() throws Exception {
+		File file = temporaryFolder.newFile("shadow-matches.bin");
+		PersistentShadowMatchCache cache = new PersistentShadowMatchCache(file, "before");
+		cache.put("execution(* *(..))|", Service.class, PersistentShadowMatchCache.TYPE_MATCH, true);
+		cache.save();
+
+		PersistentShadowMatchCache loaded = new PersistentShadowMatchCache(file, "after");
+		loaded.load();
+		assertNull(loaded.get("execution(* *(..))|", Service.class, PersistentShadowMatchCache.TYPE_MATCH));
+	}
+
+	@Test
+	public void corruptFileIsIgnored() throws Exception {
+		File file = temporaryFolder.newFile("shadow-matches.bin");
+		Files.write(file.toPath(), new byte[]{1, 2, 3});
+
+		PersistentShadowMatchCache loaded = new PersistentShadowMatchCache(file, "fingerprint");
+		loaded.load();
+		assertNull(loaded.get("execution(* *(..))|", Service.class, PersistentShadowMatchCache.TYPE_MATCH));
+	}
+
+	@Test
+	public void beanPointcutsAreNotPersisted() {
+		assertNull(pointcut("bean(orderService)").getPersistentMatchKey());
+		assertNull(pointcut("execution(* *(..)) && bean(order*)").getPersistentMatchKey());
+		assertNull(pointcut("within(java..*) || !bean(order*)").getPersistentMatchKey());
+	}
+
+	@Test
+	public void staticPointcutsArePersisted() {
+		assertNotNull(pointcut("execution(* *(..))").getPersistentMatchKey());
+		assertNotNull(pointcut("within(java..*) && !@annotation(java.lang.Deprecated)").getPersistentMatchKey());
+		//方法名里带有 bean 也不影响
+		assertNotNull(pointcut("execution(* createbean(..))").getPersistentMatchKey());
+		assertNotNull(pointcut("execution(* *(..)) && args(String)").getPersistentMatchKey());
+	}
+
+	@Test
+	public void fingerprintCoversClassLoaderJars() throws Exception {
+		File jar = temporaryFolder.newFile("app.jar");
+		Files.write(jar.toPath(), new byte[]{1, 2, 3});
+		ClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+
+		String before = PersistentShadowMatchCache.classPathFingerprint(classLoader);
+		assertEquals("类路径没变的时候指纹应该一样", before, PersistentShadowMatchCache.classPathFingerprint(classLoader));
+		assertNotEquals("ClassLoader 上的 jar 应该算进指纹", PersistentShadowMatchCache.classPathFingerprint(null), before);
+
+		Files.write(jar.toPath(), new byte[]{1, 2, 3, 4});
+		assertNotEquals("jar 的大小变化以后指纹应该变化", before, PersistentShadowMatchCache.classPathFingerprint(classLoader));
+
+		String resized = PersistentShadowMatchCache.classPathFingerprint(classLoader);
+		assertTrue(jar.setLastModified(jar.lastModified() - 60_000));
+		assertNotEquals("jar 的修改时间变化以后指纹应该变化", resized, PersistentShadowMatchCache.classPathFingerprint(classLoader));
+	}
+
+	@Test
+	public void fingerprintCoversParentClassLoaders() throws Exception {
+		File jar = temporaryFolder.newFile("parent.jar");
+		ClassLoader parent = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+		ClassLoader child = new URLClassLoader(new URL[0], parent);
+
+		String before = PersistentShadowMatchCache.classPathFingerprint(child);
+		assertEquals(PersistentShadowMatchCache.classPathFingerprint(parent), before);
+		assertTrue(jar.setLastModified(jar.lastModified() - 60_000));
+		assertNotEquals("父 ClassLoader 上的 jar 也应该算进指纹", before, PersistentShadowMatchCache.classPathFingerprint(child));
+	}
+
+	private static AspectJExpressionPointcut pointcut(String expression) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		return pointcut;
+	}
+
+
+	public static class Service {
+
+		public String handle(String value) {
+			return value;
+		}
+	}
+}
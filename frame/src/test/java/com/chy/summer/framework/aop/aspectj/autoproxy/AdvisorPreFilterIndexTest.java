@@ -0,0 +1,135 @@
+package com.chy.summer.framework.aop.aspectj.autoproxy;
+
+import com.chy.summer.framework.aop.Advisor;
+import com.chy.summer.framework.aop.MethodBeforeAdvice;
+import com.chy.summer.framework.aop.aspectj.AspectJExpressionPointcut;
+import com.chy.summer.framework.aop.aspectj.autoproxy.fixture.ApiService;
+import com.chy.summer.framework.aop.aspectj.autoproxy.fixture.FixtureApi;
+import com.chy.summer.framework.aop.aspectj.autoproxy.fixture.MarkedService;
+import com.chy.summer.framework.aop.aspectj.autoproxy.fixture.Traced;
+import com.chy.summer.framework.aop.support.AopUtils;
+import com.chy.summer.framework.aop.support.DefaultPointcutAdvisor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 预过滤索引只能排除肯定不匹配的advisor, 过滤以后再逐个匹配, 选出来的advisor和顺序都要和不用索引的时候一样
+ */
+public class AdvisorPreFilterIndexTest {
+
+	private static final String FIXTURE = "com.chy.summer.framework.aop.aspectj.autoproxy.fixture";
+
+	private static final String[] EXPRESSIONS = {
+			"execution(* " + FIXTURE + "..*.*(..))",
+			"within(" + FIXTURE + "..*)",
+			"within(" + FIXTURE + ".MarkedService)",
+			"execution(* " + FIXTURE + ".ApiService.*(..))",
+			"execution(* " + FIXTURE + ".FixtureApi+.*(..))",
+			"@within(" + FIXTURE + ".Marker)",
+			"@annotation(" + FIXTURE + ".Traced)",
+			"execution(@" + FIXTURE + ".Traced * *(..))",
+			"@within(" + FIXTURE + ".Marker) && within(" + FIXTURE + "..*)",
+			"within(java.util..*) || @annotation(" + FIXTURE + ".Traced)",
+			"execution(* *(..)) && args(String)",
+			"!within(" + FIXTURE + "..*)",
+			"within(org.nowhere..*)",
+	};
+
+	private static final Class<?>[] BEAN_CLASSES = {
+			ApiService.class, MarkedService.class, OutsideApi.class, OutsideTraced.class, Plain.class, ArrayList.class,
+	};
+
+	@Test
+	public void selectsTheSameAdvisorsAsWithoutIndex() {
+		List<Advisor> advisors = createAdvisors();
+		AdvisorPreFilterIndex index = new AdvisorPreFilterIndex(advisors);
+		assertTrue(index.getIndexedAdvisorCount() > 0);
+
+		int filteredOut = 0;
+		for (Class<?> beanClass : BEAN_CLASSES) {
+			List<Advisor> expected = AopUtils.findAdvisorsThatCanApply(advisors, beanClass);
+			List<Advisor> preFiltered = index.filter(beanClass);
+			List<Advisor> actual = AopUtils.findAdvisorsThatCanApply(preFiltered, beanClass);
+			assertEquals("bean类型 " + beanClass.getName(), describe(expected), describe(actual));
+			filteredOut += advisors.size() - preFiltered.size();
+		}
+		//索引确实排除掉了一部分advisor, 不是全部放行
+		assertTrue(filteredOut > 0);
+		assertTrue(describe(AopUtils.findAdvisorsThatCanApply(advisors, MarkedService.class))
+				.contains("@within(" + FIXTURE + ".Marker)"));
+		assertTrue(describe(AopUtils.findAdvisorsThatCanApply(advisors, OutsideTraced.class))
+				.contains("@annotation(" + FIXTURE + ".Traced)"));
+	}
+
+	@Test
+	public void autoProxyCreatorSelectsTheSameAdvisors() {
+		List<Advisor> advisors = createAdvisors();
+		AspectJAwareAdvisorAutoProxyCreator withIndex = new AspectJAwareAdvisorAutoProxyCreator();
+		AspectJAwareAdvisorAutoProxyCreator withoutIndex = new AspectJAwareAdvisorAutoProxyCreator();
+		withIndex.setAdvisorPreFiltering(true);
+		withoutIndex.setAdvisorPreFiltering(false);
+		for (Class<?> beanClass : BEAN_CLASSES) {
+			assertEquals("bean类型 " + beanClass.getName(),
+					describe(withoutIndex.findAdvisorsThatCanApply(advisors, beanClass, "bean")),
+					describe(withIndex.findAdvisorsThatCanApply(advisors, beanClass, "bean")));
+		}
+	}
+
+	@Test
+	public void indexIsRebuiltWhenAdvisorsChange() {
+		List<Advisor> advisors = createAdvisors();
+		AdvisorPreFilterIndex index = new AdvisorPreFilterIndex(advisors);
+		assertTrue(index.isBuiltFor(new ArrayList<>(advisors)));
+
+		List<Advisor> changed = createAdvisors();
+		assertFalse(index.isBuiltFor(changed));
+		changed.remove(0);
+		assertFalse(index.isBuiltFor(changed));
+	}
+
+	private static List<Advisor> createAdvisors() {
+		MethodBeforeAdvice advice = (method, args, target) -> {
+		};
+		List<Advisor> advisors = new ArrayList<>();
+		for (String expression : EXPRESSIONS) {
+			AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+			pointcut.setExpression(expression);
+			advisors.add(new DefaultPointcutAdvisor(pointcut, advice));
+		}
+		return advisors;
+	}
+
+	private static List<String> describe(List<Advisor> advisors) {
+		List<String> result = new ArrayList<>();
+		for (Advisor advisor : advisors) {
+			result.add(((AspectJExpressionPointcut) ((DefaultPointcutAdvisor) advisor).getPointcut()).getExpression());
+		}
+		return result;
+	}
+
+
+	public static class OutsideApi implements FixtureApi {
+
+		@Override
+		public String call(String value) {
+			return value;
+		}
+	}
+
+	public static class OutsideTraced {
+
+		@Traced
+		public void traced() {
+		}
+	}
+
+	public static class Plain {
+
+		public void run(String value) {
+		}
+	}
+}
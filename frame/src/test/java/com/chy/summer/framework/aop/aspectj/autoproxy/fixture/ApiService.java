@@ -0,0 +1,9 @@
+package com.chy.summer.framework.aop.aspectj.autoproxy.fixture;
+
+public class ApiService implements FixtureApi {
+
+	@Override
+	public String call(String value) {
+		return value;
+	}
+}
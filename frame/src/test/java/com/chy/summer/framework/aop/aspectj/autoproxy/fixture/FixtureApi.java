@@ -0,0 +1,6 @@
+package com.chy.summer.framework.aop.aspectj.autoproxy.fixture;
+
+public interface FixtureApi {
+
+	String call(String value);
+}
@@ -0,0 +1,9 @@
+package com.chy.summer.framework.aop.aspectj.autoproxy.fixture;
+
+@Marker
+public class MarkedService {
+
+	@Traced
+	public void run(int times) {
+	}
+}
@@ -0,0 +1,112 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
+import com.chy.summer.framework.aop.support.DefaultPointcutAdvisor;
+import com.chy.summer.framework.aop.support.StaticMethodMatcherPointcut;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+/**
+ * 共享代理类缓存: 形状相同的代理共用一个类, 固定类名的前缀, 以及父类只在验证成功以后才记录为已验证
+ */
+public class CglibProxyClassCacheTest {
+
+	@Test
+	public void proxiesWithTheSameShapeShareOneClass() {
+		assertTrue(CglibProxyClassCache.isEnabled());
+
+		//每个代理使用各自的切入点实例, 切入点没有实现 equals
+		SimpleService first = createProxy(new NextPointcut());
+		SimpleService second = createProxy(new NextPointcut());
+
+		assertSame("形状相同的代理应该使用同一个代理类", first.getClass(), second.getClass());
+		assertTrue(first.getClass().getName().startsWith(SimpleService.class.getName() + "$$EnhancerBySummerCGLIB$$"));
+		assertEquals(11, first.next(1));
+		assertEquals("没有被切入点选中的方法直接调用目标", "simple", second.name());
+	}
+
+	@Test
+	public void onlyJavaPackagesArePrefixed() {
+		ClassLoader classLoader = getClass().getClassLoader();
+
+		String javaName = new CglibProxyClassCache.ProxyClassKey(java.util.ArrayList.class, classLoader, "d").getClassName();
+		String javaxName = new CglibProxyClassCache.ProxyClassKey(javax.swing.JPanel.class, classLoader, "d").getClassName();
+
+		assertTrue("java. 开头的包里不能定义类, 需要加前缀", javaName.startsWith("$java.util.ArrayList$$"));
+		assertTrue("javax 开头的包不需要加前缀", javaxName.startsWith("javax.swing.JPanel$$"));
+	}
+
+	@Test
+	public void failedValidationIsNotRecorded() throws Exception {
+		Class<?> broken = new MissingTypeClassLoader(getClass().getClassLoader()).loadClass("test.Broken");
+
+		try {
+			CglibAopProxy.validateClassIfNecessary(broken, broken.getClassLoader());
+			fail("方法签名里的类型找不到的时候验证应该失败");
+		}
+		catch (NoClassDefFoundError ex) {
+			assertTrue(ex.getMessage().contains("Missing"));
+		}
+		assertFalse("验证失败的类不能记录为已验证", CglibAopProxy.validatedClasses.containsKey(broken));
+
+		CglibAopProxy.validateClassIfNecessary(SimpleService.class, null);
+		assertTrue(CglibAopProxy.validatedClasses.containsKey(SimpleService.class));
+	}
+
+	private SimpleService createProxy(NextPointcut pointcut) {
+		ProxyFactory proxyFactory = new ProxyFactory(new SimpleService());
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAdvisor(new DefaultPointcutAdvisor(pointcut, (MethodInterceptor) invocation ->
+				(Integer) invocation.proceed() + 9));
+		return (SimpleService) proxyFactory.getProxy();
+	}
+
+	private static class NextPointcut extends StaticMethodMatcherPointcut {
+
+		@Override
+		public boolean matches(Method method, Class<?> targetClass) {
+			return method.getName().equals("next");
+		}
+	}
+
+	public static class SimpleService {
+
+		public int next(int value) {
+			return value + 1;
+		}
+
+		public String name() {
+			return "simple";
+		}
+	}
+
+	/**
+	 * 定义一个方法参数是 test.Missing 的类 test.Broken, 但是加载不到 test.Missing
+	 */
+	private static class MissingTypeClassLoader extends ClassLoader {
+
+		MissingTypeClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			if (!name.equals("test.Broken")) {
+				throw new ClassNotFoundException(name);
+			}
+			ClassWriter cw = new ClassWriter(0);
+			cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "test/Broken", null, "java/lang/Object", null);
+			MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "use", "(Ltest/Missing;)V", null, null);
+			mv.visitEnd();
+			cw.visitEnd();
+			byte[] bytes = cw.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
+import com.chy.summer.framework.aop.support.DefaultPointcutAdvisor;
+import com.chy.summer.framework.aop.support.DynamicMethodMatcherPointcut;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 编译好的拦截器链和反射的拦截器链行为一致: 拦截器的顺序, 动态匹配, 修改参数, 目标方法的调用方式
+ */
+public class CompiledInterceptorChainTest {
+
+	@Test
+	public void compiledChainRunsInterceptorsInOrder() {
+		for (boolean proxyTargetClass : new boolean[]{false, true}) {
+			List<String> calls = new ArrayList<>();
+			ProxyFactory proxyFactory = createProxyFactory(proxyTargetClass);
+			proxyFactory.addAdvice(recording(calls, "first"));
+			proxyFactory.addAdvice(recording(calls, "second"));
+			Service proxy = (Service) proxyFactory.getProxy();
+
+			//第一次调用解析拦截器链, 之后使用编译好的拦截器链
+			for (int i = 0; i < 3; i++) {
+				calls.clear();
+				assertEquals(i + 1, proxy.next(i));
+				assertEquals("拦截器的执行顺序不对", Arrays.asList("first", "second"), calls);
+			}
+		}
+	}
+
+	@Test
+	public void dynamicMatchersAreEvaluatedPerCall() {
+		for (boolean proxyTargetClass : new boolean[]{false, true}) {
+			List<String> calls = new ArrayList<>();
+			ProxyFactory proxyFactory = createProxyFactory(proxyTargetClass);
+			proxyFactory.addAdvice(recording(calls, "static"));
+			proxyFactory.addAdvisor(new DefaultPointcutAdvisor(new PositiveArgumentPointcut(), recording(calls, "dynamic")));
+			Service proxy = (Service) proxyFactory.getProxy();
+
+			for (int i = 0; i < 3; i++) {
+				calls.clear();
+				proxy.next(1);
+				assertEquals("参数匹配的时候动态拦截器应该执行", Arrays.asList("static", "dynamic"), calls);
+				calls.clear();
+				proxy.next(-1);
+				assertEquals("参数不匹配的时候应该跳过动态拦截器", Arrays.asList("static"), calls);
+			}
+		}
+	}
+
+	@Test
+	public void interceptorsCanReplaceArguments() {
+		for (boolean proxyTargetClass : new boolean[]{false, true}) {
+			ProxyFactory proxyFactory = createProxyFactory(proxyTargetClass);
+			proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+				invocation.getArguments()[0] = 10;
+				return invocation.proceed();
+			});
+			Service proxy = (Service) proxyFactory.getProxy();
+
+			for (int i = 0; i < 3; i++) {
+				assertEquals("编译好的拦截器链没有使用拦截器修改以后的参数", 11, proxy.next(0));
+			}
+		}
+	}
+
+	@Test
+	public void publicMethodsAreInvokedThroughFastClass() throws Exception {
+		Method next = Service.class.getMethod("next", int.class);
+		MethodInterceptor interceptor = invocation -> invocation.proceed();
+
+		CompiledInterceptorChain compiled = CompiledInterceptorChain.compile(next, Arrays.asList(interceptor));
+
+		assertNotNull("public 的方法应该生成 FastMethod", compiled.joinpoint);
+		assertNull("没有动态匹配的时候不需要动态匹配器数组", compiled.dynamicMatchers);
+		assertSame(interceptor, compiled.interceptors[0]);
+	}
+
+	@Test
+	public void privateMethodsFallBackToReflection() throws Exception {
+		Method hidden = SimpleService.class.getDeclaredMethod("hidden");
+
+		CompiledInterceptorChain compiled = CompiledInterceptorChain.compile(hidden, new ArrayList<>());
+
+		assertNull("private 的方法不能生成 FastMethod", compiled.joinpoint);
+	}
+
+	private ProxyFactory createProxyFactory(boolean proxyTargetClass) {
+		ProxyFactory proxyFactory = new ProxyFactory(new SimpleService());
+		if (proxyTargetClass) {
+			proxyFactory.setProxyTargetClass(true);
+		}
+		else {
+			proxyFactory.setInterfaces(Service.class);
+		}
+		proxyFactory.setCompileInterceptorChains(true);
+		return proxyFactory;
+	}
+
+	private MethodInterceptor recording(List<String> calls, String name) {
+		return invocation -> {
+			calls.add(name);
+			return invocation.proceed();
+		};
+	}
+
+	private static class PositiveArgumentPointcut extends DynamicMethodMatcherPointcut {
+
+		@Override
+		public boolean matches(Method method, Class<?> targetClass, Object... args) {
+			return args.length > 0 && args[0] instanceof Integer && (Integer) args[0] > 0;
+		}
+	}
+
+	public interface Service {
+
+		int next(int value);
+	}
+
+	public static class SimpleService implements Service {
+
+		@Override
+		public int next(int value) {
+			return value + 1;
+		}
+
+		private String hidden() {
+			return "hidden";
+		}
+	}
+}
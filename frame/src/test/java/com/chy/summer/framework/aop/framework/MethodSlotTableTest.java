@@ -0,0 +1,139 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 方法槽位表的查找, 扩容和写时复制, 以及 adviceChanged 以后拦截器链和编译结果的失效
+ */
+public class MethodSlotTableTest {
+
+	@Test
+	public void slotsAreFoundByMethodIdentity() throws Exception {
+		Method next = Service.class.getMethod("next", int.class);
+		Method name = Service.class.getMethod("name");
+		MethodSlotTable.Slot slot = new MethodSlotTable.Slot(next, Collections.emptyList());
+
+		MethodSlotTable table = new MethodSlotTable(0, MethodSlotTable.DEFAULT_METHOD_COUNT).with(slot);
+
+		assertSame(slot, table.get(next));
+		assertNull("没有放进去的方法不应该找到槽位", table.get(name));
+		//equals 相等但不是同一个对象的方法不算, 代理类每次传进来的都是同一个对象
+		assertNull("槽位表应该按对象的 identity 查找", table.get(Service.class.getMethod("next", int.class)));
+	}
+
+	@Test
+	public void tableGrowsAndKeepsAllSlots() {
+		Method[] methods = String.class.getMethods();
+		MethodSlotTable table = new MethodSlotTable(0, 4);
+		int initialCapacity = table.capacity();
+		for (Method method : methods) {
+			table = table.with(new MethodSlotTable.Slot(method, Collections.emptyList()));
+		}
+
+		assertTrue("放入的方法超过容量的一半以后应该扩容", table.capacity() > initialCapacity);
+		assertTrue("槽位最多只能用一半", table.capacity() >= methods.length * 2);
+		for (Method method : methods) {
+			assertNotNull("扩容以后找不到方法 " + method, table.get(method));
+			assertSame(method, table.get(method).method);
+		}
+	}
+
+	@Test
+	public void withCopiesTheTable() throws Exception {
+		Method next = Service.class.getMethod("next", int.class);
+		MethodSlotTable original = new MethodSlotTable(3, MethodSlotTable.DEFAULT_METHOD_COUNT);
+
+		MethodSlotTable copy = original.with(new MethodSlotTable.Slot(next, Collections.emptyList()));
+
+		assertNull("原来的表不能被修改", original.get(next));
+		assertNotNull(copy.get(next));
+		assertEquals("复制出来的表和原表是同一代", 3, copy.generation);
+	}
+
+	@Test
+	public void presizeKeepsSlots() throws Exception {
+		Method next = Service.class.getMethod("next", int.class);
+		MethodSlotTable table = new MethodSlotTable(0, 4).with(new MethodSlotTable.Slot(next, Collections.emptyList()));
+
+		MethodSlotTable presized = table.presize(100);
+
+		assertTrue(presized.capacity() >= 200);
+		assertNotNull("扩大以后原有的槽位还要在", presized.get(next));
+		assertSame("已经够大的表不需要复制", presized, presized.presize(10));
+	}
+
+	@Test
+	public void obtainMethodSlotReusesTheSlot() throws Exception {
+		ProxyFactory proxyFactory = new ProxyFactory(new SimpleService());
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> invocation.proceed());
+		Method next = Service.class.getMethod("next", int.class);
+
+		MethodSlotTable.Slot first = proxyFactory.obtainMethodSlot(next, SimpleService.class);
+		MethodSlotTable.Slot second = proxyFactory.obtainMethodSlot(next, SimpleService.class);
+
+		assertSame("第二次查找应该直接用槽位表里的槽位", first, second);
+		assertEquals(1, first.chain.size());
+	}
+
+	@Test
+	public void adviceChangedInvalidatesChains() throws Exception {
+		ProxyFactory proxyFactory = new ProxyFactory(new SimpleService());
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> invocation.proceed());
+		Method next = Service.class.getMethod("next", int.class);
+		MethodSlotTable.Slot before = proxyFactory.obtainMethodSlot(next, SimpleService.class);
+
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> invocation.proceed());
+		MethodSlotTable.Slot after = proxyFactory.obtainMethodSlot(next, SimpleService.class);
+
+		assertNotSame("adviceChanged 以后不能再用旧的槽位", before, after);
+		assertEquals("新的槽位应该包含新加的拦截器", 2, after.chain.size());
+		List<Object> chain = proxyFactory.getInterceptorsAndDynamicInterceptionAdvice(next, SimpleService.class);
+		assertSame(after.chain, chain);
+	}
+
+	@Test
+	public void adviceChangedInvalidatesCompiledChains() throws Exception {
+		ProxyFactory proxyFactory = new ProxyFactory(new SimpleService());
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> invocation.proceed());
+		Method next = Service.class.getMethod("next", int.class);
+
+		assertNull("第一次调用只解析拦截器链, 不编译", proxyFactory.getCompiledInterceptorChain(next, SimpleService.class));
+		CompiledInterceptorChain compiled = proxyFactory.getCompiledInterceptorChain(next, SimpleService.class);
+		assertNotNull(compiled);
+		assertSame("编译结果应该保存在槽位上", compiled, proxyFactory.getCompiledInterceptorChain(next, SimpleService.class));
+
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> invocation.proceed());
+
+		assertNull("adviceChanged 以后要重新解析拦截器链", proxyFactory.getCompiledInterceptorChain(next, SimpleService.class));
+		CompiledInterceptorChain recompiled = proxyFactory.getCompiledInterceptorChain(next, SimpleService.class);
+		assertNotNull(recompiled);
+		assertNotSame("adviceChanged 以后不能再用旧的编译结果", compiled, recompiled);
+	}
+
+	public interface Service {
+
+		int next(int value);
+
+		String name();
+	}
+
+	public static class SimpleService implements Service {
+
+		@Override
+		public int next(int value) {
+			return value + 1;
+		}
+
+		@Override
+		public String name() {
+			return "simple";
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.chy.summer.framework.aop.framework;
+
+import com.chy.summer.framework.aop.AopInvocationException;
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInterceptor;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 拦截器换掉的参数和目标方法对不上的时候, JDK代理和cglib代理, 编译和不编译拦截器链, 都要抛出 AopInvocationException
+ * 目标方法自己抛出的异常原样抛出
+ */
+public class ProxyArgumentMismatchTest {
+
+	@Test
+	public void wrongArgumentTypeThroughJdkProxy() {
+		assertWrongArgumentTypeTranslated(false, false);
+		assertWrongArgumentTypeTranslated(false, true);
+	}
+
+	@Test
+	public void wrongArgumentTypeThroughCglibProxy() {
+		assertWrongArgumentTypeTranslated(true, false);
+		assertWrongArgumentTypeTranslated(true, true);
+	}
+
+	@Test
+	public void nullPrimitiveThroughJdkProxy() {
+		assertNullPrimitiveTranslated(false, false);
+		assertNullPrimitiveTranslated(false, true);
+	}
+
+	@Test
+	public void nullPrimitiveThroughCglibProxy() {
+		assertNullPrimitiveTranslated(true, false);
+		assertNullPrimitiveTranslated(true, true);
+	}
+
+	@Test
+	public void targetExceptionIsNotTranslated() {
+		for (boolean proxyTargetClass : new boolean[]{false, true}) {
+			for (boolean compile : new boolean[]{false, true}) {
+				Service proxy = createProxy(proxyTargetClass, compile, invocation -> invocation.proceed());
+				//编译好的拦截器链在第二次调用以后才会使用, 多调用几次
+				for (int i = 0; i < 3; i++) {
+					try {
+						proxy.echo(null);
+						fail("目标方法自己抛出的异常应该原样抛出");
+					}
+					catch (NullPointerException ex) {
+						assertEquals("target", ex.getMessage());
+					}
+				}
+			}
+		}
+	}
+
+	private void assertWrongArgumentTypeTranslated(boolean proxyTargetClass, boolean compile) {
+		Service proxy = createProxy(proxyTargetClass, compile, invocation -> {
+			invocation.getArguments()[0] = 1;
+			return invocation.proceed();
+		});
+		for (int i = 0; i < 3; i++) {
+			try {
+				proxy.echo("a");
+				fail("参数类型不对的时候应该抛出 AopInvocationException");
+			}
+			catch (AopInvocationException ex) {
+				//转换成功
+			}
+		}
+	}
+
+	private void assertNullPrimitiveTranslated(boolean proxyTargetClass, boolean compile) {
+		Service proxy = createProxy(proxyTargetClass, compile, invocation -> {
+			invocation.getArguments()[0] = null;
+			return invocation.proceed();
+		});
+		for (int i = 0; i < 3; i++) {
+			try {
+				proxy.twice(1);
+				fail("基本类型的参数为null的时候应该抛出 AopInvocationException");
+			}
+			catch (AopInvocationException ex) {
+				//转换成功
+			}
+		}
+	}
+
+	private static Service createProxy(boolean proxyTargetClass, boolean compile, MethodInterceptor interceptor) {
+		ProxyFactory proxyFactory = new ProxyFactory(new ServiceImpl());
+		proxyFactory.setInterfaces(Service.class);
+		proxyFactory.setProxyTargetClass(proxyTargetClass);
+		proxyFactory.setCompileInterceptorChains(compile);
+		proxyFactory.addAdvice(interceptor);
+		Service proxy = (Service) proxyFactory.getProxy();
+		assertEquals(proxyTargetClass, !java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+		return proxy;
+	}
+
+
+	public interface Service {
+
+		String echo(String value);
+
+		int twice(int value);
+	}
+
+	public static class ServiceImpl implements Service {
+
+		@Override
+		public String echo(String value) {
+			if (value == null) {
+				throw new NullPointerException("target");
+			}
+			return value;
+		}
+
+		@Override
+		public int twice(int value) {
+			return value * 2;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.chy.summer.framework.aop.interceptor;
+
+import com.chy.summer.framework.aop.aopalliance.intercept.MethodInvocation;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 直方图的内存只和分段数有关, 多个线程同时记录不能丢计数, 拦截器反序列化以后还能继续记录
+ */
+public class LatencyMonitorInterceptorTest {
+
+	@Test(timeout = 30000)
+	public void concurrentRecordsAreNotLost() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram(4);
+		int threads = 32;
+		int recordsPerThread = 10000;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int j = 1; j <= recordsPerThread; j++) {
+						histogram.record(j, j % 100 == 0);
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get(20, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals((long) threads * recordsPerThread, snapshot.getCount());
+		assertEquals((long) threads * recordsPerThread / 100, snapshot.getErrorCount());
+		assertEquals(recordsPerThread, snapshot.getMaxNanos());
+		assertEquals((long) recordsPerThread * (recordsPerThread + 1) / 2 * threads,
+				snapshot.getMeanNanos() * snapshot.getCount(), snapshot.getCount());
+		//线程再多, 分段数也不会超过上限
+		assertTrue(histogram.getStripeCount() <= 4);
+	}
+
+	@Test
+	public void stripesAreCappedAtTheCpuCount() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1, false);
+		assertTrue(histogram.getStripeCount() <= Runtime.getRuntime().availableProcessors());
+	}
+
+	@Test
+	public void percentilesStayWithinBucketError() {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L, false);
+		}
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(500_000, snapshot.getP50Nanos(), 500_000 / 16);
+		assertEquals(990_000, snapshot.getP99Nanos(), 990_000 / 16);
+		assertEquals(1_000_000, snapshot.getMaxNanos());
+	}
+
+	@Test
+	public void recordsAfterDeserialization() throws Throwable {
+		LatencyMonitorInterceptor interceptor = new LatencyMonitorInterceptor();
+		Method method = Service.class.getMethod("call");
+		interceptor.invoke(invocation(method));
+
+		LatencyMonitorInterceptor copy = serializeAndDeserialize(interceptor);
+		copy.invoke(invocation(method));
+		copy.invoke(invocation(method));
+
+		String name = Service.class.getName() + ".call";
+		assertEquals(1, interceptor.getRegistry().getSnapshot(name).getCount());
+		assertEquals(3, copy.getRegistry().getSnapshot(name).getCount());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T serializeAndDeserialize(T object) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (T) in.readObject();
+		}
+	}
+
+	private static MethodInvocation invocation(Method method) {
+		Service target = new Service();
+		return new MethodInvocation() {
+			@Override
+			public Method getMethod() {
+				return method;
+			}
+
+			@Override
+			public Object[] getArguments() {
+				return new Object[0];
+			}
+
+			@Override
+			public Object proceed() {
+				return target.call();
+			}
+
+			@Override
+			public Object getThis() {
+				return target;
+			}
+
+			@Override
+			public AccessibleObject getStaticPart() {
+				return method;
+			}
+		};
+	}
+
+
+	public static class Service {
+
+		public String call() {
+			return "ok";
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.chy.summer.framework.aop.support;
+
+import com.chy.summer.framework.aop.AopInvocationException;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+/**
+ * 调用器和反射调用的异常要一致: 参数不对的时候是 AopInvocationException, 目标方法自己的异常原样抛出
+ */
+public class AopUtilsTest {
+
+	private final Target target = new Target();
+
+	@Test
+	public void invokesThroughInvoker() throws Throwable {
+		Method method = Target.class.getMethod("echo", String.class);
+		assertNotNull(MethodInvoker.forMethod(method));
+		assertEquals("a", AopUtils.invokeJoinpointUsingReflection(target, method, new Object[]{"a"}));
+	}
+
+	@Test(expected = AopInvocationException.class)
+	public void wrongArgumentTypeOnLambdaInvoker() throws Throwable {
+		Method method = Target.class.getMethod("echo", String.class);
+		AopUtils.invokeJoinpointUsingReflection(target, method, new Object[]{1});
+	}
+
+	@Test(expected = AopInvocationException.class)
+	public void wrongArgumentTypeOnMethodHandleInvoker() throws Throwable {
+		Method method = Target.class.getDeclaredMethod("hidden", String.class);
+		assertNotNull(MethodInvoker.forMethod(method));
+		AopUtils.invokeJoinpointUsingReflection(target, method, new Object[]{1});
+	}
+
+	@Test(expected = AopInvocationException.class)
+	public void wrongArgumentCountOnMethodHandleInvoker() throws Throwable {
+		Method method = Target.class.getDeclaredMethod("hidden", String.class);
+		AopUtils.invokeJoinpointUsingReflection(target, method, new Object[]{"a", "b"});
+	}
+
+	@Test(expected = AopInvocationException.class)
+	public void wrongTargetType() throws Throwable {
+		Method method = Target.class.getMethod("echo", String.class);
+		AopUtils.invokeJoinpointUsingReflection("not a target", method, new Object[]{"a"});
+	}
+
+	@Test(expected = ClassCastException.class)
+	public void classCastExceptionFromTargetIsNotTranslated() throws Throwable {
+		Method method = Target.class.getMethod("cast", Object.class);
+		AopUtils.invokeJoinpointUsingReflection(target, method, new Object[]{1});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void illegalArgumentExceptionFromTargetIsNotTranslated() throws Throwable {
+		Method method = Target.class.getDeclaredMethod("reject", String.class);
+		AopUtils.invokeJoinpointUsingReflection(target, method, new Object[]{"a"});
+	}
+
+
+	public static class Target {
+
+		public String echo(String value) {
+			return value;
+		}
+
+		public String cast(Object value) {
+			return (String) value;
+		}
+
+		String hidden(String value) {
+			return value;
+		}
+
+		String reject(String value) {
+			throw new IllegalArgumentException(value);
+		}
+	}
+}
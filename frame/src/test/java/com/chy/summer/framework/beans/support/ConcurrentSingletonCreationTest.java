@@ -0,0 +1,132 @@
+package com.chy.summer.framework.beans.support;
+
+import com.chy.summer.framework.annotation.beans.Autowired;
+import com.chy.summer.framework.beans.factory.ContextAnnotationAutowireCandidateResolver;
+import com.chy.summer.framework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多个线程同时创建互相依赖的单例: 不能死锁, 半成品不能借给其他线程, 最后每个线程拿到的都是同一组完整的单例
+ */
+public class ConcurrentSingletonCreationTest {
+
+    /**
+     * 让每个线程都先实例化自己的bean再去注入属性, 保证两个线程一定会互相等待对方的创建锁
+     */
+    private static volatile CountDownLatch constructed;
+
+    @Test(timeout = 30000)
+    public void fieldInjectedCycleAcrossTwoThreads() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            DefaultListableBeanFactory beanFactory = createBeanFactory();
+            beanFactory.registerBeanDefinition("a", new RootBeanDefinition(A.class));
+            beanFactory.registerBeanDefinition("b", new RootBeanDefinition(B.class));
+
+            List<Object> results = getConcurrently(beanFactory, "a", "b");
+
+            A a = beanFactory.getBean("a", A.class);
+            B b = beanFactory.getBean("b", B.class);
+            assertSame(a, results.get(0));
+            assertSame(b, results.get(1));
+            assertSame(b, a.b);
+            assertSame(a, b.a);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void ringAcrossThreeThreads() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            DefaultListableBeanFactory beanFactory = createBeanFactory();
+            beanFactory.registerBeanDefinition("x", new RootBeanDefinition(X.class));
+            beanFactory.registerBeanDefinition("y", new RootBeanDefinition(Y.class));
+            beanFactory.registerBeanDefinition("z", new RootBeanDefinition(Z.class));
+
+            List<Object> results = getConcurrently(beanFactory, "x", "y", "z");
+
+            X x = beanFactory.getBean("x", X.class);
+            Y y = beanFactory.getBean("y", Y.class);
+            Z z = beanFactory.getBean("z", Z.class);
+            assertSame(x, results.get(0));
+            assertSame(y, results.get(1));
+            assertSame(z, results.get(2));
+            assertSame(y, x.y);
+            assertSame(z, y.z);
+            assertSame(x, z.x);
+        }
+    }
+
+    private List<Object> getConcurrently(DefaultListableBeanFactory beanFactory, String... beanNames) throws Exception {
+        constructed = new CountDownLatch(beanNames.length);
+        ExecutorService executor = Executors.newFixedThreadPool(beanNames.length);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (String beanName : beanNames) {
+                futures.add(executor.submit(() -> beanFactory.getBean(beanName)));
+            }
+            List<Object> results = new ArrayList<>();
+            for (Future<Object> future : futures) {
+                results.add(future.get(20, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static DefaultListableBeanFactory createBeanFactory() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.setAutowireCandidateResolver(new ContextAnnotationAutowireCandidateResolver());
+        AutowiredAnnotationBeanPostProcessor processor = new AutowiredAnnotationBeanPostProcessor();
+        processor.setBeanFactory(beanFactory);
+        beanFactory.addBeanPostProcessor(processor);
+        return beanFactory;
+    }
+
+
+    public static class Constructed {
+
+        public Constructed() {
+            constructed.countDown();
+            try {
+                constructed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static class A extends Constructed {
+        @Autowired
+        B b;
+    }
+
+    public static class B extends Constructed {
+        @Autowired
+        A a;
+    }
+
+    public static class X extends Constructed {
+        @Autowired
+        Y y;
+    }
+
+    public static class Y extends Constructed {
+        @Autowired
+        Z z;
+    }
+
+    public static class Z extends Constructed {
+        @Autowired
+        X x;
+    }
+}
@@ -0,0 +1,86 @@
+package com.chy.summer.framework.beans.support;
+
+import com.chy.summer.framework.context.annotation.constant.ScopeType;
+import com.chy.summer.framework.exception.BeanInstantiationException;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+
+import static org.junit.Assert.*;
+
+/**
+ * FastClass 能不能用是按构造器缓存的, 构造器里抛出的异常要作为原因保留下来
+ */
+public class FastClassInstantiationStrategyTest {
+
+    private final FastClassInstantiationStrategy strategy = new FastClassInstantiationStrategy();
+
+    @Test
+    public void unavailableConstructorDoesNotDisableOthers() throws Exception {
+        RootBeanDefinition bd = prototype(TwoConstructors.class);
+        Constructor<TwoConstructors> privateCtor = TwoConstructors.class.getDeclaredConstructor(String.class);
+        Constructor<TwoConstructors> publicCtor = TwoConstructors.class.getDeclaredConstructor(int.class);
+        privateCtor.setAccessible(true);
+
+        TwoConstructors first = (TwoConstructors) strategy.instantiate(bd, "two", null, privateCtor, "a");
+        assertEquals("a", first.value);
+        assertNull(bd.resolvedFastConstructor);
+
+        TwoConstructors second = (TwoConstructors) strategy.instantiate(bd, "two", null, publicCtor, 7);
+        assertEquals("7", second.value);
+        assertNotNull(bd.resolvedFastConstructor);
+        assertEquals(publicCtor, bd.resolvedFastConstructor.getJavaConstructor());
+    }
+
+    @Test
+    public void beanDefinitionsOfTheSameClassShareTheFastConstructor() {
+        RootBeanDefinition first = prototype(Plain.class);
+        RootBeanDefinition second = prototype(Plain.class);
+
+        assertTrue(strategy.instantiate(first, "first", null) instanceof Plain);
+        assertTrue(strategy.instantiate(second, "second", null) instanceof Plain);
+        assertNotNull(first.resolvedFastConstructor);
+        assertSame(first.resolvedFastConstructor, second.resolvedFastConstructor);
+    }
+
+    @Test
+    public void constructorExceptionIsKeptAsCause() {
+        try {
+            strategy.instantiate(prototype(Failing.class), "failing", null);
+            fail("构造器抛出的异常没有传出来");
+        } catch (BeanInstantiationException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+            assertEquals("boom", ex.getCause().getMessage());
+        }
+    }
+
+    private static RootBeanDefinition prototype(Class<?> beanClass) {
+        RootBeanDefinition bd = new RootBeanDefinition(beanClass);
+        bd.setScope(ScopeType.PROTOTYPE);
+        return bd;
+    }
+
+
+    public static class TwoConstructors {
+
+        final String value;
+
+        private TwoConstructors(String value) {
+            this.value = value;
+        }
+
+        public TwoConstructors(int value) {
+            this(String.valueOf(value));
+        }
+    }
+
+    public static class Plain {
+    }
+
+    public static class Failing {
+
+        public Failing() {
+            throw new IllegalStateException("boom");
+        }
+    }
+}
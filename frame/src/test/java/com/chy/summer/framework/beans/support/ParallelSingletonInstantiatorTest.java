@@ -0,0 +1,153 @@
+package com.chy.summer.framework.beans.support;
+
+import com.chy.summer.framework.annotation.beans.Autowired;
+import com.chy.summer.framework.beans.factory.ContextAnnotationAutowireCandidateResolver;
+import com.chy.summer.framework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 并行预先初始化要和串行的结果一致: 同样的单例, 同样的注入关系, 每个单例只创建一次
+ */
+public class ParallelSingletonInstantiatorTest {
+
+    private static final Map<Class<?>, AtomicInteger> INSTANCES = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Before
+    public void reset() {
+        INSTANCES.clear();
+        SEQUENCE.set(0);
+    }
+
+    @Test
+    public void parallelCreatesSameSingletonsAsSerial() {
+        DefaultListableBeanFactory serial = createBeanFactory(false);
+        serial.preInstantiateSingletons();
+        Map<Class<?>, Integer> serialInstances = snapshotInstances();
+
+        reset();
+        DefaultListableBeanFactory parallel = createBeanFactory(true);
+        parallel.preInstantiateSingletons();
+
+        assertEquals(new HashSet<>(Arrays.asList(serial.getSingletonNames())),
+                new HashSet<>(Arrays.asList(parallel.getSingletonNames())));
+        assertEquals(serialInstances, snapshotInstances());
+        assertWiring(serial);
+        assertWiring(parallel);
+    }
+
+    @Test
+    public void dependsOnIsCreatedFirst() {
+        for (int i = 0; i < 20; i++) {
+            reset();
+            DefaultListableBeanFactory parallel = createBeanFactory(true);
+            parallel.preInstantiateSingletons();
+            Early early = parallel.getBean("early", Early.class);
+            Late late = parallel.getBean("late", Late.class);
+            assertTrue("dependsOn 的bean 必须先创建", early.sequence < late.sequence);
+        }
+    }
+
+    private void assertWiring(DefaultListableBeanFactory beanFactory) {
+        Leaf leaf = beanFactory.getBean("leaf", Leaf.class);
+        Mid1 mid1 = beanFactory.getBean("mid1", Mid1.class);
+        Mid2 mid2 = beanFactory.getBean("mid2", Mid2.class);
+        Top top = beanFactory.getBean("top", Top.class);
+        assertSame(leaf, mid1.leaf);
+        assertSame(leaf, mid2.leaf);
+        assertSame(mid1, top.mid1);
+        assertSame(mid2, top.mid2);
+
+        CycA cycA = beanFactory.getBean("cycA", CycA.class);
+        CycB cycB = beanFactory.getBean("cycB", CycB.class);
+        assertSame(cycB, cycA.b);
+        assertSame(cycA, cycB.a);
+        assertSame(leaf, cycB.leaf);
+    }
+
+    private Map<Class<?>, Integer> snapshotInstances() {
+        Map<Class<?>, Integer> snapshot = new ConcurrentHashMap<>();
+        INSTANCES.forEach((type, count) -> snapshot.put(type, count.get()));
+        return snapshot;
+    }
+
+    static DefaultListableBeanFactory createBeanFactory(boolean parallel) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.setParallelPreInstantiation(parallel);
+        beanFactory.setPreInstantiationParallelism(4);
+        beanFactory.setAutowireCandidateResolver(new ContextAnnotationAutowireCandidateResolver());
+        AutowiredAnnotationBeanPostProcessor processor = new AutowiredAnnotationBeanPostProcessor();
+        processor.setBeanFactory(beanFactory);
+        beanFactory.addBeanPostProcessor(processor);
+
+        beanFactory.registerBeanDefinition("top", new RootBeanDefinition(Top.class));
+        beanFactory.registerBeanDefinition("mid1", new RootBeanDefinition(Mid1.class));
+        beanFactory.registerBeanDefinition("mid2", new RootBeanDefinition(Mid2.class));
+        beanFactory.registerBeanDefinition("leaf", new RootBeanDefinition(Leaf.class));
+        beanFactory.registerBeanDefinition("cycA", new RootBeanDefinition(CycA.class));
+        beanFactory.registerBeanDefinition("cycB", new RootBeanDefinition(CycB.class));
+        RootBeanDefinition late = new RootBeanDefinition(Late.class);
+        late.setDependsOn(new String[]{"early"});
+        beanFactory.registerBeanDefinition("late", late);
+        beanFactory.registerBeanDefinition("early", new RootBeanDefinition(Early.class));
+        return beanFactory;
+    }
+
+
+    public static class Counted {
+
+        final int sequence = SEQUENCE.incrementAndGet();
+
+        public Counted() {
+            INSTANCES.computeIfAbsent(getClass(), k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    public static class Leaf extends Counted {
+    }
+
+    public static class Mid1 extends Counted {
+        @Autowired
+        Leaf leaf;
+    }
+
+    public static class Mid2 extends Counted {
+        @Autowired
+        Leaf leaf;
+    }
+
+    public static class Top extends Counted {
+        @Autowired
+        Mid1 mid1;
+        @Autowired
+        Mid2 mid2;
+    }
+
+    public static class CycA extends Counted {
+        @Autowired
+        CycB b;
+    }
+
+    public static class CycB extends Counted {
+        @Autowired
+        CycA a;
+        @Autowired
+        Leaf leaf;
+    }
+
+    public static class Early extends Counted {
+    }
+
+    public static class Late extends Counted {
+    }
+}
@@ -0,0 +1,318 @@
+package com.chy.summer.framework.context.event;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @EventListener 的 condition 表达式: 优先级, 短路, null 和数字的比较, 枚举和字符串比较, 属性读取的缓存, 启动时的错误
+ */
+public class EventConditionExpressionTest {
+
+    private static final Set<String> NO_ARGUMENTS = Collections.emptySet();
+
+    @Test
+    public void andBindsTighterThanOr() {
+        assertTrue("&& 的优先级应该比 || 高", matches("true || false && false"));
+        assertTrue(matches("false && false || true"));
+        assertFalse(matches("(true || false) && false"));
+        assertTrue("and/or 和 &&/|| 的优先级应该一样", matches("true or false and false"));
+    }
+
+    @Test
+    public void comparisonBindsTighterThanLogical() {
+        OrderEvent event = new OrderEvent(3);
+        assertTrue(matches("#event.count > 1 && #event.count < 5", event));
+        assertFalse(matches("#event.count > 1 && #event.count > 5", event));
+        assertTrue(matches("#event.count == 0 || #event.count == 3", event));
+    }
+
+    @Test
+    public void notBindsTighterThanAnd() {
+        assertTrue(matches("!false && true"));
+        assertFalse(matches("!(false || true)"));
+        assertTrue(matches("not not true"));
+    }
+
+    @Test
+    public void andShortCircuits() {
+        OrderEvent event = new OrderEvent(1);
+        assertFalse(matches("false && #event.explode", event));
+        assertFalse(matches("#event.count == 2 && #event.explode", event));
+        assertEquals("&& 左边为false的时候不能再计算右边", 0, event.explodeCalls);
+    }
+
+    @Test
+    public void orShortCircuits() {
+        OrderEvent event = new OrderEvent(1);
+        assertTrue(matches("true || #event.explode", event));
+        assertTrue(matches("#event.count == 1 || #event.explode", event));
+        assertEquals("|| 左边为true的时候不能再计算右边", 0, event.explodeCalls);
+    }
+
+    @Test
+    public void rightOperandIsEvaluatedWhenNeeded() {
+        OrderEvent event = new OrderEvent(1);
+        try {
+            matches("true && #event.explode", event);
+            fail("右边的操作数应该被计算");
+        }
+        catch (IllegalStateException ex) {
+            assertEquals(1, event.explodeCalls);
+        }
+    }
+
+    @Test
+    public void nonBooleanLogicalOperandFails() {
+        try {
+            matches("#event.name && true", new OrderEvent(1));
+            fail("&& 的操作数不是boolean的时候应该报错");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("不是boolean"));
+        }
+    }
+
+    @Test
+    public void nullComparisons() {
+        OrderEvent event = new OrderEvent(1);
+        assertTrue(matches("#event.remark == null", event));
+        assertTrue(matches("null == #event.remark", event));
+        assertTrue(matches("#event.remark != 'x'", event));
+        assertFalse(matches("#event.name == null", event));
+        assertTrue("null 的属性应该还是null", matches("#event.remark.length == null", event));
+        assertFalse("结果为null的时候不匹配", matches("#event.remark", event));
+        assertFalse("null 作为 && 的操作数当作false", matches("#event.remark && true", event));
+    }
+
+    @Test
+    public void orderingWithNullFails() {
+        try {
+            matches("#event.remark > 1", new OrderEvent(1));
+            fail("null 不能比较大小");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("不能比较大小"));
+        }
+    }
+
+    @Test
+    public void numbersCompareAcrossTypes() {
+        OrderEvent event = new OrderEvent(3);
+        assertTrue("int 属性和 long 字面量应该相等", matches("#event.count == 3", event));
+        assertTrue("整数和小数应该按数值比较", matches("#event.count == 3.0", event));
+        assertTrue(matches("#event.count >= 3 && #event.count <= 3", event));
+        assertTrue(matches("#event.count > -1", event));
+        assertTrue(matches("#event.ratio >= 0.5 && #event.ratio < 0.75", event));
+        assertTrue("BigDecimal 应该按数值比较", matches("#event.amount > 10.5", event));
+        assertTrue(matches("#event.amount == 10.50000001", event));
+        assertTrue(matches("#event.total > 9007199254740992", event));
+        assertTrue("long 不能按 double 比较而丢精度", matches("#event.total != 9007199254740992", event));
+    }
+
+    @Test
+    public void stringComparisons() {
+        OrderEvent event = new OrderEvent(1);
+        assertTrue(matches("#event.name == 'order'", event));
+        assertTrue(matches("#event.name == \"order\"", event));
+        assertTrue(matches("#event.name < 'z'", event));
+        assertTrue(matches("'it\\'s' == 'it\\'s'"));
+    }
+
+    @Test
+    public void enumEqualsItsName() {
+        OrderEvent event = new OrderEvent(1);
+        assertTrue(matches("#event.level == 'HIGH'", event));
+        assertTrue(matches("'HIGH' == #event.level", event));
+        assertTrue(matches("#event.level != 'LOW'", event));
+        assertFalse("枚举按名字比较, 区分大小写", matches("#event.level == 'high'", event));
+    }
+
+    @Test
+    public void argumentVariable() {
+        EventConditionExpression expression = EventConditionExpression.parse(
+                "#order.count == 2 && #event.count == 1", Collections.singleton("order"));
+        assertTrue(expression.matches(new OrderEvent(1), new OrderEvent(2)));
+        assertFalse(expression.matches(new OrderEvent(1), new OrderEvent(3)));
+        assertFalse("参数为null的时候属性也是null", expression.matches(new OrderEvent(1), null));
+    }
+
+    @Test
+    public void propertyAccessorFollowsTargetClass() {
+        EventConditionExpression expression = EventConditionExpression.parse("#event.count == 2", NO_ARGUMENTS);
+        //同一个表达式交替收到不同类的事件, 缓存的读取方法不能用错类
+        for (int i = 0; i < 3; i++) {
+            assertTrue(expression.matches(new OrderEvent(2), null));
+            assertFalse(expression.matches(new OrderEvent(5), null));
+            assertTrue(expression.matches(new CountEvent(2), null));
+            assertFalse(expression.matches(new CountEvent(5), null));
+            assertTrue("子类应该能用父类的getter", expression.matches(new SubOrderEvent(2), null));
+        }
+    }
+
+    @Test
+    public void propertyAccessorAlternatives() {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("count", 2L);
+        EventConditionExpression expression = EventConditionExpression.parse("#payload.count == 2", Collections.singleton("payload"));
+        assertTrue("Map 按key读取", expression.matches(new OrderEvent(1), payload));
+        assertTrue("isXxx 方法", matches("#event.urgent", new OrderEvent(1)));
+        assertTrue("和属性同名的方法", matches("#event.code == 'A1'", new OrderEvent(1)));
+        assertTrue("public 字段", matches("#event.tag == 'fast'", new OrderEvent(1)));
+    }
+
+    @Test
+    public void unknownPropertyFailsAtEvaluation() {
+        try {
+            matches("#event.missing == 1", new OrderEvent(1));
+            fail("没有的属性应该报错");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("missing"));
+        }
+    }
+
+    @Test
+    public void nonBooleanResultFails() {
+        try {
+            matches("#event.count", new OrderEvent(1));
+            fail("结果不是boolean的时候应该报错");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("不是boolean"));
+        }
+    }
+
+    @Test
+    public void unknownVariableFailsAtParse() {
+        assertParseFails("#foo == 1", "#foo");
+        assertParseFails("#order.count == 1", "#order");
+        assertParseFails("#event.count == #root", "#root");
+    }
+
+    @Test
+    public void syntaxErrorsFailAtParse() {
+        assertParseFails("(true", "缺少 )");
+        assertParseFails("#event.count ==", "表达式不完整");
+        assertParseFails("true false", "多余的");
+        assertParseFails("1 ~ 2", "不认识的字符");
+        assertParseFails("'abc == 'abc'", "字符串没有结束");
+        assertParseFails("# == 1", "缺少变量名");
+        assertParseFails("#event.(count)", "属性名");
+        assertParseFails("1.2.3 == 1", "不合法的数字");
+        assertParseFails("yes", "不认识的");
+    }
+
+
+    private static boolean matches(String expression) {
+        return matches(expression, new OrderEvent(0));
+    }
+
+    private static boolean matches(String expression, ApplicationEvent event) {
+        return EventConditionExpression.parse(expression, NO_ARGUMENTS).matches(event, null);
+    }
+
+    private static void assertParseFails(String expression, String expectedMessage) {
+        try {
+            EventConditionExpression.parse(expression, NO_ARGUMENTS);
+            fail("表达式 [" + expression + "] 应该在解析的时候报错");
+        }
+        catch (IllegalArgumentException ex) {
+            assertTrue("错误信息 [" + ex.getMessage() + "] 里没有 [" + expectedMessage + "]",
+                    ex.getMessage().contains(expectedMessage));
+        }
+    }
+
+
+    public enum Level {
+        LOW, HIGH
+    }
+
+    public static class OrderEvent extends ApplicationEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        public final String tag = "fast";
+
+        private final int count;
+
+        int explodeCalls;
+
+        public OrderEvent(int count) {
+            super("test");
+            this.count = count;
+        }
+
+        public int getCount() {
+            return this.count;
+        }
+
+        public String getName() {
+            return "order";
+        }
+
+        public String getRemark() {
+            return null;
+        }
+
+        public double getRatio() {
+            return 0.5;
+        }
+
+        public BigDecimal getAmount() {
+            return new BigDecimal("10.50000001");
+        }
+
+        public long getTotal() {
+            return 9007199254740993L;
+        }
+
+        public Level getLevel() {
+            return Level.HIGH;
+        }
+
+        public boolean isUrgent() {
+            return true;
+        }
+
+        public String code() {
+            return "A1";
+        }
+
+        public boolean getExplode() {
+            this.explodeCalls++;
+            throw new IllegalStateException("不应该被调用");
+        }
+    }
+
+    public static class SubOrderEvent extends OrderEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        public SubOrderEvent(int count) {
+            super(count);
+        }
+    }
+
+    public static class CountEvent extends ApplicationEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long count;
+
+        public CountEvent(long count) {
+            super("test");
+            this.count = count;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+    }
+}
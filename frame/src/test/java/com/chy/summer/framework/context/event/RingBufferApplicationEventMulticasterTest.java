@@ -0,0 +1,262 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.web.servlet.context.support.GenericWebApplicationContext;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 环形缓冲区: 每个监听器收到事件的顺序, 缓冲区已满的时候发布者等待, 消费线程里发布事件不会死锁, 容器关闭事件同步投递
+ */
+public class RingBufferApplicationEventMulticasterTest {
+
+    private final RingBufferApplicationEventMulticaster multicaster = new RingBufferApplicationEventMulticaster();
+
+    @After
+    public void shutdown() {
+        this.multicaster.shutdown();
+    }
+
+    @Test(timeout = 30000)
+    public void eachListenerReceivesEventsInPublishOrder() throws Exception {
+        int eventCount = 10000;
+        this.multicaster.setBufferSize(64);
+        this.multicaster.setConsumerCount(3);
+        List<RecordingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            RecordingListener listener = new RecordingListener(eventCount);
+            listeners.add(listener);
+            this.multicaster.addApplicationListener(listener);
+        }
+
+        for (int i = 0; i < eventCount; i++) {
+            this.multicaster.multicastEvent(new TestEvent(i));
+        }
+
+        for (RecordingListener listener : listeners) {
+            assertTrue("监听器没有收到全部事件", listener.latch.await(20, TimeUnit.SECONDS));
+            for (int i = 0; i < eventCount; i++) {
+                assertEquals("监听器收到事件的顺序和发布的顺序不一致", i, listener.received.get(i).intValue());
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void publisherWaitsWhenBufferIsFull() throws Exception {
+        int bufferSize = 4;
+        int eventCount = bufferSize * 3;
+        this.multicaster.setBufferSize(bufferSize);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(eventCount) {
+            @Override
+            public void onApplicationEvent(TestEvent event) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onApplicationEvent(event);
+            }
+        };
+        this.multicaster.addApplicationListener(listener);
+
+        CountDownLatch published = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            for (int i = 0; i < eventCount; i++) {
+                this.multicaster.multicastEvent(new TestEvent(i));
+            }
+            published.countDown();
+        });
+        publisher.setDaemon(true);
+        publisher.start();
+
+        assertFalse("缓冲区已满的时候发布者没有等待", published.await(500, TimeUnit.MILLISECONDS));
+        assertTrue("缓冲区已满的时候没有记录等待次数", this.multicaster.getBackpressureCount() > 0);
+        assertEquals("缓冲区已满的时候还有剩余容量", 0, this.multicaster.getRemainingCapacity());
+
+        release.countDown();
+        assertTrue("消费线程处理完以后发布者没有继续", published.await(10, TimeUnit.SECONDS));
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < eventCount; i++) {
+            assertEquals("等待以后监听器收到事件的顺序不对", i, listener.received.get(i).intValue());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void publishTimeoutFailsWhenBufferIsFull() throws Exception {
+        this.multicaster.setBufferSize(2);
+        this.multicaster.setPublishTimeout(0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        this.multicaster.addApplicationListener((ApplicationListener<TestEvent>) event -> {
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            //第一个事件在处理完之前一直占着槽位, 再发布1个事件就占满了缓冲区
+            this.multicaster.multicastEvent(new TestEvent(0));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            this.multicaster.multicastEvent(new TestEvent(1));
+            try {
+                this.multicaster.multicastEvent(new TestEvent(2));
+                fail("publishTimeout 为0的时候缓冲区已满应该直接抛出异常");
+            }
+            catch (IllegalStateException ex) {
+                assertEquals(1, this.multicaster.getBackpressureCount());
+            }
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void listenerPublishingIntoFullBufferDoesNotDeadlock() throws Exception {
+        int nestedCount = 20;
+        this.multicaster.setBufferSize(2);
+        this.multicaster.setConsumerCount(2);
+        this.multicaster.addApplicationListener((ApplicationListener<TestEvent>) event -> {
+            if (event.getIndex() < 0) {
+                for (int i = 0; i < nestedCount; i++) {
+                    this.multicaster.multicastEvent(new TestEvent(i));
+                }
+            }
+        });
+        List<ThreadRecordingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ThreadRecordingListener listener = new ThreadRecordingListener(nestedCount);
+            listeners.add(listener);
+            this.multicaster.addApplicationListener(listener);
+        }
+
+        this.multicaster.multicastEvent(new TestEvent(-1));
+
+        for (ThreadRecordingListener listener : listeners) {
+            assertTrue("监听器里发布的事件没有全部送达", listener.latch.await(10, TimeUnit.SECONDS));
+            assertEquals("缓冲区已满的时候监听器被其他消费线程执行了", 1, listener.threads.size());
+        }
+        assertTrue(this.multicaster.getBackpressureCount() > 0);
+    }
+
+    @Test(timeout = 60000)
+    public void closedEventWaitsForEarlierEvents() throws Exception {
+        //监听器按identityHashCode分到不同的消费线程, 多试几次保证关闭事件的监听器和慢监听器不在同一个线程的情况被覆盖到
+        for (int round = 0; round < 10; round++) {
+            RingBufferApplicationEventMulticaster multicaster = new RingBufferApplicationEventMulticaster();
+            multicaster.setConsumerCount(2);
+            try {
+                assertClosedEventArrivesLast(multicaster);
+            }
+            finally {
+                multicaster.shutdown();
+            }
+        }
+    }
+
+    private void assertClosedEventArrivesLast(RingBufferApplicationEventMulticaster multicaster) {
+        int eventCount = 50;
+        int slowListenerCount = 4;
+        List<Object> received = new CopyOnWriteArrayList<>();
+        List<Thread> closedThreads = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < slowListenerCount; i++) {
+            multicaster.addApplicationListener((ApplicationListener<TestEvent>) event -> {
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(event.getIndex());
+            });
+        }
+        multicaster.addApplicationListener((ApplicationListener<ContextClosedEvent>) event -> {
+            closedThreads.add(Thread.currentThread());
+            received.add(event);
+        });
+
+        for (int i = 0; i < eventCount; i++) {
+            multicaster.multicastEvent(new TestEvent(i));
+        }
+        multicaster.multicastEvent(new ContextClosedEvent(new GenericWebApplicationContext()));
+
+        int total = eventCount * slowListenerCount;
+        assertEquals("关闭事件返回的时候所有事件都应该处理完", total + 1, received.size());
+        assertTrue("关闭事件之前的事件应该都先处理完", received.get(total) instanceof ContextClosedEvent);
+        assertEquals(1, closedThreads.size());
+        assertNotSame("关闭事件还是在消费线程里执行", Thread.currentThread(), closedThreads.get(0));
+    }
+
+    @Test
+    public void closedEventBeforeStartRunsInline() {
+        List<Thread> closedThreads = new CopyOnWriteArrayList<>();
+        this.multicaster.addApplicationListener((ApplicationListener<ContextClosedEvent>) event ->
+                closedThreads.add(Thread.currentThread()));
+
+        this.multicaster.multicastEvent(new ContextClosedEvent(new GenericWebApplicationContext()));
+
+        assertEquals(1, closedThreads.size());
+        assertSame(Thread.currentThread(), closedThreads.get(0));
+        assertEquals("没有发布过事件的时候不应该为关闭事件启动缓冲区", 0, this.multicaster.getPublishedCount());
+    }
+
+    static class TestEvent extends ApplicationEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        TestEvent(int index) {
+            super(index);
+        }
+
+        int getIndex() {
+            return (Integer) getSource();
+        }
+    }
+
+    static class RecordingListener implements ApplicationListener<TestEvent> {
+
+        final List<Integer> received = new CopyOnWriteArrayList<>();
+
+        final CountDownLatch latch;
+
+        RecordingListener(int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            this.received.add(event.getIndex());
+            this.latch.countDown();
+        }
+    }
+
+    static class ThreadRecordingListener extends RecordingListener {
+
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        ThreadRecordingListener(int expected) {
+            super(expected + 1);
+        }
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            this.threads.add(Thread.currentThread());
+            super.onApplicationEvent(event);
+        }
+    }
+}
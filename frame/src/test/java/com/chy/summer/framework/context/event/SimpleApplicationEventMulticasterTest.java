@@ -0,0 +1,305 @@
+package com.chy.summer.framework.context.event;
+
+import com.chy.summer.framework.beans.support.DefaultListableBeanFactory;
+import com.chy.summer.framework.beans.support.RootBeanDefinition;
+import com.chy.summer.framework.context.annotation.constant.ScopeType;
+import com.chy.summer.framework.core.task.ThreadPoolTaskExecutor;
+import com.chy.summer.framework.web.servlet.context.support.GenericWebApplicationContext;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * ORDERED/BATCH 事件队列的清理和消费, 不是单例的监听器, 默认事件线程池的上限, 容器关闭事件的投递和线程的释放
+ */
+public class SimpleApplicationEventMulticasterTest {
+
+    @Test
+    public void orderedListenerReceivesEventsInOrder() throws Exception {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster(new DefaultListableBeanFactory());
+        OrderedListener listener = new OrderedListener(100);
+        multicaster.addApplicationListener(listener);
+
+        for (int i = 0; i < 100; i++) {
+            multicaster.multicastEvent(new TestEvent(i));
+        }
+
+        assertTrue("ORDERED 监听器没有收到全部事件", listener.latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("ORDERED 监听器收到事件的顺序和发布的顺序不一致", i, listener.received.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void removeListenerEvictsMailbox() throws Exception {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster(new DefaultListableBeanFactory());
+        OrderedListener first = new OrderedListener(1);
+        OrderedListener second = new OrderedListener(1);
+        multicaster.addApplicationListener(first);
+        multicaster.addApplicationListener(second);
+        multicaster.multicastEvent(new TestEvent(0));
+        assertTrue(first.latch.await(10, TimeUnit.SECONDS));
+        assertTrue(second.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(2, multicaster.getMailboxCount());
+
+        multicaster.removeApplicationListener(first);
+        assertEquals("删除监听器以后它的事件队列还在", 1, multicaster.getMailboxCount());
+
+        multicaster.removeAllListeners();
+        assertEquals("删除所有监听器以后事件队列还在", 0, multicaster.getMailboxCount());
+    }
+
+    @Test
+    public void orderedPrototypeListenerIsRejected() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        RootBeanDefinition definition = new RootBeanDefinition(PrototypeOrderedListener.class);
+        definition.setScope(ScopeType.PROTOTYPE);
+        beanFactory.registerBeanDefinition("prototypeOrderedListener", definition);
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster(beanFactory);
+        multicaster.addApplicationListenerBean("prototypeOrderedListener");
+
+        try {
+            multicaster.multicastEvent(new TestEvent(0));
+            fail("不是单例的 ORDERED 监听器应该被拒绝");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("prototypeOrderedListener"));
+        }
+        assertEquals("被拒绝的监听器不能留下事件队列", 0, multicaster.getMailboxCount());
+    }
+
+    @Test
+    public void defaultDeliveryExecutorIsBounded() {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
+        assertTrue(multicaster.getDeliveryExecutor() instanceof ThreadPoolTaskExecutor);
+        ThreadPoolExecutor executor = ((ThreadPoolTaskExecutor) multicaster.getDeliveryExecutor()).getThreadPoolExecutor();
+        assertTrue("默认事件线程池的线程数没有上限", executor.getMaximumPoolSize() < Integer.MAX_VALUE);
+        assertTrue("默认事件线程池的队列没有上限", executor.getQueue().remainingCapacity() < Integer.MAX_VALUE);
+    }
+
+
+    @Test
+    public void closedEventIsDeliveredSynchronously() {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
+        //设置一个永远不执行任务的线程池, 关闭事件还交给它的话监听器就收不到
+        multicaster.setTaskExecutor(task -> { });
+        ClosedRecorder plain = new ClosedRecorder();
+        AsyncClosedRecorder async = new AsyncClosedRecorder();
+        OrderedClosedRecorder ordered = new OrderedClosedRecorder();
+        multicaster.addApplicationListener(event -> {
+            throw new IllegalStateException("一个监听器出错不能影响其他监听器");
+        });
+        multicaster.addApplicationListener(plain);
+        multicaster.addApplicationListener(async);
+        multicaster.addApplicationListener(ordered);
+
+        multicaster.multicastEvent(new ContextClosedEvent(new GenericWebApplicationContext()));
+
+        assertSame("没有标注 @EventDelivery 的监听器应该同步收到关闭事件", Thread.currentThread(), plain.thread);
+        assertSame("ASYNC 监听器应该同步收到关闭事件", Thread.currentThread(), async.thread);
+        assertSame("ORDERED 监听器应该同步收到关闭事件", Thread.currentThread(), ordered.thread);
+    }
+
+    @Test
+    public void closedEventComesAfterQueuedOrderedEvents() {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor("test-event-");
+        executor.initialize();
+        try {
+            multicaster.setDeliveryExecutor(executor);
+            SlowOrderedRecorder listener = new SlowOrderedRecorder();
+            multicaster.addApplicationListener(listener);
+            for (int i = 0; i < 5; i++) {
+                multicaster.multicastEvent(new TestEvent(i));
+            }
+
+            multicaster.multicastEvent(new ContextClosedEvent(new GenericWebApplicationContext()));
+
+            assertEquals("关闭事件返回之前队列里的事件应该都处理完", 6, listener.received.size());
+            for (int i = 0; i < 5; i++) {
+                assertEquals("队列里的事件顺序不对", i, ((TestEvent) listener.received.get(i)).getIndex());
+            }
+            assertTrue("关闭事件应该是 ORDERED 监听器收到的最后一个事件", listener.received.get(5) instanceof ContextClosedEvent);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void mailboxDoesNotRecurseWhenPublisherRunsIt() throws Exception {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
+        //模拟线程池满了以后 CALLER_RUNS, 任务都在提交者的线程里执行
+        ThreadLocal<Integer> depth = ThreadLocal.withInitial(() -> 0);
+        AtomicInteger maxDepth = new AtomicInteger();
+        multicaster.setDeliveryExecutor(task -> {
+            int current = depth.get() + 1;
+            depth.set(current);
+            maxDepth.accumulateAndGet(current, Math::max);
+            try {
+                task.run();
+            }
+            finally {
+                depth.set(current - 1);
+            }
+        });
+        int publishers = 4;
+        int events = 20000;
+        OrderedListener listener = new OrderedListener(publishers * events);
+        multicaster.addApplicationListener(listener);
+
+        Thread[] threads = new Thread[publishers];
+        for (int t = 0; t < publishers; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < events; i++) {
+                    multicaster.multicastEvent(new TestEvent(i));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("ORDERED 监听器没有收到全部事件", listener.latch.await(10, TimeUnit.SECONDS));
+        assertEquals("事件队列在提交者线程里递归提交了自己", 1, maxDepth.get());
+    }
+
+    @Test
+    public void shutdownReleasesDefaultThreads() throws Exception {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
+        BatchRecorder listener = new BatchRecorder();
+        multicaster.addApplicationListener(listener);
+        multicaster.multicastEvent(new TestEvent(1));
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) multicaster.getDeliveryExecutor();
+
+        multicaster.shutdown();
+
+        assertTrue("关闭以前还在时间窗口里的批次应该处理完", listener.latch.await(0, TimeUnit.SECONDS));
+        assertTrue("默认的事件线程池没有关闭", executor.getThreadPoolExecutor().isTerminated());
+        assertNotSame("关闭以后再使用应该重新创建线程池", executor, multicaster.getDeliveryExecutor());
+    }
+
+    @Test
+    public void shutdownLeavesConfiguredExecutorRunning() {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor("test-event-");
+        executor.initialize();
+        try {
+            multicaster.setDeliveryExecutor(executor);
+            multicaster.shutdown();
+            assertFalse("设置进来的线程池不归事件广播器关闭", executor.getThreadPoolExecutor().isShutdown());
+            assertSame(executor, multicaster.getDeliveryExecutor());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void closingContextShutsDownMulticaster() {
+        GenericWebApplicationContext context = new GenericWebApplicationContext();
+        context.refresh();
+        SimpleApplicationEventMulticaster multicaster = (SimpleApplicationEventMulticaster) context.getApplicationEventMulticaster();
+        ClosedRecorder listener = new ClosedRecorder();
+        context.addApplicationListener(listener);
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) multicaster.getDeliveryExecutor();
+
+        context.close();
+
+        assertSame("关闭容器的线程应该同步收到关闭事件", Thread.currentThread(), listener.thread);
+        assertTrue("关闭容器以后事件线程池没有关闭", executor.getThreadPoolExecutor().isShutdown());
+    }
+
+    static class TestEvent extends ApplicationEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        TestEvent(int index) {
+            super(index);
+        }
+
+        int getIndex() {
+            return (Integer) getSource();
+        }
+    }
+
+    @EventDelivery(DeliveryMode.ORDERED)
+    static class OrderedListener implements ApplicationListener<TestEvent> {
+
+        final List<Integer> received = new CopyOnWriteArrayList<>();
+
+        final CountDownLatch latch;
+
+        OrderedListener(int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            this.received.add(event.getIndex());
+            this.latch.countDown();
+        }
+    }
+
+    @EventDelivery(DeliveryMode.ORDERED)
+    public static class PrototypeOrderedListener implements ApplicationListener<TestEvent> {
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+        }
+    }
+
+    static class ClosedRecorder implements ApplicationListener<ContextClosedEvent> {
+
+        volatile Thread thread;
+
+        @Override
+        public void onApplicationEvent(ContextClosedEvent event) {
+            this.thread = Thread.currentThread();
+        }
+    }
+
+    @EventDelivery(DeliveryMode.ASYNC)
+    static class AsyncClosedRecorder extends ClosedRecorder {
+    }
+
+    @EventDelivery(DeliveryMode.ORDERED)
+    static class OrderedClosedRecorder extends ClosedRecorder {
+    }
+
+    @EventDelivery(DeliveryMode.ORDERED)
+    static class SlowOrderedRecorder implements ApplicationListener<ApplicationEvent> {
+
+        final List<ApplicationEvent> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onApplicationEvent(ApplicationEvent event) {
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            this.received.add(event);
+        }
+    }
+
+    @EventDelivery(value = DeliveryMode.BATCH, batchWindow = 200)
+    static class BatchRecorder implements ApplicationListener<TestEvent> {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            this.latch.countDown();
+        }
+    }
+}
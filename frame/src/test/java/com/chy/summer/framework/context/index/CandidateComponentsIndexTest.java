@@ -0,0 +1,130 @@
+package com.chy.summer.framework.context.index;
+
+import com.chy.summer.framework.context.annotation.constant.ScopeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * 索引只能用在它完整覆盖的包路径上, 没有索引的 classpath 根路径里的组件不能被漏掉
+ */
+public class CandidateComponentsIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void coversPackagesWhoseRootsAreAllIndexed() throws IOException {
+        File indexed = createRoot("indexed", "com/demo/app/");
+        writeIndex(indexed, "com.demo.app.OrderService=com.chy.summer.framework.annotation.stereotype.Component");
+        ClassLoader classLoader = classLoader(indexed);
+
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(classLoader);
+        assertNotNull(index);
+        assertTrue(index.covers("com.demo.app", classLoader));
+        assertTrue(index.covers("com.demo", classLoader));
+    }
+
+    @Test
+    public void packagesWithoutEntriesAreNotCovered() throws IOException {
+        File indexed = createRoot("indexed", "com/demo/lib/");
+        writeIndex(indexed, "com.demo.lib.LibService=com.chy.summer.framework.annotation.stereotype.Component");
+        File plain = createRoot("plain", "com/demo/app/");
+        ClassLoader classLoader = classLoader(indexed, plain);
+
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(classLoader);
+        assertFalse(index.covers("com.demo.app", classLoader));
+        assertTrue(index.covers("com.demo.lib", classLoader));
+    }
+
+    @Test
+    public void packagesSpreadOverAnUnindexedRootAreNotCovered() throws IOException {
+        File indexed = createRoot("indexed", "com/demo/app/");
+        writeIndex(indexed, "com.demo.app.OrderService=com.chy.summer.framework.annotation.stereotype.Component");
+        File plain = createRoot("plain", "com/demo/app/");
+        ClassLoader classLoader = classLoader(indexed, plain);
+
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(classLoader);
+        assertFalse(index.covers("com.demo.app", classLoader));
+    }
+
+    @Test
+    public void scopeAndLazyTokensAreParsed() throws IOException {
+        File indexed = createRoot("indexed", "com/demo/app/");
+        writeIndex(indexed, "com.demo.app.OrderService=com.chy.summer.framework.annotation.stereotype.Component,"
+                + "scope:PROTOTYPE,lazy:true,conditional:true");
+        ClassLoader classLoader = classLoader(indexed);
+
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(classLoader);
+        CandidateComponentsIndex.Entry entry = index.getCandidateTypes("com.demo",
+                Collections.singleton("com.chy.summer.framework.annotation.stereotype.Component")).get(0);
+        assertEquals(1, entry.getStereotypes().size());
+        assertEquals(ScopeType.PROTOTYPE, entry.getScope());
+        assertEquals(Boolean.TRUE, entry.getLazy());
+        assertTrue(entry.isConditional());
+    }
+
+    @Test
+    public void jarsWithoutDirectoryEntriesAreJudgedByIndexEntries() throws IOException {
+        File indexed = createJar("indexed.jar", "com/demo/lib/LibService.class",
+                CandidateComponentsIndexLoader.COMPONENTS_RESOURCE_LOCATION,
+                "com.demo.lib.LibService=com.chy.summer.framework.annotation.stereotype.Component");
+        File plain = createJar("plain.jar", "com/demo/app/OrderService.class", null, null);
+        ClassLoader classLoader = classLoader(indexed, plain);
+        assertNull("测试用的 jar 包不应该带目录条目", classLoader.getResource("com/demo/lib/"));
+
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(classLoader);
+        assertTrue("索引里有条目的包应该使用索引", index.covers("com.demo.lib", classLoader));
+        assertFalse("索引里没有条目的包应该扫描 class 文件", index.covers("com.demo.app", classLoader));
+    }
+
+    private File createRoot(String name, String packagePath) throws IOException {
+        File root = this.temporaryFolder.newFolder(name);
+        assertTrue(new File(root, packagePath).mkdirs());
+        return root;
+    }
+
+    /**
+     * 生成一个只有文件条目, 没有目录条目的 jar 包
+     */
+    private File createJar(String name, String classEntry, String resourceEntry, String resourceContent) throws IOException {
+        File jar = new File(this.temporaryFolder.getRoot(), name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(classEntry));
+            out.closeEntry();
+            if (resourceEntry != null) {
+                out.putNextEntry(new JarEntry(resourceEntry));
+                out.write((resourceContent + "\n").getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private void writeIndex(File root, String line) throws IOException {
+        File index = new File(root, CandidateComponentsIndexLoader.COMPONENTS_RESOURCE_LOCATION);
+        assertTrue(index.getParentFile().mkdirs());
+        Files.write(index.toPath(), (line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ClassLoader classLoader(File... roots) throws IOException {
+        URL[] urls = new URL[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            urls[i] = roots[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, null);
+    }
+}
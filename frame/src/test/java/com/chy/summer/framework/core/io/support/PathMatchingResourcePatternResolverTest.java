@@ -0,0 +1,137 @@
+package com.chy.summer.framework.core.io.support;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * classpath*: 要同时找出 文件夹 和 jar包 里的 class 文件, 而且只匹配指定包下面的条目
+ */
+public class PathMatchingResourcePatternResolverTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findsClassesInsideJars() throws Exception {
+        File jar = createJar("app.jar",
+                "com/demo/A.class",
+                "com/demo/sub/B.class",
+                "com/demo/readme.txt",
+                "com/demoother/C.class",
+                "org/other/D.class");
+
+        List<String> found = resolve(new URL[]{jar.toURI().toURL()}, "classpath*:com/demo");
+
+        assertEquals(2, found.size());
+        assertTrue(found.get(0).startsWith("jar:"));
+        assertTrue(found.get(0).endsWith("!/com/demo/A.class"));
+        assertTrue(found.get(1).endsWith("!/com/demo/sub/B.class"));
+    }
+
+    @Test
+    public void jarResourcesAreReadable() throws Exception {
+        File jar = createJar("app.jar", "com/demo/A.class");
+
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:com/demo/");
+            assertEquals(1, resources.length);
+            try (InputStream is = resources[0].getInputStream()) {
+                byte[] content = new byte[64];
+                int length = is.read(content);
+                assertEquals("com/demo/A.class", new String(content, 0, length, StandardCharsets.UTF_8));
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    @Test
+    public void mergesDirectoriesAndJars() throws Exception {
+        File first = createJar("first.jar", "com/demo/A.class");
+        File second = createJar("second.jar", "com/demo/B.class");
+        File directory = temporaryFolder.newFolder("classes");
+        File classFile = new File(directory, "com/demo/C.class");
+        assertTrue(classFile.getParentFile().mkdirs());
+        Files.write(classFile.toPath(), new byte[]{0});
+
+        List<String> found = resolve(new URL[]{first.toURI().toURL(), directory.toURI().toURL(),
+                second.toURI().toURL()}, "classpath*:com/demo");
+
+        assertEquals(3, found.size());
+        assertTrue(found.get(0).contains("first.jar!/com/demo/A.class"));
+        assertTrue(found.get(1).endsWith("C.class"));
+        assertTrue(found.get(2).contains("second.jar!/com/demo/B.class"));
+    }
+
+    @Test
+    public void missingPackageFindsNothing() throws Exception {
+        File jar = createJar("app.jar", "com/demo/A.class");
+
+        assertTrue(resolve(new URL[]{jar.toURI().toURL()}, "classpath*:com/missing").isEmpty());
+    }
+
+    /**
+     * 用只包含 urls 的类加载器来解析, 解析器会通过线程上下文类加载器拿到它
+     */
+    private List<String> resolve(URL[] urls, String locationPattern) throws IOException {
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(urls, null)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            List<String> found = new ArrayList<>();
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(locationPattern)) {
+                found.add(resource.getURL().toString());
+            }
+            return found;
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    /**
+     * 创建一个 jar包, 和打包工具一样会把每一层目录也写成条目, 文件内容就是它自己的路径
+     */
+    private File createJar(String name, String... entries) throws IOException {
+        File jar = temporaryFolder.newFile(name);
+        List<String> directories = new ArrayList<>();
+        for (String entry : entries) {
+            for (int i = entry.indexOf('/'); i != -1; i = entry.indexOf('/', i + 1)) {
+                String directory = entry.substring(0, i + 1);
+                if (!directories.contains(directory)) {
+                    directories.add(directory);
+                }
+            }
+        }
+        Collections.sort(directories);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String directory : directories) {
+                out.putNextEntry(new JarEntry(directory));
+                out.closeEntry();
+            }
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.write(entry.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
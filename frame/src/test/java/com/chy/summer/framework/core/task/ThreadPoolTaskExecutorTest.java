@@ -0,0 +1,74 @@
+package com.chy.summer.framework.core.task;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 线程池满了以后按 rejectionPolicy 丢弃的任务, 提交时拿到的 Future 要被取消, 等结果的线程不能一直阻塞
+ */
+public class ThreadPoolTaskExecutorTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor("test-pool-");
+
+	@After
+	public void shutdown() {
+		this.release.countDown();
+		this.executor.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void discardCancelsRejectedFuture() throws Exception {
+		fillPool(ThreadPoolTaskExecutor.RejectionPolicy.DISCARD);
+		Future<?> queued = this.executor.submit(() -> { });
+
+		Future<?> discarded = this.executor.submit(() -> { });
+
+		assertTrue("被丢弃的任务的 Future 应该被取消", discarded.isCancelled());
+		assertFalse(queued.isDone());
+		assertEquals(1, this.executor.getRejectedCount());
+		this.release.countDown();
+		queued.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test(timeout = 10000)
+	public void discardOldestCancelsQueuedFuture() throws Exception {
+		fillPool(ThreadPoolTaskExecutor.RejectionPolicy.DISCARD_OLDEST);
+		Future<?> oldest = this.executor.submit(() -> { });
+
+		Future<String> newest = this.executor.submit(() -> "newest");
+
+		assertTrue("被挤出队列的任务的 Future 应该被取消", oldest.isCancelled());
+		this.release.countDown();
+		assertEquals("newest", newest.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+     * 1个线程被占住, 队列容量为1
+     */
+	private void fillPool(ThreadPoolTaskExecutor.RejectionPolicy rejectionPolicy) throws InterruptedException {
+		this.executor.setCorePoolSize(1);
+		this.executor.setMaxPoolSize(1);
+		this.executor.setQueueCapacity(1);
+		this.executor.setRejectionPolicy(rejectionPolicy);
+		this.executor.setAwaitTerminationSeconds(1);
+		CountDownLatch started = new CountDownLatch(1);
+		this.executor.execute(() -> {
+			started.countDown();
+			try {
+				this.release.await();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+	}
+}
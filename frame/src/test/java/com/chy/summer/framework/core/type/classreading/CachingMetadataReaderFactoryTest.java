@@ -0,0 +1,85 @@
+package com.chy.summer.framework.core.type.classreading;
+
+import com.chy.summer.framework.core.io.DefaultResourceLoader;
+import com.chy.summer.framework.core.io.support.Resource;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 缓存的上限按类的数量来算, 按资源和按类名都能命中同一个读取器
+ */
+public class CachingMetadataReaderFactoryTest {
+
+    private static final Class<?>[] CLASSES = {A.class, B.class, C.class};
+
+    @Test
+    public void resourceAndClassNameShareOneEntry() throws Exception {
+        CachingMetadataReaderFactory factory = new CachingMetadataReaderFactory();
+        Resource resource = resourceOf(A.class);
+
+        MetadataReader byResource = factory.getMetadataReader(resource);
+        MetadataReader byClassName = factory.getMetadataReader(A.class.getName());
+
+        assertSame(byResource, byClassName);
+        assertSame(byResource, factory.getMetadataReader(resource));
+        assertEquals(1, factory.getCacheSize());
+        assertEquals(1, factory.getMissCount());
+        assertEquals(2, factory.getHitCount());
+    }
+
+    @Test
+    public void limitCountsClasses() throws Exception {
+        CachingMetadataReaderFactory factory = new CachingMetadataReaderFactory();
+        factory.setCacheLimit(CLASSES.length);
+        for (Class<?> clazz : CLASSES) {
+            factory.getMetadataReader(resourceOf(clazz));
+        }
+        for (Class<?> clazz : CLASSES) {
+            factory.getMetadataReader(clazz.getName());
+        }
+        assertEquals(CLASSES.length, factory.getCacheSize());
+        assertEquals(CLASSES.length, factory.getMissCount());
+    }
+
+    @Test
+    public void evictingAClassDropsItsResourceKey() throws Exception {
+        CachingMetadataReaderFactory factory = new CachingMetadataReaderFactory();
+        factory.setCacheLimit(2);
+        Resource resourceA = resourceOf(A.class);
+        factory.getMetadataReader(resourceA);
+        factory.getMetadataReader(resourceOf(B.class));
+        factory.getMetadataReader(resourceOf(C.class));
+        assertEquals(2, factory.getCacheSize());
+
+        factory.getMetadataReader(resourceA);
+        assertEquals(4, factory.getMissCount());
+    }
+
+    @Test
+    public void ensureCacheLimitOnlyGrows() {
+        CachingMetadataReaderFactory factory = new CachingMetadataReaderFactory();
+        factory.ensureCacheLimit(CachingMetadataReaderFactory.DEFAULT_CACHE_LIMIT * 2);
+        assertEquals(CachingMetadataReaderFactory.DEFAULT_CACHE_LIMIT * 2, factory.getCacheLimit());
+        factory.ensureCacheLimit(1);
+        assertEquals(CachingMetadataReaderFactory.DEFAULT_CACHE_LIMIT * 2, factory.getCacheLimit());
+
+        factory.setCacheLimit(0);
+        factory.ensureCacheLimit(10);
+        assertEquals(0, factory.getCacheLimit());
+    }
+
+    private static Resource resourceOf(Class<?> clazz) {
+        return new DefaultResourceLoader().getResource("classpath:" + clazz.getName().replace('.', '/') + ".class");
+    }
+
+
+    public static class A {
+    }
+
+    public static class B {
+    }
+
+    public static class C {
+    }
+}
@@ -0,0 +1,194 @@
+package com.chy.summer.framework.util.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多个线程同时争抢的时候, 同时在执行的调用数不能超过上限, 结束以后占用的名额要全部归还
+ */
+public class ConcurrencyThrottleSupportTest {
+
+	private static final int THREADS = 16;
+
+	private static final int LIMIT = 4;
+
+	@Test(timeout = 30000)
+	public void limitIsHonouredUnderContention() throws Exception {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(LIMIT);
+
+		int maxInFlight = runContended(throttle, 200, () -> Thread.yield());
+
+		assertTrue("同时执行了 " + maxInFlight + " 个", maxInFlight <= LIMIT);
+		assertEquals(LIMIT, maxInFlight);
+		assertEquals(0, throttle.getConcurrencyCount());
+		assertEquals(0, throttle.getRejectedCount());
+		assertTrue(throttle.getWaitedCount() > 0);
+	}
+
+	@Test(timeout = 30000)
+	public void adaptiveLimitStaysWithinBounds() throws Exception {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(LIMIT);
+		throttle.setAdaptiveConcurrency(true);
+		throttle.setMinConcurrencyLimit(1);
+		AtomicInteger calls = new AtomicInteger();
+
+		//每隔一段时间出现一次慢调用, 让限制不停地缩小和放大
+		int maxInFlight = runContended(throttle, 100, () -> {
+			if (calls.incrementAndGet() % 7 == 0) {
+				sleep(2);
+			}
+		});
+
+		assertTrue("同时执行了 " + maxInFlight + " 个", maxInFlight <= LIMIT);
+		assertEquals(0, throttle.getConcurrencyCount());
+		int currentLimit = throttle.getCurrentConcurrencyLimit();
+		assertTrue(currentLimit >= 1 && currentLimit <= LIMIT);
+	}
+
+	@Test(timeout = 30000)
+	public void failFastRejectsWhenFull() throws Exception {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(2);
+		throttle.setAcquireTimeout(0);
+		CountDownLatch entered = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++) {
+				executor.submit(() -> throttle.access(() -> {
+					entered.countDown();
+					await(release);
+				}));
+			}
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+			try {
+				throttle.access(() -> fail("超过上限的调用不应该执行"));
+				fail("超过上限的调用没有被拒绝");
+			}
+			catch (IllegalStateException ex) {
+				assertEquals(1, throttle.getRejectedCount());
+			}
+			release.countDown();
+		}
+		finally {
+			release.countDown();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+		assertEquals(0, throttle.getConcurrencyCount());
+		//名额归还以后又可以进入了
+		throttle.access(() -> { });
+	}
+
+	@Test(timeout = 30000)
+	public void acquireTimeoutRejectsAfterWaiting() throws Exception {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(1);
+		throttle.setAcquireTimeout(50);
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> throttle.access(() -> {
+			entered.countDown();
+			await(release);
+		}));
+		holder.start();
+		try {
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+			long start = System.nanoTime();
+			try {
+				throttle.access(() -> fail("超时以后不应该执行"));
+				fail("等待超时以后没有被拒绝");
+			}
+			catch (IllegalStateException ex) {
+				assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+			}
+			assertEquals(1, throttle.getWaitedCount());
+			assertEquals(1, throttle.getRejectedCount());
+		}
+		finally {
+			release.countDown();
+			holder.join(10000);
+		}
+		assertEquals(0, throttle.getConcurrencyCount());
+	}
+
+	/**
+	 * 用 THREADS 个线程同时调用, 记录同时在执行的最大调用数
+	 */
+	private int runContended(TestThrottle throttle, int callsPerThread, Runnable work) throws Exception {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> {
+					await(start);
+					for (int j = 0; j < callsPerThread; j++) {
+						throttle.access(() -> {
+							int current = inFlight.incrementAndGet();
+							maxInFlight.accumulateAndGet(current, Math::max);
+							work.run();
+							inFlight.decrementAndGet();
+						});
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get(20, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return maxInFlight.get();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	@SuppressWarnings("serial")
+	private static class TestThrottle extends ConcurrencyThrottleSupport {
+
+		void access(Runnable work) {
+			beforeAccess();
+			long start = System.nanoTime();
+			try {
+				work.run();
+			}
+			finally {
+				afterAccess(System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package chy.test;
 
+import chy.test.event.MyEvent;
 import chy.test.service.Abc;
 import chy.test.service.Abc2;
 import chy.test.service.BeanDemo2;
@@ -21,6 +22,9 @@ public class Main {
         BeanDemo2 beanDemo33 = context.getBean("beanDemo33", BeanDemo2.class);
         System.out.println(beanDemo33.getName());
 
+        context.publishEvent(new MyEvent("哈哈哈哈哈事件触发"));
+        context.publishEvent("下单");
+
     }
 
 }
@@ -0,0 +1,28 @@
+package chy.test.event;
+
+import com.chy.summer.framework.annotation.stereotype.Service;
+import com.chy.summer.framework.context.event.EventListener;
+
+@Service
+public class AnnotatedEventListeners {
+
+    @EventListener
+    public void onMyEvent(MyEvent event) {
+        System.out.println("@EventListener 收到了事件: " + event.getSource());
+    }
+
+    /**
+     * 监听发布的字符串, 返回值会作为新的事件发布出去
+     */
+    @EventListener(condition = "#payload == '下单'")
+    public String onOrder(String action) {
+        System.out.println("@EventListener 收到了: " + action);
+        return "订单已确认";
+    }
+
+    @EventListener(classes = String.class, condition = "#payload == '订单已确认'")
+    public void onConfirmed() {
+        System.out.println("@EventListener 收到了上一个监听器发布的: 订单已确认");
+    }
+
+}
@@ -0,0 +1,68 @@
+package chy.test.event;
+
+import com.chy.summer.framework.beans.support.DefaultListableBeanFactory;
+import com.chy.summer.framework.context.event.ApplicationEvent;
+import com.chy.summer.framework.context.event.ApplicationListener;
+import com.chy.summer.framework.context.event.SimpleApplicationEventMulticaster;
+
+/**
+ * 事件广播的吞吐量测试
+ * 注册200个监听器(一半监听 MyEvent, 一半监听其他事件), 统计每秒能广播多少个事件
+ */
+public class EventMulticastBenchmark {
+
+    private static final int LISTENER_COUNT = 200;
+
+    private static final int EVENT_COUNT = 200_000;
+
+    private static final int ROUNDS = 5;
+
+    private static long received;
+
+    public static void main(String[] args) {
+        SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster(new DefaultListableBeanFactory());
+        for (int i = 0; i < LISTENER_COUNT; i++) {
+            if (i % 2 == 0) {
+                multicaster.addApplicationListener(new MyEventListener());
+            }
+            else {
+                multicaster.addApplicationListener(new OtherListener());
+            }
+        }
+
+        MyEvent event = new MyEvent("benchmark");
+        for (int round = 0; round < ROUNDS; round++) {
+            received = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                multicaster.multicastEvent(event);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("第 %d 轮: %d 个监听器, %.0f 个事件/秒, 监听器被调用 %d 次%n",
+                    round + 1, LISTENER_COUNT, EVENT_COUNT * 1e9 / elapsed, received);
+        }
+    }
+
+    private static class MyEventListener implements ApplicationListener<MyEvent> {
+
+        @Override
+        public void onApplicationEvent(MyEvent event) {
+            received++;
+        }
+    }
+
+    private static class OtherEvent extends ApplicationEvent {
+
+        OtherEvent(Object source) {
+            super(source);
+        }
+    }
+
+    private static class OtherListener implements ApplicationListener<OtherEvent> {
+
+        @Override
+        public void onApplicationEvent(OtherEvent event) {
+            received++;
+        }
+    }
+}